@@ -14,6 +14,8 @@ public class Announcement extends Packet<Announcement> implements Settable<Annou
    public java.lang.StringBuilder reconnectKey_;
    public us.ihmc.robotDataLogger.ModelFileDescription modelFileDescription_;
    public boolean log_;
+   public boolean byteShuffled_;
+   public boolean hasCompressionDictionary_;
 
    public Announcement()
    {
@@ -47,6 +49,10 @@ public class Announcement extends Packet<Announcement> implements Settable<Annou
       us.ihmc.robotDataLogger.ModelFileDescriptionPubSubType.staticCopy(other.modelFileDescription_, modelFileDescription_);
       log_ = other.log_;
 
+      byteShuffled_ = other.byteShuffled_;
+
+      hasCompressionDictionary_ = other.hasCompressionDictionary_;
+
    }
 
    public void setIdentifier(java.lang.String identifier)
@@ -124,6 +130,24 @@ public class Announcement extends Packet<Announcement> implements Settable<Annou
       return log_;
    }
 
+   public void setByteShuffled(boolean byteShuffled)
+   {
+      byteShuffled_ = byteShuffled;
+   }
+   public boolean getByteShuffled()
+   {
+      return byteShuffled_;
+   }
+
+   public void setHasCompressionDictionary(boolean hasCompressionDictionary)
+   {
+      hasCompressionDictionary_ = hasCompressionDictionary;
+   }
+   public boolean getHasCompressionDictionary()
+   {
+      return hasCompressionDictionary_;
+   }
+
 
    public static Supplier<AnnouncementPubSubType> getPubSubType()
    {
@@ -153,6 +177,10 @@ public class Announcement extends Packet<Announcement> implements Settable<Annou
       if (!this.modelFileDescription_.epsilonEquals(other.modelFileDescription_, epsilon)) return false;
       if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.log_, other.log_, epsilon)) return false;
 
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.byteShuffled_, other.byteShuffled_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.hasCompressionDictionary_, other.hasCompressionDictionary_, epsilon)) return false;
+
 
       return true;
    }
@@ -177,6 +205,10 @@ public class Announcement extends Packet<Announcement> implements Settable<Annou
       if (!this.modelFileDescription_.equals(otherMyClass.modelFileDescription_)) return false;
       if(this.log_ != otherMyClass.log_) return false;
 
+      if(this.byteShuffled_ != otherMyClass.byteShuffled_) return false;
+
+      if(this.hasCompressionDictionary_ != otherMyClass.hasCompressionDictionary_) return false;
+
 
       return true;
    }
@@ -198,7 +230,11 @@ public class Announcement extends Packet<Announcement> implements Settable<Annou
       builder.append("modelFileDescription=");
       builder.append(this.modelFileDescription_);      builder.append(", ");
       builder.append("log=");
-      builder.append(this.log_);
+      builder.append(this.log_);      builder.append(", ");
+      builder.append("byteShuffled=");
+      builder.append(this.byteShuffled_);      builder.append(", ");
+      builder.append("hasCompressionDictionary=");
+      builder.append(this.hasCompressionDictionary_);
       builder.append("}");
       return builder.toString();
    }
@@ -60,6 +60,10 @@ public class AnnouncementPubSubType implements us.ihmc.pubsub.TopicDataType<us.i
 
       current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
 
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
 
       return current_alignment - initial_alignment;
    }
@@ -86,6 +90,12 @@ public class AnnouncementPubSubType implements us.ihmc.pubsub.TopicDataType<us.i
       current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
 
 
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+
 
       return current_alignment - initial_alignment;
    }
@@ -111,6 +121,10 @@ public class AnnouncementPubSubType implements us.ihmc.pubsub.TopicDataType<us.i
       us.ihmc.robotDataLogger.ModelFileDescriptionPubSubType.write(data.getModelFileDescription(), cdr);
       cdr.write_type_7(data.getLog());
 
+      cdr.write_type_7(data.getByteShuffled());
+
+      cdr.write_type_7(data.getHasCompressionDictionary());
+
    }
 
    public static void read(us.ihmc.robotDataLogger.Announcement data, us.ihmc.idl.CDR cdr)
@@ -122,6 +136,10 @@ public class AnnouncementPubSubType implements us.ihmc.pubsub.TopicDataType<us.i
       us.ihmc.robotDataLogger.ModelFileDescriptionPubSubType.read(data.getModelFileDescription(), cdr);	
       data.setLog(cdr.read_type_7());
       	
+      data.setByteShuffled(cdr.read_type_7());
+      	
+      data.setHasCompressionDictionary(cdr.read_type_7());
+      	
 
    }
 
@@ -135,6 +153,8 @@ public class AnnouncementPubSubType implements us.ihmc.pubsub.TopicDataType<us.i
       ser.write_type_a("modelFileDescription", new us.ihmc.robotDataLogger.ModelFileDescriptionPubSubType(), data.getModelFileDescription());
 
       ser.write_type_7("log", data.getLog());
+      ser.write_type_7("byteShuffled", data.getByteShuffled());
+      ser.write_type_7("hasCompressionDictionary", data.getHasCompressionDictionary());
    }
 
    @Override
@@ -147,6 +167,8 @@ public class AnnouncementPubSubType implements us.ihmc.pubsub.TopicDataType<us.i
       ser.read_type_a("modelFileDescription", new us.ihmc.robotDataLogger.ModelFileDescriptionPubSubType(), data.getModelFileDescription());
 
       data.setLog(ser.read_type_7("log"));
+      data.setByteShuffled(ser.read_type_7("byteShuffled"));
+      data.setHasCompressionDictionary(ser.read_type_7("hasCompressionDictionary"));
    }
 
    public static void staticCopy(us.ihmc.robotDataLogger.Announcement src, us.ihmc.robotDataLogger.Announcement dest)
@@ -18,6 +18,12 @@ public enum LogDataType
       
          VIDEO_PACKET,
       
+         XOR_DATA_PACKET,
+      
+         SPARSE_DATA_PACKET,
+      
+         BATCH_DATA_PACKET,
+      
    ;
    public static LogDataType[] values = values();
 
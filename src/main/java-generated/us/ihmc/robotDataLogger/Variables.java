@@ -9,17 +9,38 @@ import us.ihmc.pubsub.TopicDataType;
 public class Variables extends Packet<Variables> implements Settable<Variables>, EpsilonComparable<Variables>
 {
    public us.ihmc.robotDataLogger.HandshakeFileType handshakeFileType_;
-   public java.lang.StringBuilder handshake_;
    // Handshake file name
-   public java.lang.StringBuilder data_;
+   public java.lang.StringBuilder handshake_;
    // Data file name
-   public java.lang.StringBuilder summary_;
+   public java.lang.StringBuilder data_;
    // Summary file name
-   public java.lang.StringBuilder index_;
+   public java.lang.StringBuilder summary_;
    // Variable index file
-   public boolean timestamped_;
+   public java.lang.StringBuilder index_;
    // Does the index contain timestamps
+   public boolean timestamped_;
+   // Is the data compressed
    public boolean compressed_;
+   // Is the data filtered by the byte shuffle filter before compression
+   public boolean byteShuffled_;
+   // Does the data file contain the registry packets as received from the server
+   public boolean passthrough_;
+   // Compression dictionary file name, only used for passthrough logs
+   public java.lang.StringBuilder compressionDictionary_;
+   // Number of ticks compressed together in a block, 0 if every tick is compressed separately
+   public int ticksPerBlock_;
+   // Are the ticks in a block stored variable by variable
+   public boolean transposed_;
+   // Data file with the variables stored in columns, empty if not available
+   public java.lang.StringBuilder columns_;
+   // Chunk directory of the columns file
+   public java.lang.StringBuilder columnIndex_;
+   // Compression codec of the data file, empty for Snappy
+   public java.lang.StringBuilder codec_;
+   // Compression level of the codec, -1 for the default level
+   public int codecLevel_;
+   // Does every record in the data file start with a header with its length and CRC32C
+   public boolean checksums_;
 
    public Variables()
    {
@@ -27,6 +48,10 @@ public class Variables extends Packet<Variables> implements Settable<Variables>,
       data_ = new java.lang.StringBuilder(255);
       summary_ = new java.lang.StringBuilder(255);
       index_ = new java.lang.StringBuilder(255);
+      compressionDictionary_ = new java.lang.StringBuilder(255);
+      columns_ = new java.lang.StringBuilder(255);
+      columnIndex_ = new java.lang.StringBuilder(255);
+      codec_ = new java.lang.StringBuilder(255);
    }
 
    public Variables(Variables other)
@@ -55,6 +80,30 @@ public class Variables extends Packet<Variables> implements Settable<Variables>,
 
       compressed_ = other.compressed_;
 
+      byteShuffled_ = other.byteShuffled_;
+
+      passthrough_ = other.passthrough_;
+
+      compressionDictionary_.setLength(0);
+      compressionDictionary_.append(other.compressionDictionary_);
+
+      ticksPerBlock_ = other.ticksPerBlock_;
+
+      transposed_ = other.transposed_;
+
+      columns_.setLength(0);
+      columns_.append(other.columns_);
+
+      columnIndex_.setLength(0);
+      columnIndex_.append(other.columnIndex_);
+
+      codec_.setLength(0);
+      codec_.append(other.codec_);
+
+      codecLevel_ = other.codecLevel_;
+
+      checksums_ = other.checksums_;
+
    }
 
    public void setHandshakeFileType(us.ihmc.robotDataLogger.HandshakeFileType handshakeFileType)
@@ -66,97 +115,238 @@ public class Variables extends Packet<Variables> implements Settable<Variables>,
       return handshakeFileType_;
    }
 
+   // Handshake file name
    public void setHandshake(java.lang.String handshake)
    {
       handshake_.setLength(0);
       handshake_.append(handshake);
    }
 
+   // Handshake file name
    public java.lang.String getHandshakeAsString()
    {
       return getHandshake().toString();
    }
+   // Handshake file name
    public java.lang.StringBuilder getHandshake()
    {
       return handshake_;
    }
 
-   // Handshake file name
+   // Data file name
    public void setData(java.lang.String data)
    {
       data_.setLength(0);
       data_.append(data);
    }
 
-   // Handshake file name
+   // Data file name
    public java.lang.String getDataAsString()
    {
       return getData().toString();
    }
-   // Handshake file name
+   // Data file name
    public java.lang.StringBuilder getData()
    {
       return data_;
    }
 
-   // Data file name
+   // Summary file name
    public void setSummary(java.lang.String summary)
    {
       summary_.setLength(0);
       summary_.append(summary);
    }
 
-   // Data file name
+   // Summary file name
    public java.lang.String getSummaryAsString()
    {
       return getSummary().toString();
    }
-   // Data file name
+   // Summary file name
    public java.lang.StringBuilder getSummary()
    {
       return summary_;
    }
 
-   // Summary file name
+   // Variable index file
    public void setIndex(java.lang.String index)
    {
       index_.setLength(0);
       index_.append(index);
    }
 
-   // Summary file name
+   // Variable index file
    public java.lang.String getIndexAsString()
    {
       return getIndex().toString();
    }
-   // Summary file name
+   // Variable index file
    public java.lang.StringBuilder getIndex()
    {
       return index_;
    }
 
-   // Variable index file
+   // Does the index contain timestamps
    public void setTimestamped(boolean timestamped)
    {
       timestamped_ = timestamped;
    }
-   // Variable index file
+   // Does the index contain timestamps
    public boolean getTimestamped()
    {
       return timestamped_;
    }
 
-   // Does the index contain timestamps
+   // Is the data compressed
    public void setCompressed(boolean compressed)
    {
       compressed_ = compressed;
    }
-   // Does the index contain timestamps
+   // Is the data compressed
    public boolean getCompressed()
    {
       return compressed_;
    }
 
+   // Is the data filtered by the byte shuffle filter before compression
+   public void setByteShuffled(boolean byteShuffled)
+   {
+      byteShuffled_ = byteShuffled;
+   }
+   // Is the data filtered by the byte shuffle filter before compression
+   public boolean getByteShuffled()
+   {
+      return byteShuffled_;
+   }
+
+   // Does the data file contain the registry packets as received from the server
+   public void setPassthrough(boolean passthrough)
+   {
+      passthrough_ = passthrough;
+   }
+   // Does the data file contain the registry packets as received from the server
+   public boolean getPassthrough()
+   {
+      return passthrough_;
+   }
+
+   // Compression dictionary file name, only used for passthrough logs
+   public void setCompressionDictionary(java.lang.String compressionDictionary)
+   {
+      compressionDictionary_.setLength(0);
+      compressionDictionary_.append(compressionDictionary);
+   }
+
+   // Compression dictionary file name, only used for passthrough logs
+   public java.lang.String getCompressionDictionaryAsString()
+   {
+      return getCompressionDictionary().toString();
+   }
+   // Compression dictionary file name, only used for passthrough logs
+   public java.lang.StringBuilder getCompressionDictionary()
+   {
+      return compressionDictionary_;
+   }
+
+   // Number of ticks compressed together in a block, 0 if every tick is compressed separately
+   public void setTicksPerBlock(int ticksPerBlock)
+   {
+      ticksPerBlock_ = ticksPerBlock;
+   }
+   // Number of ticks compressed together in a block, 0 if every tick is compressed separately
+   public int getTicksPerBlock()
+   {
+      return ticksPerBlock_;
+   }
+
+   // Are the ticks in a block stored variable by variable
+   public void setTransposed(boolean transposed)
+   {
+      transposed_ = transposed;
+   }
+   // Are the ticks in a block stored variable by variable
+   public boolean getTransposed()
+   {
+      return transposed_;
+   }
+
+   // Data file with the variables stored in columns, empty if not available
+   public void setColumns(java.lang.String columns)
+   {
+      columns_.setLength(0);
+      columns_.append(columns);
+   }
+
+   // Data file with the variables stored in columns, empty if not available
+   public java.lang.String getColumnsAsString()
+   {
+      return getColumns().toString();
+   }
+   // Data file with the variables stored in columns, empty if not available
+   public java.lang.StringBuilder getColumns()
+   {
+      return columns_;
+   }
+
+   // Chunk directory of the columns file
+   public void setColumnIndex(java.lang.String columnIndex)
+   {
+      columnIndex_.setLength(0);
+      columnIndex_.append(columnIndex);
+   }
+
+   // Chunk directory of the columns file
+   public java.lang.String getColumnIndexAsString()
+   {
+      return getColumnIndex().toString();
+   }
+   // Chunk directory of the columns file
+   public java.lang.StringBuilder getColumnIndex()
+   {
+      return columnIndex_;
+   }
+
+   // Compression codec of the data file, empty for Snappy
+   public void setCodec(java.lang.String codec)
+   {
+      codec_.setLength(0);
+      codec_.append(codec);
+   }
+
+   // Compression codec of the data file, empty for Snappy
+   public java.lang.String getCodecAsString()
+   {
+      return getCodec().toString();
+   }
+   // Compression codec of the data file, empty for Snappy
+   public java.lang.StringBuilder getCodec()
+   {
+      return codec_;
+   }
+
+   // Compression level of the codec, -1 for the default level
+   public void setCodecLevel(int codecLevel)
+   {
+      codecLevel_ = codecLevel;
+   }
+   // Compression level of the codec, -1 for the default level
+   public int getCodecLevel()
+   {
+      return codecLevel_;
+   }
+
+   // Does every record in the data file start with a header with its length and CRC32C
+   public void setChecksums(boolean checksums)
+   {
+      checksums_ = checksums;
+   }
+   // Does every record in the data file start with a header with its length and CRC32C
+   public boolean getChecksums()
+   {
+      return checksums_;
+   }
+
 
    public static Supplier<VariablesPubSubType> getPubSubType()
    {
@@ -189,6 +379,26 @@ public class Variables extends Packet<Variables> implements Settable<Variables>,
 
       if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.compressed_, other.compressed_, epsilon)) return false;
 
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.byteShuffled_, other.byteShuffled_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.passthrough_, other.passthrough_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsStringBuilder(this.compressionDictionary_, other.compressionDictionary_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsPrimitive(this.ticksPerBlock_, other.ticksPerBlock_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.transposed_, other.transposed_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsStringBuilder(this.columns_, other.columns_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsStringBuilder(this.columnIndex_, other.columnIndex_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsStringBuilder(this.codec_, other.codec_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsPrimitive(this.codecLevel_, other.codecLevel_, epsilon)) return false;
+
+      if (!us.ihmc.idl.IDLTools.epsilonEqualsBoolean(this.checksums_, other.checksums_, epsilon)) return false;
+
 
       return true;
    }
@@ -216,6 +426,26 @@ public class Variables extends Packet<Variables> implements Settable<Variables>,
 
       if(this.compressed_ != otherMyClass.compressed_) return false;
 
+      if(this.byteShuffled_ != otherMyClass.byteShuffled_) return false;
+
+      if(this.passthrough_ != otherMyClass.passthrough_) return false;
+
+      if (!us.ihmc.idl.IDLTools.equals(this.compressionDictionary_, otherMyClass.compressionDictionary_)) return false;
+
+      if(this.ticksPerBlock_ != otherMyClass.ticksPerBlock_) return false;
+
+      if(this.transposed_ != otherMyClass.transposed_) return false;
+
+      if (!us.ihmc.idl.IDLTools.equals(this.columns_, otherMyClass.columns_)) return false;
+
+      if (!us.ihmc.idl.IDLTools.equals(this.columnIndex_, otherMyClass.columnIndex_)) return false;
+
+      if (!us.ihmc.idl.IDLTools.equals(this.codec_, otherMyClass.codec_)) return false;
+
+      if(this.codecLevel_ != otherMyClass.codecLevel_) return false;
+
+      if(this.checksums_ != otherMyClass.checksums_) return false;
+
 
       return true;
    }
@@ -239,7 +469,27 @@ public class Variables extends Packet<Variables> implements Settable<Variables>,
       builder.append("timestamped=");
       builder.append(this.timestamped_);      builder.append(", ");
       builder.append("compressed=");
-      builder.append(this.compressed_);
+      builder.append(this.compressed_);      builder.append(", ");
+      builder.append("byteShuffled=");
+      builder.append(this.byteShuffled_);      builder.append(", ");
+      builder.append("passthrough=");
+      builder.append(this.passthrough_);      builder.append(", ");
+      builder.append("compressionDictionary=");
+      builder.append(this.compressionDictionary_);      builder.append(", ");
+      builder.append("ticksPerBlock=");
+      builder.append(this.ticksPerBlock_);      builder.append(", ");
+      builder.append("transposed=");
+      builder.append(this.transposed_);      builder.append(", ");
+      builder.append("columns=");
+      builder.append(this.columns_);      builder.append(", ");
+      builder.append("columnIndex=");
+      builder.append(this.columnIndex_);      builder.append(", ");
+      builder.append("codec=");
+      builder.append(this.codec_);      builder.append(", ");
+      builder.append("codecLevel=");
+      builder.append(this.codecLevel_);      builder.append(", ");
+      builder.append("checksums=");
+      builder.append(this.checksums_);
       builder.append("}");
       return builder.toString();
    }
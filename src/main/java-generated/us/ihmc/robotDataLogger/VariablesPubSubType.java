@@ -62,6 +62,22 @@ public class VariablesPubSubType implements us.ihmc.pubsub.TopicDataType<us.ihmc
 
       current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
 
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + 255 + 1;
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4);
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + 255 + 1;
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + 255 + 1;
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + 255 + 1;
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4);
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
 
       return current_alignment - initial_alignment;
    }
@@ -92,6 +108,31 @@ public class VariablesPubSubType implements us.ihmc.pubsub.TopicDataType<us.ihmc
       current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
 
 
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + data.getCompressionDictionary().length() + 1;
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4);
+
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + data.getColumns().length() + 1;
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + data.getColumnIndex().length() + 1;
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4) + data.getCodec().length() + 1;
+
+      current_alignment += 4 + us.ihmc.idl.CDR.alignment(current_alignment, 4);
+
+
+      current_alignment += 1 + us.ihmc.idl.CDR.alignment(current_alignment, 1);
+
 
       return current_alignment - initial_alignment;
    }
@@ -121,6 +162,34 @@ public class VariablesPubSubType implements us.ihmc.pubsub.TopicDataType<us.ihmc
 
       cdr.write_type_7(data.getCompressed());
 
+      cdr.write_type_7(data.getByteShuffled());
+
+      cdr.write_type_7(data.getPassthrough());
+
+      if(data.getCompressionDictionary().length() <= 255)
+      cdr.write_type_d(data.getCompressionDictionary());else
+          throw new RuntimeException("compressionDictionary field exceeds the maximum length");
+
+      cdr.write_type_2(data.getTicksPerBlock());
+
+      cdr.write_type_7(data.getTransposed());
+
+      if(data.getColumns().length() <= 255)
+      cdr.write_type_d(data.getColumns());else
+          throw new RuntimeException("columns field exceeds the maximum length");
+
+      if(data.getColumnIndex().length() <= 255)
+      cdr.write_type_d(data.getColumnIndex());else
+          throw new RuntimeException("columnIndex field exceeds the maximum length");
+
+      if(data.getCodec().length() <= 255)
+      cdr.write_type_d(data.getCodec());else
+          throw new RuntimeException("codec field exceeds the maximum length");
+
+      cdr.write_type_2(data.getCodecLevel());
+
+      cdr.write_type_7(data.getChecksums());
+
    }
 
    public static void read(us.ihmc.robotDataLogger.Variables data, us.ihmc.idl.CDR cdr)
@@ -135,6 +204,22 @@ public class VariablesPubSubType implements us.ihmc.pubsub.TopicDataType<us.ihmc
       	
       data.setCompressed(cdr.read_type_7());
       	
+      data.setByteShuffled(cdr.read_type_7());
+      	
+      data.setPassthrough(cdr.read_type_7());
+      	
+      cdr.read_type_d(data.getCompressionDictionary());	
+      data.setTicksPerBlock(cdr.read_type_2());
+      	
+      data.setTransposed(cdr.read_type_7());
+      	
+      cdr.read_type_d(data.getColumns());	
+      cdr.read_type_d(data.getColumnIndex());	
+      cdr.read_type_d(data.getCodec());	
+      data.setCodecLevel(cdr.read_type_2());
+      	
+      data.setChecksums(cdr.read_type_7());
+      	
 
    }
 
@@ -148,6 +233,16 @@ public class VariablesPubSubType implements us.ihmc.pubsub.TopicDataType<us.ihmc
       ser.write_type_d("index", data.getIndex());
       ser.write_type_7("timestamped", data.getTimestamped());
       ser.write_type_7("compressed", data.getCompressed());
+      ser.write_type_7("byteShuffled", data.getByteShuffled());
+      ser.write_type_7("passthrough", data.getPassthrough());
+      ser.write_type_d("compressionDictionary", data.getCompressionDictionary());
+      ser.write_type_2("ticksPerBlock", data.getTicksPerBlock());
+      ser.write_type_7("transposed", data.getTransposed());
+      ser.write_type_d("columns", data.getColumns());
+      ser.write_type_d("columnIndex", data.getColumnIndex());
+      ser.write_type_d("codec", data.getCodec());
+      ser.write_type_2("codecLevel", data.getCodecLevel());
+      ser.write_type_7("checksums", data.getChecksums());
    }
 
    @Override
@@ -161,6 +256,16 @@ public class VariablesPubSubType implements us.ihmc.pubsub.TopicDataType<us.ihmc
       ser.read_type_d("index", data.getIndex());
       data.setTimestamped(ser.read_type_7("timestamped"));
       data.setCompressed(ser.read_type_7("compressed"));
+      data.setByteShuffled(ser.read_type_7("byteShuffled"));
+      data.setPassthrough(ser.read_type_7("passthrough"));
+      ser.read_type_d("compressionDictionary", data.getCompressionDictionary());
+      data.setTicksPerBlock(ser.read_type_2("ticksPerBlock"));
+      data.setTransposed(ser.read_type_7("transposed"));
+      ser.read_type_d("columns", data.getColumns());
+      ser.read_type_d("columnIndex", data.getColumnIndex());
+      ser.read_type_d("codec", data.getCodec());
+      data.setCodecLevel(ser.read_type_2("codecLevel"));
+      data.setChecksums(ser.read_type_7("checksums"));
    }
 
    public static void staticCopy(us.ihmc.robotDataLogger.Variables src, us.ihmc.robotDataLogger.Variables dest)
@@ -6,27 +6,98 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
+/**
+ * Index of a log. Logs that compress every tick separately have an entry of 16 bytes per tick, the
+ * timestamp and data offset. Logs with blocks have an entry of BLOCK_ENTRY_SIZE bytes per block,
+ * the timestamps of the first and last tick, the data offset and the number of ticks in the block.
+ * For logs with checksums the offset in the index points to the LogRecordHeader in front of the
+ * record, dataOffsets points to the record data after the header.
+ */
 public class LogIndex
 {
+   public static final int ENTRY_SIZE = 16;
+   public static final int BLOCK_ENTRY_SIZE = 32;
+
+   /**
+    * Timestamp of every entry. For logs with blocks this is the timestamp of the first tick of the
+    * block.
+    */
    public long[] timestamps;
    public long[] dataOffsets;
    public int[] compressedSizes;
+
+   /**
+    * Timestamp of the last tick of every block, null if every tick is compressed separately
+    */
+   public long[] lastTimestamps;
+
+   /**
+    * Position of the first tick of every block, null if every tick is compressed separately
+    */
+   public int[] firstTicks;
+
    private final int numberOfEntries;
+   private final int numberOfTicks;
+   private final boolean checksums;
 
    public LogIndex(File indexData, long channelSize) throws IOException
    {
+      this(indexData, channelSize, false);
+   }
+
+   /**
+    * @param indexData   Index file
+    * @param channelSize Size of the data file
+    * @param blocks      True if the log is written in blocks of multiple ticks
+    * @throws IOException
+    */
+   public LogIndex(File indexData, long channelSize, boolean blocks) throws IOException
+   {
+      this(indexData, channelSize, blocks, false);
+   }
+
+   /**
+    * @param indexData   Index file
+    * @param channelSize Size of the data file
+    * @param blocks      True if the log is written in blocks of multiple ticks
+    * @param checksums   True if every record in the data file starts with a LogRecordHeader
+    * @throws IOException
+    */
+   public LogIndex(File indexData, long channelSize, boolean blocks, boolean checksums) throws IOException
+   {
+      this.checksums = checksums;
+      int headerSize = checksums ? LogRecordHeader.SIZE : 0;
+      int entrySize = blocks ? BLOCK_ENTRY_SIZE : ENTRY_SIZE;
+
       FileInputStream indexStream = new FileInputStream(indexData);
       FileChannel indexChannel = indexStream.getChannel();
-      timestamps = new long[(int) (indexChannel.size() / 16)];
-      dataOffsets = new long[(int) (indexChannel.size() / 16)];
+      timestamps = new long[(int) (indexChannel.size() / entrySize)];
+      dataOffsets = new long[(int) (indexChannel.size() / entrySize)];
+      if (blocks)
+      {
+         lastTimestamps = new long[timestamps.length];
+         firstTicks = new int[timestamps.length];
+      }
 
       int index = 0;
-      ByteBuffer indexDataBuffer = ByteBuffer.allocateDirect(16);
-      while (indexChannel.read(indexDataBuffer) == 16)
+      int ticks = 0;
+      ByteBuffer indexDataBuffer = ByteBuffer.allocateDirect(entrySize);
+      while (indexChannel.read(indexDataBuffer) == entrySize)
       {
          indexDataBuffer.clear();
          timestamps[index] = indexDataBuffer.getLong(0);
-         dataOffsets[index] = indexDataBuffer.getLong(8);
+         if (blocks)
+         {
+            lastTimestamps[index] = indexDataBuffer.getLong(8);
+            dataOffsets[index] = indexDataBuffer.getLong(16);
+            firstTicks[index] = ticks;
+            ticks += (int) indexDataBuffer.getLong(24);
+         }
+         else
+         {
+            dataOffsets[index] = indexDataBuffer.getLong(8);
+            ticks++;
+         }
          index++;
       }
       indexChannel.close();
@@ -35,11 +106,18 @@ public class LogIndex
       compressedSizes = new int[dataOffsets.length];
       for (int i = 0; i < dataOffsets.length - 1; i++)
       {
-         compressedSizes[i] = (int) (dataOffsets[i + 1] - dataOffsets[i]);
+         compressedSizes[i] = (int) (dataOffsets[i + 1] - dataOffsets[i] - headerSize);
+      }
+      if (dataOffsets.length > 0)
+      {
+         compressedSizes[dataOffsets.length - 1] = (int) (channelSize - dataOffsets[dataOffsets.length - 1] - headerSize);
+      }
+      for (int i = 0; i < dataOffsets.length; i++)
+      {
+         dataOffsets[i] += headerSize;
       }
-      compressedSizes[dataOffsets.length - 1] = (int) (channelSize - dataOffsets[dataOffsets.length - 1]);
       numberOfEntries = dataOffsets.length;
-
+      numberOfTicks = ticks;
    }
 
    public int seek(long inStamp)
@@ -65,11 +143,165 @@ public class LogIndex
       return position;
    }
 
+   /**
+    * @param timestamp
+    * @return the first block with a last timestamp larger or equal than timestamp, or the last block
+    *         if timestamp is past the end of the log
+    */
+   public int seekBlock(long timestamp)
+   {
+      int head = 0;
+      int tail = numberOfEntries - 1;
+      while (head < tail)
+      {
+         int block = head + (tail - head) / 2;
+         if (lastTimestamps[block] < timestamp)
+         {
+            head = block + 1;
+         }
+         else
+         {
+            tail = block;
+         }
+      }
+      return head;
+   }
+
+   /**
+    * @param tick position of the tick
+    * @return the index entry that contains the tick
+    */
+   public int getBlock(int tick)
+   {
+      if (firstTicks == null)
+      {
+         return tick;
+      }
+
+      int head = 0;
+      int tail = numberOfEntries - 1;
+      while (head < tail)
+      {
+         int block = head + (tail - head + 1) / 2;
+         if (firstTicks[block] <= tick)
+         {
+            head = block;
+         }
+         else
+         {
+            tail = block - 1;
+         }
+      }
+      return head;
+   }
+
+   /**
+    * @param block index entry
+    * @return the number of ticks in the block
+    */
+   public int getNumberOfTicksInBlock(int block)
+   {
+      if (firstTicks == null)
+      {
+         return 1;
+      }
+      int end = block + 1 < numberOfEntries ? firstTicks[block + 1] : numberOfTicks;
+      return end - firstTicks[block];
+   }
+
+   public boolean hasBlocks()
+   {
+      return firstTicks != null;
+   }
+
+   /**
+    * @return the number of index entries, equal to the number of ticks if every tick is compressed
+    *         separately
+    */
    public int getNumberOfEntries()
    {
       return dataOffsets.length;
    }
 
+   public int getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   /**
+    * @return true if every record in the data file starts with a LogRecordHeader
+    */
+   public boolean hasChecksums()
+   {
+      return checksums;
+   }
+
+   /**
+    * Validate the checksums of all records.
+    *
+    * @param dataChannel Channel of the data file
+    * @return the first entry with a torn or corrupted record, or the number of entries if all
+    *         records are valid
+    * @throws IOException
+    */
+   public int validate(FileChannel dataChannel) throws IOException
+   {
+      return validate(dataChannel, 0, numberOfEntries);
+   }
+
+   /**
+    * Validate the checksums of the records of a range of entries. Only uses positional reads, so
+    * ranges can be validated in parallel on the same channel.
+    *
+    * @param dataChannel Channel of the data file
+    * @param start       First entry to validate
+    * @param end         Entry after the last entry to validate
+    * @return the first entry in the range with a torn or corrupted record, or end if all records are
+    *         valid
+    * @throws IOException
+    */
+   public int validate(FileChannel dataChannel, int start, int end) throws IOException
+   {
+      if (!checksums)
+      {
+         throw new UnsupportedOperationException("The log has no checksums");
+      }
+
+      int maximumSize = 0;
+      for (int entry = start; entry < end; entry++)
+      {
+         maximumSize = Math.max(maximumSize, compressedSizes[entry]);
+      }
+
+      LogRecordHeader header = new LogRecordHeader();
+      ByteBuffer record = ByteBuffer.allocateDirect(LogRecordHeader.SIZE + maximumSize);
+      for (int entry = start; entry < end; entry++)
+      {
+         if (compressedSizes[entry] < 0)
+         {
+            return entry;
+         }
+
+         record.clear();
+         record.limit(LogRecordHeader.SIZE + compressedSizes[entry]);
+         long position = dataOffsets[entry] - LogRecordHeader.SIZE;
+         while (record.hasRemaining())
+         {
+            if (dataChannel.read(record, position + record.position()) < 0)
+            {
+               return entry;
+            }
+         }
+         record.flip();
+
+         if (!header.read(record) || header.getTimestamp() != timestamps[entry] || !header.verify(record))
+         {
+            return entry;
+         }
+      }
+      return end;
+   }
+
    public long getInitialTimestamp()
    {
       return timestamps[0];
@@ -0,0 +1,146 @@
+package us.ihmc.robotDataLogger;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Header in front of every record in the data file of logs with checksums. The header repeats the
+ * index entry of the record, so the index can be rebuilt from the data file after a crash, and has
+ * a CRC32C of the header and the record data to find torn and corrupted records. Not thread safe.
+ * <p>
+ * Layout: magic (int), length of the record data (int), timestamp (long), last timestamp (long),
+ * number of ticks (int), CRC32C (int). For logs that compress every tick separately the last
+ * timestamp equals the timestamp and the number of ticks is one.
+ * </p>
+ */
+public class LogRecordHeader
+{
+   public static final int SIZE = 32;
+
+   /**
+    * "YoLR", marks the start of a record
+    */
+   public static final int MAGIC = 0x596F4C52;
+
+   private static final int CHECKSUM_OFFSET = 28;
+
+   private final CRC32C crc = new CRC32C();
+   private final ByteBuffer header = ByteBuffer.allocate(SIZE);
+
+   private int length;
+   private long timestamp;
+   private long lastTimestamp;
+   private int numberOfTicks;
+   private int checksum;
+
+   /**
+    * Write the header of a record to target.
+    *
+    * @param target        Buffer to write SIZE bytes to, the position is advanced
+    * @param data          Record data, the remaining bytes are the record. The position is not
+    *                      changed.
+    * @param timestamp     Timestamp of the (first tick of the) record
+    * @param lastTimestamp Timestamp of the last tick of the record
+    * @param numberOfTicks Number of ticks in the record
+    */
+   public void write(ByteBuffer target, ByteBuffer data, long timestamp, long lastTimestamp, int numberOfTicks)
+   {
+      this.length = data.remaining();
+      this.timestamp = timestamp;
+      this.lastTimestamp = lastTimestamp;
+      this.numberOfTicks = numberOfTicks;
+
+      header.clear();
+      header.putInt(MAGIC);
+      header.putInt(length);
+      header.putLong(timestamp);
+      header.putLong(lastTimestamp);
+      header.putInt(numberOfTicks);
+      checksum = calculateChecksum(data);
+      header.putInt(checksum);
+      header.flip();
+
+      target.put(header);
+   }
+
+   /**
+    * Read a header. Only checks the magic and the length, use verify() to check the checksum.
+    *
+    * @param source Buffer to read SIZE bytes from, the position is advanced
+    * @return false if source does not contain a header
+    */
+   public boolean read(ByteBuffer source)
+   {
+      if (source.remaining() < SIZE)
+      {
+         return false;
+      }
+
+      header.clear();
+      int limit = source.limit();
+      source.limit(source.position() + SIZE);
+      header.put(source);
+      source.limit(limit);
+      header.flip();
+
+      if (header.getInt(0) != MAGIC)
+      {
+         return false;
+      }
+      length = header.getInt(4);
+      timestamp = header.getLong(8);
+      lastTimestamp = header.getLong(16);
+      numberOfTicks = header.getInt(24);
+      checksum = header.getInt(CHECKSUM_OFFSET);
+
+      return length >= 0 && numberOfTicks > 0;
+   }
+
+   /**
+    * @param data Record data, the remaining bytes should be the record. The position is not changed.
+    * @return true if the data matches the length and checksum of the last header read
+    */
+   public boolean verify(ByteBuffer data)
+   {
+      return data.remaining() == length && calculateChecksum(data) == checksum;
+   }
+
+   private int calculateChecksum(ByteBuffer data)
+   {
+      crc.reset();
+      ByteBuffer fields = header.duplicate();
+      fields.position(0);
+      fields.limit(CHECKSUM_OFFSET);
+      crc.update(fields);
+      crc.update(data.duplicate());
+      return (int) crc.getValue();
+   }
+
+   /**
+    * @return length of the record data, excluding the header
+    */
+   public int getLength()
+   {
+      return length;
+   }
+
+   public long getTimestamp()
+   {
+      return timestamp;
+   }
+
+   public long getLastTimestamp()
+   {
+      return lastTimestamp;
+   }
+
+   public int getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   public int getChecksum()
+   {
+      return checksum;
+   }
+}
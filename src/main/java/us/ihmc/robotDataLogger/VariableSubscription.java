@@ -0,0 +1,129 @@
+package us.ihmc.robotDataLogger;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import gnu.trove.set.hash.TIntHashSet;
+import us.ihmc.robotDataLogger.handshake.YoVariableHandshakeParser;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Selection of variables a client wants to receive. The server only sends the selected variables,
+ * which reduces the bandwidth and decoding work for clients that only show a few variables. The
+ * other variables keep their last received value. An empty subscription receives all variables.
+ * Variables are identified by their index in the handshake, so a subscription is only valid for the
+ * session it was created for.
+ */
+public class VariableSubscription
+{
+   private final List<YoRegistry> registries;
+   private final List<YoVariable> variables;
+
+   private final TIntHashSet variableIndices = new TIntHashSet();
+
+   /**
+    * @param parser Handshake parser of the session, as passed to YoVariablesUpdatedListener.start()
+    */
+   public VariableSubscription(YoVariableHandshakeParser parser)
+   {
+      registries = parser.getRegistries();
+      variables = parser.getYoVariablesList();
+   }
+
+   /**
+    * Subscribe to all variables in the registry and its children
+    *
+    * @param registryIndex Index of the registry in the handshake
+    * @return this
+    */
+   public VariableSubscription addRegistry(int registryIndex)
+   {
+      return addRegistry(registries.get(registryIndex));
+   }
+
+   /**
+    * Subscribe to all variables in the registry and its children
+    *
+    * @param registry Registry from the handshake parser
+    * @return this
+    */
+   public VariableSubscription addRegistry(YoRegistry registry)
+   {
+      for (int i = 0; i < variables.size(); i++)
+      {
+         for (YoRegistry parent = variables.get(i).getRegistry(); parent != null; parent = parent.getParent())
+         {
+            if (parent == registry)
+            {
+               variableIndices.add(i);
+               break;
+            }
+         }
+      }
+      return this;
+   }
+
+   /**
+    * Subscribe to all variables whose full name matches the regular expression
+    *
+    * @param regex
+    * @return this
+    */
+   public VariableSubscription addNamePattern(String regex)
+   {
+      Pattern pattern = Pattern.compile(regex);
+      for (int i = 0; i < variables.size(); i++)
+      {
+         if (pattern.matcher(variables.get(i).getFullNameString()).matches())
+         {
+            variableIndices.add(i);
+         }
+      }
+      return this;
+   }
+
+   /**
+    * Subscribe to a single variable
+    *
+    * @param variable Variable from the handshake parser
+    * @return this
+    */
+   public VariableSubscription addVariable(YoVariable variable)
+   {
+      int index = variables.indexOf(variable);
+      if (index == -1)
+      {
+         throw new IllegalArgumentException(variable.getFullNameString() + " is not part of this session");
+      }
+      variableIndices.add(index);
+      return this;
+   }
+
+   /**
+    * Subscribe to variables by their index in the handshake
+    *
+    * @param indices
+    * @return this
+    */
+   public VariableSubscription addVariableIndices(int... indices)
+   {
+      for (int index : indices)
+      {
+         if (index < 0 || index >= variables.size())
+         {
+            throw new IllegalArgumentException("Variable index " + index + " is out of range [0, " + variables.size() + ")");
+         }
+         variableIndices.add(index);
+      }
+      return this;
+   }
+
+   /**
+    * @return Indices of the subscribed variables in the handshake, in no particular order
+    */
+   public int[] getVariableIndices()
+   {
+      return variableIndices.toArray();
+   }
+}
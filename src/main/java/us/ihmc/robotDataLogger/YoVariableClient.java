@@ -124,6 +124,18 @@ public class YoVariableClient
       yoVariableClientImplementation.disconnect();
    }
 
+   /**
+    * Decompress the packets of different registries with the same timestamp concurrently, to keep up
+    * with servers that publish many registries at a high rate. Variable listeners are called from the
+    * decompression threads when enabled. Has to be called before the client is started.
+    *
+    * @param decompressionThreads Number of threads, zero or one to decompress on a single thread
+    */
+   public void setDecompressionThreads(int decompressionThreads)
+   {
+      yoVariableClientImplementation.setDecompressionThreads(decompressionThreads);
+   }
+
    public void setVariableSynchronizer(Object variableSynchronizer)
    {
       yoVariableClientImplementation.setVariableSynchronizer(variableSynchronizer);
@@ -6,6 +6,7 @@ import java.util.concurrent.Executors;
 
 import us.ihmc.commons.MathTools;
 import us.ihmc.log.LogTools;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBuffer;
 import us.ihmc.robotDataLogger.handshake.IDLYoVariableHandshakeParser;
 import us.ihmc.robotDataLogger.handshake.LogHandshake;
 import us.ihmc.robotDataLogger.interfaces.VariableChangedProducer;
@@ -35,6 +36,8 @@ public class YoVariableClientImplementation implements YoVariableClientInterface
 
    private WebsocketDataConsumer dataConsumer;
 
+   private int decompressionThreads = 0;
+
    YoVariableClientImplementation(final YoVariablesUpdatedListener yoVariablesUpdatedListener)
    {
       this.yoVariablesUpdatedListener = yoVariablesUpdatedListener;
@@ -82,6 +85,7 @@ public class YoVariableClientImplementation implements YoVariableClientInterface
       Announcement announcement = connection.getAnnouncement();
 
       dataConsumer = new WebsocketDataConsumer(connection, timeout);
+      dataConsumer.setDecompressionThreads(decompressionThreads);
       serverName = connection.getAnnouncement().getNameAsString();
 
       LogTools.info("Requesting handshake, model, and resource bundle from some stuff...");
@@ -212,6 +216,21 @@ public class YoVariableClientImplementation implements YoVariableClientInterface
       yoVariablesUpdatedListener.connected();
    }
 
+   public void receivedCompressionSettings(boolean byteShuffled, long[] compressionDictionary)
+   {
+      yoVariablesUpdatedListener.receivedCompressionSettings(byteShuffled, compressionDictionary);
+   }
+
+   public void receivedRegistryPacket(RegistryReceiveBuffer packet)
+   {
+      yoVariablesUpdatedListener.receivedRegistryPacket(packet);
+   }
+
+   public boolean decompressRegistryPackets()
+   {
+      return yoVariablesUpdatedListener.decompressRegistryPackets();
+   }
+
    @Override
    public void setVariableUpdateRate(int updateRate)
    {
@@ -227,6 +246,12 @@ public class YoVariableClientImplementation implements YoVariableClientInterface
       }
    }
 
+   @Override
+   public void setVariableSubscription(VariableSubscription subscription)
+   {
+      dataConsumer.setVariableSubscription(subscription.getVariableIndices());
+   }
+
    @Override
    public boolean isConnected()
    {
@@ -246,6 +271,21 @@ public class YoVariableClientImplementation implements YoVariableClientInterface
       }
    }
 
+   /**
+    * Decompress packets of different registries with the same timestamp concurrently. Has to be
+    * called before start().
+    *
+    * @param decompressionThreads Number of threads, zero or one to decompress on a single thread
+    */
+   public synchronized void setDecompressionThreads(int decompressionThreads)
+   {
+      if (dataConsumer != null)
+      {
+         throw new RuntimeException("Client already started");
+      }
+      this.decompressionThreads = decompressionThreads;
+   }
+
    public void setVariableSynchronizer(Object variableSynchronizer)
    {
       dataConsumer.setVariableSynchronizer(variableSynchronizer);
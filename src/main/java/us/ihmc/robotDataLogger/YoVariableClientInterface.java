@@ -39,6 +39,15 @@ public interface YoVariableClientInterface
     */
    void setVariableUpdateRate(int updateRate);
 
+   /**
+    * Only receive the variables in the subscription. The other variables keep their last received
+    * value. The subscription is kept when reconnecting. Servers that do not support subscriptions keep
+    * sending all variables.
+    *
+    * @param subscription Variables to receive. Pass an empty subscription to receive all variables.
+    */
+   void setVariableSubscription(VariableSubscription subscription);
+
    /**
     * Stops the client completely. The participant leaves the domain and a reconnect is not possible.
     */
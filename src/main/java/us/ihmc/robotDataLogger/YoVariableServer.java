@@ -206,6 +206,12 @@ public class YoVariableServer implements RobotVisualizer, VariableChangedListene
          RegistrySendBufferBuilder builder = registeredBuffers.get(i);
          handshakeBuilder.addRegistryBuffer(builder);
       }
+
+      long[] compressionDictionary = null;
+      if (dataServerSettings.getCompressionDictionary())
+      {
+         compressionDictionary = createCompressionDictionary();
+      }
      
       try
       {
@@ -234,7 +240,11 @@ public class YoVariableServer implements RobotVisualizer, VariableChangedListene
 
          }
          
-         DataServerServerContent content = new DataServerServerContent(name, handshakeBuilder.getHandShake(), logModelProvider, dataServerSettings);
+         DataServerServerContent content = new DataServerServerContent(name,
+                                                                     handshakeBuilder.getHandShake(),
+                                                                     logModelProvider,
+                                                                     dataServerSettings,
+                                                                     compressionDictionary);
                
          if(bufferListener != null)
          {
@@ -254,6 +264,29 @@ public class YoVariableServer implements RobotVisualizer, VariableChangedListene
       started = true;
    }
 
+   /**
+    * Snapshot the variables of all registry buffers, in handshake order. The publishers encode their
+    * data against the snapshot of their registry, clients download the complete snapshot.
+    */
+   private long[] createCompressionDictionary()
+   {
+      int numberOfVariables = 0;
+      for (int i = 0; i < registeredBuffers.size(); i++)
+      {
+         numberOfVariables += registeredBuffers.get(i).getNumberOfVariables();
+      }
+
+      long[] compressionDictionary = new long[numberOfVariables];
+      int offset = 0;
+      for (int i = 0; i < registeredBuffers.size(); i++)
+      {
+         long[] registryDictionary = registeredBuffers.get(i).createCompressionDictionary();
+         System.arraycopy(registryDictionary, 0, compressionDictionary, offset, registryDictionary.length);
+         offset += registryDictionary.length;
+      }
+      return compressionDictionary;
+   }
+
    public RegistryHolder getRegistryHolder(YoRegistry registry)
    {
       for (int i = 0; i < registryHolders.size(); i++)
@@ -1,5 +1,6 @@
 package us.ihmc.robotDataLogger;
 
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBuffer;
 import us.ihmc.robotDataLogger.handshake.LogHandshake;
 import us.ihmc.robotDataLogger.handshake.YoVariableHandshakeParser;
 import us.ihmc.robotDataLogger.interfaces.CommandListener;
@@ -36,4 +37,37 @@ public interface YoVariablesUpdatedListener extends TimestampListener, CommandLi
     * Gets called when the client is connected and the first data has been received.
     */
    void connected();
+
+   /**
+    * Called when a session starts, before the first registry packet, with the settings needed to
+    * decompress the packets passed to receivedRegistryPacket().
+    *
+    * @param byteShuffled          The server applies the byte shuffle filter before compressing
+    * @param compressionDictionary Reference snapshot the server encodes the data against, null if not
+    *                              used
+    */
+   default void receivedCompressionSettings(boolean byteShuffled, long[] compressionDictionary)
+   {
+   }
+
+   /**
+    * Called for every registry packet as received from the server, in the order the packets are
+    * applied and before receivedTimestampAndData() is called for their timestamp. The data of the
+    * packet is still compressed. The packet is only valid during this call and the position of its
+    * data should be left unchanged.
+    *
+    * @param packet
+    */
+   default void receivedRegistryPacket(RegistryReceiveBuffer packet)
+   {
+   }
+
+   /**
+    * @return false if the received registry packets do not have to be decompressed into the variables,
+    *         for listeners that only use receivedRegistryPacket(). Checked when a session starts.
+    */
+   default boolean decompressRegistryPackets()
+   {
+      return true;
+   }
 }
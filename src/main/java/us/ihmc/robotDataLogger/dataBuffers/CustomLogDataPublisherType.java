@@ -8,6 +8,7 @@ import us.ihmc.idl.InterchangeSerializer;
 import us.ihmc.pubsub.TopicDataType;
 import us.ihmc.pubsub.common.SerializedPayload;
 import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.tools.compression.ByteShuffleCompressionImplementation;
 import us.ihmc.tools.compression.CompressionImplementation;
 import us.ihmc.tools.compression.CompressionImplementationFactory;
 
@@ -20,18 +21,101 @@ public class CustomLogDataPublisherType implements TopicDataType<RegistrySendBuf
 {
    public static final String name = "us::ihmc::robotDataLogger::LogData";
 
+   /**
+    * Maximum size of a serialized BATCH_DATA_PACKET. Clients accept websocket frames up to this size.
+    */
+   public static final int MAXIMUM_BATCH_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+   // uid, timestamp, transmitTime, type, numberOfVariables, keyframeUid, data length and number of joint states
+   private static final int BATCH_ENTRY_HEADER_SIZE = 8 + 8 + 8 + 4 + 4 + 8 + 4 + 4;
+   private static final double[] NO_JOINT_STATES = new double[0];
+
    private final int numberOfVariables;
    private final int numberOfStates;
 
-   private final ByteBuffer compressBuffer;
+   private ByteBuffer compressBuffer;
    private final CompressionImplementation compressor;
 
+   private final boolean xorEncoding;
+   private final boolean byteShuffle;
+   private final long[] keyframe;
+   private final ByteBuffer xorBuffer;
+   private final int[] sparseIndices;
+   private final ByteBuffer sparseBuffer;
+   private long keyframeUid = RegistryBuffer.NO_KEYFRAME;
+
+   // Set by setCompressionDictionary
+   private long[] compressionDictionary;
+   private ByteBuffer dictionaryBuffer;
+
+   // Allocated when the first projection is serialized
+   private ByteBuffer projectionBuffer;
+
+   // Allocated by enableBatching
+   private ByteBuffer batchBuffer;
+   private int maximumBatchSize = 1;
+   private int batchSize = 0;
+   private long batchUid;
+   private long batchTimestamp;
+   private long batchTransmitTime;
+   private int batchRegistryID;
+
+   // Result of encodeAgainstKeyframe
+   private LogDataType encodedType;
+   private int encodedNumberOfVariables;
+
    public CustomLogDataPublisherType(int numberOfVariables, int numberOfStates)
+   {
+      this(numberOfVariables, numberOfStates, false);
+   }
+
+   /**
+    * @param numberOfVariables
+    * @param numberOfStates
+    * @param xorEncoding       Allocate the buffers to send XOR_DATA_PACKETs and SPARSE_DATA_PACKETs
+    */
+   public CustomLogDataPublisherType(int numberOfVariables, int numberOfStates, boolean xorEncoding)
+   {
+      this(numberOfVariables, numberOfStates, xorEncoding, false);
+   }
+
+   /**
+    * @param numberOfVariables
+    * @param numberOfStates
+    * @param xorEncoding       Allocate the buffers to send XOR_DATA_PACKETs and SPARSE_DATA_PACKETs
+    * @param byteShuffle       Apply the byte shuffle filter before compressing the data
+    */
+   public CustomLogDataPublisherType(int numberOfVariables, int numberOfStates, boolean xorEncoding, boolean byteShuffle)
    {
       this.numberOfVariables = numberOfVariables;
       this.numberOfStates = numberOfStates;
+      this.xorEncoding = xorEncoding;
+      this.byteShuffle = byteShuffle;
+
+      if (xorEncoding)
+      {
+         keyframe = new long[numberOfVariables];
+         xorBuffer = ByteBuffer.allocate(numberOfVariables * 8);
+         sparseIndices = new int[numberOfVariables];
+         sparseBuffer = ByteBuffer.allocate(numberOfVariables * 8);
+      }
+      else
+      {
+         keyframe = null;
+         xorBuffer = null;
+         sparseIndices = null;
+         sparseBuffer = null;
+      }
+
+      if (byteShuffle)
+      {
+         compressor = new ByteShuffleCompressionImplementation(CompressionImplementationFactory.instance());
+      }
+      else
+      {
+         compressor = CompressionImplementationFactory.instance();
+      }
 
-      compressor = CompressionImplementationFactory.instance();
       if (compressor.supportsDirectOutput())
       {
          compressBuffer = null;
@@ -80,35 +164,395 @@ public class CustomLogDataPublisherType implements TopicDataType<RegistrySendBuf
       serializedPayload.getData().put(compressBuffer);
    }
 
+   /**
+    * Encode the raw variable data of DATA_PACKETs and keyframes against a reference snapshot of
+    * the registry that is shared with the clients at connection time. Each variable is XOR'ed with its
+    * value in the snapshot, so constants, parameters and slowly changing variables become zero. LZ4
+    * starts every packet with an empty window, so this gives the compressor the context it would
+    * otherwise have to learn from the packet itself. The snapshot has to be set before the first
+    * packet is serialized and cannot change afterwards.
+    *
+    * @param compressionDictionary Value bits of the variables in this registry at the time the
+    *                              snapshot was taken
+    */
+   public void setCompressionDictionary(long[] compressionDictionary)
+   {
+      if (compressionDictionary.length != numberOfVariables)
+      {
+         throw new IllegalArgumentException("Compression dictionary has " + compressionDictionary.length + " entries, expected " + numberOfVariables);
+      }
+
+      this.compressionDictionary = compressionDictionary;
+      dictionaryBuffer = ByteBuffer.allocate(numberOfVariables * 8);
+   }
+
+   private ByteBuffer encodeAgainstDictionary(RegistrySendBuffer data)
+   {
+      ByteBuffer variableBuffer = data.getBuffer();
+      dictionaryBuffer.clear();
+      for (int i = 0; i < data.getNumberOfVariables(); i++)
+      {
+         dictionaryBuffer.putLong(variableBuffer.getLong(i * 8) ^ compressionDictionary[i]);
+      }
+      dictionaryBuffer.flip();
+      return dictionaryBuffer;
+   }
+
+   /**
+    * Encode the variable data against the keyframe or compression dictionary, if enabled. The
+    * resulting type and number of variables are stored in encodedType and encodedNumberOfVariables.
+    *
+    * @param data
+    * @return Buffer with the data to compress
+    */
+   private ByteBuffer encodeVariableData(RegistrySendBuffer data)
+   {
+      ByteBuffer variableData;
+      if (data.getType() == LogDataType.XOR_DATA_PACKET)
+      {
+         variableData = encodeAgainstKeyframe(data);
+      }
+      else
+      {
+         variableData = data.getBuffer();
+         encodedType = data.getType();
+         encodedNumberOfVariables = data.getNumberOfVariables();
+      }
+
+      // Only raw data is encoded against the dictionary, XOR data is mostly zero already
+      if (compressionDictionary != null && data.hasVariableData() && variableData == data.getBuffer())
+      {
+         variableData = encodeAgainstDictionary(data);
+      }
+      return variableData;
+   }
+
+   /**
+    * Store the data of a keyframe for subsequent XOR_DATA_PACKETs. This is done by serialize() and
+    * addToBatch() as well, call this directly for keyframes that are not serialized because nobody is
+    * listening.
+    *
+    * @param data Keyframe
+    */
+   public void setKeyframe(RegistrySendBuffer data)
+   {
+      if (!xorEncoding)
+      {
+         throw new RuntimeException("XOR encoding is not enabled for this publisher type");
+      }
+      if (!data.isKeyframe())
+      {
+         throw new RuntimeException("Packet " + data.getUid() + " is not a keyframe");
+      }
+
+      ByteBuffer variableBuffer = data.getBuffer();
+      for (int i = 0; i < data.getNumberOfVariables(); i++)
+      {
+         keyframe[i] = variableBuffer.getLong(i * 8);
+      }
+      keyframeUid = data.getUid();
+   }
+
+   /**
+    * Encode the variable data against the current keyframe. If data is a keyframe, it is stored for
+    * subsequent packets and the raw data is returned. Otherwise, each variable is XOR'ed with its
+    * keyframe value. Variables that did not change since the keyframe become zero, which compresses
+    * significantly better than the raw values. If the (index, value) pairs of the variables that
+    * differ from the keyframe are smaller than the full data, a SPARSE_DATA_PACKET is send instead.
+    * The resulting type and number of variables are stored in encodedType and
+    * encodedNumberOfVariables.
+    *
+    * @param data
+    * @return Buffer with the data to compress
+    */
+   private ByteBuffer encodeAgainstKeyframe(RegistrySendBuffer data)
+   {
+      if (!xorEncoding)
+      {
+         throw new RuntimeException("XOR encoding is not enabled for this publisher type");
+      }
+
+      ByteBuffer variableBuffer = data.getBuffer();
+      int variables = data.getNumberOfVariables();
+
+      encodedType = LogDataType.XOR_DATA_PACKET;
+      encodedNumberOfVariables = variables;
+
+      if (data.isKeyframe())
+      {
+         setKeyframe(data);
+         return variableBuffer;
+      }
+
+      if (data.getKeyframeUid() != keyframeUid)
+      {
+         throw new RuntimeException("Packet " + data.getUid() + " references keyframe " + data.getKeyframeUid() + ", current keyframe is " + keyframeUid);
+      }
+
+      int changedVariables = 0;
+      xorBuffer.clear();
+      for (int i = 0; i < variables; i++)
+      {
+         long xor = variableBuffer.getLong(i * 8) ^ keyframe[i];
+         xorBuffer.putLong(xor);
+         if (xor != 0)
+         {
+            sparseIndices[changedVariables++] = i;
+         }
+      }
+      xorBuffer.flip();
+
+      // Each pair takes 12 bytes, compared to 8 bytes per variable for the full packet
+      if (changedVariables * 12 < variables * 8)
+      {
+         sparseBuffer.clear();
+         for (int i = 0; i < changedVariables; i++)
+         {
+            sparseBuffer.putInt(sparseIndices[i]);
+         }
+         for (int i = 0; i < changedVariables; i++)
+         {
+            sparseBuffer.putLong(variableBuffer.getLong(sparseIndices[i] * 8));
+         }
+         sparseBuffer.flip();
+
+         encodedType = LogDataType.SPARSE_DATA_PACKET;
+         encodedNumberOfVariables = changedVariables;
+         return sparseBuffer;
+      }
+
+      return xorBuffer;
+   }
+
    @Override
    public void serialize(RegistrySendBuffer data, SerializedPayload serializedPayload) throws IOException
+   {
+      ByteBuffer variableData = encodeVariableData(data);
+      serialize(data, encodedType, encodedNumberOfVariables, data.getKeyframeUid(), variableData, serializedPayload);
+   }
+
+   /**
+    * Check if a projection on the given number of variables results in a smaller packet than sending
+    * all variables. If not, the full packet should be send instead.
+    *
+    * @param numberOfProjectedVariables
+    * @param numberOfVariables          Number of variables in the registry
+    * @return true if the projected packet is smaller than the full packet
+    */
+   public static boolean isProjectionSmaller(int numberOfProjectedVariables, int numberOfVariables)
+   {
+      // Each pair takes 12 bytes, compared to 8 bytes per variable for the full packet
+      return numberOfProjectedVariables * 12 < numberOfVariables * 8;
+   }
+
+   /**
+    * Serialize only the variables at the given indices as a SPARSE_DATA_PACKET without keyframe. The
+    * client only updates the listed variables. This is used to send a subset of the variables to
+    * clients that subscribed to part of the registry. The keyframe state used for XOR encoding is not
+    * modified, so this can be called after serialize(data, serializedPayload) with the same data.
+    *
+    * @param data
+    * @param indices                    Sorted indices of the variables to send, relative to this
+    *                                   registry
+    * @param numberOfProjectedVariables Number of indices to use. Has to satisfy
+    *                                   isProjectionSmaller(numberOfProjectedVariables,
+    *                                   numberOfVariables).
+    * @param serializedPayload
+    * @throws IOException
+    */
+   public void serializeProjection(RegistrySendBuffer data, int[] indices, int numberOfProjectedVariables, SerializedPayload serializedPayload)
+         throws IOException
+   {
+      if (!data.hasVariableData())
+      {
+         throw new RuntimeException("Cannot project packet of type " + data.getType());
+      }
+      if (!isProjectionSmaller(numberOfProjectedVariables, numberOfVariables))
+      {
+         throw new RuntimeException("Projection on " + numberOfProjectedVariables + " variables does not fit in the serialized payload");
+      }
+
+      if (projectionBuffer == null || projectionBuffer.capacity() < numberOfProjectedVariables * 12)
+      {
+         projectionBuffer = ByteBuffer.allocate(numberOfProjectedVariables * 12);
+      }
+
+      ByteBuffer variableBuffer = data.getBuffer();
+      projectionBuffer.clear();
+      for (int i = 0; i < numberOfProjectedVariables; i++)
+      {
+         projectionBuffer.putInt(indices[i]);
+      }
+      for (int i = 0; i < numberOfProjectedVariables; i++)
+      {
+         projectionBuffer.putLong(variableBuffer.getLong(indices[i] * 8));
+      }
+      projectionBuffer.flip();
+
+      serialize(data, LogDataType.SPARSE_DATA_PACKET, numberOfProjectedVariables, RegistryBuffer.NO_KEYFRAME, projectionBuffer, serializedPayload);
+   }
+
+   /**
+    * Start a batch, or add data to the current batch. The variable data is encoded against the
+    * keyframe the same way as serialize() does, but not compressed. The batch is compressed as a whole
+    * by serializeBatch(), so the compressor can use the similarity between consecutive packets.
+    *
+    * @param data Packet with variable data
+    */
+   public void addToBatch(RegistrySendBuffer data)
+   {
+      if (batchBuffer == null)
+      {
+         throw new RuntimeException("Batching is not enabled for this publisher type");
+      }
+      if (isBatchFull())
+      {
+         throw new RuntimeException("Batch is full");
+      }
+      if (!data.hasVariableData())
+      {
+         throw new RuntimeException("Cannot batch packet of type " + data.getType());
+      }
+
+      ByteBuffer variableData = encodeVariableData(data);
+      variableData.rewind();
+
+      if (batchSize == 0)
+      {
+         batchUid = data.getUid();
+         batchTimestamp = data.getTimestamp();
+         batchTransmitTime = data.getTransmitTime();
+         batchRegistryID = data.getRegistryID();
+
+         batchBuffer.clear();
+         batchBuffer.putInt(0); // Number of packets, filled in by serializeBatch
+      }
+
+      batchBuffer.putLong(data.getUid());
+      batchBuffer.putLong(data.getTimestamp());
+      batchBuffer.putLong(data.getTransmitTime());
+      batchBuffer.putInt(encodedType.ordinal());
+      batchBuffer.putInt(encodedNumberOfVariables);
+      batchBuffer.putLong(encodedType == LogDataType.XOR_DATA_PACKET || encodedType == LogDataType.SPARSE_DATA_PACKET ? data.getKeyframeUid()
+            : RegistryBuffer.NO_KEYFRAME);
+      batchBuffer.putInt(variableData.remaining());
+      batchBuffer.put(variableData);
+
+      double[] jointStates = data.getJointStates();
+      batchBuffer.putInt(jointStates.length);
+      for (int i = 0; i < jointStates.length; i++)
+      {
+         batchBuffer.putDouble(jointStates[i]);
+      }
+
+      ++batchSize;
+   }
+
+   /**
+    * @return the number of packets in the current batch
+    */
+   public int getBatchSize()
+   {
+      return batchSize;
+   }
+
+   public boolean isBatchFull()
+   {
+      return batchSize >= maximumBatchSize;
+   }
+
+   /**
+    * Serialize the current batch as a BATCH_DATA_PACKET and start a new batch.
+    *
+    * @param serializedPayload Payload of at least getMaximumTypeSize()
+    * @throws IOException
+    */
+   public void serializeBatch(SerializedPayload serializedPayload) throws IOException
+   {
+      if (batchSize == 0)
+      {
+         throw new RuntimeException("Batch is empty");
+      }
+
+      batchBuffer.putInt(0, batchSize);
+      batchBuffer.flip();
+
+      serialize(batchUid,
+                batchTimestamp,
+                batchTransmitTime,
+                batchRegistryID,
+                LogDataType.BATCH_DATA_PACKET,
+                batchBuffer.remaining(),
+                RegistryBuffer.NO_KEYFRAME,
+                batchBuffer,
+                NO_JOINT_STATES,
+                serializedPayload);
+
+      batchSize = 0;
+   }
+
+   private void serialize(RegistrySendBuffer data, LogDataType type, int numberOfEncodedVariables, long keyframeUid, ByteBuffer variableData,
+                          SerializedPayload serializedPayload)
+         throws IOException
+   {
+      if (data.hasVariableData())
+      {
+         variableData.rewind();
+      }
+      else
+      {
+         variableData = null;
+      }
+
+      serialize(data.getUid(),
+                data.getTimestamp(),
+                data.getTransmitTime(),
+                data.getRegistryID(),
+                type,
+                numberOfEncodedVariables,
+                keyframeUid,
+                variableData,
+                data.getJointStates(),
+                serializedPayload);
+   }
+
+   /**
+    * @param variableData Data to compress, or null if the packet does not carry variable data
+    */
+   private void serialize(long uid, long timestamp, long transmitTime, int registryID, LogDataType type, int numberOfEncodedVariables, long keyframeUid,
+                          ByteBuffer variableData, double[] jointstates, SerializedPayload serializedPayload)
+         throws IOException
    {
       serializeCDR.serialize(serializedPayload);
-      serializeCDR.write_type_11(data.getUid());
+      serializeCDR.write_type_11(uid);
+
+      serializeCDR.write_type_11(timestamp);
 
-      serializeCDR.write_type_11(data.getTimestamp());
+      serializeCDR.write_type_11(transmitTime);
 
-      serializeCDR.write_type_11(data.getTransmitTime());
+      serializeCDR.write_type_c(type.ordinal());
 
-      serializeCDR.write_type_c(data.getType().ordinal());
+      serializeCDR.write_type_2(registryID);
 
-      serializeCDR.write_type_2(data.getRegistryID());
+      serializeCDR.write_type_2(numberOfEncodedVariables);
 
-      serializeCDR.write_type_2(data.getNumberOfVariables());
+      if (type == LogDataType.XOR_DATA_PACKET || type == LogDataType.SPARSE_DATA_PACKET)
+      {
+         serializeCDR.write_type_11(keyframeUid);
+      }
 
-      if (data.getType() == LogDataType.DATA_PACKET)
+      if (variableData != null)
       {
          if (compressor.supportsDirectOutput())
          {
-            compressDirect(data.getBuffer(), serializedPayload);
+            compressDirect(variableData, serializedPayload);
          }
          else
          {
-            compressJavaBuffer(data.getBuffer(), serializedPayload);
+            compressJavaBuffer(variableData, serializedPayload);
          }
 
          // Write joint states length
-         double[] jointstates = data.getJointStates();
          serializeCDR.write_type_2(jointstates.length);
          for (int i = 0; i < jointstates.length; i++)
          {
@@ -150,9 +594,54 @@ public class CustomLogDataPublisherType implements TopicDataType<RegistrySendBuf
       return null;
    }
 
+   /**
+    * @return the maximum size of a serialized packet, including batches if batching is enabled
+    */
    public int getMaximumTypeSize()
    {
-      return getTypeSize(compressor.maxCompressedLength(numberOfVariables * 8), numberOfStates);
+      int maximumTypeSize = getTypeSize(compressor.maxCompressedLength(numberOfVariables * 8), numberOfStates);
+      if (batchBuffer != null)
+      {
+         maximumTypeSize = Math.max(maximumTypeSize, getBatchTypeSize(batchBuffer.capacity()));
+      }
+      return maximumTypeSize;
+   }
+
+   private int getBatchTypeSize(int batchBufferSize)
+   {
+      return getTypeSize(compressor.maxCompressedLength(batchBufferSize), 0);
+   }
+
+   /**
+    * Allocate the buffers to combine several packets into a single BATCH_DATA_PACKET. The batch size is
+    * limited so the serialized batch does not exceed MAXIMUM_BATCH_PAYLOAD_SIZE.
+    *
+    * @param maximumBatchSize Requested maximum number of packets in a batch
+    * @return The maximum number of packets in a batch
+    */
+   public int enableBatching(int maximumBatchSize)
+   {
+      if (maximumBatchSize < 1)
+      {
+         throw new IllegalArgumentException("Maximum batch size has to be at least 1");
+      }
+
+      int entrySize = BATCH_ENTRY_HEADER_SIZE + numberOfVariables * 8 + numberOfStates * 8;
+      while (maximumBatchSize > 1 && getBatchTypeSize(4 + maximumBatchSize * entrySize) > MAXIMUM_BATCH_PAYLOAD_SIZE)
+      {
+         --maximumBatchSize;
+      }
+
+      this.maximumBatchSize = maximumBatchSize;
+      batchBuffer = ByteBuffer.allocate(4 + maximumBatchSize * entrySize);
+      batchSize = 0;
+
+      if (compressBuffer != null)
+      {
+         compressBuffer = ByteBuffer.allocate(compressor.maxCompressedLength(Math.max(numberOfVariables * 8, batchBuffer.capacity())));
+      }
+
+      return maximumBatchSize;
    }
 
    @Override
@@ -178,6 +667,9 @@ public class CustomLogDataPublisherType implements TopicDataType<RegistrySendBuf
 
       current_alignment += 4 + CDR.alignment(current_alignment, 4);
 
+      // Keyframe uid, only present for XOR_DATA_PACKET and SPARSE_DATA_PACKET
+      current_alignment += 8 + CDR.alignment(current_alignment, 8);
+
       current_alignment += 4 + CDR.alignment(current_alignment, 4);
       current_alignment += maxCompressedSize + CDR.alignment(current_alignment, 1);
 
@@ -196,7 +688,7 @@ public class CustomLogDataPublisherType implements TopicDataType<RegistrySendBuf
    @Override
    public CustomLogDataPublisherType newInstance()
    {
-      return new CustomLogDataPublisherType(numberOfVariables, numberOfStates);
+      return new CustomLogDataPublisherType(numberOfVariables, numberOfStates, xorEncoding, byteShuffle);
    }
 
    @Override
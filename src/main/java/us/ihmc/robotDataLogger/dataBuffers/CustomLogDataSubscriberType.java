@@ -2,12 +2,16 @@ package us.ihmc.robotDataLogger.dataBuffers;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
+import io.netty.util.ReferenceCounted;
 import us.ihmc.idl.CDR;
 import us.ihmc.idl.InterchangeSerializer;
 import us.ihmc.pubsub.TopicDataType;
 import us.ihmc.pubsub.common.SerializedPayload;
 import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.tools.compression.ByteShuffleCompressionImplementation;
 import us.ihmc.tools.compression.CompressionImplementation;
 import us.ihmc.tools.compression.CompressionImplementationFactory;
 
@@ -23,17 +27,45 @@ public class CustomLogDataSubscriberType implements TopicDataType<RegistryReceiv
    private final int numberOfVariables;
    private final int numberOfStates;
 
+   private final boolean byteShuffled;
    private final CompressionImplementation compressor;
 
    public CustomLogDataSubscriberType(int maxNumberOfVariables, int maxNumberOfStates)
+   {
+      this(maxNumberOfVariables, maxNumberOfStates, false);
+   }
+
+   /**
+    * @param maxNumberOfVariables
+    * @param maxNumberOfStates
+    * @param byteShuffled         The server applies the byte shuffle filter before compressing. Only
+    *                             used to unpack batches, the RegistryDecompressor handles regular
+    *                             packets.
+    */
+   public CustomLogDataSubscriberType(int maxNumberOfVariables, int maxNumberOfStates, boolean byteShuffled)
    {
       numberOfVariables = maxNumberOfVariables;
       numberOfStates = maxNumberOfStates;
+      this.byteShuffled = byteShuffled;
 
-      compressor = CompressionImplementationFactory.instance();
+      if (byteShuffled)
+      {
+         compressor = new ByteShuffleCompressionImplementation(CompressionImplementationFactory.instance());
+      }
+      else
+      {
+         compressor = CompressionImplementationFactory.instance();
+      }
    }
 
+   /**
+    * Upper bound on the size of the CDR encoded fields before the variable data
+    */
+   private static final int MAXIMUM_HEADER_SIZE = CustomLogDataPublisherType.getTypeSize(0, 0);
+
    private final CDR deserializeCDR = new CDR();
+   private ByteBuffer batchData = ByteBuffer.allocate(0);
+   private SerializedPayload inPlacePayload = null;
 
    @Override
    public void serialize(RegistryReceiveBuffer data, SerializedPayload serializedPayload) throws IOException
@@ -46,6 +78,87 @@ public class CustomLogDataSubscriberType implements TopicDataType<RegistryReceiv
    {
       deserializeCDR.deserialize(serializedPayload);
 
+      readHeader(data);
+
+      if (data.hasVariableData() || data.getType() == LogDataType.BATCH_DATA_PACKET)
+      {
+         int dataLength = deserializeCDR.read_type_2();
+         ByteBuffer buffer = data.allocateBuffer(dataLength);
+         serializedPayload.getData().get(buffer.array(), 0, dataLength);
+         buffer.limit(dataLength);
+
+         readJointStates(data);
+      }
+
+      deserializeCDR.finishDeserialize();
+   }
+
+   /**
+    * Deserialize a packet without copying the variable data. Only the header and the joint states are
+    * copied, at their original offset so the CDR alignment is unchanged. The variable data of the
+    * packet is set to a view on frame, so the RegistryDecompressor decompresses straight from the
+    * received memory.
+    *
+    * @param frame Serialized packet between position and limit. Its position and limit are modified
+    *              and it cannot be used after this call, except through the packet.
+    * @param owner Owner of the memory of frame. If the packet has variable data, the packet takes over
+    *              a reference and releases it when the packet is released. Null if the memory does
+    *              not need to be released.
+    * @param data  Packet to deserialize into
+    * @throws IOException if the packet is malformed
+    */
+   public void deserialize(ByteBuffer frame, ReferenceCounted owner, RegistryReceiveBuffer data) throws IOException
+   {
+      int frameStart = frame.position();
+      int frameEnd = frame.limit();
+      int frameLength = frameEnd - frameStart;
+
+      if (inPlacePayload == null || inPlacePayload.getData().capacity() < frameLength)
+      {
+         inPlacePayload = new SerializedPayload(frameLength);
+      }
+      ByteBuffer payloadData = inPlacePayload.getData();
+      payloadData.clear();
+
+      int headerLength = Math.min(frameLength, MAXIMUM_HEADER_SIZE);
+      frame.limit(frameStart + headerLength);
+      payloadData.put(frame);
+      frame.limit(frameEnd);
+      payloadData.position(0);
+      payloadData.limit(frameLength);
+
+      deserializeCDR.deserialize(inPlacePayload);
+
+      readHeader(data);
+
+      if (data.hasVariableData() || data.getType() == LogDataType.BATCH_DATA_PACKET)
+      {
+         int dataLength = deserializeCDR.read_type_2();
+         int dataStart = payloadData.position();
+         int dataEnd = dataStart + dataLength;
+         if (dataLength < 0 || dataStart > headerLength || dataEnd > frameLength)
+         {
+            throw new IOException("Invalid data length " + dataLength);
+         }
+
+         // Copy the joint states behind the variable data
+         frame.position(frameStart + dataEnd);
+         payloadData.position(dataEnd);
+         payloadData.put(frame);
+         payloadData.position(dataEnd);
+
+         readJointStates(data);
+
+         frame.limit(frameStart + dataEnd);
+         frame.position(frameStart + dataStart);
+         data.setExternalData(frame, owner == null ? null : owner.retain());
+      }
+
+      deserializeCDR.finishDeserialize();
+   }
+
+   private void readHeader(RegistryReceiveBuffer data)
+   {
       data.setUid(deserializeCDR.read_type_11());
 
       data.setTimestamp(deserializeCDR.read_type_11());
@@ -58,22 +171,122 @@ public class CustomLogDataSubscriberType implements TopicDataType<RegistryReceiv
 
       data.setNumberOfVariables(deserializeCDR.read_type_2());
 
-      if (data.getType() == LogDataType.DATA_PACKET)
+      if (data.getType() == LogDataType.XOR_DATA_PACKET || data.getType() == LogDataType.SPARSE_DATA_PACKET)
       {
-         int dataLength = deserializeCDR.read_type_2();
-         ByteBuffer buffer = data.allocateBuffer(dataLength);
-         serializedPayload.getData().get(buffer.array(), 0, dataLength);
-         buffer.limit(dataLength);
+         data.setKeyframeUid(deserializeCDR.read_type_11());
+      }
+      else
+      {
+         data.setKeyframeUid(RegistryBuffer.NO_KEYFRAME);
+      }
+   }
+
+   private void readJointStates(RegistryReceiveBuffer data)
+   {
+      int stateLength = deserializeCDR.read_type_2();
+      double[] states = data.allocateStates(stateLength);
+      for (int i = 0; i < stateLength; i++)
+      {
+         states[i] = deserializeCDR.read_type_6();
+      }
+   }
+
+   /**
+    * Unpack the packets of a BATCH_DATA_PACKET. The data of the returned buffers is decompressed and
+    * can be passed to the RegistryDecompressor as is.
+    *
+    * @param batch Deserialized BATCH_DATA_PACKET
+    * @return The packets in the batch, in the order they were added
+    * @throws IOException if the batch is malformed
+    */
+   public RegistryReceiveBuffer[] unpackBatch(RegistryReceiveBuffer batch) throws IOException
+   {
+      List<RegistryReceiveBuffer> packets = new ArrayList<>();
+      unpackBatch(batch, null, packets);
+      return packets.toArray(new RegistryReceiveBuffer[packets.size()]);
+   }
+
+   /**
+    * Unpack the packets of a BATCH_DATA_PACKET into buffers acquired from the pool. The data of the
+    * buffers is decompressed and can be passed to the RegistryDecompressor as is. The batch itself
+    * is not released.
+    *
+    * @param batch   Deserialized BATCH_DATA_PACKET
+    * @param pool    Pool to acquire the packets from, null to allocate new packets
+    * @param packets List the packets get added to, in the order they were added to the batch
+    * @throws IOException if the batch is malformed. Packets already added to the list are not
+    *                     released.
+    */
+   public void unpackBatch(RegistryReceiveBuffer batch, RegistryReceiveBufferPool pool, List<RegistryReceiveBuffer> packets) throws IOException
+   {
+      if (batch.getType() != LogDataType.BATCH_DATA_PACKET)
+      {
+         throw new IOException("Not a batch packet: " + batch.getType());
+      }
+
+      int decompressedLength = batch.getNumberOfVariables();
+      if (decompressedLength < 4 || decompressedLength > CustomLogDataPublisherType.MAXIMUM_BATCH_PAYLOAD_SIZE)
+      {
+         throw new IOException("Invalid batch length " + decompressedLength);
+      }
 
-         int stateLength = deserializeCDR.read_type_2();
-         double[] states = data.allocateStates(stateLength);
-         for (int i = 0; i < stateLength; i++)
+      if (batchData.capacity() < decompressedLength)
+      {
+         batchData = ByteBuffer.allocate(decompressedLength);
+      }
+      batchData.clear();
+      try
+      {
+         compressor.decompress(batch.getData(), batchData, decompressedLength);
+      }
+      catch (Throwable e)
+      {
+         throw new IOException("Cannot decompress batch", e);
+      }
+      batchData.flip();
+
+      try
+      {
+         int numberOfPackets = batchData.getInt();
+         if (numberOfPackets < 0 || numberOfPackets > decompressedLength)
          {
-            states[i] = deserializeCDR.read_type_6();
+            throw new IOException("Invalid number of packets in batch " + numberOfPackets);
          }
-      }
 
-      deserializeCDR.finishDeserialize();
+         for (int i = 0; i < numberOfPackets; i++)
+         {
+            RegistryReceiveBuffer packet = pool == null ? new RegistryReceiveBuffer(batch.getReceivedTimestamp()) : pool.acquire(batch.getReceivedTimestamp());
+            packets.add(packet);
+            packet.setRegistryID(batch.getRegistryID());
+            packet.setUid(batchData.getLong());
+            packet.setTimestamp(batchData.getLong());
+            packet.setTransmitTime(batchData.getLong());
+            packet.setType(LogDataType.values[batchData.getInt()]);
+            packet.setNumberOfVariables(batchData.getInt());
+            packet.setKeyframeUid(batchData.getLong());
+            if (!packet.hasVariableData())
+            {
+               throw new IOException("Invalid packet type in batch " + packet.getType());
+            }
+
+            int dataLength = batchData.getInt();
+            ByteBuffer buffer = packet.allocateBuffer(dataLength);
+            batchData.get(buffer.array(), 0, dataLength);
+            buffer.limit(dataLength);
+            packet.setCompressed(false);
+
+            int stateLength = batchData.getInt();
+            double[] states = packet.allocateStates(stateLength);
+            for (int s = 0; s < stateLength; s++)
+            {
+               states[s] = batchData.getDouble();
+            }
+         }
+      }
+      catch (RuntimeException e)
+      {
+         throw new IOException("Malformed batch", e);
+      }
    }
 
    @Override
@@ -96,6 +309,15 @@ public class CustomLogDataSubscriberType implements TopicDataType<RegistryReceiv
       return null;
    }
 
+   /**
+    * @return the maximum size of the variable data of a single packet, used to size the receive
+    *         buffers
+    */
+   public int getMaximumDataSize()
+   {
+      return compressor.maxCompressedLength(numberOfVariables * 8);
+   }
+
    @Override
    public int getTypeSize()
    {
@@ -112,7 +334,7 @@ public class CustomLogDataSubscriberType implements TopicDataType<RegistryReceiv
    @Override
    public CustomLogDataSubscriberType newInstance()
    {
-      return new CustomLogDataSubscriberType(numberOfVariables, numberOfStates);
+      return new CustomLogDataSubscriberType(numberOfVariables, numberOfStates, byteShuffled);
    }
 
    @Override
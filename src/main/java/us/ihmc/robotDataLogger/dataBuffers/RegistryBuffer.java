@@ -4,6 +4,10 @@ import us.ihmc.robotDataLogger.LogDataType;
 
 public class RegistryBuffer implements Comparable<RegistryBuffer>
 {
+   /**
+    * Value of the keyframe uid for packets that do not reference a keyframe
+    */
+   public static final long NO_KEYFRAME = -1;
 
    protected int registryID;
    protected long timestamp;
@@ -22,6 +26,7 @@ public class RegistryBuffer implements Comparable<RegistryBuffer>
    }
 
    protected long uid = 0;
+   protected long keyframeUid = NO_KEYFRAME;
 
    public LogDataType getType()
    {
@@ -58,6 +63,35 @@ public class RegistryBuffer implements Comparable<RegistryBuffer>
       this.uid = uid;
    }
 
+   /**
+    * Uid of the keyframe an XOR_DATA_PACKET or SPARSE_DATA_PACKET is encoded against. If the keyframe uid equals the uid,
+    * this packet is a keyframe itself.
+    *
+    * @return the keyframe uid, or NO_KEYFRAME if this packet does not reference a keyframe
+    */
+   public long getKeyframeUid()
+   {
+      return keyframeUid;
+   }
+
+   public void setKeyframeUid(long keyframeUid)
+   {
+      this.keyframeUid = keyframeUid;
+   }
+
+   public boolean isKeyframe()
+   {
+      return keyframeUid != NO_KEYFRAME && keyframeUid == uid;
+   }
+
+   /**
+    * @return true if this packet carries variable data that needs to be decompressed
+    */
+   public boolean hasVariableData()
+   {
+      return type == LogDataType.DATA_PACKET || type == LogDataType.XOR_DATA_PACKET || type == LogDataType.SPARSE_DATA_PACKET;
+   }
+
    public void setTimestamp(long timestamp)
    {
       this.timestamp = timestamp;
@@ -1,10 +1,12 @@
 package us.ihmc.robotDataLogger.dataBuffers;
 
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
 
 import gnu.trove.map.hash.TIntLongHashMap;
-import us.ihmc.commons.thread.ThreadTools;
-import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.commons.Conversions;
 import us.ihmc.robotDataLogger.YoVariableClientImplementation;
 import us.ihmc.robotDataLogger.handshake.IDLYoVariableHandshakeParser;
 import us.ihmc.robotDataLogger.util.DebugRegistry;
@@ -13,8 +15,40 @@ public class RegistryConsumer extends Thread
 {
    private final static int MAXIMUM_ELEMENTS = 4096;
 
-   //   private final ConcurrentSkipListSet<RegistryReceiveBuffer> orderedBuffers = new ConcurrentSkipListSet<>();
-   private final PriorityBlockingQueue<RegistryReceiveBuffer> orderedBuffers = new PriorityBlockingQueue<>();
+   /**
+    * Upper bound on the time a packet is held to absorb jitter
+    */
+   private final static long MAXIMUM_BUFFER_DELAY = Conversions.millisecondsToNanoseconds(500);
+
+   /**
+    * Number of jitter estimates a packet is held on top of the time between packets
+    */
+   private final static double JITTER_MULTIPLIER = 2.0;
+
+   /**
+    * Maximum time to park while the buffer is empty, so a missed wakeup only costs latency
+    */
+   private final static long MAXIMUM_PARK_TIME = Conversions.millisecondsToNanoseconds(100);
+
+   /**
+    * Decompresses a single packet on the decompression pool
+    */
+   private class DecompressTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 3183052342813452452L;
+
+      private RegistryReceiveBuffer buffer;
+      private int registryOffset;
+      private int registrySize;
+
+      @Override
+      protected void compute()
+      {
+         registryDecompressor.decompressSegment(buffer, registryOffset, registrySize);
+      }
+   }
+
+   private final RegistryReorderBuffer orderedBuffers;
    private volatile boolean running = true;
 
    private boolean firstSample = true;
@@ -22,17 +56,34 @@ public class RegistryConsumer extends Thread
    private final IDLYoVariableHandshakeParser parser;
    private final RegistryDecompressor registryDecompressor;
    private final YoVariableClientImplementation listener;
+   private final boolean decompressPackets;
 
    private final TIntLongHashMap lastRegistryUid = new TIntLongHashMap();
 
+   /**
+    * Pool to decompress packets of different registries with the same timestamp concurrently, null
+    * to decompress all packets on the consumer thread.
+    */
+   private final ForkJoinPool decompressionPool;
+   private final ArrayList<DecompressTask> decompressTasks = new ArrayList<>();
+   private final ArrayList<RegistryReceiveBuffer> sameTimestampPackets = new ArrayList<>();
+
    // Standard deviation calculation
    private long previousTransmitTime = -1;
    private long previousReceiveTime = -1;
    private double jitterEstimate = 0;
-   private double samples = 0;
+   private long previousPacketTimestamp = -1;
    private double averageTimeBetweenPackets = 0;
 
-   private volatile int jitterBufferSamples = 1;
+   /**
+    * Time in nanoseconds packets are held after they are received. Written by the network thread.
+    */
+   private volatile long bufferDelay = 0;
+
+   /**
+    * Set by the consumer thread before it parks on an empty buffer
+    */
+   private volatile boolean waitingForData = false;
 
    private long previousTimestamp = -1;
 
@@ -41,12 +92,44 @@ public class RegistryConsumer extends Thread
    private final DebugRegistry debugRegistry;
 
    public RegistryConsumer(IDLYoVariableHandshakeParser parser, YoVariableClientImplementation yoVariableClient, DebugRegistry debugRegistry)
+   {
+      this(parser, yoVariableClient, debugRegistry, false, null, 0);
+   }
+
+   /**
+    * @param parser
+    * @param yoVariableClient
+    * @param debugRegistry
+    * @param byteShuffled          The server applies the byte shuffle filter before compressing
+    * @param compressionDictionary Reference snapshot the server encodes the data against, null if not
+    *                              used
+    * @param decompressionThreads  Number of threads to decompress packets of different registries
+    *                              with the same timestamp concurrently. Zero or one decompresses all
+    *                              packets on the consumer thread. With more threads, variable listeners
+    *                              are called from the decompression threads.
+    */
+   public RegistryConsumer(IDLYoVariableHandshakeParser parser, YoVariableClientImplementation yoVariableClient, DebugRegistry debugRegistry,
+                           boolean byteShuffled, long[] compressionDictionary, int decompressionThreads)
    {
       this.parser = parser;
-      registryDecompressor = new RegistryDecompressor(parser.getYoVariablesList(), parser.getJointStates());
+      registryDecompressor = new RegistryDecompressor(parser.getYoVariablesList(), parser.getJointStates(), byteShuffled);
+      registryDecompressor.setCompressionDictionary(compressionDictionary);
       listener = yoVariableClient;
+      listener.receivedCompressionSettings(byteShuffled, compressionDictionary);
+      decompressPackets = listener.decompressRegistryPackets();
 
       this.debugRegistry = debugRegistry;
+      orderedBuffers = new RegistryReorderBuffer(MAXIMUM_ELEMENTS, debugRegistry);
+
+      if (decompressionThreads > 1)
+      {
+         // The consumer thread decompresses one of the packets itself
+         decompressionPool = new ForkJoinPool(decompressionThreads - 1);
+      }
+      else
+      {
+         decompressionPool = null;
+      }
 
       start();
    }
@@ -58,34 +141,47 @@ public class RegistryConsumer extends Thread
       lastPacketReceived = System.nanoTime();
       while (running)
       {
-         ThreadTools.sleep(1);
-
-         while (orderedBuffers.size() > jitterBufferSamples + lastRegistryUid.size() + 1)
+         RegistryReceiveBuffer next = orderedBuffers.peek();
+         if (next == null)
          {
-            try
-            {
-               handlePackets();
-               lastPacketReceived = System.nanoTime();
-            }
-            catch (InterruptedException e)
+            waitingForData = true;
+            // Check again after setting the flag, the network thread only unparks this thread if it sees the flag
+            if (orderedBuffers.size() == 0 && running)
             {
-               // Try next time
+               LockSupport.parkNanos(this, MAXIMUM_PARK_TIME);
             }
+            waitingForData = false;
+            continue;
          }
-      }
 
-      // Empty buffer
-      while (!orderedBuffers.isEmpty())
-      {
-         try
+         // Release the next packet in timestamp order when its jitter deadline has passed. Packets behind it wait for it,
+         // even if they arrived earlier and their own deadline has passed.
+         long delay = bufferDelay;
+         long now = System.nanoTime();
+         long deadline = next.getReceivedTimestamp() + delay;
+         if (now >= deadline || orderedBuffers.size() > MAXIMUM_ELEMENTS / 2)
          {
-            handlePackets();
+            debugRegistry.getJitterBufferTargetDelay().set(Conversions.nanosecondsToSeconds(delay));
+            handlePackets(now);
+            lastPacketReceived = now;
          }
-         catch (InterruptedException e)
+         else
          {
+            LockSupport.parkNanos(this, deadline - now);
          }
       }
 
+      // Empty buffer
+      while (orderedBuffers.size() > 0)
+      {
+         handlePackets(System.nanoTime());
+      }
+
+      if (decompressionPool != null)
+      {
+         decompressionPool.shutdown();
+      }
+
       listener.connectionClosed();
 
    }
@@ -93,16 +189,81 @@ public class RegistryConsumer extends Thread
    public void stopImmediately()
    {
       running = false;
+      LockSupport.unpark(this);
    }
 
    private void decompressBuffer(RegistryReceiveBuffer buffer)
+   {
+      receivePacket(buffer);
+
+      if (decompressPackets)
+      {
+         registryDecompressor.decompressSegment(buffer, parser.getVariableOffset(buffer.getRegistryID()), parser.getRegistrySize(buffer.getRegistryID()));
+      }
+   }
+
+   /**
+    * Update the statistics and pass the packet to the listener before it is decompressed
+    */
+   private void receivePacket(RegistryReceiveBuffer buffer)
    {
       long previousUid = lastRegistryUid.put(buffer.getRegistryID(), buffer.getUid());
 
       updateDebugVariables(buffer, previousUid);
 
-      registryDecompressor.decompressSegment(buffer, parser.getVariableOffset(buffer.getRegistryID()));
+      listener.receivedRegistryPacket(buffer);
+   }
 
+   /**
+    * Decompress packets with the same timestamp on the decompression pool. Every registry writes a
+    * disjoint range of variables, so packets of different registries can be decompressed
+    * concurrently. Returns after all packets are applied.
+    *
+    * @param packets Packets sorted by registryID
+    */
+   private void decompressConcurrently(ArrayList<RegistryReceiveBuffer> packets)
+   {
+      int start = 0;
+      while (start < packets.size())
+      {
+         // Packets of the same registry are adjacent and have to be decompressed in order, so they go in the next round
+         int end = start + 1;
+         while (end < packets.size() && packets.get(end).getRegistryID() != packets.get(end - 1).getRegistryID())
+         {
+            ++end;
+         }
+
+         for (int i = start; i < end; i++)
+         {
+            receivePacket(packets.get(i));
+         }
+
+         for (int i = start + 1; i < end; i++)
+         {
+            if (decompressTasks.size() < i - start)
+            {
+               decompressTasks.add(new DecompressTask());
+            }
+            DecompressTask task = decompressTasks.get(i - start - 1);
+            task.reinitialize();
+            task.buffer = packets.get(i);
+            task.registryOffset = parser.getVariableOffset(task.buffer.getRegistryID());
+            task.registrySize = parser.getRegistrySize(task.buffer.getRegistryID());
+            decompressionPool.execute(task);
+         }
+
+         RegistryReceiveBuffer first = packets.get(start);
+         registryDecompressor.decompressSegment(first, parser.getVariableOffset(first.getRegistryID()), parser.getRegistrySize(first.getRegistryID()));
+
+         for (int i = 0; i < end - start - 1; i++)
+         {
+            DecompressTask task = decompressTasks.get(i);
+            task.join();
+            task.buffer = null;
+         }
+
+         start = end;
+      }
    }
 
    void updateDebugVariables(RegistryReceiveBuffer buffer, long previousUid)
@@ -122,28 +283,55 @@ public class RegistryConsumer extends Thread
       debugRegistry.getTotalPackets().increment();
    }
 
-   private void handlePackets() throws InterruptedException
+   private void handlePackets(long now)
    {
-      RegistryReceiveBuffer buffer = orderedBuffers.take();
-      if (buffer.getType() == LogDataType.DATA_PACKET)
+      RegistryReceiveBuffer buffer = orderedBuffers.poll();
+      if (buffer != null)
       {
 
          long timestamp = buffer.getTimestamp();
+         debugRegistry.getJitterBufferDelay().set(Conversions.nanosecondsToSeconds(now - buffer.getReceivedTimestamp()));
 
-         decompressBuffer(buffer);
+         if (decompressionPool == null || !decompressPackets)
+         {
+            decompressBuffer(buffer);
 
-         while (!orderedBuffers.isEmpty() && orderedBuffers.peek().getTimestamp() == timestamp)
+            // Merge the packets of the other registries with the same timestamp, in order of registryID
+            RegistryReceiveBuffer next;
+            while ((next = orderedBuffers.peek()) != null && next.getTimestamp() == timestamp)
+            {
+               orderedBuffers.poll();
+               decompressBuffer(next);
+               next.release();
+               debugRegistry.getMergedPackets().increment();
+            }
+            buffer.release();
+         }
+         else
          {
-            RegistryReceiveBuffer next = orderedBuffers.take();
-            decompressBuffer(next);
-            debugRegistry.getMergedPackets().increment();
+            sameTimestampPackets.add(buffer);
+            RegistryReceiveBuffer next;
+            while ((next = orderedBuffers.peek()) != null && next.getTimestamp() == timestamp)
+            {
+               orderedBuffers.poll();
+               sameTimestampPackets.add(next);
+               debugRegistry.getMergedPackets().increment();
+            }
+
+            decompressConcurrently(sameTimestampPackets);
+
+            for (int i = 0; i < sameTimestampPackets.size(); i++)
+            {
+               sameTimestampPackets.get(i).release();
+            }
+            sameTimestampPackets.clear();
          }
 
-         if (previousTimestamp != -1 && previousTimestamp >= buffer.getTimestamp())
+         if (previousTimestamp != -1 && previousTimestamp >= timestamp)
          {
             debugRegistry.getNonIncreasingTimestamps().increment();
          }
-         previousTimestamp = buffer.getTimestamp();
+         previousTimestamp = timestamp;
 
          if (firstSample)
          {
@@ -155,12 +343,14 @@ public class RegistryConsumer extends Thread
             listener.receivedTimestampAndData(timestamp);
          }
       }
-      else
-      {
-         //Received keep alive, ignore
-      }
    }
 
+   /**
+    * Add a buffer to the jitter buffer. The buffer is applied once it has been held for the estimated
+    * jitter. The consumer releases the buffer after it is decompressed or dropped.
+    *
+    * @param buffer
+    */
    public void onNewDataMessage(RegistryReceiveBuffer buffer)
    {
       // RFC 1889 jitter estimate
@@ -172,27 +362,58 @@ public class RegistryConsumer extends Thread
 
          jitterEstimate += (D - jitterEstimate) / 16;
 
-         ++samples;
-         averageTimeBetweenPackets += (buffer.getTransmitTime() - previousTransmitTime - averageTimeBetweenPackets) / samples;
-
-         jitterBufferSamples = (int) (Math.ceil(jitterEstimate / averageTimeBetweenPackets) + 1);
-
-         if (jitterBufferSamples > MAXIMUM_ELEMENTS / 2)
+         // Packets of the other registries in the same tick are sent back to back and do not count as a period
+         if (buffer.getTimestamp() != previousPacketTimestamp)
          {
-            jitterBufferSamples = MAXIMUM_ELEMENTS / 2;
+            averageTimeBetweenPackets = updateAverageTimeBetweenPackets(averageTimeBetweenPackets, buffer.getTransmitTime() - previousTransmitTime);
          }
+
+         bufferDelay = calculateBufferDelay(jitterEstimate, averageTimeBetweenPackets);
       }
       previousTransmitTime = buffer.getTransmitTime();
       previousReceiveTime = buffer.getReceivedTimestamp();
+      previousPacketTimestamp = buffer.getTimestamp();
 
-      if (orderedBuffers.size() < MAXIMUM_ELEMENTS)
+      // Keep alives, late and overflowing packets are dropped
+      if (!orderedBuffers.offer(buffer))
       {
-         orderedBuffers.add(buffer);
+         buffer.release();
       }
-      else
+      else if (waitingForData)
+      {
+         LockSupport.unpark(this);
+      }
+   }
+
+   /**
+    * Moving average of the time between ticks, with the same gain as the jitter estimate. Follows a
+    * change in the update rate, and a pause only counts till the rate settles again.
+    *
+    * @param average            Current average in nanoseconds, 0 if there is no average yet
+    * @param timeBetweenPackets Time between the last two ticks in nanoseconds
+    * @return the new average in nanoseconds
+    */
+   static double updateAverageTimeBetweenPackets(double average, long timeBetweenPackets)
+   {
+      if (average <= 0.0)
       {
-         debugRegistry.getSkippedPacketDueToFullBuffer().increment();
+         return timeBetweenPackets;
       }
+      return average + (timeBetweenPackets - average) / 16;
+   }
+
+   /**
+    * Packets that arrive after a newer packet of the same registry has been applied are dropped. The
+    * delay is at least one period between packets, so packets that are reordered by less than a
+    * period are never lost, even if the jitter estimate is close to zero.
+    *
+    * @param jitterEstimate            RFC 1889 jitter estimate in nanoseconds
+    * @param averageTimeBetweenPackets Average time between ticks in nanoseconds
+    * @return the time to hold a packet in nanoseconds
+    */
+   static long calculateBufferDelay(double jitterEstimate, double averageTimeBetweenPackets)
+   {
+      return Math.min((long) Math.ceil(JITTER_MULTIPLIER * jitterEstimate + Math.max(0.0, averageTimeBetweenPackets)), MAXIMUM_BUFFER_DELAY);
    }
 
    public void setVariableSynchronizer(Object variableSynchronizer)
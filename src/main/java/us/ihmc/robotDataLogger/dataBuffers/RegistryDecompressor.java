@@ -4,33 +4,236 @@ import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.LongBuffer;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import gnu.trove.map.hash.TIntObjectHashMap;
 import us.ihmc.log.LogTools;
+import us.ihmc.robotDataLogger.LogDataType;
 import us.ihmc.robotDataLogger.interfaces.VariableChangedProducer;
 import us.ihmc.robotDataLogger.jointState.JointState;
+import us.ihmc.tools.compression.ByteShuffleCompressionImplementation;
 import us.ihmc.tools.compression.CompressionImplementation;
 import us.ihmc.tools.compression.CompressionImplementationFactory;
 import us.ihmc.yoVariables.listener.YoVariableChangedListener;
 import us.ihmc.yoVariables.variable.YoVariable;
 
+/**
+ * Decompresses incoming registry packets and applies them to the variables. decompressSegment() can
+ * be called concurrently for packets of different registries, because every registry writes a
+ * disjoint range of variables and has its own keyframe and decompression buffer. Packets of the
+ * same registry have to be applied in order from a single thread at a time.
+ */
 public class RegistryDecompressor
 {
+   /**
+    * Number of variables checked for listener changes per decompressed segment
+    */
+   private static final int LISTENER_SCAN_PER_SEGMENT = 256;
+
+   /**
+    * Last received keyframe for a registry, used to reconstruct XOR_DATA_PACKETs and
+    * SPARSE_DATA_PACKETs. Keeps track of the variables that the last applied sparse or XOR packet set
+    * to a value other than their keyframe value, so they can be restored to their keyframe value when
+    * the next sparse packet does not contain them.
+    */
+   private static class Keyframe
+   {
+      private long uid = RegistryBuffer.NO_KEYFRAME;
+      private long[] values = new long[0];
+
+      private int[] changedIndices = new int[0];
+      private int numberOfChangedIndices = 0;
+
+      private int[] stamps = new int[0];
+      private int stamp = 0;
+
+      private void set(long uid, LongBuffer data)
+      {
+         if (values.length != data.remaining())
+         {
+            values = new long[data.remaining()];
+            changedIndices = new int[data.remaining()];
+            stamps = new int[data.remaining()];
+         }
+         data.get(values);
+         data.rewind();
+         this.uid = uid;
+         numberOfChangedIndices = 0;
+      }
+   }
+
+   /**
+    * Decoding state of a single registry
+    */
+   private static class RegistryState
+   {
+      // The byte shuffle filter keeps a scratch buffer, so every registry gets its own instance
+      private final CompressionImplementation compressionImplementation;
+      private Keyframe keyframe = null;
+      private ByteBuffer decompressBuffer = ByteBuffer.allocate(0);
+      private LongBuffer decompressLongBuffer = decompressBuffer.asLongBuffer();
+
+      private RegistryState(CompressionImplementation compressionImplementation)
+      {
+         this.compressionImplementation = compressionImplementation;
+      }
+   }
+
    private final List<YoVariable> variables;
    private final List<JointState> jointStates;
 
-   private final ByteBuffer decompressBuffer;
-   private final CompressionImplementation compressionImplementation;
+   /**
+    * Application plan for incoming values. Variables without listeners, other than the listener that
+    * forwards changes to the server, are set without reading the previous value or walking the
+    * listeners. The plan is refreshed incrementally, so listeners that are added later are picked up
+    * within a few packets.
+    */
+   private final YoVariable[] variableArray;
+   private final boolean[] hasUserListeners;
+   private final AtomicInteger listenerScanIndex = new AtomicInteger();
+
+   private final boolean byteShuffled;
+
+   // Guarded by itself
+   private final TIntObjectHashMap<RegistryState> registryStates = new TIntObjectHashMap<>();
+
+   private long[] compressionDictionary = null;
 
    private Object variableSynchronizer = null;
 
    public RegistryDecompressor(List<YoVariable> variables, List<JointState> jointStates)
+   {
+      this(variables, jointStates, false);
+   }
+
+   /**
+    * @param variables
+    * @param jointStates
+    * @param byteShuffled The data is filtered by the byte shuffle filter before compression
+    */
+   public RegistryDecompressor(List<YoVariable> variables, List<JointState> jointStates, boolean byteShuffled)
    {
       this.variables = variables;
       this.jointStates = jointStates;
-      this.decompressBuffer = ByteBuffer.allocate(variables.size() * 8);
+      this.variableArray = variables.toArray(new YoVariable[variables.size()]);
+      this.hasUserListeners = new boolean[variableArray.length];
+      updateListenerPlan();
+      this.byteShuffled = byteShuffled;
+   }
 
-      this.compressionImplementation = CompressionImplementationFactory.instance();
+   /**
+    * Set the reference snapshot the server encodes DATA_PACKETs and keyframes against. See
+    * CustomLogDataPublisherType.setCompressionDictionary().
+    *
+    * @param compressionDictionary Value bits of all variables, in handshake order. Null if the server
+    *                              does not use a dictionary.
+    */
+   public void setCompressionDictionary(long[] compressionDictionary)
+   {
+      this.compressionDictionary = compressionDictionary;
+   }
+
+   /**
+    * Reverse the XOR with the compression dictionary in place.
+    *
+    * @return false if the dictionary does not cover the variables in this packet
+    */
+   private boolean decodeDictionary(int registryOffset, LongBuffer longData)
+   {
+      if (registryOffset + longData.remaining() > compressionDictionary.length)
+      {
+         LogTools.error("Compression dictionary does not match the incoming data. Skipping packet.");
+         return false;
+      }
 
+      for (int i = 0; i < longData.remaining(); i++)
+      {
+         longData.put(i, longData.get(i) ^ compressionDictionary[registryOffset + i]);
+      }
+      return true;
+   }
+
+   /**
+    * Check all variables for listeners. Listeners are also picked up automatically while packets are
+    * received, call this to make sure a listener is notified from the next packet on.
+    */
+   public void updateListenerPlan()
+   {
+      for (int i = 0; i < variableArray.length; i++)
+      {
+         hasUserListeners[i] = hasUserListeners(variableArray[i]);
+      }
+   }
+
+   /**
+    * Check the next block of variables for added or removed listeners
+    */
+   private void scanListeners()
+   {
+      int start = listenerScanIndex.get();
+      int end = Math.min(start + LISTENER_SCAN_PER_SEGMENT, variableArray.length);
+      // If another thread claimed this block, it does the scan
+      if (!listenerScanIndex.compareAndSet(start, end == variableArray.length ? 0 : end))
+      {
+         return;
+      }
+
+      for (int i = start; i < end; i++)
+      {
+         hasUserListeners[i] = hasUserListeners(variableArray[i]);
+      }
+   }
+
+   private RegistryState getRegistryState(int registryID)
+   {
+      synchronized (registryStates)
+      {
+         RegistryState state = registryStates.get(registryID);
+         if (state == null)
+         {
+            if (byteShuffled)
+            {
+               state = new RegistryState(new ByteShuffleCompressionImplementation(CompressionImplementationFactory.instance()));
+            }
+            else
+            {
+               state = new RegistryState(CompressionImplementationFactory.instance());
+            }
+            registryStates.put(registryID, state);
+         }
+         return state;
+      }
+   }
+
+   private static boolean hasUserListeners(YoVariable variable)
+   {
+      List<YoVariableChangedListener> changedListeners = variable.getListeners();
+      if (changedListeners != null)
+      {
+         for (int listener = 0; listener < changedListeners.size(); listener++)
+         {
+            if (!(changedListeners.get(listener) instanceof VariableChangedProducer.VariableListener))
+            {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Set the variable at index, notifying listeners if the plan says it has any
+    */
+   private void set(int index, long newValue)
+   {
+      if (hasUserListeners[index])
+      {
+         setAndNotify(variableArray[index], newValue);
+      }
+      else
+      {
+         variableArray[index].setValueFromLongBits(newValue, false);
+      }
    }
 
    private void setAndNotify(YoVariable variable, long newValue)
@@ -54,21 +257,121 @@ public class RegistryDecompressor
       }
    }
 
-   public void decompressSegment(RegistryReceiveBuffer buffer, int registryOffset)
+   /**
+    * Reconstruct the variable data of an XOR_DATA_PACKET in place.
+    *
+    * @param state    decoding state of the registry of buffer
+    * @param buffer
+    * @param longData decompressed data, XOR'ed against the keyframe
+    * @return false if the keyframe this packet references is not available
+    */
+   private boolean decodeXOR(RegistryState state, RegistryReceiveBuffer buffer, LongBuffer longData)
    {
+      Keyframe keyframe = state.keyframe;
+      if (keyframe == null)
+      {
+         keyframe = new Keyframe();
+         state.keyframe = keyframe;
+      }
+
+      if (buffer.isKeyframe())
+      {
+         keyframe.set(buffer.getUid(), longData);
+         return true;
+      }
+
+      // The keyframe got lost or we connected after it was sent. Skip packets till the next keyframe arrives.
+      if (keyframe.uid != buffer.getKeyframeUid() || keyframe.values.length != longData.remaining())
+      {
+         return false;
+      }
+
+      // All variables get set by this packet. Keep track of the variables that differ from the
+      // keyframe, so the next sparse packet restores them if it does not contain them.
+      long[] values = keyframe.values;
+      int[] changedIndices = keyframe.changedIndices;
+      int numberOfChangedIndices = 0;
+      for (int i = 0; i < values.length; i++)
+      {
+         long xor = longData.get(i);
+         longData.put(i, xor ^ values[i]);
+         if (xor != 0)
+         {
+            changedIndices[numberOfChangedIndices++] = i;
+         }
+      }
+      keyframe.numberOfChangedIndices = numberOfChangedIndices;
+      return true;
+   }
+
+   /**
+    * Decompress the data of buffer in the decompressBuffer of state
+    *
+    * @return false if the data is malformed
+    */
+   private boolean decompress(RegistryState state, RegistryReceiveBuffer buffer, int decompressedLength)
+   {
+      if (state.decompressBuffer.capacity() < decompressedLength)
+      {
+         state.decompressBuffer = ByteBuffer.allocate(decompressedLength);
+         state.decompressLongBuffer = state.decompressBuffer.asLongBuffer();
+      }
+
+      ByteBuffer decompressBuffer = state.decompressBuffer;
       decompressBuffer.clear();
+      if (!buffer.isCompressed())
+      {
+         ByteBuffer data = buffer.getData();
+         if (data.remaining() != decompressedLength)
+         {
+            LogTools.error("Length of incoming data does not match stated number of variables. Skipping packet.");
+            return false;
+         }
+         decompressBuffer.put(data);
+         decompressBuffer.flip();
+         return true;
+      }
+
       try
       {
-         compressionImplementation.decompress(buffer.getData(), decompressBuffer, buffer.getNumberOfVariables() * 8);
+         state.compressionImplementation.decompress(buffer.getData(), decompressBuffer, decompressedLength);
       }
       catch (Throwable e)
       {
          // Malformed packet. Just skip.
          LogTools.error("Cannot decompress incoming packet. Skipping packet. " + e.getMessage());
-         return;
+         return false;
       }
       decompressBuffer.flip();
-      LongBuffer longData = decompressBuffer.asLongBuffer();
+      return true;
+   }
+
+   /**
+    * Decompress a packet and apply it to the variables of its registry
+    *
+    * @param buffer         Packet to apply
+    * @param registryOffset Index of the first variable of the registry in the variables
+    * @param registrySize   Number of variables of the registry, including the variables of its children
+    */
+   public void decompressSegment(RegistryReceiveBuffer buffer, int registryOffset, int registrySize)
+   {
+      scanListeners();
+
+      RegistryState state = getRegistryState(buffer.getRegistryID());
+      if (buffer.getType() == LogDataType.SPARSE_DATA_PACKET)
+      {
+         decompressSparseSegment(state, buffer, registryOffset, registrySize);
+         return;
+      }
+
+      if (!decompress(state, buffer, buffer.getNumberOfVariables() * 8))
+      {
+         return;
+      }
+      // Reuse the long view of the decompress buffer to avoid allocating a view for every packet
+      LongBuffer longData = state.decompressLongBuffer;
+      longData.clear();
+      longData.limit(state.decompressBuffer.remaining() / 8);
 
       // Sanity check
       if (longData.remaining() != buffer.getNumberOfVariables())
@@ -78,6 +381,17 @@ public class RegistryDecompressor
       }
       int numberOfVariables = buffer.getNumberOfVariables();
 
+      if (compressionDictionary != null && (buffer.getType() == LogDataType.DATA_PACKET || buffer.isKeyframe())
+            && !decodeDictionary(registryOffset, longData))
+      {
+         return;
+      }
+
+      if (buffer.getType() == LogDataType.XOR_DATA_PACKET && !decodeXOR(state, buffer, longData))
+      {
+         return;
+      }
+
       if (variableSynchronizer != null)
       {
          synchronized (variableSynchronizer)
@@ -91,18 +405,137 @@ public class RegistryDecompressor
       }
    }
 
+   /**
+    * Apply the (index, value) pairs of a SPARSE_DATA_PACKET. If the packet references a keyframe,
+    * variables set by the previous sparse packet that are not in this packet are restored to their
+    * keyframe value.
+    */
+   private void decompressSparseSegment(RegistryState state, RegistryReceiveBuffer buffer, int registryOffset, int registrySize)
+   {
+      int numberOfPairs = buffer.getNumberOfVariables();
+      if (!decompress(state, buffer, numberOfPairs * 12))
+      {
+         return;
+      }
+      ByteBuffer decompressBuffer = state.decompressBuffer;
+
+      // Sanity check
+      if (decompressBuffer.remaining() != numberOfPairs * 12)
+      {
+         LogTools.error("Number of variables in incoming message does not match stated number of variables. Skipping packet.");
+         return;
+      }
+
+      Keyframe keyframe = null;
+      if (buffer.getKeyframeUid() != RegistryBuffer.NO_KEYFRAME)
+      {
+         keyframe = state.keyframe;
+
+         // The keyframe got lost or we connected after it was sent. Skip packets till the next keyframe arrives.
+         if (keyframe == null || keyframe.uid != buffer.getKeyframeUid())
+         {
+            return;
+         }
+
+         if (keyframe.values.length != registrySize)
+         {
+            LogTools.error("Number of variables in keyframe does not match the registry. Skipping packet.");
+            return;
+         }
+      }
+
+      if (numberOfPairs > registrySize)
+      {
+         LogTools.error("Number of variables in incoming message is larger than the registry. Skipping packet.");
+         return;
+      }
+
+      for (int i = 0; i < numberOfPairs; i++)
+      {
+         int index = decompressBuffer.getInt(i * 4);
+         if (index < 0 || index >= registrySize)
+         {
+            LogTools.error("Variable index in incoming message out of bounds. Skipping packet.");
+            return;
+         }
+      }
+
+      if (variableSynchronizer != null)
+      {
+         synchronized (variableSynchronizer)
+         {
+            updateSparseVariables(buffer, registryOffset, decompressBuffer, numberOfPairs, keyframe);
+         }
+      }
+      else
+      {
+         updateSparseVariables(buffer, registryOffset, decompressBuffer, numberOfPairs, keyframe);
+      }
+   }
+
+   private void updateSparseVariables(RegistryReceiveBuffer buffer, int registryOffset, ByteBuffer sparseData, int numberOfPairs, Keyframe keyframe)
+   {
+      int valueOffset = numberOfPairs * 4;
+
+      if (keyframe != null)
+      {
+         int stamp = ++keyframe.stamp;
+         for (int i = 0; i < numberOfPairs; i++)
+         {
+            keyframe.stamps[sparseData.getInt(i * 4)] = stamp;
+         }
+
+         for (int i = 0; i < keyframe.numberOfChangedIndices; i++)
+         {
+            int index = keyframe.changedIndices[i];
+            if (keyframe.stamps[index] != stamp)
+            {
+               set(index + registryOffset, keyframe.values[index]);
+            }
+         }
+         keyframe.numberOfChangedIndices = 0;
+      }
+
+      for (int i = 0; i < numberOfPairs; i++)
+      {
+         int index = sparseData.getInt(i * 4);
+         set(index + registryOffset, sparseData.getLong(valueOffset + i * 8));
+
+         if (keyframe != null)
+         {
+            keyframe.changedIndices[keyframe.numberOfChangedIndices++] = index;
+         }
+      }
+
+      updateJointStates(buffer);
+   }
+
    private void updateVariables(RegistryReceiveBuffer buffer, int registryOffset, LongBuffer longData, int numberOfVariables)
    {
-      int offset = registryOffset;
+      YoVariable[] variableArray = this.variableArray;
+      boolean[] hasUserListeners = this.hasUserListeners;
       for (int i = 0; i < numberOfVariables; i++)
       {
-         setAndNotify(variables.get(i + offset), longData.get());
+         int index = i + registryOffset;
+         long value = longData.get();
+         if (hasUserListeners[index])
+         {
+            setAndNotify(variableArray[index], value);
+         }
+         else
+         {
+            variableArray[index].setValueFromLongBits(value, false);
+         }
       }
 
-      double[] jointStateArray = buffer.getJointStates();
-      if (jointStateArray.length > 0)
+      updateJointStates(buffer);
+   }
+
+   private void updateJointStates(RegistryReceiveBuffer buffer)
+   {
+      if (buffer.getNumberOfJointStates() > 0)
       {
-         DoubleBuffer jointStateBuffer = DoubleBuffer.wrap(jointStateArray);
+         DoubleBuffer jointStateBuffer = buffer.getJointStateBuffer();
          for (int i = 0; i < jointStates.size(); i++)
          {
             jointStates.get(i).update(jointStateBuffer);
@@ -1,52 +1,187 @@
 package us.ihmc.robotDataLogger.dataBuffers;
 
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 
+import io.netty.util.ReferenceCounted;
+
 public class RegistryReceiveBuffer extends RegistryBuffer
 {
 
-   private final long receivedTimestamp;
+   private long receivedTimestamp;
    private ByteBuffer compressedVariableDataBuffer;
-   private double[] jointStates;
+   private ByteBuffer data;
+   private ReferenceCounted dataOwner;
+   private double[] jointStates = new double[0];
+   private DoubleBuffer jointStateBuffer = DoubleBuffer.wrap(jointStates);
+   private int numberOfJointStates = 0;
+   private boolean compressed = true;
+
+   private final RegistryReceiveBufferPool pool;
 
    public RegistryReceiveBuffer(long receivedTimestamp)
    {
+      this(null, 0, 0);
       this.receivedTimestamp = receivedTimestamp;
    }
 
+   /**
+    * Create a buffer that is returned to the pool when released
+    *
+    * @param pool                    Pool this buffer belongs to, null if the buffer is not pooled
+    * @param dataCapacity            Initial capacity of the data buffer
+    * @param jointStateCapacity      Initial capacity of the joint states
+    */
+   RegistryReceiveBuffer(RegistryReceiveBufferPool pool, int dataCapacity, int jointStateCapacity)
+   {
+      this.pool = pool;
+      if (dataCapacity > 0)
+      {
+         compressedVariableDataBuffer = ByteBuffer.allocate(dataCapacity);
+         data = compressedVariableDataBuffer;
+      }
+      if (jointStateCapacity > 0)
+      {
+         jointStates = new double[jointStateCapacity];
+         jointStateBuffer = DoubleBuffer.wrap(jointStates);
+      }
+   }
+
    public long getReceivedTimestamp()
    {
       return receivedTimestamp;
    }
 
+   public void setReceivedTimestamp(long receivedTimestamp)
+   {
+      this.receivedTimestamp = receivedTimestamp;
+   }
+
+   /**
+    * Get a buffer for the variable data with a limit of size. The buffer is reused if it is large
+    * enough.
+    *
+    * @param size
+    * @return buffer with position 0 and limit size
+    */
    public ByteBuffer allocateBuffer(int size)
    {
-      compressedVariableDataBuffer = ByteBuffer.allocate(size);
+      releaseDataOwner();
+      if (compressedVariableDataBuffer == null || compressedVariableDataBuffer.capacity() < size)
+      {
+         compressedVariableDataBuffer = ByteBuffer.allocate(size);
+      }
+      compressedVariableDataBuffer.clear();
+      compressedVariableDataBuffer.limit(size);
+      data = compressedVariableDataBuffer;
       return compressedVariableDataBuffer;
    }
 
+   /**
+    * Use the remaining bytes of externalData as variable data instead of copying them into this
+    * buffer. This is used to decompress directly from the memory of the received frame.
+    *
+    * @param externalData View on the variable data. Has to stay valid till this buffer is released.
+    * @param owner        Owner of the memory of externalData, released when this buffer is released
+    *                     or reused. Null if the memory does not need to be released.
+    */
+   public void setExternalData(ByteBuffer externalData, ReferenceCounted owner)
+   {
+      releaseDataOwner();
+      data = externalData;
+      dataOwner = owner;
+   }
+
+   private void releaseDataOwner()
+   {
+      if (dataOwner != null)
+      {
+         dataOwner.release();
+         dataOwner = null;
+      }
+   }
+
+   /**
+    * Get an array for the joint states. The array is reused if it is large enough, so it can be
+    * longer than stateLength. Use getNumberOfJointStates() for the number of valid elements.
+    *
+    * @param stateLength
+    * @return array with at least stateLength elements
+    */
    public double[] allocateStates(int stateLength)
    {
-      jointStates = new double[stateLength];
+      if (jointStates.length < stateLength)
+      {
+         jointStates = new double[stateLength];
+         jointStateBuffer = DoubleBuffer.wrap(jointStates);
+      }
+      numberOfJointStates = stateLength;
       return jointStates;
    }
 
+   /**
+    * @return the joint states. Only the first getNumberOfJointStates() elements are valid.
+    */
    public double[] getJointStates()
    {
       return jointStates;
    }
 
+   public int getNumberOfJointStates()
+   {
+      return numberOfJointStates;
+   }
+
+   /**
+    * @return the joint states as buffer with position 0 and limit getNumberOfJointStates()
+    */
+   public DoubleBuffer getJointStateBuffer()
+   {
+      jointStateBuffer.clear();
+      jointStateBuffer.limit(numberOfJointStates);
+      return jointStateBuffer;
+   }
+
    public ByteBuffer getData()
    {
-      return compressedVariableDataBuffer;
+      return data;
+   }
+
+   /**
+    * @return false if the data is already decompressed, for example when unpacked from a
+    *         BATCH_DATA_PACKET
+    */
+   public boolean isCompressed()
+   {
+      return compressed;
+   }
+
+   public void setCompressed(boolean compressed)
+   {
+      this.compressed = compressed;
+   }
+
+   /**
+    * Release the memory of external data and return this buffer to the pool it was acquired from.
+    * The buffer cannot be used after calling this function.
+    */
+   public void release()
+   {
+      releaseDataOwner();
+      data = compressedVariableDataBuffer;
+      if (pool != null)
+      {
+         pool.release(this);
+      }
    }
 
    @Override
    public String toString()
    {
-      return "RegistryReceiveBuffer [receivedTimestamp=" + receivedTimestamp + ", compressedVariableDataBuffer=" + compressedVariableDataBuffer
-            + ", registryID=" + registryID + ", jointStates=" + Arrays.toString(jointStates) + ", timestamp=" + timestamp + ", uid=" + uid + "]";
+      return "RegistryReceiveBuffer [receivedTimestamp=" + receivedTimestamp + ", compressedVariableDataBuffer=" + data
+            + ", registryID=" + registryID + ", jointStates=" + Arrays.toString(Arrays.copyOf(jointStates, numberOfJointStates)) + ", timestamp="
+            + timestamp + ", uid=" + uid + "]";
    }
 
 }
@@ -0,0 +1,76 @@
+package us.ihmc.robotDataLogger.dataBuffers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of RegistryReceiveBuffers to avoid object allocation on receive. Buffers are acquired by the
+ * network thread and released by the consumer after the RegistryDecompressor is done with them.
+ * The data and joint state capacity of new buffers is sized from the handshake, so at steady state
+ * no memory is allocated. If the pool is empty a new buffer is created, and released buffers are
+ * kept as long as the pool has room.
+ */
+public class RegistryReceiveBufferPool
+{
+   private final ArrayBlockingQueue<RegistryReceiveBuffer> freeBuffers;
+
+   private final int dataCapacity;
+   private final int jointStateCapacity;
+
+   /**
+    * @param initialSize        Number of buffers to preallocate
+    * @param maximumSize        Maximum number of free buffers kept in the pool
+    * @param dataCapacity       Capacity of the data buffer, typically the maximum compressed size of
+    *                           the largest registry
+    * @param jointStateCapacity Capacity of the joint states
+    */
+   public RegistryReceiveBufferPool(int initialSize, int maximumSize, int dataCapacity, int jointStateCapacity)
+   {
+      if (initialSize > maximumSize)
+      {
+         throw new IllegalArgumentException("Initial size " + initialSize + " is larger than maximum size " + maximumSize);
+      }
+
+      this.freeBuffers = new ArrayBlockingQueue<>(maximumSize);
+      this.dataCapacity = dataCapacity;
+      this.jointStateCapacity = jointStateCapacity;
+
+      for (int i = 0; i < initialSize; i++)
+      {
+         freeBuffers.add(new RegistryReceiveBuffer(this, dataCapacity, jointStateCapacity));
+      }
+   }
+
+   /**
+    * Get a buffer from the pool, or create a new one if the pool is empty. Return the buffer with
+    * {@link RegistryReceiveBuffer#release()} when done.
+    *
+    * @param receivedTimestamp
+    * @return buffer with the received timestamp set
+    */
+   public RegistryReceiveBuffer acquire(long receivedTimestamp)
+   {
+      RegistryReceiveBuffer buffer = freeBuffers.poll();
+      if (buffer == null)
+      {
+         buffer = new RegistryReceiveBuffer(this, dataCapacity, jointStateCapacity);
+      }
+
+      buffer.setReceivedTimestamp(receivedTimestamp);
+      buffer.setCompressed(true);
+      return buffer;
+   }
+
+   void release(RegistryReceiveBuffer buffer)
+   {
+      // If the pool is full the buffer is left to the garbage collector
+      freeBuffers.offer(buffer);
+   }
+
+   /**
+    * @return the number of buffers available in the pool
+    */
+   public int available()
+   {
+      return freeBuffers.size();
+   }
+}
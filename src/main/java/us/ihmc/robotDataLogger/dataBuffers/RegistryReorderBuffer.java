@@ -0,0 +1,304 @@
+package us.ihmc.robotDataLogger.dataBuffers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+
+/**
+ * Single producer, single consumer reorder buffer for incoming registry packets. Every registry has
+ * a ring of slots indexed by the uid of the packet, so inserting a packet is O(1) and lock free. The
+ * consumer keeps the oldest packet of every ring and the uid it has scanned up to, so a gap in the
+ * uids is scanned once instead of on every call. The producer reports the lowest uid it stored, so
+ * the consumer only scans back when a gap is filled. Selecting the next packet is linear in the
+ * number of registries, and poll() takes the packet selected by the preceding peek().
+ * <p>
+ * The consumer merges the registries by (timestamp, registryID), so packets with the same timestamp
+ * are always applied in the same order. If a packet is missing, the consumer skips it as soon as a
+ * later packet of that registry is the next packet to apply. Packets that arrive after they have
+ * been skipped are dropped.
+ * </p>
+ */
+class RegistryReorderBuffer
+{
+   private static final long NO_UID = Long.MAX_VALUE;
+
+   private static class Ring
+   {
+      private final int registryID;
+      private final AtomicReferenceArray<RegistryReceiveBuffer> slots;
+      private final AtomicInteger size = new AtomicInteger();
+
+      /**
+       * Uid of the next packet to apply. Lowered by the producer till the consumer takes the first
+       * packet of this ring, advanced by the consumer afterwards.
+       */
+      private final AtomicLong nextUid = new AtomicLong(NO_UID);
+
+      /**
+       * Set by the consumer before it advances nextUid for the first time.
+       */
+      private volatile boolean started = false;
+
+      /**
+       * Highest uid stored by the producer
+       */
+      private volatile long highestUid = Long.MIN_VALUE;
+
+      /**
+       * Lowest uid stored by the producer since the consumer last looked, NO_UID if none
+       */
+      private final AtomicLong lowestStoredUid = new AtomicLong(NO_UID);
+
+      /**
+       * Oldest packet of the ring and its uid, null if not known. Only used by the consumer.
+       */
+      private RegistryReceiveBuffer head = null;
+      private long headUid;
+
+      /**
+       * The slots from nextUid up to this uid are empty. Only used by the consumer.
+       */
+      private long scanUid = NO_UID;
+
+      private Ring(int registryID, int capacity)
+      {
+         this.registryID = registryID;
+         this.slots = new AtomicReferenceArray<>(capacity);
+      }
+   }
+
+   private final int capacity;
+   private final int mask;
+   private final AtomicInteger size = new AtomicInteger();
+
+   private final DebugRegistry debugRegistry;
+
+   // Producer side lookup
+   private final TIntObjectHashMap<Ring> ringMap = new TIntObjectHashMap<>();
+
+   // Copy on write array of rings, sorted by registryID. Written by the producer, read by the consumer.
+   private volatile Ring[] rings = new Ring[0];
+
+   // Ring selected by the last peek(), taken by the next poll(). Only used by the consumer.
+   private Ring selected = null;
+
+   /**
+    * @param capacity      Maximum number of packets in the buffer, also the maximum distance in uid
+    *                      between the next packet to apply and the newest packet of a registry. Has
+    *                      to be a power of two.
+    * @param debugRegistry Registry to count dropped packets
+    */
+   RegistryReorderBuffer(int capacity, DebugRegistry debugRegistry)
+   {
+      if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+      {
+         throw new IllegalArgumentException("Capacity has to be a power of two, got " + capacity);
+      }
+      this.capacity = capacity;
+      this.mask = capacity - 1;
+      this.debugRegistry = debugRegistry;
+   }
+
+   private Ring getRing(int registryID)
+   {
+      Ring ring = ringMap.get(registryID);
+      if (ring == null)
+      {
+         ring = new Ring(registryID, capacity);
+         ringMap.put(registryID, ring);
+
+         Ring[] newRings = Arrays.copyOf(rings, rings.length + 1);
+         newRings[newRings.length - 1] = ring;
+         Arrays.sort(newRings, (a, b) -> Integer.compare(a.registryID, b.registryID));
+         rings = newRings;
+      }
+      return ring;
+   }
+
+   /**
+    * Add a packet to the buffer. Only call from the producer thread.
+    *
+    * @param buffer
+    * @return false if the packet is dropped. The caller is responsible for releasing dropped packets.
+    */
+   boolean offer(RegistryReceiveBuffer buffer)
+   {
+      if (!buffer.hasVariableData())
+      {
+         // Keep alive, nothing to apply
+         return false;
+      }
+
+      if (size.get() >= capacity)
+      {
+         debugRegistry.getSkippedPacketDueToFullBuffer().increment();
+         return false;
+      }
+
+      Ring ring = getRing(buffer.getRegistryID());
+      long uid = buffer.getUid();
+      long nextUid = ring.nextUid.get();
+      if (uid < nextUid)
+      {
+         // Till the consumer starts on this ring, older packets move the start back.
+         // nextUid is read before started, so the CAS fails if the consumer advanced it in between.
+         boolean inWindow = nextUid == NO_UID || nextUid - uid < capacity;
+         if (inWindow && !ring.started && ring.nextUid.compareAndSet(nextUid, uid))
+         {
+            nextUid = uid;
+         }
+         else
+         {
+            // Arrived after the consumer skipped it
+            debugRegistry.getPacketsOutOfOrder().increment();
+            return false;
+         }
+      }
+
+      int index = (int) (uid & mask);
+      if (uid - nextUid >= capacity || ring.slots.get(index) != null)
+      {
+         debugRegistry.getSkippedPacketDueToFullBuffer().increment();
+         return false;
+      }
+
+      ring.slots.set(index, buffer);
+      ring.size.incrementAndGet();
+      size.incrementAndGet();
+
+      // Published after the slot, so the consumer finds the packet when it sees the uid
+      if (uid > ring.highestUid)
+      {
+         ring.highestUid = uid;
+      }
+      long lowestStoredUid;
+      while (uid < (lowestStoredUid = ring.lowestStoredUid.get()) && !ring.lowestStoredUid.compareAndSet(lowestStoredUid, uid))
+      {
+         // Retry, the consumer reset the lowest uid
+      }
+      return true;
+   }
+
+   /**
+    * @return the number of packets in the buffer
+    */
+   int size()
+   {
+      return size.get();
+   }
+
+   /**
+    * Find the oldest packet of the ring. Scans from the uid the last scan stopped at, or from the
+    * lowest uid stored since. Only call from the consumer thread.
+    */
+   private RegistryReceiveBuffer findHead(Ring ring)
+   {
+      long lowestStoredUid = ring.lowestStoredUid.getAndSet(NO_UID);
+      if (lowestStoredUid < ring.scanUid)
+      {
+         // A gap before the scanned uid got filled
+         ring.head = null;
+         ring.scanUid = lowestStoredUid;
+      }
+
+      if (ring.head != null)
+      {
+         return ring.head;
+      }
+
+      if (ring.size.get() == 0)
+      {
+         return null;
+      }
+
+      long nextUid = ring.nextUid.get();
+      long endUid = Math.min(ring.highestUid, nextUid + capacity - 1);
+      for (long uid = Math.max(ring.scanUid, nextUid); uid <= endUid; uid++)
+      {
+         int index = (int) (uid & mask);
+         RegistryReceiveBuffer buffer = ring.slots.get(index);
+         if (buffer != null)
+         {
+            if (buffer.getUid() == uid)
+            {
+               ring.head = buffer;
+               ring.headUid = uid;
+               ring.scanUid = uid;
+               return buffer;
+            }
+
+            // Packet outside the window, stored while the consumer skipped past it or pushed out when the start moved back.
+            // The producer never overwrites an occupied slot, so it is safe to clear.
+            ring.slots.set(index, null);
+            ring.size.decrementAndGet();
+            size.decrementAndGet();
+            debugRegistry.getPacketsOutOfOrder().increment();
+            buffer.release();
+         }
+      }
+      ring.scanUid = Math.max(ring.scanUid, endUid + 1);
+      return null;
+   }
+
+   /**
+    * Find the ring with the oldest head by (timestamp, registryID). Only call from the consumer
+    * thread.
+    */
+   private Ring selectNext()
+   {
+      Ring[] rings = this.rings;
+      Ring next = null;
+      long nextTimestamp = Long.MAX_VALUE;
+      for (int i = 0; i < rings.length; i++)
+      {
+         RegistryReceiveBuffer head = findHead(rings[i]);
+         // Rings are sorted by registryID, so ties go to the lowest registryID
+         if (head != null && (next == null || head.getTimestamp() < nextTimestamp))
+         {
+            next = rings[i];
+            nextTimestamp = head.getTimestamp();
+         }
+      }
+      return next;
+   }
+
+   /**
+    * @return the next packet to apply without removing it, or null if the buffer is empty. Only call
+    *         from the consumer thread.
+    */
+   RegistryReceiveBuffer peek()
+   {
+      selected = selectNext();
+      return selected == null ? null : selected.head;
+   }
+
+   /**
+    * Remove the next packet to apply. Missing packets before it are skipped. After peek(), this is the
+    * packet returned by peek(). Only call from the consumer thread.
+    *
+    * @return the next packet, or null if the buffer is empty
+    */
+   RegistryReceiveBuffer poll()
+   {
+      Ring ring = selected != null ? selected : selectNext();
+      selected = null;
+      if (ring == null)
+      {
+         return null;
+      }
+
+      RegistryReceiveBuffer buffer = ring.head;
+      ring.slots.set((int) (ring.headUid & mask), null);
+      ring.head = null;
+      ring.scanUid = ring.headUid + 1;
+      ring.started = true;
+      ring.nextUid.set(ring.headUid + 1);
+      ring.size.decrementAndGet();
+      size.decrementAndGet();
+      return buffer;
+   }
+}
@@ -29,6 +29,8 @@ public class RegistrySendBufferBuilder implements us.ihmc.concurrent.Builder<Reg
 
    private int registryID = -1;
 
+   private long[] compressionDictionary = null;
+
    public RegistrySendBufferBuilder(YoRegistry registry)
    {
       this(registry, Collections.emptyList(), null);
@@ -96,6 +98,35 @@ public class RegistrySendBufferBuilder implements us.ihmc.concurrent.Builder<Reg
       }
    }
 
+   /**
+    * Take a snapshot of the current values of the variables to use as compression dictionary. Call
+    * after the variables are populated by the handshake builder.
+    *
+    * @return the compression dictionary
+    */
+   public long[] createCompressionDictionary()
+   {
+      if (variables.size() == 0)
+      {
+         throw new RuntimeException("Variables not populated");
+      }
+
+      compressionDictionary = new long[variables.size()];
+      for (int i = 0; i < variables.size(); i++)
+      {
+         compressionDictionary[i] = variables.get(i).getValueAsLongBits();
+      }
+      return compressionDictionary;
+   }
+
+   /**
+    * @return the compression dictionary, or null if createCompressionDictionary() is not called
+    */
+   public long[] getCompressionDictionary()
+   {
+      return compressionDictionary;
+   }
+
    public List<JointHolder> getJointHolders()
    {
       return jointHolders;
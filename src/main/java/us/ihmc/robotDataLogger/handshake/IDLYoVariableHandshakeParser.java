@@ -72,6 +72,7 @@ public class IDLYoVariableHandshakeParser extends YoVariableHandshakeParser
    private final AbstractSerializer<Handshake> serializer;
 
    private TIntIntHashMap variableOffsets = new TIntIntHashMap();
+   private TIntIntHashMap registrySizes = new TIntIntHashMap();
 
    public IDLYoVariableHandshakeParser(HandshakeFileType type)
    {
@@ -159,9 +160,30 @@ public class IDLYoVariableHandshakeParser extends YoVariableHandshakeParser
       return variableOffsets.get(registryIndex);
    }
 
+   /**
+    * Get the number of variables send in the packets of a registry buffer. This includes the variables
+    * of the children of the registry.
+    *
+    * @param registryIndex registryID of the registry buffer
+    * @return number of variables of the registry and its children
+    */
+   public int getRegistrySize(int registryIndex)
+   {
+      return registrySizes.get(registryIndex);
+   }
+
    @SuppressWarnings("rawtypes")
    private List<YoVariable> parseVariables(Handshake handshake, List<YoRegistry> registryList)
    {
+      // Registry buffers are the children of the root, their variables include the variables of their children
+      int[] bufferRegistries = new int[handshake.getRegistries().size()];
+      for (int i = 1; i < bufferRegistries.length; i++)
+      {
+         int parentIndex = handshake.getRegistries().get(i).getParent();
+         bufferRegistries[i] = parentIndex == 0 ? i : bufferRegistries[parentIndex];
+      }
+
+      registrySizes.clear();
       List<YoVariable> variableList = new ArrayList<>();
       for (int i = 0; i < handshake.getVariables().size(); i++)
       {
@@ -179,6 +201,7 @@ public class IDLYoVariableHandshakeParser extends YoVariableHandshakeParser
          {
             variableOffsets.put(registryIndex, i);
          }
+         registrySizes.adjustOrPutValue(bufferRegistries[registryIndex], 1, 1);
 
          YoType type = yoVariableDefinition.getType();
          if (yoVariableDefinition.getIsParameter())
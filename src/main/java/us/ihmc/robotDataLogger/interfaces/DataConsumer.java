@@ -96,4 +96,12 @@ public interface DataConsumer
     */
    void writeVariableChangeRequest(int identifier, double valueAsDouble);
 
+   /**
+    * Subscribe to a subset of the variables. The subscription is send to the current session and to
+    * all sessions started after this call.
+    *
+    * @param variableIndices Indices of the variables in the handshake. Empty to receive all variables.
+    */
+   void setVariableSubscription(int[] variableIndices);
+
 }
\ No newline at end of file
@@ -0,0 +1,313 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+import us.ihmc.robotDataLogger.LogProperties;
+import us.ihmc.robotDataLogger.handshake.YoVariableHandshakeParser;
+import us.ihmc.tools.compression.ByteShuffle;
+import us.ihmc.tools.compression.SnappyUtils;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Reads the time series of selected variables from a log written by ColumnarLogWriter. Only the
+ * chunks of the requested columns are read and decompressed. The chunk directory of a long, wide log
+ * does not fit in memory, so the offsets of the requested columns are read from the directory when
+ * they are needed.
+ */
+public class ColumnarLogReader
+{
+   private final FileChannel dataChannel;
+   private final FileInputStream indexStream;
+   private final FileChannel indexChannel;
+   private final List<YoVariable> variables;
+
+   private final int lineLength;
+   private final int ticksPerChunk;
+   private final int numberOfTicks;
+   private final int numberOfChunks;
+   private final long numberOfEntries;
+   private final long dataSize;
+
+   private final ByteBuffer offsetBuffer = ByteBuffer.allocate(16);
+
+   private final ByteBuffer compressedBuffer;
+   private final ByteBuffer shuffleBuffer;
+   private final ByteBuffer columnBuffer;
+   private final LongBuffer columnBufferAsLong;
+
+   /**
+    * Open the columns of a log
+    *
+    * @param logDirectory  Directory of the log
+    * @param logProperties Properties of the log
+    * @throws IOException
+    */
+   @SuppressWarnings("resource")
+   public ColumnarLogReader(File logDirectory, LogProperties logProperties) throws IOException
+   {
+      this(new FileInputStream(getFile(logDirectory, logProperties.getVariables().getColumnsAsString())).getChannel(),
+           getFile(logDirectory, logProperties.getVariables().getColumnIndexAsString()),
+           parseHandshake(logDirectory, logProperties));
+   }
+
+   /**
+    * Read columns from a channel
+    *
+    * @param dataChannel Channel with the compressed columns
+    * @param columnIndex Chunk directory
+    * @param variables   Variables, in handshake order. Variable i is stored in column i + 1.
+    * @throws IOException
+    */
+   public ColumnarLogReader(FileChannel dataChannel, File columnIndex, List<YoVariable> variables) throws IOException
+   {
+      this.dataChannel = dataChannel;
+      this.variables = Collections.unmodifiableList(variables);
+
+      indexStream = new FileInputStream(columnIndex);
+      indexChannel = indexStream.getChannel();
+      ByteBuffer header = ByteBuffer.allocate(ColumnarLogWriter.HEADER_SIZE);
+      readFully(indexChannel, header, 0);
+      lineLength = (int) header.getLong(0);
+      ticksPerChunk = (int) header.getLong(8);
+      numberOfTicks = (int) header.getLong(16);
+      numberOfChunks = (int) ((numberOfTicks + (long) ticksPerChunk - 1) / ticksPerChunk);
+      numberOfEntries = (long) numberOfChunks * lineLength;
+      dataSize = dataChannel.size();
+
+      if (indexChannel.size() < ColumnarLogWriter.HEADER_SIZE + numberOfEntries * 8)
+      {
+         long entries = (indexChannel.size() - ColumnarLogWriter.HEADER_SIZE) / 8;
+         indexStream.close();
+         throw new IOException("The chunk directory has " + entries + " entries, expected " + numberOfEntries);
+      }
+
+      if (variables.size() >= lineLength)
+      {
+         indexStream.close();
+         throw new IllegalArgumentException("The log has " + (lineLength - 1) + " columns for variables, got " + variables.size() + " variables");
+      }
+
+      int maximumColumnSize = ticksPerChunk * 8;
+      compressedBuffer = ByteBuffer.allocateDirect(SnappyUtils.maxCompressedLength(maximumColumnSize));
+      shuffleBuffer = ByteBuffer.allocateDirect(maximumColumnSize);
+      columnBuffer = ByteBuffer.allocateDirect(maximumColumnSize);
+      columnBufferAsLong = columnBuffer.asLongBuffer();
+   }
+
+   private static File getFile(File logDirectory, String name)
+   {
+      if (name.isEmpty())
+      {
+         throw new RuntimeException(logDirectory + " has no columns. Create them with ColumnarLogConverter");
+      }
+
+      File file = new File(logDirectory, name);
+      if (!file.exists())
+      {
+         throw new RuntimeException("Cannot find " + name);
+      }
+      return file;
+   }
+
+   private static List<YoVariable> parseHandshake(File logDirectory, LogProperties logProperties) throws IOException
+   {
+      File handshake = new File(logDirectory, logProperties.getVariables().getHandshakeAsString());
+      DataInputStream handshakeStream = new DataInputStream(new FileInputStream(handshake));
+      byte[] handshakeData = new byte[(int) handshake.length()];
+      handshakeStream.readFully(handshakeData);
+      handshakeStream.close();
+
+      YoVariableHandshakeParser parser = YoVariableHandshakeParser.create(logProperties.getVariables().getHandshakeFileType());
+      parser.parseFrom(handshakeData);
+      return parser.getYoVariablesList();
+   }
+
+   private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         int read = channel.read(buffer, position);
+         if (read < 0)
+         {
+            throw new IOException("Unexpected end of file");
+         }
+         position += read;
+      }
+      buffer.flip();
+   }
+
+   /**
+    * @return the variables of the log, in handshake order
+    */
+   public List<YoVariable> getVariables()
+   {
+      return variables;
+   }
+
+   /**
+    * @param name Name or full name of the variable
+    * @return the variable, or null if the log does not contain the variable
+    */
+   public YoVariable getVariable(String name)
+   {
+      for (int i = 0; i < variables.size(); i++)
+      {
+         YoVariable variable = variables.get(i);
+         if (variable.getName().equals(name) || variable.getFullNameString().equals(name))
+         {
+            return variable;
+         }
+      }
+      return null;
+   }
+
+   public int getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   /**
+    * @return the number of columns, the timestamp, the variables and the joint states
+    */
+   public int getNumberOfColumns()
+   {
+      return lineLength;
+   }
+
+   /**
+    * @return the timestamp of every tick
+    * @throws IOException
+    */
+   public long[] readTimestamps() throws IOException
+   {
+      return readColumns(0)[0];
+   }
+
+   /**
+    * Read the time series of a variable
+    *
+    * @param variable Variable of this log
+    * @return the value of the variable at every tick
+    * @throws IOException
+    */
+   public double[] readData(YoVariable variable) throws IOException
+   {
+      return readData(Collections.singletonList(variable))[0];
+   }
+
+   /**
+    * Read the time series of several variables. The data of all variables is read in a single pass
+    * over the file. The value of the variables is changed while converting the data.
+    *
+    * @param selectedVariables Variables of this log
+    * @return the value of every variable at every tick, indexed as [variable][tick]
+    * @throws IOException
+    */
+   public double[][] readData(List<YoVariable> selectedVariables) throws IOException
+   {
+      int[] columns = new int[selectedVariables.size()];
+      for (int i = 0; i < columns.length; i++)
+      {
+         columns[i] = getColumn(selectedVariables.get(i));
+      }
+
+      long[][] rawData = readColumns(columns);
+      double[][] data = new double[columns.length][numberOfTicks];
+      for (int i = 0; i < columns.length; i++)
+      {
+         YoVariable variable = selectedVariables.get(i);
+         for (int tick = 0; tick < numberOfTicks; tick++)
+         {
+            variable.setValueFromLongBits(rawData[i][tick], false);
+            data[i][tick] = variable.getValueAsDouble();
+         }
+      }
+      return data;
+   }
+
+   /**
+    * @param variable Variable of this log
+    * @return the column of the variable
+    */
+   public int getColumn(YoVariable variable)
+   {
+      int index = variables.indexOf(variable);
+      if (index < 0)
+      {
+         throw new IllegalArgumentException(variable.getFullNameString() + " is not a variable of this log");
+      }
+      return index + 1;
+   }
+
+   /**
+    * Read the raw data of columns, as stored in the log. Column 0 is the timestamp, followed by the
+    * variables and the joint states.
+    *
+    * @param columns Columns to read
+    * @return the data of every column at every tick, indexed as [column][tick]
+    * @throws IOException
+    */
+   public long[][] readColumns(int... columns) throws IOException
+   {
+      long[][] data = new long[columns.length][numberOfTicks];
+
+      // Chunk by chunk, so the file is read front to back
+      for (int chunk = 0; chunk < numberOfChunks; chunk++)
+      {
+         int firstTick = chunk * ticksPerChunk;
+         int ticks = Math.min(ticksPerChunk, numberOfTicks - firstTick);
+         for (int i = 0; i < columns.length; i++)
+         {
+            readColumn(chunk, columns[i]);
+            columnBufferAsLong.clear();
+            columnBufferAsLong.get(data[i], firstTick, ticks);
+         }
+      }
+      return data;
+   }
+
+   private void readColumn(int chunk, int column) throws IOException
+   {
+      if (column < 0 || column >= lineLength)
+      {
+         throw new IndexOutOfBoundsException("Column " + column + " is out of bounds, the log has " + lineLength + " columns");
+      }
+
+      // The data of the column ends at the start of the next entry, or at the end of the data
+      long entry = (long) chunk * lineLength + column;
+      offsetBuffer.clear();
+      if (entry + 1 == numberOfEntries)
+      {
+         offsetBuffer.limit(8);
+      }
+      readFully(indexChannel, offsetBuffer, ColumnarLogWriter.HEADER_SIZE + entry * 8);
+      long start = offsetBuffer.getLong(0);
+      long end = entry + 1 == numberOfEntries ? dataSize : offsetBuffer.getLong(8);
+
+      compressedBuffer.clear();
+      compressedBuffer.limit((int) (end - start));
+      readFully(dataChannel, compressedBuffer, start);
+
+      shuffleBuffer.clear();
+      SnappyUtils.uncompress(compressedBuffer, shuffleBuffer);
+      shuffleBuffer.flip();
+
+      columnBuffer.clear();
+      ByteShuffle.unshuffle(shuffleBuffer, columnBuffer);
+   }
+
+   public void close() throws IOException
+   {
+      dataChannel.close();
+      indexChannel.close();
+      indexStream.close();
+   }
+}
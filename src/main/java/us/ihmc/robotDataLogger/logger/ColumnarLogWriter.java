@@ -0,0 +1,186 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import us.ihmc.tools.compression.ByteShuffle;
+import us.ihmc.tools.compression.SnappyUtils;
+
+/**
+ * Writes log data in columns, so a few variables can be extracted from a long log without
+ * decompressing every tick.
+ * <p>
+ * Ticks are collected in chunks of ticksPerChunk ticks. Every column of a chunk, the values of a
+ * single variable over the ticks of the chunk, is byte shuffled and compressed separately. Column 0
+ * holds the timestamps. The chunk directory starts with the line length, the number of ticks per
+ * chunk and the total number of ticks as longs, followed by the data offset of every column of
+ * every chunk, in the order they are written to the data file.
+ * </p>
+ * Use ColumnarLogReader to read the columns.
+ */
+public class ColumnarLogWriter
+{
+   /**
+    * Size of the chunk directory header in bytes
+    */
+   public static final int HEADER_SIZE = 24;
+
+   /**
+    * Default memory used to collect a chunk. A log of 30000 variables gets chunks of about a second
+    * at 1kHz.
+    */
+   public static final int DEFAULT_CHUNK_BUFFER_SIZE = 256 * 1024 * 1024;
+
+   /**
+    * Lower bound on the number of ticks in a chunk. Every column of every chunk has an entry in the
+    * chunk directory, short chunks make the directory of wide logs large.
+    */
+   public static final int MINIMUM_TICKS_PER_CHUNK = 256;
+
+   /**
+    * Upper bound on the number of ticks in a chunk, longer chunks do not compress better and make
+    * reading short ranges slower
+    */
+   public static final int MAXIMUM_TICKS_PER_CHUNK = 16384;
+
+   private final FileChannel dataChannel;
+   private final FileChannel indexChannel;
+   private final int lineLength;
+   private final int ticksPerChunk;
+
+   private final LogBlock chunk;
+   private final ByteBuffer columnBuffer;
+   private final LongBuffer columnBufferAsLong;
+   private final ByteBuffer shuffleBuffer;
+   private final ByteBuffer compressedBuffer;
+   private final ByteBuffer indexBuffer;
+
+   private long numberOfTicks = 0;
+
+   /**
+    * Calculate the number of ticks in a chunk
+    *
+    * @param lineLength      Number of longs in a tick
+    * @param chunkBufferSize Memory available to collect a chunk. Logs that are too wide to fit
+    *                        MINIMUM_TICKS_PER_CHUNK ticks use more memory.
+    * @return the number of ticks per chunk, at least one
+    */
+   public static int calculateTicksPerChunk(int lineLength, int chunkBufferSize)
+   {
+      long tickSize = lineLength * 8L;
+      int ticksPerChunk = (int) Math.max(MINIMUM_TICKS_PER_CHUNK, Math.min(MAXIMUM_TICKS_PER_CHUNK, chunkBufferSize / tickSize));
+      // The chunk is collected in a single buffer
+      return (int) Math.max(1, Math.min(ticksPerChunk, Integer.MAX_VALUE / tickSize));
+   }
+
+   /**
+    * @param dataChannel   Channel to write the compressed columns to
+    * @param indexChannel  Channel to write the chunk directory to
+    * @param lineLength    Number of longs in a tick, including the timestamp
+    * @param ticksPerChunk Number of ticks in a chunk
+    * @throws IOException
+    */
+   public ColumnarLogWriter(FileChannel dataChannel, FileChannel indexChannel, int lineLength, int ticksPerChunk) throws IOException
+   {
+      this.dataChannel = dataChannel;
+      this.indexChannel = indexChannel;
+      this.lineLength = lineLength;
+      this.ticksPerChunk = ticksPerChunk;
+
+      // The chunk is stored tick by tick and every column is gathered when it is written, so only a single buffer the size of a chunk is needed
+      chunk = new LogBlock(lineLength, ticksPerChunk, false);
+      columnBuffer = ByteBuffer.allocateDirect(ticksPerChunk * 8);
+      columnBufferAsLong = columnBuffer.asLongBuffer();
+      shuffleBuffer = ByteBuffer.allocateDirect(ticksPerChunk * 8);
+      compressedBuffer = ByteBuffer.allocateDirect(SnappyUtils.maxCompressedLength(ticksPerChunk * 8));
+      indexBuffer = ByteBuffer.allocate(lineLength * 8);
+
+      // Reserve the header, written by close()
+      indexChannel.position(HEADER_SIZE);
+   }
+
+   /**
+    * Add a tick
+    *
+    * @param tick Remaining bytes are the tick, lineLength longs starting with the timestamp
+    * @throws IOException
+    */
+   public void write(ByteBuffer tick) throws IOException
+   {
+      chunk.add(tick, tick.getLong(tick.position()));
+      ++numberOfTicks;
+      if (chunk.isFull())
+      {
+         writeChunk();
+      }
+   }
+
+   private void writeChunk() throws IOException
+   {
+      LongBuffer data = chunk.getData().asLongBuffer();
+      int numberOfTicksInChunk = chunk.getNumberOfTicks();
+
+      indexBuffer.clear();
+      for (int column = 0; column < lineLength; column++)
+      {
+         for (int tick = 0; tick < numberOfTicksInChunk; tick++)
+         {
+            columnBufferAsLong.put(tick, data.get(tick * lineLength + column));
+         }
+         columnBuffer.clear();
+         columnBuffer.limit(numberOfTicksInChunk * 8);
+
+         shuffleBuffer.clear();
+         ByteShuffle.shuffle(columnBuffer, shuffleBuffer);
+         shuffleBuffer.flip();
+
+         compressedBuffer.clear();
+         SnappyUtils.compress(shuffleBuffer, compressedBuffer);
+         compressedBuffer.flip();
+
+         indexBuffer.putLong(dataChannel.position());
+         while (compressedBuffer.hasRemaining())
+         {
+            dataChannel.write(compressedBuffer);
+         }
+      }
+      indexBuffer.flip();
+      while (indexBuffer.hasRemaining())
+      {
+         indexChannel.write(indexBuffer);
+      }
+
+      chunk.clear();
+   }
+
+   public long getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   /**
+    * Write the last chunk and the header of the chunk directory. Does not close the channels.
+    *
+    * @throws IOException
+    */
+   public void close() throws IOException
+   {
+      if (!chunk.isEmpty())
+      {
+         writeChunk();
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putLong(lineLength);
+      header.putLong(ticksPerChunk);
+      header.putLong(numberOfTicks);
+      header.flip();
+      long position = 0;
+      while (header.hasRemaining())
+      {
+         position += indexChannel.write(header, position);
+      }
+   }
+}
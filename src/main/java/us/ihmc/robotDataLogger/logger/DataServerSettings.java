@@ -7,13 +7,52 @@ package us.ihmc.robotDataLogger.logger;
  */
 public class DataServerSettings
 {
+   /**
+    * How the registry publishers pick up new data from the realtime thread
+    */
+   public enum PublishMode
+   {
+      /**
+       * Poll for new data every millisecond on the network event loop. Adds up to 1 ms of latency.
+       */
+      FIXED_RATE,
+
+      /**
+       * Wake up the network event loop when new data is committed. Wakeups are coalesced, so a tick
+       * signals the event loop at most once. The latency is bounded by the serialization time, at the
+       * cost of waking the event loop every tick.
+       */
+      EVENT_DRIVEN,
+
+      /**
+       * Poll for new data on a dedicated thread that never sleeps. This gives the lowest latency, but
+       * uses a full core. Only use this with a core reserved for the thread, for example by pinning the
+       * thread to an isolated core.
+       */
+      BUSY_SPIN
+   }
+
    public static final int DEFAULT_PORT = 8008;
    public static final boolean DEFAULT_AUTODISCOVERABLE = true;
+   public static final int DEFAULT_KEYFRAME_INTERVAL = 0;
+   public static final PublishMode DEFAULT_PUBLISH_MODE = PublishMode.FIXED_RATE;
+   public static final int DEFAULT_MAXIMUM_BATCH_SIZE = 1;
+   public static final long DEFAULT_MAXIMUM_BATCH_LATENCY = 1000000;
+   public static final int DEFAULT_NUMBER_OF_WORKER_THREADS = 1;
+   public static final boolean DEFAULT_BYTE_SHUFFLE = false;
+   public static final boolean DEFAULT_COMPRESSION_DICTIONARY = false;
 
    private boolean logSession;
    private String videoStream;
    private int port;
    private boolean autoDiscoverable;
+   private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+   private PublishMode publishMode = DEFAULT_PUBLISH_MODE;
+   private int maximumBatchSize = DEFAULT_MAXIMUM_BATCH_SIZE;
+   private long maximumBatchLatency = DEFAULT_MAXIMUM_BATCH_LATENCY;
+   private int numberOfWorkerThreads = DEFAULT_NUMBER_OF_WORKER_THREADS;
+   private boolean byteShuffle = DEFAULT_BYTE_SHUFFLE;
+   private boolean compressionDictionary = DEFAULT_COMPRESSION_DICTIONARY;
 
    /**
     * Settings for the data server Intialized to the default port with autoDiscoverable set to true.
@@ -105,4 +144,153 @@ public class DataServerSettings
       this.videoStream = videoStream;
    }
 
+   public int getKeyframeInterval()
+   {
+      return keyframeInterval;
+   }
+
+   /**
+    * Enable XOR encoding of registry data against periodic keyframes. Variables that do not change
+    * between keyframes are sent as zeros, which significantly reduces the bandwidth after compression.
+    * If only a few variables differ from the keyframe, only (index, value) pairs of those variables are
+    * send. Keyframes are always send to clients, also when the update rate is limited, and a new
+    * keyframe is send when a client connects. Clients that miss a keyframe skip data till the next
+    * keyframe arrives.
+    *
+    * @param keyframeInterval Number of ticks between keyframes. Set to 0 to send every packet as a
+    *                         full snapshot (default).
+    */
+   public void setKeyframeInterval(int keyframeInterval)
+   {
+      if (keyframeInterval < 0)
+      {
+         throw new IllegalArgumentException("Keyframe interval cannot be negative");
+      }
+      this.keyframeInterval = keyframeInterval;
+   }
+
+   public PublishMode getPublishMode()
+   {
+      return publishMode;
+   }
+
+   /**
+    * Set how the registry publishers pick up new data. See {@link PublishMode}.
+    *
+    * @param publishMode (default: FIXED_RATE)
+    */
+   public void setPublishMode(PublishMode publishMode)
+   {
+      if (publishMode == null)
+      {
+         throw new IllegalArgumentException("Publish mode cannot be null");
+      }
+      this.publishMode = publishMode;
+   }
+
+   public int getMaximumBatchSize()
+   {
+      return maximumBatchSize;
+   }
+
+   /**
+    * Combine up to maximumBatchSize ticks of a registry in a single websocket frame. This reduces the
+    * per frame overhead and improves the compression ratio, because the ticks are compressed together.
+    * Only clients that receive every tick of all variables get batches. Batches are send when full or
+    * when the oldest tick in the batch is older than the maximum batch latency. Clients older than
+    * this feature cannot decode batches, only enable this if all clients are updated.
+    *
+    * @param maximumBatchSize Maximum number of ticks in a batch. Set to 1 to disable batching
+    *                         (default).
+    */
+   public void setMaximumBatchSize(int maximumBatchSize)
+   {
+      if (maximumBatchSize < 1)
+      {
+         throw new IllegalArgumentException("Maximum batch size has to be at least 1");
+      }
+      this.maximumBatchSize = maximumBatchSize;
+   }
+
+   public long getMaximumBatchLatency()
+   {
+      return maximumBatchLatency;
+   }
+
+   /**
+    * Set the maximum time a tick waits in a batch before the batch is send. With
+    * PublishMode.FIXED_RATE, batches are checked every millisecond.
+    *
+    * @param maximumBatchLatency Maximum latency in nanoseconds (default: 1 ms)
+    */
+   public void setMaximumBatchLatency(long maximumBatchLatency)
+   {
+      if (maximumBatchLatency <= 0)
+      {
+         throw new IllegalArgumentException("Maximum batch latency has to be positive");
+      }
+      this.maximumBatchLatency = maximumBatchLatency;
+   }
+
+   public int getNumberOfWorkerThreads()
+   {
+      return numberOfWorkerThreads;
+   }
+
+   /**
+    * Set the number of network threads. Each registry publisher is pinned to one of the threads, so
+    * the data of a registry is always send in order. Registries are assigned round robin, so the
+    * serialization of multiple registries can run in parallel. Client connections are spread over the
+    * same threads. With a single thread, all writes happen on the event loop of the client channel
+    * without extra allocations. With more threads, writes to a channel on another thread are queued
+    * on the event loop of that channel. In PublishMode.BUSY_SPIN, registry data is serialized on the
+    * busy spin thread and only the client connections use these threads.
+    *
+    * @param numberOfWorkerThreads Number of threads (default: 1)
+    */
+   public void setNumberOfWorkerThreads(int numberOfWorkerThreads)
+   {
+      if (numberOfWorkerThreads < 1)
+      {
+         throw new IllegalArgumentException("At least one worker thread is required");
+      }
+      this.numberOfWorkerThreads = numberOfWorkerThreads;
+   }
+
+   public boolean getByteShuffle()
+   {
+      return byteShuffle;
+   }
+
+   /**
+    * Apply a byte shuffle filter to the registry data before compression. The filter groups byte i of
+    * every variable together, so the slowly changing high order bytes compress a lot better. This
+    * costs an extra pass over the data on both the server and the client. Clients are told about the
+    * filter in the announcement, so clients that predate this option cannot decode the data.
+    *
+    * @param byteShuffle Enable the byte shuffle filter (default: false)
+    */
+   public void setByteShuffle(boolean byteShuffle)
+   {
+      this.byteShuffle = byteShuffle;
+   }
+
+   public boolean getCompressionDictionary()
+   {
+      return compressionDictionary;
+   }
+
+   /**
+    * Encode the registry data against a snapshot of all variables taken when the server starts.
+    * Clients download the snapshot together with the handshake. Every variable is XOR'ed with its
+    * snapshot value before compression, so variables that are still at their initial value, like
+    * parameters and unused variables, compress to almost nothing. This helps most for small registries
+    * and sessions without keyframes, where every packet is compressed from scratch.
+    *
+    * @param compressionDictionary Enable the compression dictionary (default: false)
+    */
+   public void setCompressionDictionary(boolean compressionDictionary)
+   {
+      this.compressionDictionary = compressionDictionary;
+   }
 }
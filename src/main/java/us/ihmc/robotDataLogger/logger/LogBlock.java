@@ -0,0 +1,209 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Collects consecutive ticks into a block that is compressed as a single unit. Compressing many
+ * ticks together lets the compressor find the repetition between ticks, which gives a far better
+ * compression ratio than compressing every tick separately.
+ * <p>
+ * A block is stored tick by tick, or transposed variable by variable. In a transposed block the
+ * value of variable v at tick t is stored at v * numberOfTicks + t, so slowly changing variables
+ * form long runs of similar values.
+ * </p>
+ */
+public class LogBlock
+{
+   public static final int DEFAULT_TICKS_PER_BLOCK = 256;
+
+   /**
+    * Upper bound on the uncompressed size of a block
+    */
+   public static final int MAXIMUM_BLOCK_SIZE = 1024 * 1024;
+
+   private final int lineLength;
+   private final int ticksPerBlock;
+   private final boolean transposed;
+
+   private final ByteBuffer ticks;
+   private final LongBuffer ticksAsLong;
+   private final ByteBuffer transposedTicks;
+   private final LongBuffer transposedTicksAsLong;
+
+   private int numberOfTicks = 0;
+   private long firstTimestamp;
+   private long lastTimestamp;
+
+   /**
+    * Calculate the number of ticks in a block, limited by MAXIMUM_BLOCK_SIZE
+    *
+    * @param requestedTicksPerBlock Desired number of ticks per block
+    * @param lineLength             Number of longs in a tick
+    * @return the number of ticks per block, at least one
+    */
+   public static int calculateTicksPerBlock(int requestedTicksPerBlock, int lineLength)
+   {
+      int maximumTicks = Math.max(1, MAXIMUM_BLOCK_SIZE / (lineLength * 8));
+      return Math.max(1, Math.min(requestedTicksPerBlock, maximumTicks));
+   }
+
+   /**
+    * @param lineLength    Number of longs in a tick, including the timestamp
+    * @param ticksPerBlock Maximum number of ticks in a block
+    * @param transposed    Store the block variable by variable
+    */
+   public LogBlock(int lineLength, int ticksPerBlock, boolean transposed)
+   {
+      this.lineLength = lineLength;
+      this.ticksPerBlock = ticksPerBlock;
+      this.transposed = transposed;
+
+      ticks = ByteBuffer.allocateDirect(lineLength * ticksPerBlock * 8);
+      ticksAsLong = ticks.asLongBuffer();
+      if (transposed)
+      {
+         transposedTicks = ByteBuffer.allocateDirect(lineLength * ticksPerBlock * 8);
+         transposedTicksAsLong = transposedTicks.asLongBuffer();
+      }
+      else
+      {
+         transposedTicks = null;
+         transposedTicksAsLong = null;
+      }
+   }
+
+   /**
+    * Add a tick to the block
+    *
+    * @param tick      Remaining bytes are the tick, lineLength longs starting with the timestamp
+    * @param timestamp Timestamp of the tick
+    */
+   public void add(ByteBuffer tick, long timestamp)
+   {
+      if (isFull())
+      {
+         throw new IllegalStateException("Block is full");
+      }
+
+      ticks.limit(ticks.capacity());
+      ticks.position(numberOfTicks * lineLength * 8);
+      ticks.put(tick);
+
+      if (numberOfTicks == 0)
+      {
+         firstTimestamp = timestamp;
+      }
+      lastTimestamp = timestamp;
+      ++numberOfTicks;
+   }
+
+   /**
+    * @return the data of the block, transposed if enabled, with position 0 and limit at the end of the
+    *         last tick. The buffer is reused for the next block.
+    */
+   public ByteBuffer getData()
+   {
+      int size = numberOfTicks * lineLength * 8;
+      if (transposed)
+      {
+         for (int t = 0; t < numberOfTicks; t++)
+         {
+            int row = t * lineLength;
+            for (int v = 0; v < lineLength; v++)
+            {
+               transposedTicksAsLong.put(v * numberOfTicks + t, ticksAsLong.get(row + v));
+            }
+         }
+         transposedTicks.clear();
+         transposedTicks.limit(size);
+         return transposedTicks;
+      }
+      else
+      {
+         ticks.clear();
+         ticks.limit(size);
+         return ticks;
+      }
+   }
+
+   public void clear()
+   {
+      numberOfTicks = 0;
+   }
+
+   public boolean isFull()
+   {
+      return numberOfTicks == ticksPerBlock;
+   }
+
+   public boolean isEmpty()
+   {
+      return numberOfTicks == 0;
+   }
+
+   public int getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   public int getTicksPerBlock()
+   {
+      return ticksPerBlock;
+   }
+
+   public long getFirstTimestamp()
+   {
+      return firstTimestamp;
+   }
+
+   public long getLastTimestamp()
+   {
+      return lastTimestamp;
+   }
+
+   /**
+    * Get the timestamp of a tick in an uncompressed block
+    *
+    * @param block         Data of the block
+    * @param tick          Index of the tick in the block
+    * @param numberOfTicks Number of ticks in the block
+    * @param lineLength    Number of longs in a tick
+    * @param transposed    The block is stored variable by variable
+    * @return the timestamp of the tick
+    */
+   public static long getTimestamp(LongBuffer block, int tick, int numberOfTicks, int lineLength, boolean transposed)
+   {
+      // The timestamp is the first element of a tick
+      return transposed ? block.get(tick) : block.get(tick * lineLength);
+   }
+
+   /**
+    * Copy a tick out of an uncompressed block
+    *
+    * @param block         Data of the block
+    * @param tick          Index of the tick in the block
+    * @param numberOfTicks Number of ticks in the block
+    * @param lineLength    Number of longs in a tick
+    * @param transposed    The block is stored variable by variable
+    * @param destination   Buffer to copy the tick to, starting at index 0
+    */
+   public static void getTick(LongBuffer block, int tick, int numberOfTicks, int lineLength, boolean transposed, LongBuffer destination)
+   {
+      if (transposed)
+      {
+         for (int v = 0; v < lineLength; v++)
+         {
+            destination.put(v, block.get(v * numberOfTicks + tick));
+         }
+      }
+      else
+      {
+         int row = tick * lineLength;
+         for (int v = 0; v < lineLength; v++)
+         {
+            destination.put(v, block.get(row + v));
+         }
+      }
+   }
+}
@@ -0,0 +1,219 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import us.ihmc.commons.Conversions;
+import us.ihmc.log.LogTools;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+import us.ihmc.robotDataLogger.util.LatencyHistogram;
+
+/**
+ * Forces the log to disk on a separate thread, at most once every sync interval. All data written
+ * since the last sync is made durable by a single sync (group commit), so neither the thread that
+ * receives the data nor the disk writer waits for the disk. Data that reached the channels is
+ * durable at most one sync interval plus the duration of a sync after it is written.
+ * <p>
+ * The writer hands the index entries to the syncer instead of writing them to the index file. A
+ * sync first takes the entries handed over so far, forces the data they point to, and only then
+ * writes the entries to the index file and forces it. Data written while the data is forced is not
+ * necessarily durable, but its index entries wait for the next sync. An index entry in the file
+ * never points past data that was forced before it, also for logs without checksums.
+ * </p>
+ */
+class LogDiskSyncer extends Thread
+{
+   /**
+    * Default sync interval in milliseconds
+    */
+   static final int DEFAULT_SYNC_INTERVAL = 250;
+
+   /**
+    * Initial size of the index buffers, grows if a sync takes long
+    */
+   private static final int INITIAL_INDEX_CAPACITY = 64 * 1024;
+
+   private final FileChannel dataChannel;
+   private final FileChannel indexChannel;
+   private final long syncInterval;
+   private final DebugRegistry debugRegistry;
+
+   private final LatencyHistogram latencyHistogram = new LatencyHistogram("Disk sync latency");
+
+   private volatile boolean running = true;
+
+   /**
+    * Guards the index buffers and the generation between the writer and the sync thread
+    */
+   private final Object indexLock = new Object();
+   private ByteBuffer pendingIndex = ByteBuffer.allocate(INITIAL_INDEX_CAPACITY);
+   private ByteBuffer syncingIndex = ByteBuffer.allocate(INITIAL_INDEX_CAPACITY);
+   private int generation = 0;
+
+   // Updated by the sync thread
+   private volatile long lastSyncDuration = 0;
+
+   /**
+    * @param dataChannel   Channel with the log data
+    * @param indexChannel  Channel with the index
+    * @param syncInterval  Minimum time between syncs in milliseconds, the maximum time written data
+    *                      is not durable is about this interval plus the duration of a sync
+    * @param debugRegistry Registry to report the sync duration, updated from the producer thread
+    */
+   LogDiskSyncer(FileChannel dataChannel, FileChannel indexChannel, int syncInterval, DebugRegistry debugRegistry)
+   {
+      super("LogDiskSyncer");
+      this.dataChannel = dataChannel;
+      this.indexChannel = indexChannel;
+      this.syncInterval = Conversions.millisecondsToNanoseconds(Math.max(1, syncInterval));
+      this.debugRegistry = debugRegistry;
+
+      setDaemon(true);
+   }
+
+   /**
+    * Hand over the index entries of data that is written to the data channel. The entries are
+    * written to the index channel after the data is forced to disk.
+    *
+    * @param index Index entries, from position to limit
+    */
+   void written(ByteBuffer index)
+   {
+      synchronized (indexLock)
+      {
+         if (pendingIndex.remaining() < index.remaining())
+         {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * pendingIndex.capacity(), pendingIndex.position() + index.remaining()));
+            pendingIndex.flip();
+            grown.put(pendingIndex);
+            pendingIndex = grown;
+         }
+         pendingIndex.put(index);
+      }
+   }
+
+   /**
+    * Discard the index entries that are not written yet. Call before the channels are truncated.
+    */
+   void clear()
+   {
+      synchronized (indexLock)
+      {
+         ++generation;
+         pendingIndex.clear();
+      }
+   }
+
+   /**
+    * Report the sync duration in the debug registry. Only call from the producer thread.
+    */
+   void updateDebugVariables()
+   {
+      debugRegistry.getDiskSyncDuration().set(Conversions.nanosecondsToSeconds(lastSyncDuration));
+      debugRegistry.getDiskSyncMaximumDuration().set(Conversions.nanosecondsToSeconds(latencyHistogram.getMaximum()));
+   }
+
+   LatencyHistogram getLatencyHistogram()
+   {
+      return latencyHistogram;
+   }
+
+   @Override
+   public void run()
+   {
+      long lastSync = System.nanoTime();
+      while (running)
+      {
+         long wait = lastSync + syncInterval - System.nanoTime();
+         if (wait > 0)
+         {
+            LockSupport.parkNanos(this, wait);
+            continue;
+         }
+
+         lastSync = System.nanoTime();
+         if (!sync())
+         {
+            return;
+         }
+      }
+   }
+
+   /**
+    * @return false if the channels are closed
+    */
+   private boolean sync()
+   {
+      int syncGeneration;
+      synchronized (indexLock)
+      {
+         if (pendingIndex.position() == 0)
+         {
+            return true;
+         }
+
+         ByteBuffer swap = syncingIndex;
+         syncingIndex = pendingIndex;
+         pendingIndex = swap;
+         pendingIndex.clear();
+         syncGeneration = generation;
+      }
+
+      try
+      {
+         long start = System.nanoTime();
+         // The data of all entries in syncingIndex was written before they were handed over
+         dataChannel.force(false);
+
+         syncingIndex.flip();
+         synchronized (indexLock)
+         {
+            // Entries from before a clear() point into truncated data
+            if (syncGeneration == generation)
+            {
+               while (syncingIndex.hasRemaining())
+               {
+                  indexChannel.write(syncingIndex);
+               }
+            }
+         }
+         indexChannel.force(false);
+
+         lastSyncDuration = System.nanoTime() - start;
+         latencyHistogram.record(lastSyncDuration);
+      }
+      catch (ClosedChannelException e)
+      {
+         return false;
+      }
+      catch (IOException e)
+      {
+         LogTools.error("Cannot sync log data: " + e.getMessage());
+      }
+      return true;
+   }
+
+   /**
+    * Sync the remaining data and write the remaining index entries, and stop the sync thread. Close
+    * the writer first. Does not close the channels.
+    */
+   void close()
+   {
+      running = false;
+      LockSupport.unpark(this);
+      try
+      {
+         join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      sync();
+
+      LogTools.info(latencyHistogram.toString());
+   }
+}
@@ -0,0 +1,475 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import us.ihmc.commons.Conversions;
+import us.ihmc.concurrent.ConcurrentRingBuffer;
+import us.ihmc.log.LogTools;
+import us.ihmc.robotDataLogger.LogIndex;
+import us.ihmc.robotDataLogger.LogRecordHeader;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+
+/**
+ * Writes compressed log records to disk on a separate thread, so a disk stall does not block the
+ * thread that receives the data. Records are compressed by the producer into preallocated buffers
+ * of a single producer, single consumer ring buffer. The writer thread takes all available records
+ * and writes them with a single gathering write for the data and the index. If the ring buffer is
+ * full, new records are dropped and counted instead of waiting for the disk. Forcing the data to
+ * the disk is left to a LogDiskSyncer, so a slow sync does not hold up the writes. With a syncer,
+ * the syncer writes the index entries once the data they point to is on disk.
+ * <p>
+ * A record is either a single tick, or a block of ticks for logs written in blocks. Blocks get a
+ * LogIndex.BLOCK_ENTRY_SIZE index entry. With checksums, the writer thread puts a LogRecordHeader in
+ * front of every record.
+ * </p>
+ * <p>
+ * Optionally the data file is preallocated in large chunks by the writer thread, and truncated to
+ * the length of the data on close().
+ * </p>
+ */
+class LogDiskWriter extends Thread
+{
+   /**
+    * Number of records the ring buffer can hold. Record buffers are allocated when first used, so
+    * memory only grows if the disk falls behind.
+    */
+   static final int DEFAULT_CAPACITY = 1024;
+
+   /**
+    * Maximum number of records in a single gathering write
+    */
+   private static final int MAXIMUM_BATCH_SIZE = 64;
+
+   /**
+    * Maximum time to park while the buffer is empty, so a missed wakeup only costs latency
+    */
+   private static final long MAXIMUM_PARK_TIME = Conversions.millisecondsToNanoseconds(100);
+
+   static class Record
+   {
+      private final int capacity;
+      private ByteBuffer data;
+      private long timestamp;
+      private long lastTimestamp;
+      private int numberOfTicks;
+      private int generation;
+
+      private Record(int capacity)
+      {
+         this.capacity = capacity;
+      }
+
+      private ByteBuffer getData()
+      {
+         if (data == null)
+         {
+            data = ByteBuffer.allocateDirect(capacity);
+         }
+         return data;
+      }
+   }
+
+   private final FileChannel dataChannel;
+   private final FileChannel indexChannel;
+   private final LogDiskSyncer syncer;
+   private final boolean blocks;
+   private final DebugRegistry debugRegistry;
+
+   private final ConcurrentRingBuffer<Record> ringBuffer;
+   private final ByteBuffer[] dataBuffers = new ByteBuffer[2 * MAXIMUM_BATCH_SIZE];
+   private final ByteBuffer indexBuffer;
+
+   // Record headers, null if the log has no checksums
+   private final LogRecordHeader recordHeader;
+   private final ByteBuffer headerBuffer;
+
+   // Null if the data file is not preallocated
+   private LogFilePreallocator preallocator = null;
+
+   /**
+    * Guards the channels between the writer thread and clear()
+    */
+   private final Object channelLock = new Object();
+   private volatile int generation = 0;
+   private long dataPosition;
+
+   private volatile boolean running = true;
+   private volatile boolean waitingForData = false;
+   private volatile IOException error = null;
+
+   // Updated by the producer
+   private Record nextRecord = null;
+   private long committedRecords = 0;
+   private boolean dropping = false;
+
+   // Updated by the writer thread
+   private volatile long writtenRecords = 0;
+   private volatile long lastWriteDuration = 0;
+
+   /**
+    * @param dataChannel         Channel to write the compressed data to
+    * @param indexChannel        Channel to write the index to
+    * @param maximumRecordSize   Maximum size of a compressed record
+    * @param capacity            Number of records that can be waiting for the disk
+    * @param syncer              Syncer that forces the written data to disk, null to leave it to the
+    *                            operating system
+    * @param debugRegistry       Registry to report the queue size, dropped records and write
+    *                            duration, updated from the producer thread
+    * @throws IOException
+    */
+   LogDiskWriter(FileChannel dataChannel, FileChannel indexChannel, int maximumRecordSize, int capacity, LogDiskSyncer syncer,
+                 DebugRegistry debugRegistry)
+         throws IOException
+   {
+      this(dataChannel, indexChannel, maximumRecordSize, capacity, syncer, false, debugRegistry);
+   }
+
+   /**
+    * @param dataChannel         Channel to write the compressed data to
+    * @param indexChannel        Channel to write the index to
+    * @param maximumRecordSize   Maximum size of a compressed record
+    * @param capacity            Number of records that can be waiting for the disk
+    * @param syncer              Syncer that forces the written data to disk, null to leave it to the
+    *                            operating system
+    * @param blocks              Records are blocks of ticks, committed with commitBlock()
+    * @param debugRegistry       Registry to report the queue size, dropped records and write
+    *                            duration, updated from the producer thread
+    * @throws IOException
+    */
+   LogDiskWriter(FileChannel dataChannel, FileChannel indexChannel, int maximumRecordSize, int capacity, LogDiskSyncer syncer, boolean blocks,
+                 DebugRegistry debugRegistry)
+         throws IOException
+   {
+      this(dataChannel, indexChannel, maximumRecordSize, capacity, syncer, blocks, false, debugRegistry);
+   }
+
+   /**
+    * @param dataChannel         Channel to write the compressed data to
+    * @param indexChannel        Channel to write the index to
+    * @param maximumRecordSize   Maximum size of a compressed record
+    * @param capacity            Number of records that can be waiting for the disk
+    * @param syncer              Syncer that forces the written data to disk, null to leave it to the
+    *                            operating system
+    * @param blocks              Records are blocks of ticks, committed with commitBlock()
+    * @param checksums           Write a LogRecordHeader in front of every record
+    * @param debugRegistry       Registry to report the queue size, dropped records and write
+    *                            duration, updated from the producer thread
+    * @throws IOException
+    */
+   LogDiskWriter(FileChannel dataChannel, FileChannel indexChannel, int maximumRecordSize, int capacity, LogDiskSyncer syncer, boolean blocks,
+                 boolean checksums, DebugRegistry debugRegistry)
+         throws IOException
+   {
+      super("LogDiskWriter");
+      this.dataChannel = dataChannel;
+      this.indexChannel = indexChannel;
+      this.syncer = syncer;
+      this.blocks = blocks;
+      this.debugRegistry = debugRegistry;
+      this.dataPosition = dataChannel.position();
+
+      indexBuffer = ByteBuffer.allocate((blocks ? LogIndex.BLOCK_ENTRY_SIZE : LogIndex.ENTRY_SIZE) * MAXIMUM_BATCH_SIZE);
+      if (checksums)
+      {
+         recordHeader = new LogRecordHeader();
+         headerBuffer = ByteBuffer.allocateDirect(LogRecordHeader.SIZE * MAXIMUM_BATCH_SIZE);
+      }
+      else
+      {
+         recordHeader = null;
+         headerBuffer = null;
+      }
+
+      ringBuffer = new ConcurrentRingBuffer<>(() -> new Record(maximumRecordSize), capacity);
+
+      setDaemon(true);
+   }
+
+   /**
+    * Get the buffer to compress the next record into. Only call from the producer thread.
+    *
+    * @return an empty buffer of at least maximumRecordSize bytes, or null if the disk cannot keep up
+    *         and the record should be dropped
+    */
+   ByteBuffer next()
+   {
+      if (error != null)
+      {
+         throw new RuntimeException("Cannot write log data", error);
+      }
+
+      nextRecord = ringBuffer.next();
+      updateDebugVariables();
+      if (nextRecord == null)
+      {
+         debugRegistry.getDiskWriterDroppedRecords().increment();
+         if (!dropping)
+         {
+            LogTools.warn("Disk cannot keep up, dropping log data");
+            dropping = true;
+         }
+         return null;
+      }
+
+      dropping = false;
+      ByteBuffer data = nextRecord.getData();
+      data.clear();
+      return data;
+   }
+
+   /**
+    * Replace the buffer returned by next() with a larger buffer holding the same data, for records
+    * that do not fit in maximumRecordSize bytes. The record keeps the larger buffer. Only call from
+    * the producer thread, before the record is committed.
+    *
+    * @param minimumCapacity number of bytes the new buffer holds at least
+    * @return the new buffer, positioned after the copied data
+    */
+   ByteBuffer grow(int minimumCapacity)
+   {
+      ByteBuffer data = nextRecord.getData();
+      ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(minimumCapacity, 2 * data.capacity()));
+      data.flip();
+      grown.put(data);
+      nextRecord.data = grown;
+      return grown;
+   }
+
+   /**
+    * Queue the record returned by next(). The data of the record should be flipped, ready to be
+    * written. Only call from the producer thread.
+    *
+    * @param timestamp timestamp of the record, written to the index
+    */
+   void commit(long timestamp)
+   {
+      commitBlock(timestamp, timestamp, 1);
+   }
+
+   /**
+    * Queue the block returned by next(). The data of the block should be flipped, ready to be
+    * written. Only call from the producer thread.
+    *
+    * @param firstTimestamp timestamp of the first tick in the block
+    * @param lastTimestamp  timestamp of the last tick in the block
+    * @param numberOfTicks  number of ticks in the block
+    */
+   void commitBlock(long firstTimestamp, long lastTimestamp, int numberOfTicks)
+   {
+      nextRecord.timestamp = firstTimestamp;
+      nextRecord.lastTimestamp = lastTimestamp;
+      nextRecord.numberOfTicks = numberOfTicks;
+      nextRecord.generation = generation;
+      nextRecord = null;
+      ringBuffer.commit();
+      ++committedRecords;
+
+      if (waitingForData)
+      {
+         LockSupport.unpark(this);
+      }
+   }
+
+   /**
+    * Preallocate the data file in chunks of chunkSize bytes. Only call before start(). Only
+    * available for logs with checksums, without them LogRecovery cannot tell the data of a crashed
+    * log from the zeros behind it.
+    *
+    * @param chunkSize Number of bytes to allocate at once
+    * @throws IOException
+    */
+   void preallocate(long chunkSize) throws IOException
+   {
+      if (recordHeader == null)
+      {
+         throw new IllegalStateException("Preallocating the data file requires checksums");
+      }
+      preallocator = new LogFilePreallocator(dataChannel, chunkSize);
+   }
+
+   private void updateDebugVariables()
+   {
+      debugRegistry.getDiskWriterQueueSize().set((int) (committedRecords - writtenRecords));
+      debugRegistry.getDiskWriteDuration().set(Conversions.nanosecondsToSeconds(lastWriteDuration));
+      if (syncer != null)
+      {
+         syncer.updateDebugVariables();
+      }
+   }
+
+   /**
+    * Discard all records that are not written yet and truncate the log. Records committed after this
+    * call are written to the start of the log.
+    *
+    * @throws IOException
+    */
+   void clear() throws IOException
+   {
+      synchronized (channelLock)
+      {
+         ++generation;
+         if (syncer != null)
+         {
+            syncer.clear();
+         }
+         dataChannel.truncate(0);
+         indexChannel.truncate(0);
+         dataPosition = 0;
+         if (preallocator != null)
+         {
+            preallocator.reset();
+         }
+      }
+   }
+
+   @Override
+   public void run()
+   {
+      while (running || ringBuffer.poll())
+      {
+         if (!ringBuffer.poll())
+         {
+            waitingForData = true;
+            // Check again after setting the flag, the producer only unparks this thread if it sees the flag
+            if (running && !ringBuffer.poll())
+            {
+               LockSupport.parkNanos(this, MAXIMUM_PARK_TIME);
+            }
+            waitingForData = false;
+            continue;
+         }
+
+         try
+         {
+            writeBatch();
+         }
+         catch (IOException e)
+         {
+            LogTools.error("Cannot write log data: " + e.getMessage());
+            error = e;
+            return;
+         }
+      }
+   }
+
+   private void writeBatch() throws IOException
+   {
+      synchronized (channelLock)
+      {
+         long start = System.nanoTime();
+
+         indexBuffer.clear();
+         if (headerBuffer != null)
+         {
+            headerBuffer.clear();
+         }
+         long bytes = 0;
+         int buffers = 0;
+         int records = 0;
+         int read = 0;
+         Record record;
+         while (read < MAXIMUM_BATCH_SIZE && (record = ringBuffer.read()) != null)
+         {
+            ++read;
+            if (record.generation != generation)
+            {
+               // Queued before the log was cleared
+               continue;
+            }
+
+            ByteBuffer data = record.getData();
+            indexBuffer.putLong(record.timestamp);
+            if (blocks)
+            {
+               indexBuffer.putLong(record.lastTimestamp);
+               indexBuffer.putLong(dataPosition);
+               indexBuffer.putLong(record.numberOfTicks);
+            }
+            else
+            {
+               indexBuffer.putLong(dataPosition);
+            }
+            if (recordHeader != null)
+            {
+               // The CRC is calculated here, so the producer does not pay for it
+               ByteBuffer header = headerBuffer.slice();
+               header.limit(LogRecordHeader.SIZE);
+               recordHeader.write(header, data, record.timestamp, record.lastTimestamp, record.numberOfTicks);
+               header.flip();
+               headerBuffer.position(headerBuffer.position() + LogRecordHeader.SIZE);
+
+               dataPosition += LogRecordHeader.SIZE;
+               bytes += LogRecordHeader.SIZE;
+               dataBuffers[buffers++] = header;
+            }
+            dataPosition += data.remaining();
+            bytes += data.remaining();
+            dataBuffers[buffers++] = data;
+            ++records;
+         }
+         indexBuffer.flip();
+
+         if (preallocator != null)
+         {
+            preallocator.ensureAllocated(dataPosition);
+         }
+         while (bytes > 0)
+         {
+            bytes -= dataChannel.write(dataBuffers, 0, buffers);
+         }
+         if (syncer == null)
+         {
+            while (indexBuffer.hasRemaining())
+            {
+               indexChannel.write(indexBuffer);
+            }
+         }
+         else if (records > 0)
+         {
+            syncer.written(indexBuffer);
+         }
+
+         for (int i = 0; i < buffers; i++)
+         {
+            dataBuffers[i] = null;
+         }
+         ringBuffer.flush();
+
+         writtenRecords += read;
+         lastWriteDuration = System.nanoTime() - start;
+      }
+   }
+
+   /**
+    * Write the remaining records and stop the writer thread. A preallocated data file is truncated to
+    * the length of the data. Does not close the channels.
+    */
+   void close()
+   {
+      running = false;
+      LockSupport.unpark(this);
+      try
+      {
+         join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      if (preallocator != null)
+      {
+         try
+         {
+            preallocator.truncate(dataPosition);
+         }
+         catch (IOException e)
+         {
+            LogTools.error("Cannot truncate preallocated log data: " + e.getMessage());
+         }
+      }
+   }
+}
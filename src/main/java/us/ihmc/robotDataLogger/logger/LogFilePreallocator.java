@@ -0,0 +1,102 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Allocates a log file ahead of the writes in large chunks, so the file system can give the file
+ * a few large extents instead of many small ones while several loggers write at once.
+ * <p>
+ * The chunks are filled with zeros. Extending the file with setLength() would create a sparse file
+ * on most Linux file systems, which allocates the blocks on the next write just like appending
+ * does. Java has no access to fallocate(), so writing the chunk is the portable way to allocate it.
+ * The writes only go to the page cache, the file system allocates the chunk at once when it is
+ * flushed. Every byte of data is written twice, once as zero and once as data. Forcing the file to
+ * disk also writes the zeros ahead of the data.
+ * </p>
+ * <p>
+ * The file is longer than the data until truncate() is called. A log that is not closed properly
+ * ends in zeros, LogRecovery only finds the end of the data for logs with checksums. LogDiskWriter
+ * only preallocates logs with checksums.
+ * </p>
+ */
+class LogFilePreallocator
+{
+   /**
+    * Size of the zero buffer written to the file
+    */
+   private static final int WRITE_SIZE = 1024 * 1024;
+
+   private final FileChannel channel;
+   private final long chunkSize;
+   private final ByteBuffer zeros;
+
+   private long allocated;
+
+   /**
+    * @param channel   Channel to preallocate
+    * @param chunkSize Number of bytes to allocate at once
+    * @throws IOException
+    */
+   LogFilePreallocator(FileChannel channel, long chunkSize) throws IOException
+   {
+      if (chunkSize <= 0)
+      {
+         throw new IllegalArgumentException("The chunk size should be positive");
+      }
+
+      this.channel = channel;
+      this.chunkSize = chunkSize;
+      this.zeros = ByteBuffer.allocateDirect((int) Math.min(WRITE_SIZE, chunkSize));
+      this.allocated = channel.size();
+   }
+
+   /**
+    * Make sure the file is allocated up to end. Allocates a whole chunk at a time.
+    *
+    * @param end position the next write will end at
+    * @throws IOException
+    */
+   void ensureAllocated(long end) throws IOException
+   {
+      while (allocated < end)
+      {
+         long chunkEnd = allocated + chunkSize;
+         while (allocated < chunkEnd)
+         {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), chunkEnd - allocated));
+            allocated += channel.write(zeros, allocated);
+         }
+      }
+   }
+
+   /**
+    * Call after the channel is truncated to zero, the next write allocates a new chunk.
+    */
+   void reset()
+   {
+      allocated = 0;
+   }
+
+   /**
+    * @return the number of bytes allocated in the file
+    */
+   long getAllocated()
+   {
+      return allocated;
+   }
+
+   /**
+    * Remove the unused part of the last chunk.
+    *
+    * @param size the length of the data in the file
+    * @throws IOException
+    */
+   void truncate(long size) throws IOException
+   {
+      channel.truncate(size);
+      allocated = Math.min(allocated, size);
+   }
+}
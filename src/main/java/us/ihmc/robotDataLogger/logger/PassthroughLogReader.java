@@ -0,0 +1,459 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.robotDataLogger.LogIndex;
+import us.ihmc.robotDataLogger.LogProperties;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryBuffer;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryDecompressor;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBuffer;
+import us.ihmc.robotDataLogger.handshake.IDLYoVariableHandshakeParser;
+import us.ihmc.robotDataLogger.jointState.JointState;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Reads logs written in passthrough mode. The registry packets are replayed through a
+ * RegistryDecompressor, so after reading a tick the variables and joint states hold the full state
+ * at that tick. See PassthroughLogWriter for the format.
+ * <p>
+ * Packets can depend on keyframes sent earlier. The reader keeps an index of the ticks at which a
+ * registry sends a keyframe, or a DATA_PACKET that does not reference a keyframe. A seek replays the
+ * log from the latest tick at which every registry has sent one of those. The index is built from
+ * the packet headers while the log is read or seeked through.
+ * </p>
+ */
+public class PassthroughLogReader
+{
+   private final FileChannel dataChannel;
+   private final LogIndex logIndex;
+
+   private final IDLYoVariableHandshakeParser parser;
+   private final List<YoVariable> variables;
+   private final List<JointState> jointStates;
+   private final IntUnaryOperator variableOffsets;
+   private final IntUnaryOperator registrySizes;
+   private final boolean byteShuffled;
+   private final long[] compressionDictionary;
+
+   private RegistryDecompressor registryDecompressor;
+
+   private final RegistryReceiveBuffer packet = new RegistryReceiveBuffer(0);
+   private final ByteBuffer headerBuffer = ByteBuffer.allocate(PassthroughLogWriter.HEADER_SIZE);
+   private ByteBuffer jointStateBuffer = ByteBuffer.allocate(0);
+
+   private int nextPosition = 0;
+
+   // Ticks every registry can be restored from and the first tick of every registry, by registryID.
+   // Known for the ticks before scannedPosition.
+   private final TIntObjectHashMap<TIntArrayList> restartPositions = new TIntObjectHashMap<>();
+   private final TIntIntHashMap firstPositions = new TIntIntHashMap();
+   private int scannedPosition = 0;
+
+   // Size of the joint states and data of the last packet header read
+   private int numberOfJointStates;
+   private int dataLength;
+
+   /**
+    * Open a passthrough log
+    *
+    * @param logDirectory  Directory of the log
+    * @param logProperties Properties of the log
+    * @throws IOException
+    */
+   @SuppressWarnings("resource")
+   public PassthroughLogReader(File logDirectory, LogProperties logProperties) throws IOException
+   {
+      this(logDirectory, logProperties, parseHandshake(logDirectory, logProperties));
+   }
+
+   private PassthroughLogReader(File logDirectory, LogProperties logProperties, IDLYoVariableHandshakeParser parser) throws IOException
+   {
+      this(new FileInputStream(getFile(logDirectory, logProperties.getVariables().getDataAsString())).getChannel(),
+           getFile(logDirectory, logProperties.getVariables().getIndexAsString()),
+           logProperties.getVariables().getChecksums(),
+           parser,
+           parser.getYoVariablesList(),
+           parser.getJointStates(),
+           parser::getVariableOffset,
+           parser::getRegistrySize,
+           logProperties.getVariables().getByteShuffled(),
+           readCompressionDictionary(logDirectory, logProperties));
+   }
+
+   /**
+    * Read a passthrough log from a channel
+    *
+    * @param dataChannel           Channel with the records
+    * @param index                 Index file of the records
+    * @param variables             Variables, in handshake order
+    * @param jointStates           Joint states, in handshake order
+    * @param variableOffsets       Offset of the variables of a registry in variables, by registryID
+    * @param registrySizes         Number of variables of a registry, by registryID
+    * @param byteShuffled          The data is filtered by the byte shuffle filter before compression
+    * @param compressionDictionary Reference snapshot the data is encoded against, null if not used
+    * @throws IOException
+    */
+   public PassthroughLogReader(FileChannel dataChannel, File index, List<YoVariable> variables, List<JointState> jointStates,
+                               IntUnaryOperator variableOffsets, IntUnaryOperator registrySizes, boolean byteShuffled, long[] compressionDictionary)
+         throws IOException
+   {
+      this(dataChannel, index, false, variables, jointStates, variableOffsets, registrySizes, byteShuffled, compressionDictionary);
+   }
+
+   /**
+    * Read a passthrough log from a channel
+    *
+    * @param dataChannel           Channel with the records
+    * @param index                 Index file of the records
+    * @param checksums             Every record starts with a LogRecordHeader
+    * @param variables             Variables, in handshake order
+    * @param jointStates           Joint states, in handshake order
+    * @param variableOffsets       Offset of the variables of a registry in variables, by registryID
+    * @param registrySizes         Number of variables of a registry, by registryID
+    * @param byteShuffled          The data is filtered by the byte shuffle filter before compression
+    * @param compressionDictionary Reference snapshot the data is encoded against, null if not used
+    * @throws IOException
+    */
+   public PassthroughLogReader(FileChannel dataChannel, File index, boolean checksums, List<YoVariable> variables, List<JointState> jointStates,
+                               IntUnaryOperator variableOffsets, IntUnaryOperator registrySizes, boolean byteShuffled, long[] compressionDictionary)
+         throws IOException
+   {
+      this(dataChannel, index, checksums, null, variables, jointStates, variableOffsets, registrySizes, byteShuffled, compressionDictionary);
+   }
+
+   private PassthroughLogReader(FileChannel dataChannel, File index, boolean checksums, IDLYoVariableHandshakeParser parser, List<YoVariable> variables,
+                                List<JointState> jointStates, IntUnaryOperator variableOffsets, IntUnaryOperator registrySizes, boolean byteShuffled,
+                                long[] compressionDictionary)
+         throws IOException
+   {
+      this.dataChannel = dataChannel;
+      this.logIndex = new LogIndex(index, dataChannel.size(), false, checksums);
+      this.parser = parser;
+      this.variables = variables;
+      this.jointStates = jointStates;
+      this.variableOffsets = variableOffsets;
+      this.registrySizes = registrySizes;
+      this.byteShuffled = byteShuffled;
+      this.compressionDictionary = compressionDictionary;
+
+      registryDecompressor = createDecompressor();
+   }
+
+   private static File getFile(File logDirectory, String name)
+   {
+      File file = new File(logDirectory, name);
+      if (!file.exists())
+      {
+         throw new RuntimeException("Cannot find " + name);
+      }
+      return file;
+   }
+
+   private static IDLYoVariableHandshakeParser parseHandshake(File logDirectory, LogProperties logProperties) throws IOException
+   {
+      if (!logProperties.getVariables().getPassthrough())
+      {
+         throw new RuntimeException(logDirectory + " is not a passthrough log");
+      }
+
+      File handshake = getFile(logDirectory, logProperties.getVariables().getHandshakeAsString());
+      DataInputStream handshakeStream = new DataInputStream(new FileInputStream(handshake));
+      byte[] handshakeData = new byte[(int) handshake.length()];
+      handshakeStream.readFully(handshakeData);
+      handshakeStream.close();
+
+      IDLYoVariableHandshakeParser parser = new IDLYoVariableHandshakeParser(logProperties.getVariables().getHandshakeFileType());
+      parser.parseFrom(handshakeData);
+      return parser;
+   }
+
+   private static long[] readCompressionDictionary(File logDirectory, LogProperties logProperties) throws IOException
+   {
+      String name = logProperties.getVariables().getCompressionDictionaryAsString();
+      if (name.isEmpty())
+      {
+         return null;
+      }
+
+      File dictionary = getFile(logDirectory, name);
+      DataInputStream dictionaryStream = new DataInputStream(new FileInputStream(dictionary));
+      long[] compressionDictionary = new long[(int) (dictionary.length() / 8)];
+      for (int i = 0; i < compressionDictionary.length; i++)
+      {
+         compressionDictionary[i] = dictionaryStream.readLong();
+      }
+      dictionaryStream.close();
+      return compressionDictionary;
+   }
+
+   private RegistryDecompressor createDecompressor()
+   {
+      RegistryDecompressor registryDecompressor = new RegistryDecompressor(variables, jointStates, byteShuffled);
+      registryDecompressor.setCompressionDictionary(compressionDictionary);
+      return registryDecompressor;
+   }
+
+   /**
+    * @return the handshake parser with the variables and joint states, null if the reader is not
+    *         opened from a log directory
+    */
+   public IDLYoVariableHandshakeParser getHandshakeParser()
+   {
+      return parser;
+   }
+
+   public List<YoVariable> getVariables()
+   {
+      return variables;
+   }
+
+   public List<JointState> getJointStates()
+   {
+      return jointStates;
+   }
+
+   /**
+    * @return the number of ticks in the log
+    */
+   public int getNumberOfEntries()
+   {
+      return logIndex.getNumberOfEntries();
+   }
+
+   public long getTimestamp(int position)
+   {
+      return logIndex.timestamps[position];
+   }
+
+   /**
+    * @param timestamp
+    * @return the position of the tick closest to timestamp, see LogIndex.seek()
+    */
+   public int getPosition(long timestamp)
+   {
+      return logIndex.seek(timestamp);
+   }
+
+   /**
+    * @return the position of the tick the next call to readNext() reads
+    */
+   public int getNextPosition()
+   {
+      return nextPosition;
+   }
+
+   public boolean hasNext()
+   {
+      return nextPosition < getNumberOfEntries();
+   }
+
+   /**
+    * Apply the registry packets of the next tick to the variables
+    *
+    * @return the timestamp of the tick
+    * @throws IOException
+    */
+   public long readNext() throws IOException
+   {
+      if (!hasNext())
+      {
+         throw new IndexOutOfBoundsException("No more entries in the log");
+      }
+
+      boolean scan = nextPosition == scannedPosition;
+      long offset = logIndex.dataOffsets[nextPosition];
+      long end = offset + logIndex.compressedSizes[nextPosition];
+      while (offset < end)
+      {
+         offset = readPacket(offset);
+         if (scan)
+         {
+            indexPacket(nextPosition);
+         }
+      }
+      if (scan)
+      {
+         ++scannedPosition;
+      }
+
+      return logIndex.timestamps[nextPosition++];
+   }
+
+   /**
+    * Replay the log till the tick before position, so the next call to readNext() reads the tick at
+    * position. Replays from the latest tick all registries can be restored from, if that tick is after
+    * the current position or position is before the current position.
+    *
+    * @param position
+    * @throws IOException
+    */
+   public void seek(int position) throws IOException
+   {
+      int resumePosition = getResumePosition(position);
+      if (position < nextPosition || resumePosition > nextPosition)
+      {
+         registryDecompressor = createDecompressor();
+         nextPosition = resumePosition;
+      }
+
+      while (nextPosition < position)
+      {
+         readNext();
+      }
+   }
+
+   /**
+    * Scans the packet headers of the ticks before position that are not indexed yet.
+    *
+    * @return the latest tick before position from which the log can be replayed to restore the state
+    *         of the tick before position, zero if a registry has no keyframe before position
+    * @throws IOException
+    */
+   int getResumePosition(int position) throws IOException
+   {
+      position = Math.min(position, getNumberOfEntries());
+      while (scannedPosition < position)
+      {
+         long offset = logIndex.dataOffsets[scannedPosition];
+         long end = offset + logIndex.compressedSizes[scannedPosition];
+         while (offset < end)
+         {
+            offset = readHeader(offset) + numberOfJointStates * 8 + dataLength;
+            indexPacket(scannedPosition);
+         }
+         ++scannedPosition;
+      }
+
+      int resumePosition = position;
+      for (TIntIntIterator iterator = firstPositions.iterator(); iterator.hasNext();)
+      {
+         iterator.advance();
+         if (iterator.value() >= position)
+         {
+            // Registry starts later
+            continue;
+         }
+
+         TIntArrayList positions = restartPositions.get(iterator.key());
+         int index = positions.binarySearch(position - 1);
+         if (index < 0)
+         {
+            // Index of the last restart position before position - 1
+            index = -index - 2;
+         }
+         if (index < 0)
+         {
+            return 0;
+         }
+         resumePosition = Math.min(resumePosition, positions.get(index));
+      }
+      return resumePosition;
+   }
+
+   /**
+    * Add the packet of the last header read to the restart index
+    */
+   private void indexPacket(int position)
+   {
+      int registryID = packet.getRegistryID();
+      TIntArrayList positions = restartPositions.get(registryID);
+      if (positions == null)
+      {
+         positions = new TIntArrayList();
+         restartPositions.put(registryID, positions);
+         firstPositions.put(registryID, position);
+      }
+
+      boolean restart = packet.isKeyframe() || (packet.getType() == LogDataType.DATA_PACKET && packet.getKeyframeUid() == RegistryBuffer.NO_KEYFRAME);
+      if (restart && (positions.isEmpty() || positions.get(positions.size() - 1) != position))
+      {
+         positions.add(position);
+      }
+   }
+
+   /**
+    * Read a packet header into packet
+    *
+    * @return the offset of the joint states of the packet
+    */
+   private long readHeader(long offset) throws IOException
+   {
+      headerBuffer.clear();
+      readFully(headerBuffer, offset);
+      headerBuffer.flip();
+
+      packet.setTimestamp(headerBuffer.getLong());
+      packet.setUid(headerBuffer.getLong());
+      packet.setKeyframeUid(headerBuffer.getLong());
+      packet.setRegistryID(headerBuffer.getInt());
+      packet.setType(LogDataType.values[headerBuffer.get()]);
+      packet.setCompressed(headerBuffer.get() != 0);
+      packet.setNumberOfVariables(headerBuffer.getInt());
+      numberOfJointStates = headerBuffer.getInt();
+      dataLength = headerBuffer.getInt();
+
+      return offset + PassthroughLogWriter.HEADER_SIZE;
+   }
+
+   private long readPacket(long offset) throws IOException
+   {
+      offset = readHeader(offset);
+
+      double[] states = packet.allocateStates(numberOfJointStates);
+      if (numberOfJointStates > 0)
+      {
+         if (jointStateBuffer.capacity() < numberOfJointStates * 8)
+         {
+            jointStateBuffer = ByteBuffer.allocate(numberOfJointStates * 8);
+         }
+         jointStateBuffer.clear();
+         jointStateBuffer.limit(numberOfJointStates * 8);
+         readFully(jointStateBuffer, offset);
+         for (int i = 0; i < numberOfJointStates; i++)
+         {
+            states[i] = jointStateBuffer.getDouble(i * 8);
+         }
+         offset += numberOfJointStates * 8;
+      }
+
+      ByteBuffer data = packet.allocateBuffer(dataLength);
+      readFully(data, offset);
+      data.flip();
+      offset += dataLength;
+
+      registryDecompressor.decompressSegment(packet, variableOffsets.applyAsInt(packet.getRegistryID()), registrySizes.applyAsInt(packet.getRegistryID()));
+
+      return offset;
+   }
+
+   private void readFully(ByteBuffer buffer, long offset) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         int read = dataChannel.read(buffer, offset);
+         if (read < 0)
+         {
+            throw new EOFException("Unexpected end of log data at " + offset);
+         }
+         offset += read;
+      }
+   }
+
+   public void close() throws IOException
+   {
+      dataChannel.close();
+   }
+}
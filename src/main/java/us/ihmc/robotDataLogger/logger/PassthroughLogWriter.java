@@ -0,0 +1,122 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBuffer;
+
+/**
+ * Writes registry packets to disk as they are received from the server, without decompressing and
+ * compressing them again. Every packet is stored with the following layout
+ *
+ * <pre>
+ * long     timestamp
+ * long     uid
+ * long     keyframeUid
+ * int      registryID
+ * byte     type, ordinal of LogDataType
+ * byte     1 if the data is compressed, 0 if it is not (packets unpacked from a batch)
+ * int      numberOfVariables
+ * int      numberOfJointStates
+ * int      dataLength
+ * double[] jointStates, numberOfJointStates elements
+ * byte[]   data, dataLength bytes
+ * </pre>
+ *
+ * The packets of a tick are copied into a single record of a LogDiskWriter, so passthrough logs
+ * are written on the disk writer thread and get the checksums, preallocation and recovery of
+ * regular logs. The index has the same layout as the index of a regular log, the timestamp and
+ * data offset of every tick, so it can be read with LogIndex. Use PassthroughLogReader to
+ * reconstruct the variables from the records.
+ */
+public class PassthroughLogWriter
+{
+   public static final int HEADER_SIZE = 42;
+
+   private final LogDiskWriter diskWriter;
+
+   // Record of the tick being collected, null if the tick is dropped because the disk cannot keep up
+   private ByteBuffer record = null;
+   private boolean hasTick = false;
+   private long tickTimestamp;
+
+   /**
+    * @param diskWriter Writer for the records, one record per tick
+    */
+   PassthroughLogWriter(LogDiskWriter diskWriter)
+   {
+      this.diskWriter = diskWriter;
+   }
+
+   /**
+    * Add a packet to the record of its tick. Packets have to be written in the order they are
+    * applied. A packet with a new timestamp queues the record of the previous tick. The position of
+    * the data of the packet is left unchanged. Only call from the producer thread of the disk
+    * writer.
+    *
+    * @param packet
+    */
+   public void write(RegistryReceiveBuffer packet)
+   {
+      if (!packet.hasVariableData())
+      {
+         return;
+      }
+
+      if (hasTick && packet.getTimestamp() != tickTimestamp)
+      {
+         finishTick();
+      }
+      if (!hasTick)
+      {
+         record = diskWriter.next();
+         hasTick = true;
+         tickTimestamp = packet.getTimestamp();
+      }
+      if (record == null)
+      {
+         // Disk cannot keep up, the tick is dropped
+         return;
+      }
+
+      int numberOfJointStates = packet.getNumberOfJointStates();
+      ByteBuffer data = packet.getData().duplicate();
+      int size = HEADER_SIZE + numberOfJointStates * 8 + data.remaining();
+      if (record.remaining() < size)
+      {
+         record = diskWriter.grow(record.position() + size);
+      }
+
+      record.putLong(packet.getTimestamp());
+      record.putLong(packet.getUid());
+      record.putLong(packet.getKeyframeUid());
+      record.putInt(packet.getRegistryID());
+      record.put((byte) packet.getType().ordinal());
+      record.put((byte) (packet.isCompressed() ? 1 : 0));
+      record.putInt(packet.getNumberOfVariables());
+      record.putInt(numberOfJointStates);
+      record.putInt(data.remaining());
+
+      DoubleBuffer jointStates = packet.getJointStateBuffer();
+      for (int i = 0; i < numberOfJointStates; i++)
+      {
+         record.putDouble(jointStates.get(i));
+      }
+      record.put(data);
+   }
+
+   /**
+    * Queue the record of the current tick. Call after the last packet of a tick, and before the disk
+    * writer is cleared or closed.
+    */
+   public void finishTick()
+   {
+      if (record != null)
+      {
+         record.flip();
+         diskWriter.commit(tickTimestamp);
+      }
+      record = null;
+      hasTick = false;
+   }
+}
@@ -5,14 +5,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.nio.channels.FileChannel;
 
 import com.google.common.io.Files;
 
 import us.ihmc.robotDataLogger.LogIndex;
 import us.ihmc.robotDataLogger.LogProperties;
+import us.ihmc.robotDataLogger.LogRecordHeader;
 import us.ihmc.robotDataLogger.handshake.YoVariableHandshakeParser;
-import us.ihmc.tools.compression.SnappyUtils;
+import us.ihmc.tools.compression.ByteShuffleCompressionImplementation;
+import us.ihmc.tools.compression.CompressionCodec;
+import us.ihmc.tools.compression.CompressionImplementation;
 
 public class YoVariableLogReader
 {
@@ -29,8 +33,22 @@ public class YoVariableLogReader
    private LogIndex logIndex;
    private ByteBuffer compressedData;
    private ByteBuffer uncompressedData;
+   private CompressionImplementation decompressor;
    private FileInputStream logInputStream;
 
+   // Logs written in blocks of multiple ticks
+   private int ticksPerBlock;
+   private boolean transposed;
+   private ByteBuffer blockData;
+   private LongBuffer blockDataAsLong;
+   private LongBuffer uncompressedDataAsLong;
+   private int loadedBlock = -1;
+
+   // Logs with a checksum for every record
+   private boolean validateChecksums = false;
+   private LogRecordHeader recordHeader;
+   private ByteBuffer recordHeaderBuffer;
+
    protected final File properties;
    private final File model;
    private final File resourceBundle;
@@ -83,6 +101,11 @@ public class YoVariableLogReader
    {
       if (!initialized)
       {
+         if (logProperties.getVariables().getPassthrough())
+         {
+            throw new RuntimeException(logDirectory + " is a passthrough log. Convert it with PassthroughLogConverter or read it with PassthroughLogReader");
+         }
+
          try
          {
             DataInputStream handshakeStream = new DataInputStream(new FileInputStream(handshake));
@@ -106,12 +129,34 @@ public class YoVariableLogReader
             logInputStream = new FileInputStream(logdata);
             logChannel = logInputStream.getChannel();
 
-            logIndex = new LogIndex(index, logChannel.size());
+            ticksPerBlock = logProperties.getVariables().getTicksPerBlock();
+            transposed = logProperties.getVariables().getTransposed();
+            logIndex = new LogIndex(index, logChannel.size(), ticksPerBlock > 0, logProperties.getVariables().getChecksums());
+            if (logIndex.hasChecksums())
+            {
+               recordHeader = new LogRecordHeader();
+               recordHeaderBuffer = ByteBuffer.allocateDirect(LogRecordHeader.SIZE);
+            }
             int bufferSize = logLineLength * 8;
-            compressedData = ByteBuffer.allocate(SnappyUtils.maxCompressedLength(bufferSize));
-            uncompressedData = ByteBuffer.allocate(bufferSize);
+            int recordSize = bufferSize;
+            if (ticksPerBlock > 0)
+            {
+               recordSize = bufferSize * ticksPerBlock;
+               blockData = ByteBuffer.allocateDirect(recordSize);
+               blockDataAsLong = blockData.asLongBuffer();
+               loadedBlock = -1;
+            }
+            decompressor = CompressionCodec.fromName(logProperties.getVariables().getCodecAsString()).create(logProperties.getVariables().getCodecLevel());
+            if (logProperties.getVariables().getByteShuffled())
+            {
+               decompressor = new ByteShuffleCompressionImplementation(decompressor);
+            }
+            // Direct buffers from the disk to the tick, so the data is not copied through heap arrays
+            compressedData = ByteBuffer.allocateDirect(decompressor.maxCompressedLength(recordSize));
+            uncompressedData = ByteBuffer.allocateDirect(bufferSize);
+            uncompressedDataAsLong = uncompressedData.asLongBuffer();
 
-            numberOfEntries = logIndex.getNumberOfEntries();
+            numberOfEntries = logIndex.getNumberOfTicks();
             initialized = true;
          }
          catch (IOException e)
@@ -132,6 +177,31 @@ public class YoVariableLogReader
       return numberOfEntries;
    }
 
+   /**
+    * Validate the checksum of every record that is read. Only available for logs with checksums, a
+    * record with an invalid checksum throws an IOException.
+    */
+   public void setValidateChecksums(boolean validateChecksums)
+   {
+      if (validateChecksums && !logProperties.getVariables().getChecksums())
+      {
+         throw new UnsupportedOperationException("The log has no checksums");
+      }
+      this.validateChecksums = validateChecksums;
+   }
+
+   /**
+    * Validate the checksums of all records in the log.
+    *
+    * @return the first index entry with a torn or corrupted record, or the number of index entries if
+    *         all records are valid
+    * @throws IOException
+    */
+   public int validateChecksums() throws IOException
+   {
+      return logIndex.validate(logChannel);
+   }
+
    public void close()
    {
       try
@@ -147,44 +217,154 @@ public class YoVariableLogReader
 
    protected int getPosition(long timestamp) throws IOException
    {
-      return logIndex.seek(timestamp);
+      if (!logIndex.hasBlocks() || numberOfEntries == 0)
+      {
+         return logIndex.seek(timestamp);
+      }
+
+      // Find the block, then the first tick in the block at or after timestamp
+      int block = logIndex.seekBlock(timestamp);
+      loadBlock(block);
+      int numberOfTicks = logIndex.getNumberOfTicksInBlock(block);
+      int head = 0;
+      int tail = numberOfTicks - 1;
+      while (head < tail)
+      {
+         int tick = head + (tail - head) / 2;
+         if (LogBlock.getTimestamp(blockDataAsLong, tick, numberOfTicks, logLineLength, transposed) < timestamp)
+         {
+            head = tick + 1;
+         }
+         else
+         {
+            tail = tick;
+         }
+      }
+      return logIndex.firstTicks[block] + head;
    }
 
+   /**
+    * @return the offset of the compressed data of the tick, or of the block that contains the tick for
+    *         logs written in blocks
+    */
    protected long getDataOffset(int position)
    {
-      return logIndex.dataOffsets[position];
+      return logIndex.dataOffsets[logIndex.getBlock(position)];
    }
 
+   /**
+    * @return the compressed size of the tick, or of the block that contains the tick for logs written
+    *         in blocks
+    */
    protected int getCompressedSize(int position)
    {
-      return logIndex.compressedSizes[position];
+      return logIndex.compressedSizes[logIndex.getBlock(position)];
    }
 
    protected long getTimestamp(int position)
    {
-      return logIndex.timestamps[position];
+      if (!logIndex.hasBlocks())
+      {
+         return logIndex.timestamps[position];
+      }
+
+      int block = logIndex.getBlock(position);
+      try
+      {
+         loadBlock(block);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+      return LogBlock.getTimestamp(blockDataAsLong, position - logIndex.firstTicks[block], logIndex.getNumberOfTicksInBlock(block), logLineLength, transposed);
    }
 
+   /**
+    * Read the compressed data of a single tick. Not available for logs written in blocks, the ticks
+    * are not compressed separately.
+    */
    protected ByteBuffer readCompressedData(int position) throws IOException
    {
-      int size = getCompressedSize(position);
-      long startOffset = getDataOffset(position);
-      logChannel.position(startOffset);
+      if (logIndex.hasBlocks())
+      {
+         throw new UnsupportedOperationException("Ticks are not compressed separately in logs written in blocks, use readData()");
+      }
+
+      return readRecord(position);
+   }
+
+   private ByteBuffer readRecord(int entry) throws IOException
+   {
+      int size = logIndex.compressedSizes[entry];
+      long startOffset = logIndex.dataOffsets[entry];
       compressedData.clear();
       compressedData.limit(size);
-      logChannel.read(compressedData);
+      readFully(compressedData, startOffset);
       compressedData.flip();
 
+      if (validateChecksums)
+      {
+         recordHeaderBuffer.clear();
+         readFully(recordHeaderBuffer, startOffset - LogRecordHeader.SIZE);
+         recordHeaderBuffer.flip();
+         if (!recordHeader.read(recordHeaderBuffer) || !recordHeader.verify(compressedData))
+         {
+            throw new IOException("Invalid checksum for index entry " + entry + " at offset " + startOffset);
+         }
+      }
+
       return compressedData;
+   }
 
+   private void readFully(ByteBuffer target, long position) throws IOException
+   {
+      while (target.hasRemaining())
+      {
+         if (logChannel.read(target, position + target.position()) < 0)
+         {
+            throw new IOException("Unexpected end of log data at offset " + (position + target.position()));
+         }
+      }
+   }
+
+   private void uncompress(ByteBuffer compressedData, ByteBuffer target, int decompressedLength)
+   {
+      target.clear();
+      decompressor.decompress(compressedData, target, decompressedLength);
+      target.flip();
+   }
+
+   /**
+    * Decompress a block, unless it is the last block that was loaded
+    */
+   private void loadBlock(int block) throws IOException
+   {
+      if (block != loadedBlock)
+      {
+         loadedBlock = -1;
+         uncompress(readRecord(block), blockData, logIndex.getNumberOfTicksInBlock(block) * logLineLength * 8);
+         loadedBlock = block;
+      }
    }
 
    protected ByteBuffer readData(int position) throws IOException
    {
-      ByteBuffer compressedData = readCompressedData(position);
-      uncompressedData.clear();
-      SnappyUtils.uncompress(compressedData, uncompressedData);
-      uncompressedData.flip();
+      if (logIndex.hasBlocks())
+      {
+         int block = logIndex.getBlock(position);
+         loadBlock(block);
+         uncompressedData.clear();
+         LogBlock.getTick(blockDataAsLong,
+                          position - logIndex.firstTicks[block],
+                          logIndex.getNumberOfTicksInBlock(block),
+                          logLineLength,
+                          transposed,
+                          uncompressedDataAsLong);
+         return uncompressedData;
+      }
+
+      uncompress(readCompressedData(position), uncompressedData, logLineLength * 8);
       return uncompressedData;
    }
 
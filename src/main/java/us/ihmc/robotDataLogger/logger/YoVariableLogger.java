@@ -68,6 +68,7 @@ public class YoVariableLogger
 
       YoVariableLoggerListener logger = new YoVariableLoggerListener(tempDirectory, finalDirectory, timestamp, request, connection.getTarget(), options, doneListener);
       client = new YoVariableClient(logger);
+      client.setDecompressionThreads(options.getDecompressionThreads());
 
       try
       {
@@ -1,5 +1,6 @@
 package us.ihmc.robotDataLogger.logger;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -30,6 +31,7 @@ import us.ihmc.robotDataLogger.HandshakeFileType;
 import us.ihmc.robotDataLogger.HandshakePubSubType;
 import us.ihmc.robotDataLogger.YoVariableClientInterface;
 import us.ihmc.robotDataLogger.YoVariablesUpdatedListener;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBuffer;
 import us.ihmc.robotDataLogger.handshake.LogHandshake;
 import us.ihmc.robotDataLogger.handshake.YoVariableHandshakeParser;
 import us.ihmc.robotDataLogger.jointState.JointState;
@@ -37,7 +39,9 @@ import us.ihmc.robotDataLogger.rtps.LogParticipantSettings;
 import us.ihmc.robotDataLogger.util.DebugRegistry;
 import us.ihmc.robotDataLogger.websocket.client.discovery.HTTPDataServerDescription;
 import us.ihmc.robotDataLogger.websocket.command.DataServerCommand;
-import us.ihmc.tools.compression.SnappyUtils;
+import us.ihmc.tools.compression.ByteShuffleCompressionImplementation;
+import us.ihmc.tools.compression.CompressionCodec;
+import us.ihmc.tools.compression.CompressionImplementation;
 import us.ihmc.yoVariables.variable.YoVariable;
 
 public class YoVariableLoggerListener implements YoVariablesUpdatedListener
@@ -48,7 +52,6 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
     */
    private static final int TICKS_WITHOUT_DATA_BEFORE_SHUTDOWN = 5000;
 
-   private static final int FLUSH_EVERY_N_PACKETS = 250;
    public static final long STATUS_PACKET_RATE = Conversions.secondsToNanoseconds(5.0);
    private static final long VIDEO_RECORDING_TIMEOUT = Conversions.secondsToNanoseconds(1.0);
 
@@ -59,11 +62,17 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
    private static final String modelResourceBundle = "resources.zip";
    private static final String indexFilename = "robotData.dat";
    private static final String summaryFilename = "summary.csv";
+   private static final String passthroughDataFilename = "robotData.raw";
+   private static final String passthroughIndexFilename = "robotDataPassthrough.dat";
+   private static final String compressionDictionaryFilename = "compressionDictionary.dat";
 
    private final Object synchronizer = new Object();
    private final Object timestampUpdater = new Object();
 
    private final boolean flushAggressivelyToDisk;
+   private final int syncInterval;
+   private final boolean checksums;
+   private final int preallocate;
 
    private final File tempDirectory;
    private final File finalDirectory;
@@ -72,8 +81,17 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
    private FileChannel dataChannel;
    private FileChannel indexChannel;
 
-   private final ByteBuffer indexBuffer = ByteBuffer.allocate(16);
-   private ByteBuffer compressedBuffer;
+   private LogDiskWriter diskWriter;
+   private LogDiskSyncer diskSyncer;
+   private final boolean byteShuffle;
+   private final CompressionCodec codec;
+   private final int codecLevel;
+   private CompressionImplementation compressor;
+   private final int ticksPerBlock;
+   private final boolean transposeBlocks;
+   private LogBlock logBlock;
+   private final boolean passthrough;
+   private PassthroughLogWriter passthroughLogWriter;
 
    private volatile boolean connected = false;
 
@@ -84,8 +102,6 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
 
    private boolean clearingLog = false;
 
-   private long currentIndex = 0;
-
    private long lastReceivedTimestamp = Long.MIN_VALUE;
    private long ticksWithoutNewTimestamp = 0;
    private boolean alreadyShutDown = false;
@@ -133,19 +149,52 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
       {
          this.disableVideo = true;
          this.flushAggressivelyToDisk = false;
+         this.syncInterval = LogDiskSyncer.DEFAULT_SYNC_INTERVAL;
+         this.checksums = false;
+         this.preallocate = 0;
+         this.byteShuffle = false;
+         this.codec = CompressionCodec.SNAPPY;
+         this.codecLevel = CompressionCodec.DEFAULT_LEVEL;
+         this.ticksPerBlock = 0;
+         this.transposeBlocks = false;
+         this.passthrough = false;
       }
       else
       {
          this.disableVideo = options.getDisableVideo();
          this.flushAggressivelyToDisk = options.isFlushAggressivelyToDisk();
+         this.syncInterval = options.getSyncInterval();
+         this.checksums = options.isChecksums();
+         this.preallocate = options.getPreallocate();
+         this.byteShuffle = options.isByteShuffle();
+         this.codec = options.getCodec();
+         this.codecLevel = options.getCodecLevel();
+         this.ticksPerBlock = options.getTicksPerBlock();
+         this.transposeBlocks = options.isTransposeBlocks();
+         this.passthrough = options.isPassthrough();
       }
 
       logProperties = new LogPropertiesWriter(new File(tempDirectory, propertyFile));
       logProperties.getVariables().setHandshake(handshakeFilename);
-      logProperties.getVariables().setData(dataFilename);
       logProperties.getVariables().setCompressed(true);
       logProperties.getVariables().setTimestamped(true);
-      logProperties.getVariables().setIndex(indexFilename);
+      logProperties.getVariables().setPassthrough(passthrough);
+      if (passthrough)
+      {
+         // Byte shuffling is decided by the server, updated in receivedCompressionSettings()
+         logProperties.getVariables().setData(passthroughDataFilename);
+         logProperties.getVariables().setIndex(passthroughIndexFilename);
+         logProperties.getVariables().setByteShuffled(false);
+      }
+      else
+      {
+         logProperties.getVariables().setData(dataFilename);
+         logProperties.getVariables().setIndex(indexFilename);
+         logProperties.getVariables().setByteShuffled(byteShuffle);
+         logProperties.getVariables().setCodec(codec.name());
+         logProperties.getVariables().setCodecLevel(codecLevel);
+      }
+      logProperties.getVariables().setChecksums(checksums);
       logProperties.getVariables().setHandshakeFileType(HandshakeFileType.IDL_YAML);
 
       logProperties.setName(request.getNameAsString());
@@ -240,11 +289,84 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
       }
    }
 
+   @Override
+   public boolean decompressRegistryPackets()
+   {
+      // The summary is calculated from the variables
+      return !passthrough || yoVariableSummarizer != null;
+   }
+
+   @Override
+   public void receivedCompressionSettings(boolean byteShuffled, long[] compressionDictionary)
+   {
+      if (!passthrough)
+      {
+         return;
+      }
+
+      synchronized (synchronizer)
+      {
+         try
+         {
+            logProperties.getVariables().setByteShuffled(byteShuffled);
+            if (compressionDictionary != null)
+            {
+               File dictionaryFile = new File(tempDirectory, compressionDictionaryFilename);
+               FileOutputStream dictionaryStream = new FileOutputStream(dictionaryFile, false);
+               DataOutputStream dictionaryOutput = new DataOutputStream(dictionaryStream);
+               for (int i = 0; i < compressionDictionary.length; i++)
+               {
+                  dictionaryOutput.writeLong(compressionDictionary[i]);
+               }
+               dictionaryOutput.flush();
+               dictionaryStream.getFD().sync();
+               dictionaryOutput.close();
+
+               logProperties.getVariables().setCompressionDictionary(compressionDictionaryFilename);
+            }
+            else
+            {
+               logProperties.getVariables().setCompressionDictionary("");
+            }
+            logProperties.store();
+         }
+         catch (IOException e)
+         {
+            throw new RuntimeException(e);
+         }
+      }
+   }
+
+   @Override
+   public void receivedRegistryPacket(RegistryReceiveBuffer packet)
+   {
+      if (!passthrough)
+      {
+         return;
+      }
+
+      synchronized (synchronizer)
+      {
+         if (!clearingLog && dataChannel != null && dataChannel.isOpen())
+         {
+            // Copied into the record of the tick, written by the disk writer when the tick is complete
+            passthroughLogWriter.write(packet);
+         }
+      }
+   }
+
    @Override
    public void receivedTimestampAndData(long timestamp)
    {
       receivedTimestampOnly(timestamp); // Call from here as backup for the UDP channel.
 
+      if (passthrough)
+      {
+         connected = true;
+         updatePassthroughLog(timestamp);
+         return;
+      }
+
       ByteBuffer buffer = reconstructBuffer(timestamp);
 
       connected = true;
@@ -253,45 +375,85 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
       {
          if (!clearingLog && dataChannel != null && dataChannel.isOpen())
          {
-            try
+            if (yoVariableSummarizer != null)
+            {
+               yoVariableSummarizer.setBuffer(buffer);
+            }
+            if (logBlock != null)
             {
-               if (yoVariableSummarizer != null)
-               {
-                  yoVariableSummarizer.setBuffer(buffer);
-               }
                buffer.clear();
-               compressedBuffer.clear();
-               SnappyUtils.compress(buffer, compressedBuffer);
-               compressedBuffer.flip();
-
-               indexBuffer.clear();
-               indexBuffer.putLong(timestamp);
-               indexBuffer.putLong(dataChannel.position());
-               indexBuffer.flip();
-
-               indexChannel.write(indexBuffer);
-               dataChannel.write(compressedBuffer);
-
-               if (flushAggressivelyToDisk)
+               logBlock.add(buffer, timestamp);
+               if (logBlock.isFull())
                {
-                  if (++currentIndex % FLUSH_EVERY_N_PACKETS == 0)
-                  {
-                     indexChannel.force(false);
-                     dataChannel.force(false);
-                  }
+                  writeBlock();
                }
-
-               if (yoVariableSummarizer != null)
+            }
+            else
+            {
+               // Writing to disk is done by the disk writer, so a slow disk does not stall the data stream
+               ByteBuffer compressedBuffer = diskWriter.next();
+               if (compressedBuffer != null)
                {
-                  yoVariableSummarizer.update();
+                  buffer.clear();
+                  compress(buffer, compressedBuffer);
+                  diskWriter.commit(timestamp);
                }
+            }
 
-               updateStatus();
+            if (yoVariableSummarizer != null)
+            {
+               yoVariableSummarizer.update();
             }
-            catch (IOException e)
+
+            updateStatus();
+         }
+      }
+   }
+
+   /**
+    * Compress the block and hand it to the disk writer. The block is cleared, also if the disk writer
+    * cannot keep up and the block is dropped.
+    */
+   private void writeBlock()
+   {
+      ByteBuffer compressedBuffer = diskWriter.next();
+      if (compressedBuffer != null)
+      {
+         compress(logBlock.getData(), compressedBuffer);
+         diskWriter.commitBlock(logBlock.getFirstTimestamp(), logBlock.getLastTimestamp(), logBlock.getNumberOfTicks());
+      }
+      logBlock.clear();
+   }
+
+   /**
+    * Compress the remaining bytes of uncompressedBuffer into compressedBuffer with the codec of the
+    * log, applying the byte shuffle if enabled. compressedBuffer is flipped, ready to be written.
+    */
+   private void compress(ByteBuffer uncompressedBuffer, ByteBuffer compressedBuffer)
+   {
+      compressor.compress(uncompressedBuffer, compressedBuffer);
+      compressedBuffer.flip();
+   }
+
+   /**
+    * The packets of this tick are already collected by receivedRegistryPacket(), the tick is handed
+    * to the disk writer and the summary and status are updated.
+    */
+   private void updatePassthroughLog(long timestamp)
+   {
+      synchronized (synchronizer)
+      {
+         if (!clearingLog && dataChannel != null && dataChannel.isOpen())
+         {
+            passthroughLogWriter.finishTick();
+
+            if (yoVariableSummarizer != null)
             {
-               throw new RuntimeException(e);
+               yoVariableSummarizer.setBuffer(reconstructBuffer(timestamp));
+               yoVariableSummarizer.update();
             }
+
+            updateStatus();
          }
       }
    }
@@ -357,6 +519,26 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
    {
       LogTools.info("Finalizing log from host: " + request.getHostNameAsString());
 
+      if (diskWriter != null)
+      {
+         synchronized (synchronizer)
+         {
+            if (logBlock != null && !logBlock.isEmpty())
+            {
+               writeBlock();
+            }
+            if (passthroughLogWriter != null)
+            {
+               passthroughLogWriter.finishTick();
+            }
+         }
+         diskWriter.close();
+      }
+      if (diskSyncer != null)
+      {
+         diskSyncer.close();
+      }
+
       try
       {
          dataChannel.close();
@@ -407,20 +589,27 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
             resources.delete();
          }
 
-         File dataFile = new File(tempDirectory, dataFilename);
+         File dataFile = new File(tempDirectory, logProperties.getVariables().getDataAsString());
          if (dataFile.exists())
          {
             LogTools.info("Deleting data file");
             dataFile.delete();
          }
 
-         File indexFile = new File(tempDirectory, indexFilename);
+         File indexFile = new File(tempDirectory, logProperties.getVariables().getIndexAsString());
          if (indexFile.exists())
          {
             LogTools.info("Deleting index file");
             indexFile.delete();
          }
 
+         File dictionaryFile = new File(tempDirectory, compressionDictionaryFilename);
+         if (dictionaryFile.exists())
+         {
+            LogTools.info("Deleting compression dictionary");
+            dictionaryFile.delete();
+         }
+
          if (tempDirectory.exists())
          {
             LogTools.info("Deleting log directory");
@@ -488,16 +677,33 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
       logHandshake(handshake, handshakeParser);
 
       int bufferSize = handshakeParser.getBufferSize();
-      compressedBuffer = ByteBuffer.allocate(SnappyUtils.maxCompressedLength(bufferSize));
+      int recordSize = bufferSize;
+      if (ticksPerBlock > 0 && !passthrough)
+      {
+         int lineLength = bufferSize / 8;
+         int actualTicksPerBlock = LogBlock.calculateTicksPerBlock(ticksPerBlock, lineLength);
+         logBlock = new LogBlock(lineLength, actualTicksPerBlock, transposeBlocks);
+         recordSize = bufferSize * actualTicksPerBlock;
+
+         logProperties.getVariables().setTicksPerBlock(actualTicksPerBlock);
+         logProperties.getVariables().setTransposed(transposeBlocks);
+      }
+
+      compressor = codec.create(codecLevel);
+      if (byteShuffle)
+      {
+         compressor = new ByteShuffleCompressionImplementation(compressor);
+      }
 
       // Initialize disk format variables
-      dataBuffer = ByteBuffer.allocate(bufferSize);
+      // Direct buffers from the tick to the disk, so the data is not copied through heap arrays
+      dataBuffer = ByteBuffer.allocateDirect(bufferSize);
       dataBufferAsLong = dataBuffer.asLongBuffer();
       variables = handshakeParser.getYoVariablesList();
       jointStates = handshakeParser.getJointStates();
 
-      File dataFile = new File(tempDirectory, dataFilename);
-      File indexFile = new File(tempDirectory, indexFilename);
+      File dataFile = new File(tempDirectory, logProperties.getVariables().getDataAsString());
+      File indexFile = new File(tempDirectory, logProperties.getVariables().getIndexAsString());
 
       synchronized (synchronizer)
       {
@@ -511,6 +717,45 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
             throw new RuntimeException(e);
          }
 
+         if (flushAggressivelyToDisk)
+         {
+            diskSyncer = new LogDiskSyncer(dataChannel, indexChannel, syncInterval, debugRegistry);
+            diskSyncer.start();
+         }
+
+         try
+         {
+            // Keep the memory of the queue about the same if records are blocks of ticks
+            int ticksPerRecord = logBlock == null ? 1 : logBlock.getTicksPerBlock();
+            // A passthrough tick holds the packets as received, records of larger ticks are grown by the PassthroughLogWriter
+            int maximumRecordSize = passthrough ? 2 * recordSize : compressor.maxCompressedLength(recordSize);
+            diskWriter = new LogDiskWriter(dataChannel,
+                                           indexChannel,
+                                           maximumRecordSize,
+                                           Math.max(4, LogDiskWriter.DEFAULT_CAPACITY / ticksPerRecord),
+                                           diskSyncer,
+                                           logBlock != null,
+                                           checksums,
+                                           debugRegistry);
+            if (preallocate > 0 && !checksums)
+            {
+               LogTools.warn("Not preallocating the data file, preallocated logs require checksums to be recovered");
+            }
+            else if (preallocate > 0)
+            {
+               diskWriter.preallocate(preallocate * 1024L * 1024L);
+            }
+         }
+         catch (IOException e)
+         {
+            throw new RuntimeException(e);
+         }
+
+         if (passthrough)
+         {
+            passthroughLogWriter = new PassthroughLogWriter(diskWriter);
+         }
+
          if (!disableVideo)
          {
             for (CameraConfiguration camera : cameras)
@@ -565,6 +810,11 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
             e.printStackTrace();
          }
 
+         if (diskWriter != null)
+         {
+            diskWriter.start();
+         }
+
          this.yoVariableClientInterface = yoVariableClientInterface;
 
          logStartedTimestamp = System.nanoTime();
@@ -605,12 +855,31 @@ public class YoVariableLoggerListener implements YoVariablesUpdatedListener
       synchronized (synchronizer)
       {
          clearingLog = true;
+         if (passthroughLogWriter != null)
+         {
+            // Queue the partial tick, so it is discarded with the other records
+            passthroughLogWriter.finishTick();
+         }
       }
       try
       {
          LogTools.info("Clearing log.");
-         dataChannel.truncate(0);
-         indexChannel.truncate(0);
+         if (diskWriter != null)
+         {
+            diskWriter.clear();
+            if (logBlock != null)
+            {
+               synchronized (synchronizer)
+               {
+                  logBlock.clear();
+               }
+            }
+         }
+         else
+         {
+            dataChannel.truncate(0);
+            indexChannel.truncate(0);
+         }
          for (VideoDataLoggerInterface videoDataLogger : videoDataLoggers)
          {
             videoDataLogger.restart();
@@ -9,6 +9,7 @@ import com.martiansoftware.jsap.SimpleJSAP;
 import com.martiansoftware.jsap.Switch;
 
 import us.ihmc.javadecklink.Capture.CodecID;
+import us.ihmc.tools.compression.CompressionCodec;
 
 public class YoVariableLoggerOptions
 {
@@ -28,8 +29,28 @@ public class YoVariableLoggerOptions
 
    private boolean flushAggressivelyToDisk = false;
 
+   private int syncInterval = LogDiskSyncer.DEFAULT_SYNC_INTERVAL;
+
+   private boolean checksums = false;
+
+   private int preallocate = 0;
+
    private boolean disableAutoDiscovery = false;
 
+   private boolean byteShuffle = false;
+
+   private CompressionCodec codec = CompressionCodec.SNAPPY;
+
+   private int codecLevel = CompressionCodec.DEFAULT_LEVEL;
+
+   private int decompressionThreads = 0;
+
+   private boolean passthrough = false;
+
+   private int ticksPerBlock = 0;
+
+   private boolean transposeBlocks = false;
+
    private boolean rotateLogs = false;
 
    private boolean allowManyInstances = false;
@@ -86,8 +107,68 @@ public class YoVariableLoggerOptions
                                              new Switch("flushAggressivelyToDisk",
                                                         's',
                                                         "sync",
-                                                        "Aggressively flush data to disk. Reduces change of data loss but doesn't work on slow platters."),
-                                             new Switch("disableAutoDiscovery", 'a', "noDiscovery", "Disable autodiscovery of clients.")});
+                                                        "Force data to disk in the background, at most every syncInterval milliseconds. Bounds the data lost on a crash or power failure."),
+                                             new FlaggedOption("syncInterval",
+                                                               JSAP.INTEGER_PARSER,
+                                                               String.valueOf(LogDiskSyncer.DEFAULT_SYNC_INTERVAL),
+                                                               JSAP.NOT_REQUIRED,
+                                                               'w',
+                                                               "syncInterval",
+                                                               "Maximum data loss window in milliseconds when forcing data to disk with --sync. Data is durable at most this long plus the time of a sync after it is written."),
+                                             new Switch("checksums",
+                                                        'v',
+                                                        "checksums",
+                                                        "Write a header with the length and CRC32C in front of every record, so crashed logs can be recovered with LogRecovery."),
+                                             new FlaggedOption("preallocate",
+                                                               JSAP.INTEGER_PARSER,
+                                                               "0",
+                                                               JSAP.NOT_REQUIRED,
+                                                               'f',
+                                                               "preallocate",
+                                                               "Allocate the data file in chunks of this many MB to avoid fragmentation when several loggers write at once. Zero grows the file with every write. The chunks are filled with zeros, so every byte of data is written twice. With --sync the zeros ahead of the data are forced to disk as well. Requires --checksums, so LogRecovery can find the end of the data in a crashed log."),
+                                             new Switch("disableAutoDiscovery", 'a', "noDiscovery", "Disable autodiscovery of clients."),
+                                             new Switch("byteShuffle",
+                                                        'b',
+                                                        "byteShuffle",
+                                                        "Apply a byte shuffle filter before compressing the data. Gives smaller logs at the cost of extra CPU time."),
+                                             new FlaggedOption("codec",
+                                                               JSAP.STRING_PARSER,
+                                                               CompressionCodec.SNAPPY.name(),
+                                                               JSAP.NOT_REQUIRED,
+                                                               'z',
+                                                               "codec",
+                                                               "Compression codec for the data file. SNAPPY, LZ4, LZ4_HC, XZ or NONE. XZ is slow, use it with ticksPerBlock."),
+                                             new FlaggedOption("codecLevel",
+                                                               JSAP.INTEGER_PARSER,
+                                                               String.valueOf(CompressionCodec.DEFAULT_LEVEL),
+                                                               JSAP.NOT_REQUIRED,
+                                                               'l',
+                                                               "codecLevel",
+                                                               "Compression level for LZ4_HC (1-17) and XZ (0-9). " + CompressionCodec.DEFAULT_LEVEL
+                                                                     + " selects the default level."),
+                                             new FlaggedOption("decompressionThreads",
+                                                               JSAP.INTEGER_PARSER,
+                                                               "0",
+                                                               JSAP.NOT_REQUIRED,
+                                                               't',
+                                                               "decompressionThreads",
+                                                               "Decompress registries with the same timestamp on this many threads. Zero or one decompresses on a single thread."),
+                                             new Switch("passthrough",
+                                                        'p',
+                                                        "passthrough",
+                                                        "Write the compressed packets to disk as received. Saves CPU time, convert the logs with PassthroughLogConverter before viewing."),
+                                             new FlaggedOption("ticksPerBlock",
+                                                               JSAP.INTEGER_PARSER,
+                                                               "0",
+                                                               JSAP.NOT_REQUIRED,
+                                                               'k',
+                                                               "ticksPerBlock",
+                                                               "Compress this many ticks together in a block, limited to blocks of 1MB. Gives smaller logs. Zero compresses every tick separately. Suggested value is "
+                                                                     + LogBlock.DEFAULT_TICKS_PER_BLOCK + "."),
+                                             new Switch("transposeBlocks",
+                                                        'x',
+                                                        "transpose",
+                                                        "Store blocks variable by variable instead of tick by tick. Only used with ticksPerBlock.")});
       JSAPResult config = jsap.parse(args);
       if (jsap.messagePrinted())
       {
@@ -106,7 +187,24 @@ public class YoVariableLoggerOptions
       options.setCrf(config.getInt("crf"));
 
       options.setFlushAggressivelyToDisk(config.getBoolean("flushAggressivelyToDisk"));
+      options.setSyncInterval(config.getInt("syncInterval"));
+      options.setChecksums(config.getBoolean("checksums"));
+      options.setPreallocate(config.getInt("preallocate"));
       options.setDisableAutoDiscovery(config.getBoolean("disableAutoDiscovery"));
+      options.setByteShuffle(config.getBoolean("byteShuffle"));
+      options.setCodec(CompressionCodec.valueOf(config.getString("codec")));
+      options.setCodecLevel(config.getInt("codecLevel"));
+      options.setDecompressionThreads(config.getInt("decompressionThreads"));
+      options.setPassthrough(config.getBoolean("passthrough"));
+      options.setTicksPerBlock(config.getInt("ticksPerBlock"));
+      options.setTransposeBlocks(config.getBoolean("transposeBlocks"));
+
+      if (options.getPreallocate() > 0 && !options.isChecksums())
+      {
+         System.err.println("--preallocate requires --checksums");
+         System.out.println(jsap.getUsage());
+         System.exit(-1);
+      }
 
       return options;
    }
@@ -165,6 +263,42 @@ public class YoVariableLoggerOptions
       this.flushAggressivelyToDisk = flushAggressivelyToDisk;
    }
 
+   /**
+    * @return time in milliseconds between syncs to disk when flushAggressivelyToDisk is set
+    */
+   public int getSyncInterval()
+   {
+      return syncInterval;
+   }
+
+   public void setSyncInterval(int syncInterval)
+   {
+      this.syncInterval = Math.max(1, syncInterval);
+   }
+
+   public boolean isChecksums()
+   {
+      return checksums;
+   }
+
+   public void setChecksums(boolean checksums)
+   {
+      this.checksums = checksums;
+   }
+
+   /**
+    * @return size in MB of the chunks the data file is allocated in, zero to not preallocate
+    */
+   public int getPreallocate()
+   {
+      return preallocate;
+   }
+
+   public void setPreallocate(int preallocate)
+   {
+      this.preallocate = Math.max(0, preallocate);
+   }
+
    public CodecID getVideoCodec()
    {
       return videoCodec;
@@ -215,4 +349,74 @@ public class YoVariableLoggerOptions
       this.disableAutoDiscovery = disableAutoDiscovery;
    }
 
+   public boolean isByteShuffle()
+   {
+      return byteShuffle;
+   }
+
+   public void setByteShuffle(boolean byteShuffle)
+   {
+      this.byteShuffle = byteShuffle;
+   }
+
+   public CompressionCodec getCodec()
+   {
+      return codec;
+   }
+
+   public void setCodec(CompressionCodec codec)
+   {
+      this.codec = codec;
+   }
+
+   public int getCodecLevel()
+   {
+      return codecLevel;
+   }
+
+   public void setCodecLevel(int codecLevel)
+   {
+      this.codecLevel = Math.max(CompressionCodec.DEFAULT_LEVEL, codecLevel);
+   }
+
+   public int getDecompressionThreads()
+   {
+      return decompressionThreads;
+   }
+
+   public void setDecompressionThreads(int decompressionThreads)
+   {
+      this.decompressionThreads = decompressionThreads;
+   }
+
+   public boolean isPassthrough()
+   {
+      return passthrough;
+   }
+
+   public void setPassthrough(boolean passthrough)
+   {
+      this.passthrough = passthrough;
+   }
+
+   public int getTicksPerBlock()
+   {
+      return ticksPerBlock;
+   }
+
+   public void setTicksPerBlock(int ticksPerBlock)
+   {
+      this.ticksPerBlock = Math.max(0, ticksPerBlock);
+   }
+
+   public boolean isTransposeBlocks()
+   {
+      return transposeBlocks;
+   }
+
+   public void setTransposeBlocks(boolean transposeBlocks)
+   {
+      this.transposeBlocks = transposeBlocks;
+   }
+
 }
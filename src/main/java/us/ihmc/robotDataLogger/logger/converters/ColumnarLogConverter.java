@@ -0,0 +1,166 @@
+package us.ihmc.robotDataLogger.logger.converters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import us.ihmc.idl.serializers.extra.PropertiesSerializer;
+import us.ihmc.robotDataLogger.LogProperties;
+import us.ihmc.robotDataLogger.LogPropertiesPubSubType;
+import us.ihmc.robotDataLogger.logger.ColumnarLogWriter;
+import us.ihmc.robotDataLogger.logger.LogPropertiesReader;
+import us.ihmc.robotDataLogger.logger.YoVariableLogReader;
+import us.ihmc.robotDataLogger.logger.YoVariableLoggerListener;
+
+/**
+ * Adds a columnar copy of the data to logs, so a few variables can be extracted quickly with
+ * ColumnarLogReader. The original data is kept, the log viewer and the other tools keep working.
+ */
+public class ColumnarLogConverter extends SimpleFileVisitor<Path>
+{
+   private static final String columnsFilename = "robotDataColumns.bsz";
+   private static final String columnIndexFilename = "robotDataColumns.dat";
+
+   private final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:robotData.log");
+
+   public static void main(String[] args) throws IOException
+   {
+      Path root;
+      if (args.length < 1)
+      {
+         System.out.println("Enter directory to convert");
+         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+         String path = br.readLine();
+         br.close();
+         root = Paths.get(path);
+      }
+      else
+      {
+         root = Paths.get(args[0]);
+      }
+
+      if (!Files.exists(root) || !Files.isDirectory(root))
+      {
+         throw new RuntimeException(root + " is not a directory");
+      }
+      Files.walkFileTree(root, new ColumnarLogConverter());
+   }
+
+   @Override
+   public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+   {
+      if (matcher.matches(file.getFileName()))
+      {
+         try
+         {
+            File directory = file.getParent().toFile();
+            File log = new File(directory, YoVariableLoggerListener.propertyFile);
+            LogProperties properties = new LogPropertiesReader(log);
+            convert(directory, properties);
+         }
+         catch (IOException e)
+         {
+            e.printStackTrace();
+         }
+      }
+      return FileVisitResult.CONTINUE;
+   }
+
+   @Override
+   public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException
+   {
+
+      System.err.println(exc.getMessage());
+      return FileVisitResult.CONTINUE;
+   }
+
+   @SuppressWarnings("resource")
+   public static void convert(File directory, LogProperties properties) throws IOException
+   {
+      if (!properties.getVariables().getColumnsAsString().isEmpty())
+      {
+         System.out.println("Log already has columns: " + directory);
+         return;
+      }
+      if (!properties.getVariables().getCompressed() || properties.getVariables().getPassthrough())
+      {
+         System.err.println("Cannot convert " + directory + ", compress it with LogCompressor or PassthroughLogConverter first");
+         return;
+      }
+
+      System.out.println("Converting " + directory);
+
+      LogReader reader = new LogReader(directory, properties);
+      int lineLength = reader.getNumberOfVariables();
+
+      File columnsData = new File(directory, columnsFilename);
+      File columnIndex = new File(directory, columnIndexFilename);
+      FileChannel columnsChannel = new FileOutputStream(columnsData).getChannel();
+      FileChannel columnIndexChannel = new FileOutputStream(columnIndex).getChannel();
+
+      ColumnarLogWriter writer = new ColumnarLogWriter(columnsChannel,
+                                                       columnIndexChannel,
+                                                       lineLength,
+                                                       ColumnarLogWriter.calculateTicksPerChunk(lineLength, ColumnarLogWriter.DEFAULT_CHUNK_BUFFER_SIZE));
+
+      int entries = reader.getNumberOfEntries();
+      int elements = Math.max(entries / 100, 1);
+      for (int i = 0; i < entries; i++)
+      {
+         if (i % (elements * 10) == 0)
+         {
+            System.out.print(i / elements + "%");
+         }
+         else if (i % elements == 0)
+         {
+            System.out.print(".");
+         }
+
+         writer.write(reader.readTick(i));
+      }
+      System.out.println();
+
+      writer.close();
+      columnIndexChannel.close();
+      columnsChannel.close();
+      reader.close();
+
+      properties.getVariables().setColumns(columnsFilename);
+      properties.getVariables().setColumnIndex(columnIndexFilename);
+
+      File log = new File(directory, YoVariableLoggerListener.propertyFile);
+      PropertiesSerializer<LogProperties> propertiesWriter = new PropertiesSerializer<>(new LogPropertiesPubSubType());
+      propertiesWriter.serialize(log, properties);
+
+      System.out.println("Converted " + directory);
+   }
+
+   private static class LogReader extends YoVariableLogReader
+   {
+      LogReader(File logDirectory, LogProperties logProperties)
+      {
+         super(logDirectory, logProperties);
+         if (!initialize())
+         {
+            throw new RuntimeException("Cannot read " + logDirectory);
+         }
+      }
+
+      ByteBuffer readTick(int position) throws IOException
+      {
+         return readData(position);
+      }
+   }
+}
@@ -23,12 +23,31 @@ import us.ihmc.robotDataLogger.LogPropertiesPubSubType;
 import us.ihmc.robotDataLogger.handshake.YoVariableHandshakeParser;
 import us.ihmc.robotDataLogger.logger.LogPropertiesReader;
 import us.ihmc.robotDataLogger.logger.YoVariableLoggerListener;
-import us.ihmc.tools.compression.SnappyUtils;
+import us.ihmc.tools.compression.CompressionCodec;
+import us.ihmc.tools.compression.CompressionImplementation;
 
 public class LogCompressor extends SimpleFileVisitor<Path>
 {
    private final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:robotData.log");
 
+   private final CompressionCodec codec;
+   private final int codecLevel;
+
+   public LogCompressor()
+   {
+      this(CompressionCodec.SNAPPY, CompressionCodec.DEFAULT_LEVEL);
+   }
+
+   /**
+    * @param codec      Codec to compress the logs with
+    * @param codecLevel Compression level of the codec, CompressionCodec.DEFAULT_LEVEL for the default level
+    */
+   public LogCompressor(CompressionCodec codec, int codecLevel)
+   {
+      this.codec = codec;
+      this.codecLevel = codecLevel;
+   }
+
    public static void main(String[] args) throws IOException
    {
       Path root;
@@ -49,7 +68,9 @@ public class LogCompressor extends SimpleFileVisitor<Path>
       {
          throw new RuntimeException(root + " is not a directory");
       }
-      Files.walkFileTree(root, new LogCompressor());
+      CompressionCodec codec = args.length < 2 ? CompressionCodec.SNAPPY : CompressionCodec.valueOf(args[1]);
+      int codecLevel = args.length < 3 ? CompressionCodec.DEFAULT_LEVEL : Integer.parseInt(args[2]);
+      Files.walkFileTree(root, new LogCompressor(codec, codecLevel));
    }
 
    @Override
@@ -62,7 +83,7 @@ public class LogCompressor extends SimpleFileVisitor<Path>
             File directory = file.getParent().toFile();
             File log = new File(directory, YoVariableLoggerListener.propertyFile);
             LogProperties properties = new LogPropertiesReader(log);
-            compress(directory, properties);
+            compress(directory, properties, codec, codecLevel);
          }
          catch (IOException e)
          {
@@ -80,8 +101,13 @@ public class LogCompressor extends SimpleFileVisitor<Path>
       return FileVisitResult.CONTINUE;
    }
 
-   @SuppressWarnings("resource")
    public static void compress(File directory, LogProperties properties) throws IOException
+   {
+      compress(directory, properties, CompressionCodec.SNAPPY, 0);
+   }
+
+   @SuppressWarnings("resource")
+   public static void compress(File directory, LogProperties properties, CompressionCodec codec, int codecLevel) throws IOException
    {
       if (!properties.getVariables().getCompressed())
       {
@@ -98,6 +124,8 @@ public class LogCompressor extends SimpleFileVisitor<Path>
          }
 
          properties.getVariables().setCompressed(true);
+         properties.getVariables().setCodec(codec.name());
+         properties.getVariables().setCodecLevel(codecLevel);
          properties.getVariables().setData("robotData.bsz");
          properties.getVariables().setIndex("robotData.dat");
          properties.getVariables().setTimestamped(true);
@@ -105,7 +133,8 @@ public class LogCompressor extends SimpleFileVisitor<Path>
          File indexData = new File(directory, properties.getVariables().getIndexAsString());
 
          ByteBuffer indexBuffer = ByteBuffer.allocate(16);
-         ByteBuffer compressed = ByteBuffer.allocate(SnappyUtils.maxCompressedLength(bufferSize));
+         CompressionImplementation compressor = codec.create(codecLevel);
+         ByteBuffer compressed = ByteBuffer.allocate(compressor.maxCompressedLength(bufferSize));
          ByteBuffer uncompressed = ByteBuffer.allocate(bufferSize);
          FileChannel logChannel = new FileInputStream(logdata).getChannel();
 
@@ -132,7 +161,7 @@ public class LogCompressor extends SimpleFileVisitor<Path>
             }
 
             uncompressed.flip();
-            SnappyUtils.compress(uncompressed, compressed);
+            compressor.compress(uncompressed, compressed);
             compressed.flip();
 
             indexBuffer.putLong(uncompressed.getLong(0));
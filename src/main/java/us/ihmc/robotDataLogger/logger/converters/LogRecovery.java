@@ -0,0 +1,313 @@
+package us.ihmc.robotDataLogger.logger.converters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import us.ihmc.robotDataLogger.LogIndex;
+import us.ihmc.robotDataLogger.LogProperties;
+import us.ihmc.robotDataLogger.LogRecordHeader;
+import us.ihmc.robotDataLogger.logger.LogPropertiesReader;
+import us.ihmc.robotDataLogger.logger.YoVariableLoggerListener;
+
+/**
+ * Recovers logs that were not closed properly, for example because the logger lost power. The
+ * data file is cut after the last complete record, the index is made to match the data and the
+ * temporary log directory is renamed to its final name.
+ * <p>
+ * For logs with checksums the index is rebuilt from the record headers in the data file and the
+ * checksums of the records are validated in parallel. The data is cut before the first torn or
+ * corrupted record. For logs without checksums, the index entries that point past the end of the
+ * data are removed. A torn last record cannot be detected without checksums.
+ * </p>
+ * <p>
+ * Passthrough logs are recovered the same way, their records hold the packets of a tick.
+ * </p>
+ */
+public class LogRecovery extends SimpleFileVisitor<Path>
+{
+   private final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:robotData.log");
+
+   private final List<File> directories = new ArrayList<>();
+
+   public static void main(String[] args) throws IOException
+   {
+      Path root;
+      if (args.length < 1)
+      {
+         System.out.println("Enter directory to recover");
+         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+         String path = br.readLine();
+         br.close();
+         root = Paths.get(path);
+      }
+      else
+      {
+         root = Paths.get(args[0]);
+      }
+
+      if (!Files.exists(root) || !Files.isDirectory(root))
+      {
+         throw new RuntimeException(root + " is not a directory");
+      }
+      int threads = args.length < 2 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(args[1]);
+
+      // Collect the logs first, recovering renames the directories
+      LogRecovery visitor = new LogRecovery();
+      Files.walkFileTree(root, visitor);
+      for (File directory : visitor.directories)
+      {
+         try
+         {
+            recover(directory, threads);
+         }
+         catch (IOException e)
+         {
+            e.printStackTrace();
+         }
+      }
+   }
+
+   @Override
+   public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+   {
+      if (matcher.matches(file.getFileName()))
+      {
+         directories.add(file.getParent().toFile());
+      }
+      return FileVisitResult.CONTINUE;
+   }
+
+   @Override
+   public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException
+   {
+      System.err.println(exc.getMessage());
+      return FileVisitResult.CONTINUE;
+   }
+
+   /**
+    * Recover a log and rename it to its final name if it is still in its temporary directory.
+    *
+    * @param directory Log directory
+    * @param threads   Number of threads to validate the checksums on
+    * @return the directory of the recovered log
+    * @throws IOException
+    */
+   public static File recover(File directory, int threads) throws IOException
+   {
+      LogProperties properties = new LogPropertiesReader(new File(directory, YoVariableLoggerListener.propertyFile));
+      System.out.println("Recovering " + directory);
+
+      File dataFile = new File(directory, properties.getVariables().getDataAsString());
+      File indexFile = new File(directory, properties.getVariables().getIndexAsString());
+      boolean blocks = properties.getVariables().getTicksPerBlock() > 0;
+
+      recover(dataFile, indexFile, blocks, properties.getVariables().getChecksums(), threads);
+
+      return finalizeDirectory(directory);
+   }
+
+   /**
+    * Cut the data file after the last valid record and make the index match the data.
+    *
+    * @param dataFile  Data file of the log
+    * @param indexFile Index file of the log, rebuilt from the data file for logs with checksums
+    * @param blocks    True if the log is written in blocks of multiple ticks
+    * @param checksums True if every record in the data file starts with a LogRecordHeader
+    * @param threads   Number of threads to validate the checksums on
+    * @return the number of recovered index entries
+    * @throws IOException
+    */
+   public static int recover(File dataFile, File indexFile, boolean blocks, boolean checksums, int threads) throws IOException
+   {
+      try (RandomAccessFile data = new RandomAccessFile(dataFile, "rw"); RandomAccessFile index = new RandomAccessFile(indexFile, "rw"))
+      {
+         FileChannel dataChannel = data.getChannel();
+         FileChannel indexChannel = index.getChannel();
+
+         long dataSize = dataChannel.size();
+         int entries;
+         long validDataSize;
+         if (checksums)
+         {
+            long endOfRecords = rebuildIndex(dataChannel, indexChannel, blocks);
+
+            LogIndex logIndex = new LogIndex(indexFile, endOfRecords, blocks, true);
+            entries = validate(logIndex, dataChannel, threads);
+            validDataSize = entries == logIndex.getNumberOfEntries() ? endOfRecords : logIndex.dataOffsets[entries] - LogRecordHeader.SIZE;
+         }
+         else
+         {
+            LogIndex logIndex = new LogIndex(indexFile, dataSize, blocks, false);
+            entries = 0;
+            while (entries < logIndex.getNumberOfEntries() && logIndex.dataOffsets[entries] < dataSize)
+            {
+               entries++;
+            }
+            validDataSize = dataSize;
+         }
+
+         indexChannel.truncate((long) entries * (blocks ? LogIndex.BLOCK_ENTRY_SIZE : LogIndex.ENTRY_SIZE));
+         dataChannel.truncate(validDataSize);
+         indexChannel.force(false);
+         dataChannel.force(false);
+
+         System.out.println("Recovered " + entries + " records, removed " + (dataSize - validDataSize) + " bytes of data");
+         return entries;
+      }
+   }
+
+   /**
+    * Walk the record headers in the data file and write the index. Stops at the first incomplete
+    * header or record.
+    *
+    * @return the end of the last complete record
+    */
+   private static long rebuildIndex(FileChannel dataChannel, FileChannel indexChannel, boolean blocks) throws IOException
+   {
+      long dataSize = dataChannel.size();
+      LogRecordHeader header = new LogRecordHeader();
+      ByteBuffer headerBuffer = ByteBuffer.allocateDirect(LogRecordHeader.SIZE);
+      ByteBuffer indexBuffer = ByteBuffer.allocateDirect(1024 * (blocks ? LogIndex.BLOCK_ENTRY_SIZE : LogIndex.ENTRY_SIZE));
+
+      indexChannel.truncate(0);
+      indexChannel.position(0);
+
+      long position = 0;
+      while (position + LogRecordHeader.SIZE <= dataSize)
+      {
+         headerBuffer.clear();
+         while (headerBuffer.hasRemaining())
+         {
+            dataChannel.read(headerBuffer, position + headerBuffer.position());
+         }
+         headerBuffer.flip();
+
+         if (!header.read(headerBuffer) || position + LogRecordHeader.SIZE + header.getLength() > dataSize)
+         {
+            break;
+         }
+
+         if (indexBuffer.remaining() < LogIndex.BLOCK_ENTRY_SIZE)
+         {
+            writeIndex(indexChannel, indexBuffer);
+         }
+         indexBuffer.putLong(header.getTimestamp());
+         if (blocks)
+         {
+            indexBuffer.putLong(header.getLastTimestamp());
+            indexBuffer.putLong(position);
+            indexBuffer.putLong(header.getNumberOfTicks());
+         }
+         else
+         {
+            indexBuffer.putLong(position);
+         }
+
+         position += LogRecordHeader.SIZE + header.getLength();
+      }
+      writeIndex(indexChannel, indexBuffer);
+      return position;
+   }
+
+   private static void writeIndex(FileChannel indexChannel, ByteBuffer indexBuffer) throws IOException
+   {
+      indexBuffer.flip();
+      while (indexBuffer.hasRemaining())
+      {
+         indexChannel.write(indexBuffer);
+      }
+      indexBuffer.clear();
+   }
+
+   /**
+    * Validate the checksums of all records on multiple threads.
+    *
+    * @return the first entry with an invalid record, or the number of entries if all are valid
+    */
+   private static int validate(LogIndex logIndex, FileChannel dataChannel, int threads) throws IOException
+   {
+      int entries = logIndex.getNumberOfEntries();
+      int ranges = Math.max(1, Math.min(threads, entries));
+      ExecutorService executor = Executors.newFixedThreadPool(ranges);
+      try
+      {
+         List<Future<Integer>> results = new ArrayList<>();
+         for (int i = 0; i < ranges; i++)
+         {
+            int start = (int) ((long) entries * i / ranges);
+            int end = (int) ((long) entries * (i + 1) / ranges);
+            results.add(executor.submit(() -> logIndex.validate(dataChannel, start, end)));
+         }
+
+         for (int i = 0; i < ranges; i++)
+         {
+            int end = (int) ((long) entries * (i + 1) / ranges);
+            int firstInvalid = results.get(i).get();
+            if (firstInvalid < end)
+            {
+               return firstInvalid;
+            }
+         }
+         return entries;
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException(e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new IOException(e.getCause());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Rename a temporary log directory, starting with a ".", to its final name.
+    */
+   private static File finalizeDirectory(File directory)
+   {
+      String name = directory.getName();
+      if (!name.startsWith("."))
+      {
+         return directory;
+      }
+
+      File finalDirectory = new File(directory.getParentFile(), name.substring(1));
+      if (finalDirectory.exists())
+      {
+         System.err.println("Cannot rename " + directory + ", " + finalDirectory + " already exists");
+         return directory;
+      }
+      if (!directory.renameTo(finalDirectory))
+      {
+         System.err.println("Cannot rename " + directory + " to " + finalDirectory);
+         return directory;
+      }
+
+      System.out.println("Log is saved as: " + finalDirectory);
+      return finalDirectory;
+   }
+}
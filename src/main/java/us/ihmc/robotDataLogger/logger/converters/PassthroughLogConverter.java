@@ -0,0 +1,191 @@
+package us.ihmc.robotDataLogger.logger.converters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import us.ihmc.idl.serializers.extra.PropertiesSerializer;
+import us.ihmc.robotDataLogger.LogProperties;
+import us.ihmc.robotDataLogger.LogPropertiesPubSubType;
+import us.ihmc.robotDataLogger.jointState.JointState;
+import us.ihmc.robotDataLogger.logger.LogPropertiesReader;
+import us.ihmc.robotDataLogger.logger.PassthroughLogReader;
+import us.ihmc.robotDataLogger.logger.YoVariableLoggerListener;
+import us.ihmc.tools.compression.SnappyUtils;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Converts logs written in passthrough mode to the regular log format, so they can be read by the
+ * log viewer and the other tools.
+ */
+public class PassthroughLogConverter extends SimpleFileVisitor<Path>
+{
+   private final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:robotData.log");
+
+   public static void main(String[] args) throws IOException
+   {
+      Path root;
+      if (args.length < 1)
+      {
+         System.out.println("Enter directory to convert");
+         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+         String path = br.readLine();
+         br.close();
+         root = Paths.get(path);
+      }
+      else
+      {
+         root = Paths.get(args[0]);
+      }
+
+      if (!Files.exists(root) || !Files.isDirectory(root))
+      {
+         throw new RuntimeException(root + " is not a directory");
+      }
+      Files.walkFileTree(root, new PassthroughLogConverter());
+   }
+
+   @Override
+   public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+   {
+      if (matcher.matches(file.getFileName()))
+      {
+         try
+         {
+            File directory = file.getParent().toFile();
+            File log = new File(directory, YoVariableLoggerListener.propertyFile);
+            LogProperties properties = new LogPropertiesReader(log);
+            convert(directory, properties);
+         }
+         catch (IOException e)
+         {
+            e.printStackTrace();
+         }
+      }
+      return FileVisitResult.CONTINUE;
+   }
+
+   @Override
+   public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException
+   {
+
+      System.err.println(exc.getMessage());
+      return FileVisitResult.CONTINUE;
+   }
+
+   @SuppressWarnings("resource")
+   public static void convert(File directory, LogProperties properties) throws IOException
+   {
+      if (properties.getVariables().getPassthrough())
+      {
+         System.out.println("Converting " + directory);
+
+         PassthroughLogReader reader = new PassthroughLogReader(directory, properties);
+         List<YoVariable> variables = reader.getVariables();
+         List<JointState> jointStates = reader.getJointStates();
+         int bufferSize = reader.getHandshakeParser().getBufferSize();
+
+         File passthroughData = new File(directory, properties.getVariables().getDataAsString());
+         File passthroughIndex = new File(directory, properties.getVariables().getIndexAsString());
+         File compressionDictionary = null;
+         if (!properties.getVariables().getCompressionDictionaryAsString().isEmpty())
+         {
+            compressionDictionary = new File(directory, properties.getVariables().getCompressionDictionaryAsString());
+         }
+
+         properties.getVariables().setPassthrough(false);
+         properties.getVariables().setCompressionDictionary("");
+         properties.getVariables().setByteShuffled(false);
+         properties.getVariables().setChecksums(false);
+         properties.getVariables().setCompressed(true);
+         properties.getVariables().setData("robotData.bsz");
+         properties.getVariables().setIndex("robotData.dat");
+         properties.getVariables().setTimestamped(true);
+         File compressedData = new File(directory, properties.getVariables().getDataAsString());
+         File indexData = new File(directory, properties.getVariables().getIndexAsString());
+
+         ByteBuffer indexBuffer = ByteBuffer.allocate(16);
+         ByteBuffer compressed = ByteBuffer.allocate(SnappyUtils.maxCompressedLength(bufferSize));
+         ByteBuffer uncompressed = ByteBuffer.allocate(bufferSize);
+         LongBuffer uncompressedAsLong = uncompressed.asLongBuffer();
+
+         FileChannel compressedChannel = new FileOutputStream(compressedData).getChannel();
+         FileChannel indexChannel = new FileOutputStream(indexData).getChannel();
+
+         int elements = Math.max(reader.getNumberOfEntries() / 100, 1);
+         while (reader.hasNext())
+         {
+            if (reader.getNextPosition() % (elements * 10) == 0)
+            {
+               System.out.print(reader.getNextPosition() / elements + "%");
+            }
+            else if (reader.getNextPosition() % elements == 0)
+            {
+               System.out.print(".");
+            }
+
+            long timestamp = reader.readNext();
+
+            uncompressedAsLong.clear();
+            uncompressedAsLong.put(timestamp);
+            for (int i = 0; i < variables.size(); i++)
+            {
+               uncompressedAsLong.put(variables.get(i).getValueAsLongBits());
+            }
+            for (int i = 0; i < jointStates.size(); i++)
+            {
+               jointStates.get(i).get(uncompressedAsLong);
+            }
+
+            uncompressed.clear();
+            SnappyUtils.compress(uncompressed, compressed);
+            compressed.flip();
+
+            indexBuffer.putLong(timestamp);
+            indexBuffer.putLong(compressedChannel.position());
+            indexBuffer.flip();
+            indexChannel.write(indexBuffer);
+
+            compressedChannel.write(compressed);
+
+            indexBuffer.clear();
+            compressed.clear();
+         }
+         System.out.println();
+
+         indexChannel.close();
+         compressedChannel.close();
+         reader.close();
+
+         File log = new File(directory, YoVariableLoggerListener.propertyFile);
+         PropertiesSerializer<LogProperties> writer = new PropertiesSerializer<>(new LogPropertiesPubSubType());
+         writer.serialize(log, properties);
+
+         passthroughData.delete();
+         passthroughIndex.delete();
+         if (compressionDictionary != null)
+         {
+            compressionDictionary.delete();
+         }
+         System.out.println("Converted " + directory);
+      }
+      else
+      {
+         System.err.println("Log file is not a passthrough log: " + directory);
+      }
+   }
+}
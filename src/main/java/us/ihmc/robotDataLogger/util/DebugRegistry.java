@@ -1,6 +1,7 @@
 package us.ihmc.robotDataLogger.util;
 
 import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
 import us.ihmc.yoVariables.variable.YoInteger;
 
 public class DebugRegistry
@@ -11,6 +12,13 @@ public class DebugRegistry
    private final YoInteger mergedPackets;
    private final YoInteger totalPackets;
    private final YoInteger skippedPacketDueToFullBuffer;
+   private final YoDouble jitterBufferDelay;
+   private final YoDouble jitterBufferTargetDelay;
+   private final YoInteger diskWriterQueueSize;
+   private final YoInteger diskWriterDroppedRecords;
+   private final YoDouble diskWriteDuration;
+   private final YoDouble diskSyncDuration;
+   private final YoDouble diskSyncMaximumDuration;
 
    private final YoRegistry loggerDebugRegistry = new YoRegistry("loggerStatus");
 
@@ -23,6 +31,13 @@ public class DebugRegistry
       mergedPackets = new YoInteger("mergedPackets", loggerDebugRegistry);
       totalPackets = new YoInteger("totalPackets", loggerDebugRegistry);
       skippedPacketDueToFullBuffer = new YoInteger("skippedPacketDueToFullBuffer", loggerDebugRegistry);
+      jitterBufferDelay = new YoDouble("jitterBufferDelay", loggerDebugRegistry);
+      jitterBufferTargetDelay = new YoDouble("jitterBufferTargetDelay", loggerDebugRegistry);
+      diskWriterQueueSize = new YoInteger("diskWriterQueueSize", loggerDebugRegistry);
+      diskWriterDroppedRecords = new YoInteger("diskWriterDroppedRecords", loggerDebugRegistry);
+      diskWriteDuration = new YoDouble("diskWriteDuration", loggerDebugRegistry);
+      diskSyncDuration = new YoDouble("diskSyncDuration", loggerDebugRegistry);
+      diskSyncMaximumDuration = new YoDouble("diskSyncMaximumDuration", loggerDebugRegistry);
    }
 
    public void reset()
@@ -33,6 +48,13 @@ public class DebugRegistry
       mergedPackets.set(0);
       totalPackets.set(0);
       skippedPacketDueToFullBuffer.set(0);
+      jitterBufferDelay.set(0);
+      jitterBufferTargetDelay.set(0);
+      diskWriterQueueSize.set(0);
+      diskWriterDroppedRecords.set(0);
+      diskWriteDuration.set(0);
+      diskSyncDuration.set(0);
+      diskSyncMaximumDuration.set(0);
    }
 
    public YoInteger getSkippedPackets()
@@ -65,6 +87,62 @@ public class DebugRegistry
       return skippedPacketDueToFullBuffer;
    }
 
+   /**
+    * @return time in seconds the last applied packet was held in the jitter buffer
+    */
+   public YoDouble getJitterBufferDelay()
+   {
+      return jitterBufferDelay;
+   }
+
+   /**
+    * @return time in seconds packets are held in the jitter buffer, based on the jitter estimate
+    */
+   public YoDouble getJitterBufferTargetDelay()
+   {
+      return jitterBufferTargetDelay;
+   }
+
+   /**
+    * @return number of log records waiting to be written to disk
+    */
+   public YoInteger getDiskWriterQueueSize()
+   {
+      return diskWriterQueueSize;
+   }
+
+   /**
+    * @return number of log records dropped because the disk could not keep up
+    */
+   public YoInteger getDiskWriterDroppedRecords()
+   {
+      return diskWriterDroppedRecords;
+   }
+
+   /**
+    * @return time in seconds of the last write to disk
+    */
+   public YoDouble getDiskWriteDuration()
+   {
+      return diskWriteDuration;
+   }
+
+   /**
+    * @return time in seconds of the last sync of the log to disk
+    */
+   public YoDouble getDiskSyncDuration()
+   {
+      return diskSyncDuration;
+   }
+
+   /**
+    * @return time in seconds of the slowest sync of the log to disk
+    */
+   public YoDouble getDiskSyncMaximumDuration()
+   {
+      return diskSyncMaximumDuration;
+   }
+
    public YoRegistry getYoRegistry()
    {
       return loggerDebugRegistry;
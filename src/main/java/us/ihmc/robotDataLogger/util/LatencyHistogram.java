@@ -0,0 +1,130 @@
+package us.ihmc.robotDataLogger.util;
+
+/**
+ * Histogram of latencies with power of two buckets, from below MINIMUM_BUCKET_SIZE up to about a
+ * second. Values above the last bucket are counted in the last bucket. Thread safe.
+ */
+public class LatencyHistogram
+{
+   /**
+    * Upper bound of the first bucket in nanoseconds
+    */
+   public static final long MINIMUM_BUCKET_SIZE = 125000;
+
+   /**
+    * Number of buckets, the upper bound of the last regular bucket is 125us * 2^12 = 512ms
+    */
+   public static final int NUMBER_OF_BUCKETS = 14;
+
+   private final String name;
+   private final long[] counts = new long[NUMBER_OF_BUCKETS];
+   private long count = 0;
+   private long total = 0;
+   private long maximum = 0;
+
+   /**
+    * @param name Name of the latency, used in toString()
+    */
+   public LatencyHistogram(String name)
+   {
+      this.name = name;
+   }
+
+   /**
+    * @param latency latency in nanoseconds
+    * @return the bucket the latency is counted in
+    */
+   public static int getBucket(long latency)
+   {
+      int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, latency) / MINIMUM_BUCKET_SIZE);
+      return Math.min(bucket, NUMBER_OF_BUCKETS - 1);
+   }
+
+   /**
+    * @param bucket
+    * @return the upper bound of the bucket in nanoseconds, Long.MAX_VALUE for the last bucket
+    */
+   public static long getUpperBound(int bucket)
+   {
+      if (bucket == NUMBER_OF_BUCKETS - 1)
+      {
+         return Long.MAX_VALUE;
+      }
+      return MINIMUM_BUCKET_SIZE << bucket;
+   }
+
+   /**
+    * @param latency latency in nanoseconds
+    */
+   public synchronized void record(long latency)
+   {
+      counts[getBucket(latency)]++;
+      count++;
+      total += latency;
+      maximum = Math.max(maximum, latency);
+   }
+
+   public synchronized long getCount()
+   {
+      return count;
+   }
+
+   public synchronized long getCount(int bucket)
+   {
+      return counts[bucket];
+   }
+
+   /**
+    * @return the largest latency in nanoseconds
+    */
+   public synchronized long getMaximum()
+   {
+      return maximum;
+   }
+
+   /**
+    * @return the average latency in nanoseconds, zero if nothing is recorded
+    */
+   public synchronized long getAverage()
+   {
+      return count == 0 ? 0 : total / count;
+   }
+
+   public synchronized void reset()
+   {
+      for (int i = 0; i < counts.length; i++)
+      {
+         counts[i] = 0;
+      }
+      count = 0;
+      total = 0;
+      maximum = 0;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      StringBuilder builder = new StringBuilder();
+      builder.append(name).append(": ").append(count).append(" samples");
+      if (count > 0)
+      {
+         builder.append(String.format(", average %.3f ms, maximum %.3f ms", getAverage() / 1e6, maximum / 1e6));
+         for (int bucket = 0; bucket < NUMBER_OF_BUCKETS; bucket++)
+         {
+            if (counts[bucket] > 0)
+            {
+               builder.append(System.lineSeparator());
+               if (bucket == NUMBER_OF_BUCKETS - 1)
+               {
+                  builder.append(String.format("   >= %8.3f ms: %d", getUpperBound(bucket - 1) / 1e6, counts[bucket]));
+               }
+               else
+               {
+                  builder.append(String.format("   <  %8.3f ms: %d", getUpperBound(bucket) / 1e6, counts[bucket]));
+               }
+            }
+         }
+      }
+      return builder.toString();
+   }
+}
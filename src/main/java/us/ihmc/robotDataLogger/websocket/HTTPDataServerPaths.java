@@ -12,4 +12,5 @@ public class HTTPDataServerPaths
    public static final String handshake = "/handshake.json";
    public static final String model = "/model.sdf";
    public static final String resources = "/resources.zip";
+   public static final String compressionDictionary = "/compressionDictionary.bin";
 }
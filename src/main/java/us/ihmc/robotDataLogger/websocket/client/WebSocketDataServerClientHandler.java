@@ -1,6 +1,8 @@
 package us.ihmc.robotDataLogger.websocket.client;
 
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
@@ -21,11 +23,14 @@ import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.CharsetUtil;
 import us.ihmc.log.LogTools;
 import us.ihmc.pubsub.common.SerializedPayload;
+import us.ihmc.robotDataLogger.LogDataType;
 import us.ihmc.robotDataLogger.YoVariableClientImplementation;
 import us.ihmc.robotDataLogger.dataBuffers.CustomLogDataSubscriberType;
 import us.ihmc.robotDataLogger.dataBuffers.RegistryConsumer;
 import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBuffer;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBufferPool;
 import us.ihmc.robotDataLogger.websocket.command.DataServerCommand;
+import us.ihmc.robotDataLogger.websocket.command.VariableSubscriptionCommand;
 
 public class WebSocketDataServerClientHandler extends SimpleChannelInboundHandler<Object>
 {
@@ -34,13 +39,17 @@ public class WebSocketDataServerClientHandler extends SimpleChannelInboundHandle
    private final YoVariableClientImplementation yoVariableClient;
 
    private final CustomLogDataSubscriberType type;
-   private final SerializedPayload payload;
+   private SerializedPayload payload;
+
+   private final RegistryReceiveBufferPool receivePool;
+   private final ArrayList<RegistryReceiveBuffer> batchPackets = new ArrayList<>();
 
    private final int timestampPort;
 
    private ChannelPromise handshakeFuture;
 
    private boolean sendConfiguration = false;
+   private int[] variableSubscription = null;
 
    private volatile boolean waitingForPong = false;
 
@@ -48,13 +57,15 @@ public class WebSocketDataServerClientHandler extends SimpleChannelInboundHandle
                                            YoVariableClientImplementation yoVariableClient,
                                            int timestampPort,
                                            RegistryConsumer consumer,
-                                           CustomLogDataSubscriberType type)
+                                           CustomLogDataSubscriberType type,
+                                           RegistryReceiveBufferPool receivePool)
    {
       this.handshaker = handshaker;
       this.yoVariableClient = yoVariableClient;
       this.consumer = consumer;
       this.type = type;
       this.timestampPort = timestampPort;
+      this.receivePool = receivePool;
 
       payload = new SerializedPayload(type.getTypeSize());
    }
@@ -111,13 +122,60 @@ public class WebSocketDataServerClientHandler extends SimpleChannelInboundHandle
       }
       else if (frame instanceof BinaryWebSocketFrame)
       {
-         RegistryReceiveBuffer buffer = new RegistryReceiveBuffer(System.nanoTime());
-         payload.getData().clear();
-         payload.getData().limit(frame.content().readableBytes());
-         frame.content().readBytes(payload.getData());
-         payload.getData().flip();
-         type.deserialize(payload, buffer);
-         consumer.onNewDataMessage(buffer);
+         RegistryReceiveBuffer buffer = receivePool.acquire(System.nanoTime());
+         ByteBuf content = frame.content();
+         try
+         {
+            if (content.nioBufferCount() == 1)
+            {
+               // Decompress straight from the frame. The packet keeps a reference to the content till it is released.
+               // nioBuffer() returns a view of its own, the packet keeps it after this handler returns.
+               ByteBuffer frameBuffer = content.nioBuffer(content.readerIndex(), content.readableBytes());
+               type.deserialize(frameBuffer, content, buffer);
+            }
+            else
+            {
+               if (content.readableBytes() > payload.getData().capacity())
+               {
+                  // Batches can be larger than a single packet
+                  payload = new SerializedPayload(content.readableBytes());
+               }
+               payload.getData().clear();
+               payload.getData().limit(content.readableBytes());
+               content.readBytes(payload.getData());
+               payload.getData().flip();
+               type.deserialize(payload, buffer);
+            }
+         }
+         catch (Exception e)
+         {
+            // Return the buffer to the pool, it also releases the content if the packet already references it
+            buffer.release();
+            throw e;
+         }
+
+         if (buffer.getType() == LogDataType.BATCH_DATA_PACKET)
+         {
+            batchPackets.clear();
+            try
+            {
+               type.unpackBatch(buffer, receivePool, batchPackets);
+            }
+            finally
+            {
+               buffer.release();
+            }
+
+            for (int i = 0; i < batchPackets.size(); i++)
+            {
+               consumer.onNewDataMessage(batchPackets.get(i));
+            }
+            batchPackets.clear();
+         }
+         else
+         {
+            consumer.onNewDataMessage(buffer);
+         }
 
          if (!sendConfiguration)
          {
@@ -125,6 +183,10 @@ public class WebSocketDataServerClientHandler extends SimpleChannelInboundHandle
             DataServerCommand.SEND_TIMESTAMPS.getBytes(sendTimestampCmd, timestampPort);
             TextWebSocketFrame sendTimestampFrame = new TextWebSocketFrame(sendTimestampCmd);
             channel.writeAndFlush(sendTimestampFrame);
+            if (variableSubscription != null)
+            {
+               sendVariableSubscription(channel);
+            }
             sendConfiguration = true;
          }
       }
@@ -139,6 +201,29 @@ public class WebSocketDataServerClientHandler extends SimpleChannelInboundHandle
       }
    }
 
+   /**
+    * Set the variable subscription. If the configuration is already send, the subscription is send
+    * immediately, otherwise it is send with the configuration. Call from the channel event loop.
+    *
+    * @param channel
+    * @param variableIndices
+    */
+   public void setVariableSubscription(Channel channel, int[] variableIndices)
+   {
+      variableSubscription = variableIndices;
+      if (sendConfiguration)
+      {
+         sendVariableSubscription(channel);
+      }
+   }
+
+   private void sendVariableSubscription(Channel channel)
+   {
+      ByteBuf subscriptionCmd = channel.alloc().buffer();
+      VariableSubscriptionCommand.getBytes(variableSubscription, subscriptionCmd);
+      channel.writeAndFlush(new TextWebSocketFrame(subscriptionCmd));
+   }
+
    @Override
    public void userEventTriggered(ChannelHandlerContext context, Object event)
    {
@@ -36,6 +36,8 @@ public class WebsocketDataConsumer implements DataConsumer
    private YoVariableClientImplementation yoVariableClient;
    private TimestampListener timestampListener;
    private DebugRegistry debugRegistry;
+   private int[] variableSubscription = null;
+   private int decompressionThreads = 0;
 
    public WebsocketDataConsumer(HTTPDataServerConnection initialConnection, int timeoutInMs)
    {
@@ -66,6 +68,39 @@ public class WebsocketDataConsumer implements DataConsumer
 
    }
 
+   /**
+    * Download the compression dictionary if the server announced one. Reads directly from the given
+    * connection, so it can be used on connections that are not the current connection.
+    *
+    * @param connection Connection to the server
+    * @return the compression dictionary, or null if the server does not use one
+    * @throws IOException
+    */
+   private long[] requestCompressionDictionary(HTTPDataServerConnection connection) throws IOException
+   {
+      if (!connection.getAnnouncement().getHasCompressionDictionary())
+      {
+         return null;
+      }
+
+      ByteBuf dictionary;
+      try
+      {
+         dictionary = connection.requestResource(HTTPDataServerPaths.compressionDictionary).get(timeoutInMs, TimeUnit.MILLISECONDS);
+      }
+      catch (Exception e)
+      {
+         throw new IOException(e);
+      }
+
+      long[] compressionDictionary = new long[dictionary.readableBytes() / 8];
+      for (int i = 0; i < compressionDictionary.length; i++)
+      {
+         compressionDictionary[i] = dictionary.readLong();
+      }
+      return compressionDictionary;
+   }
+
    @Override
    public byte[] getModelFile() throws IOException
    {
@@ -107,13 +142,20 @@ public class WebsocketDataConsumer implements DataConsumer
             throw new IOException("Not connected");
          }
 
+         long[] compressionDictionary = requestCompressionDictionary(connection);
+
          connection.take();
          this.parser = parser;
          timestampListener = timeStampListener;
          this.yoVariableClient = yoVariableClient;
          this.debugRegistry = debugRegistry;
 
-         session = new WebsocketDataServerClient(connection, parser, timeStampListener, yoVariableClient, timeoutInMs, debugRegistry);
+         session = new WebsocketDataServerClient(connection, parser, timeStampListener, yoVariableClient, timeoutInMs, debugRegistry, compressionDictionary,
+                                                 decompressionThreads);
+         if (variableSubscription != null)
+         {
+            session.setVariableSubscription(variableSubscription);
+         }
       }
    }
 
@@ -194,18 +236,34 @@ public class WebsocketDataConsumer implements DataConsumer
          {
             HTTPDataServerDescription oldDescription = connection.getTarget();
             HTTPDataServerConnection newConnection = HTTPDataServerConnection.connect(oldDescription.getHost(), oldDescription.getPort());
-            newConnection.close();
 
             Announcement announcement = newConnection.getAnnouncement();
             Announcement oldAnnouncement = connection.getAnnouncement();
             if (announcement.getReconnectKeyAsString().equals(oldAnnouncement.getReconnectKeyAsString()))
             {
+               // The dictionary is a snapshot taken at server startup, so it changes when the server restarts
+               long[] compressionDictionary;
+               try
+               {
+                  compressionDictionary = requestCompressionDictionary(newConnection);
+               }
+               finally
+               {
+                  newConnection.close();
+               }
+
                connection = newConnection;
-               session = new WebsocketDataServerClient(connection, parser, timestampListener, yoVariableClient, timeoutInMs, debugRegistry);
+               session = new WebsocketDataServerClient(connection, parser, timestampListener, yoVariableClient, timeoutInMs, debugRegistry, compressionDictionary,
+                                                       decompressionThreads);
+               if (variableSubscription != null)
+               {
+                  session.setVariableSubscription(variableSubscription);
+               }
                return true;
             }
             else
             {
+               newConnection.close();
                return false;
             }
          }
@@ -242,6 +300,33 @@ public class WebsocketDataConsumer implements DataConsumer
       }
    }
 
+   @Override
+   public void setVariableSubscription(int[] variableIndices)
+   {
+      synchronized (lock)
+      {
+         variableSubscription = variableIndices;
+         if (session != null && session.isActive())
+         {
+            session.setVariableSubscription(variableIndices);
+         }
+      }
+   }
+
+   /**
+    * Set the number of threads used to decompress packets of different registries concurrently.
+    * Applies to sessions started after this call.
+    *
+    * @param decompressionThreads Zero or one to decompress on a single thread
+    */
+   public void setDecompressionThreads(int decompressionThreads)
+   {
+      synchronized (lock)
+      {
+         this.decompressionThreads = decompressionThreads;
+      }
+   }
+
    public void setVariableSynchronizer(Object variableSynchronizer)
    {
       session.setVariableSynchronizer(variableSynchronizer);
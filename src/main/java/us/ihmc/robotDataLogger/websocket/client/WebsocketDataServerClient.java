@@ -25,8 +25,10 @@ import us.ihmc.pubsub.common.SerializedPayload;
 import us.ihmc.robotDataLogger.VariableChangeRequest;
 import us.ihmc.robotDataLogger.VariableChangeRequestPubSubType;
 import us.ihmc.robotDataLogger.YoVariableClientImplementation;
+import us.ihmc.robotDataLogger.dataBuffers.CustomLogDataPublisherType;
 import us.ihmc.robotDataLogger.dataBuffers.CustomLogDataSubscriberType;
 import us.ihmc.robotDataLogger.dataBuffers.RegistryConsumer;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBufferPool;
 import us.ihmc.robotDataLogger.handshake.IDLYoVariableHandshakeParser;
 import us.ihmc.robotDataLogger.listeners.TimestampListener;
 import us.ihmc.robotDataLogger.util.DebugRegistry;
@@ -40,6 +42,9 @@ import static io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFa
 
 public class WebsocketDataServerClient
 {
+   private static final int RECEIVE_POOL_INITIAL_SIZE = 64;
+   private static final int RECEIVE_POOL_MAXIMUM_SIZE = 256;
+
    private final EventLoopGroup group = NettyUtils.createEventGroundLoop();
    private final RegistryConsumer consumer;
 
@@ -50,9 +55,11 @@ public class WebsocketDataServerClient
 
    private final DisconnectPromise disconnectPromise;
    private final UDPTimestampClient udpTimestampClient;
+   private final WebSocketDataServerClientHandler handler;
 
    public WebsocketDataServerClient(HTTPDataServerConnection connection, IDLYoVariableHandshakeParser parser, TimestampListener timestampListener,
-                                    YoVariableClientImplementation yoVariableClient, int timeoutInMs, DebugRegistry debugRegistry)
+                                    YoVariableClientImplementation yoVariableClient, int timeoutInMs, DebugRegistry debugRegistry,
+                                    long[] compressionDictionary, int decompressionThreads)
          throws IOException
    {
       disconnectPromise = connection.take();
@@ -68,20 +75,27 @@ public class WebsocketDataServerClient
          throw new IOException(e);
       }
 
-      consumer = new RegistryConsumer(parser, yoVariableClient, debugRegistry);
+      boolean byteShuffled = connection.getAnnouncement().getByteShuffled();
+      consumer = new RegistryConsumer(parser, yoVariableClient, debugRegistry, byteShuffled, compressionDictionary, decompressionThreads);
       udpTimestampClient = new UDPTimestampClient(timestampListener);
       udpTimestampClient.start();
 
-      CustomLogDataSubscriberType type = new CustomLogDataSubscriberType(parser.getNumberOfVariables(), parser.getNumberOfStates());
-      final WebSocketDataServerClientHandler handler = new WebSocketDataServerClientHandler(newHandshaker(uri,
-                                                                                                          WebSocketVersion.V13,
-                                                                                                          null,
-                                                                                                          true,
-                                                                                                          new DefaultHttpHeaders()),
-                                                                                            yoVariableClient,
-                                                                                            udpTimestampClient.getPort(),
-                                                                                            consumer,
-                                                                                            type);
+      CustomLogDataSubscriberType type = new CustomLogDataSubscriberType(parser.getNumberOfVariables(), parser.getNumberOfStates(), byteShuffled);
+      RegistryReceiveBufferPool receivePool = new RegistryReceiveBufferPool(RECEIVE_POOL_INITIAL_SIZE,
+                                                                            RECEIVE_POOL_MAXIMUM_SIZE,
+                                                                            type.getMaximumDataSize(),
+                                                                            parser.getNumberOfStates());
+      handler = new WebSocketDataServerClientHandler(newHandshaker(uri,
+                                                                   WebSocketVersion.V13,
+                                                                   null,
+                                                                   true,
+                                                                   new DefaultHttpHeaders(),
+                                                                   Math.max(type.getTypeSize(), CustomLogDataPublisherType.MAXIMUM_BATCH_PAYLOAD_SIZE)),
+                                                     yoVariableClient,
+                                                     udpTimestampClient.getPort(),
+                                                     consumer,
+                                                     type,
+                                                     receivePool);
 
       Bootstrap b = new Bootstrap();
       b.group(group).channel(NettyUtils.getSocketChannelClass()).handler(new ChannelInitializer<SocketChannel>()
@@ -177,6 +191,17 @@ public class WebsocketDataServerClient
       }
    }
 
+   /**
+    * Send the variable subscription to the server. If the server did not send any data yet, the
+    * subscription is send together with the configuration.
+    *
+    * @param variableIndices Indices of the variables in the handshake. Empty to receive all variables.
+    */
+   public void setVariableSubscription(int[] variableIndices)
+   {
+      ch.eventLoop().execute(() -> handler.setVariableSubscription(ch, variableIndices));
+   }
+
    public void setVariableSynchronizer(Object variableSynchronizer)
    {
       consumer.setVariableSynchronizer(variableSynchronizer);
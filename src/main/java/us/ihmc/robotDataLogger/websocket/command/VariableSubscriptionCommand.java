@@ -0,0 +1,190 @@
+package us.ihmc.robotDataLogger.websocket.command;
+
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Variable length text command to subscribe to a subset of the variables. The server only sends the
+ * subscribed variables to the client. Variables are identified by their index in the handshake
+ * variable list, and are send as a comma separated list of inclusive ranges, for example
+ * "SUBSCRIBE_VARIABLES0-15,20,33-40". An empty list subscribes to all variables. Servers that do not
+ * support this command ignore it and keep sending all variables.
+ */
+public final class VariableSubscriptionCommand
+{
+   public static final String COMMAND = "SUBSCRIBE_VARIABLES";
+
+   /**
+    * Maximum size of the command. This is the default maximum frame payload length of the netty
+    * websocket decoder.
+    */
+   public static final int MAXIMUM_COMMAND_SIZE = 65536;
+
+   private static final byte[] commandBytes = COMMAND.getBytes(CharsetUtil.US_ASCII);
+
+   private VariableSubscriptionCommand()
+   {
+   }
+
+   /**
+    * Check if this buffer contains a subscription command
+    *
+    * @param test Test buffer, not changed
+    * @return true if starts with the subscription command
+    */
+   public static boolean isSubscriptionCommand(ByteBuf test)
+   {
+      if (test.readableBytes() < commandBytes.length)
+      {
+         return false;
+      }
+
+      for (int i = 0; i < commandBytes.length; i++)
+      {
+         if (test.getByte(test.readerIndex() + i) != commandBytes[i])
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Write the subscription command for the given variables
+    *
+    * @param variableIndices Indices of the variables in the handshake. Duplicates are ignored. Pass an
+    *                        empty array to subscribe to all variables.
+    * @param out
+    */
+   public static void getBytes(int[] variableIndices, ByteBuf out)
+   {
+      int[] sorted = sortedUnique(variableIndices);
+
+      StringBuilder command = new StringBuilder(COMMAND);
+      int i = 0;
+      while (i < sorted.length)
+      {
+         int start = sorted[i];
+         int end = start;
+         while (i + 1 < sorted.length && sorted[i + 1] == end + 1)
+         {
+            ++i;
+            ++end;
+         }
+         ++i;
+
+         if (command.length() > COMMAND.length())
+         {
+            command.append(',');
+         }
+         command.append(start);
+         if (end != start)
+         {
+            command.append('-');
+            command.append(end);
+         }
+      }
+
+      if (command.length() > MAXIMUM_COMMAND_SIZE)
+      {
+         throw new RuntimeException("Subscription on " + sorted.length + " variables does not fit in a single command. Subscribe to larger ranges of variables.");
+      }
+
+      out.writeCharSequence(command, CharsetUtil.US_ASCII);
+   }
+
+   /**
+    * Parse the variable indices from a subscription command
+    *
+    * @param in                Input buffer. Not changed
+    * @param numberOfVariables Number of variables in the handshake
+    * @return Sorted, unique variable indices. An empty array means all variables.
+    * @throws IllegalArgumentException if the command is malformed or an index is out of range
+    */
+   public static int[] getVariableIndices(ByteBuf in, int numberOfVariables)
+   {
+      if (!isSubscriptionCommand(in))
+      {
+         throw new IllegalArgumentException("Not a subscription command");
+      }
+
+      String ranges = in.toString(in.readerIndex() + commandBytes.length, in.readableBytes() - commandBytes.length, CharsetUtil.US_ASCII);
+      boolean[] subscribed = new boolean[numberOfVariables];
+      int numberOfSubscribedVariables = 0;
+
+      if (!ranges.isEmpty())
+      {
+         try
+         {
+            for (String range : ranges.split(","))
+            {
+               int separator = range.indexOf('-');
+               int start, end;
+               if (separator == -1)
+               {
+                  start = end = Integer.parseInt(range);
+               }
+               else
+               {
+                  start = Integer.parseInt(range.substring(0, separator));
+                  end = Integer.parseInt(range.substring(separator + 1));
+               }
+
+               if (start < 0 || end < start || end >= numberOfVariables)
+               {
+                  throw new IllegalArgumentException("Invalid range " + range);
+               }
+
+               Arrays.fill(subscribed, start, end + 1, true);
+            }
+         }
+         catch (NumberFormatException e)
+         {
+            throw new IllegalArgumentException("Invalid subscription command", e);
+         }
+      }
+
+      for (int i = 0; i < numberOfVariables; i++)
+      {
+         if (subscribed[i])
+         {
+            ++numberOfSubscribedVariables;
+         }
+      }
+
+      int[] indices = new int[numberOfSubscribedVariables];
+      int index = 0;
+      for (int i = 0; i < numberOfVariables; i++)
+      {
+         if (subscribed[i])
+         {
+            indices[index++] = i;
+         }
+      }
+      return indices;
+   }
+
+   private static int[] sortedUnique(int[] indices)
+   {
+      int[] sorted = Arrays.copyOf(indices, indices.length);
+      Arrays.sort(sorted);
+
+      int unique = 0;
+      for (int i = 0; i < sorted.length; i++)
+      {
+         if (sorted[i] < 0)
+         {
+            throw new IllegalArgumentException("Invalid variable index " + sorted[i]);
+         }
+         if (unique == 0 || sorted[unique - 1] != sorted[i])
+         {
+            sorted[unique++] = sorted[i];
+         }
+      }
+
+      return Arrays.copyOf(sorted, unique);
+   }
+}
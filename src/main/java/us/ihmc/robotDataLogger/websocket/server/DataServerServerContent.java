@@ -23,7 +23,7 @@ import us.ihmc.robotDataLogger.util.HandshakeHashCalculator;
 
 /**
  * This class holds all the static content that is available on the HTTP server. This includes the
- * index page, announcement, handshake, model and resource zip. It is cached and ready to server
+ * index page, announcement, handshake, model, resource zip and compression dictionary. It is cached and ready to server
  * with minimal object allocations.
  *
  * @author Jesper Smith
@@ -44,12 +44,30 @@ public class DataServerServerContent
    private final ByteBuf model;
    private final ByteBuf resourceZip;
 
+   private final ByteBuf compressionDictionary;
+
    public DataServerServerContent(String name, Handshake handshake, LogModelProvider logModelProvider, DataServerSettings dataServerSettings)
+   {
+      this(name, handshake, logModelProvider, dataServerSettings, null);
+   }
+
+   /**
+    * @param name
+    * @param handshake
+    * @param logModelProvider
+    * @param dataServerSettings
+    * @param compressionDictionary Snapshot of all variables, in handshake order, the registry data is
+    *                              encoded against. Null if no dictionary is used.
+    */
+   public DataServerServerContent(String name, Handshake handshake, LogModelProvider logModelProvider, DataServerSettings dataServerSettings,
+                                  long[] compressionDictionary)
    {
       try
       {
          this.name = name;
          announcement = createAnnouncement(name, dataServerSettings.isLogSession(), handshake);
+         announcement.setByteShuffled(dataServerSettings.getByteShuffle());
+         announcement.setHasCompressionDictionary(compressionDictionary != null);
          hostName = announcement.getHostNameAsString();
 
          announcement.setIdentifier(UUID.randomUUID().toString());
@@ -88,6 +106,19 @@ public class DataServerServerContent
             resourceZip = null;
          }
 
+         if (compressionDictionary != null)
+         {
+            this.compressionDictionary = Unpooled.directBuffer(compressionDictionary.length * 8);
+            for (int i = 0; i < compressionDictionary.length; i++)
+            {
+               this.compressionDictionary.writeLong(compressionDictionary[i]);
+            }
+         }
+         else
+         {
+            this.compressionDictionary = null;
+         }
+
          AnnouncementPubSubType announcementPubSubType = new AnnouncementPubSubType();
          JSONSerializer<Announcement> announcementSerializer = new JSONSerializer<>(announcementPubSubType);
          byte[] announcementData = announcementSerializer.serializeToBytes(announcement);
@@ -194,6 +225,21 @@ public class DataServerServerContent
       return "application/zip";
    }
 
+   public boolean hasCompressionDictionary()
+   {
+      return compressionDictionary != null;
+   }
+
+   public ByteBuf getCompressionDictionary()
+   {
+      return compressionDictionary.retainedDuplicate();
+   }
+
+   public String getCompressionDictionaryContentType()
+   {
+      return "application/octet-stream";
+   }
+
    private ByteBuf createIndex()
    {
       InputStream is = getClass().getResourceAsStream("index.html");
@@ -74,6 +74,10 @@ class HTTPDataServerDescriptionServer extends SimpleChannelInboundHandler<FullHt
       {
          sendContent(ctx, req, logServerContent.getResourceZip(), logServerContent.getResourceZipContentType());
       }
+      else if (logServerContent.hasCompressionDictionary() && HTTPDataServerPaths.compressionDictionary.equals(req.uri()))
+      {
+         sendContent(ctx, req, logServerContent.getCompressionDictionary(), logServerContent.getCompressionDictionaryContentType());
+      }
       else
       {
          sendHttpResponse(ctx, req, new DefaultFullHttpResponse(HTTP_1_1, NOT_FOUND));
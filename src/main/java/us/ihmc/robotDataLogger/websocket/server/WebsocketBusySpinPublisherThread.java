@@ -0,0 +1,92 @@
+package us.ihmc.robotDataLogger.websocket.server;
+
+import java.util.Arrays;
+
+import us.ihmc.robotDataLogger.util.PaddedVolatileBoolean;
+import us.ihmc.robotDataLogger.util.PaddedVolatileLong;
+import us.ihmc.robotDataLogger.util.PaddedVolatileReference;
+
+/**
+ * Thread that continuously polls all registry publishers for new data without sleeping. All
+ * publishers share a single thread, so only one core is used regardless of the number of registry
+ * buffers. The thread is named after this class, so it can be pinned to an isolated core by name.
+ */
+class WebsocketBusySpinPublisherThread extends Thread
+{
+   private final Object lock = new Object();
+
+   // Implement publishers as copy on write array to avoid locking in the spin loop
+   private final PaddedVolatileReference<WebsocketRegistryPublisher[]> publishers = new PaddedVolatileReference<>(new WebsocketRegistryPublisher[0]);
+
+   private final PaddedVolatileBoolean active = new PaddedVolatileBoolean(true);
+   private final PaddedVolatileLong iterations = new PaddedVolatileLong(0);
+
+   public WebsocketBusySpinPublisherThread()
+   {
+      super(WebsocketBusySpinPublisherThread.class.getSimpleName());
+      setDaemon(true);
+   }
+
+   public void addPublisher(WebsocketRegistryPublisher publisher)
+   {
+      synchronized (lock)
+      {
+         WebsocketRegistryPublisher[] newPublishers = Arrays.copyOf(publishers.get(), publishers.get().length + 1);
+         newPublishers[newPublishers.length - 1] = publisher;
+         publishers.set(newPublishers);
+      }
+   }
+
+   /**
+    * Remove a publisher. When this function returns, the publisher is not called anymore.
+    *
+    * @param publisher
+    */
+   public void removePublisher(WebsocketRegistryPublisher publisher)
+   {
+      synchronized (lock)
+      {
+         WebsocketRegistryPublisher[] oldPublishers = publishers.get();
+         WebsocketRegistryPublisher[] newPublishers = new WebsocketRegistryPublisher[oldPublishers.length];
+         int newI = 0;
+         for (int i = 0; i < oldPublishers.length; i++)
+         {
+            if (oldPublishers[i] != publisher)
+            {
+               newPublishers[newI] = oldPublishers[i];
+               ++newI;
+            }
+         }
+         publishers.set(Arrays.copyOf(newPublishers, newI));
+      }
+
+      // Wait till the loop that could still see the old publishers has finished
+      long startIteration = iterations.getLong();
+      while (isAlive() && iterations.getLong() < startIteration + 2)
+      {
+         Thread.yield();
+      }
+   }
+
+   public void shutdown()
+   {
+      active.set(false);
+   }
+
+   @Override
+   public void run()
+   {
+      while (active.getBoolean())
+      {
+         // Localize publishers
+         WebsocketRegistryPublisher[] localPublishers = publishers.get();
+         for (int i = 0; i < localPublishers.length; i++)
+         {
+            localPublishers[i].publish();
+         }
+
+         iterations.set(iterations.getLong() + 1);
+         Thread.onSpinWait();
+      }
+   }
+}
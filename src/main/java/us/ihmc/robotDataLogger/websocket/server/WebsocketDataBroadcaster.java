@@ -1,13 +1,14 @@
 package us.ihmc.robotDataLogger.websocket.server;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.locks.LockSupport;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import us.ihmc.robotDataLogger.dataBuffers.RegistrySendBuffer;
 import us.ihmc.robotDataLogger.util.PaddedVolatileBoolean;
 import us.ihmc.robotDataLogger.util.PaddedVolatileLong;
 import us.ihmc.robotDataLogger.util.PaddedVolatileReference;
@@ -35,11 +36,25 @@ class WebsocketDataBroadcaster implements ChannelFutureListener
 
    private final PaddedVolatileReference<WebsocketDataServerFrameHandler[]> channels = new PaddedVolatileReference<>(new WebsocketDataServerFrameHandler[0]);
 
+   // Clients grouped by requested update rate, also copy on write
+   private final PaddedVolatileReference<WebsocketDataServerRateTier[]> rateTiers = new PaddedVolatileReference<>(new WebsocketDataServerRateTier[0]);
+
    private final PaddedVolatileBoolean active = new PaddedVolatileBoolean(true);
    private final PaddedVolatileLong newTimestamp = new PaddedVolatileLong(Long.MIN_VALUE);
+   private final PaddedVolatileLong keyframeRequests = new PaddedVolatileLong(0);
+
+   // Layout of the variables of the registry buffers in the handshake. Guarded by channelLock
+   private int[] bufferVariableOffsets = new int[0];
+   private int[] bufferVariableSizes = new int[0];
 
-   public WebsocketDataBroadcaster()
+   private final boolean batching;
+
+   /**
+    * @param batching Send batches to clients that receive every packet of all variables
+    */
+   public WebsocketDataBroadcaster(boolean batching)
    {
+      this.batching = batching;
       timestampPublishingThread.start();
    }
 
@@ -53,18 +68,244 @@ class WebsocketDataBroadcaster implements ChannelFutureListener
          newChannels[newChannels.length - 1] = websocketLogFrameHandler;
          channels.set(newChannels);
 
+         addToRateTier(websocketLogFrameHandler, 0, null);
+
          websocketLogFrameHandler.addCloseFutureListener(this);
+
+         // Let the registry publishers send a keyframe, so the new client does not have to wait for the next one
+         keyframeRequests.set(keyframeRequests.getLong() + 1);
       }
    }
 
-   public void write(int bufferID, long timestamp, ByteBuffer frame) throws IOException
+   /**
+    * Register the variables of a registry buffer. Registry buffers have to be added in the same order
+    * as they are added to the handshake, before clients connect.
+    *
+    * @param bufferID          ID of the buffer, has to be the number of registered buffers
+    * @param numberOfVariables Number of variables in the buffer
+    */
+   public void addRegistryBuffer(int bufferID, int numberOfVariables)
    {
-      // Localize channels
-      WebsocketDataServerFrameHandler[] localChannels = channels.get();
+      synchronized (channelLock)
+      {
+         if (bufferID != bufferVariableOffsets.length)
+         {
+            throw new RuntimeException("Registry buffers have to be added in order. Expected buffer " + bufferVariableOffsets.length + ", got " + bufferID);
+         }
 
-      for (int i = 0; i < localChannels.length; i++)
+         int offset = bufferID == 0 ? 0 : bufferVariableOffsets[bufferID - 1] + bufferVariableSizes[bufferID - 1];
+
+         bufferVariableOffsets = Arrays.copyOf(bufferVariableOffsets, bufferID + 1);
+         bufferVariableSizes = Arrays.copyOf(bufferVariableSizes, bufferID + 1);
+         bufferVariableOffsets[bufferID] = offset;
+         bufferVariableSizes[bufferID] = numberOfVariables;
+      }
+   }
+
+   /**
+    * @return Number of variables in all registered registry buffers
+    */
+   public int getNumberOfVariables()
+   {
+      synchronized (channelLock)
+      {
+         int last = bufferVariableOffsets.length - 1;
+         return last < 0 ? 0 : bufferVariableOffsets[last] + bufferVariableSizes[last];
+      }
+   }
+
+   /**
+    * Move a client to the rate tier for the requested variable subscription
+    *
+    * @param websocketLogFrameHandler
+    * @param variableIndices          Sorted, unique handshake indices of the variables to send. Empty
+    *                                 to send all variables.
+    * @throws IllegalArgumentException if a variable index is out of range
+    */
+   public void setSubscription(WebsocketDataServerFrameHandler websocketLogFrameHandler, int[] variableIndices)
+   {
+      synchronized (channelLock)
+      {
+         WebsocketDataServerRateTier currentTier = websocketLogFrameHandler.getRateTier();
+         if (currentTier == null)
+         {
+            // Client is not connected or already removed
+            return;
+         }
+
+         WebsocketDataServerSubscription subscription = null;
+         if (variableIndices.length > 0)
+         {
+            subscription = new WebsocketDataServerSubscription(variableIndices, bufferVariableOffsets, bufferVariableSizes);
+         }
+
+         if (!currentTier.matches(currentTier.getRequestedUpdateDT(), subscription))
+         {
+            removeFromRateTier(websocketLogFrameHandler);
+            addToRateTier(websocketLogFrameHandler, currentTier.getRequestedUpdateDT(), subscription);
+         }
+      }
+   }
+
+   /**
+    * Move a client to the rate tier for the requested update rate
+    *
+    * @param websocketLogFrameHandler
+    * @param requestedUpdateDT        Requested time between updates in nanoseconds, 0 to send every
+    *                                 packet
+    */
+   public void setUpdateRate(WebsocketDataServerFrameHandler websocketLogFrameHandler, long requestedUpdateDT)
+   {
+      synchronized (channelLock)
+      {
+         WebsocketDataServerRateTier currentTier = websocketLogFrameHandler.getRateTier();
+         if (currentTier == null)
+         {
+            // Client is not connected or already removed
+            return;
+         }
+
+         if (currentTier.getRequestedUpdateDT() != requestedUpdateDT)
+         {
+            removeFromRateTier(websocketLogFrameHandler);
+            addToRateTier(websocketLogFrameHandler, requestedUpdateDT, currentTier.getSubscription());
+         }
+      }
+   }
+
+   /**
+    * Add a client to the tier with the requested rate and subscription, creating the tier if
+    * necessary. Call while holding the channelLock.
+    */
+   private void addToRateTier(WebsocketDataServerFrameHandler websocketLogFrameHandler, long requestedUpdateDT,
+                              WebsocketDataServerSubscription subscription)
+   {
+      WebsocketDataServerRateTier[] oldTiers = rateTiers.get();
+      for (int i = 0; i < oldTiers.length; i++)
+      {
+         if (oldTiers[i].matches(requestedUpdateDT, subscription))
+         {
+            oldTiers[i].addClient(websocketLogFrameHandler);
+            websocketLogFrameHandler.setRateTier(oldTiers[i]);
+            return;
+         }
+      }
+
+      boolean batched = batching && requestedUpdateDT == 0 && subscription == null;
+      WebsocketDataServerRateTier newTier = new WebsocketDataServerRateTier(requestedUpdateDT,
+                                                                            subscription,
+                                                                            batched,
+                                                                            websocketLogFrameHandler.getNumberOfRegistryBuffers());
+      newTier.addClient(websocketLogFrameHandler);
+      websocketLogFrameHandler.setRateTier(newTier);
+
+      WebsocketDataServerRateTier[] newTiers = Arrays.copyOf(oldTiers, oldTiers.length + 1);
+      newTiers[newTiers.length - 1] = newTier;
+      rateTiers.set(newTiers);
+   }
+
+   /**
+    * Remove a client from its tier and remove the tier if it is empty. Call while holding the
+    * channelLock.
+    */
+   private void removeFromRateTier(WebsocketDataServerFrameHandler websocketLogFrameHandler)
+   {
+      WebsocketDataServerRateTier tier = websocketLogFrameHandler.getRateTier();
+      if (tier == null)
+      {
+         return;
+      }
+      websocketLogFrameHandler.setRateTier(null);
+
+      if (tier.removeClient(websocketLogFrameHandler))
+      {
+         WebsocketDataServerRateTier[] oldTiers = rateTiers.get();
+         WebsocketDataServerRateTier[] newTiers = new WebsocketDataServerRateTier[oldTiers.length];
+         int newI = 0;
+         for (int i = 0; i < oldTiers.length; i++)
+         {
+            if (oldTiers[i] != tier)
+            {
+               newTiers[newI] = oldTiers[i];
+               ++newI;
+            }
+         }
+         rateTiers.set(Arrays.copyOf(newTiers, newI));
+      }
+   }
+
+   /**
+    * Counter that gets incremented every time a keyframe is requested. Registry publishers should send
+    * a new keyframe when this changes.
+    *
+    * @return number of keyframe requests
+    */
+   public long getKeyframeRequests()
+   {
+      return keyframeRequests.getLong();
+   }
+
+   /**
+    * Write a registry packet to all clients. The decision to send is made once per rate tier, and the
+    * frame is only encoded if a tier sends it. Every client writes a retained duplicate of the frame.
+    * Tiers with a variable subscription use the encoder to encode their subset of buffer.
+    *
+    * @param bufferID
+    * @param buffer  Registry packet to send
+    * @param encoder Encoder for buffer
+    * @throws IOException
+    */
+   public void write(int bufferID, RegistrySendBuffer buffer, WebsocketRegistryFrameEncoder encoder) throws IOException
+   {
+      // Localize tiers
+      WebsocketDataServerRateTier[] localTiers = rateTiers.get();
+
+      for (int i = 0; i < localTiers.length; i++)
+      {
+         localTiers[i].write(bufferID, buffer, encoder);
+      }
+   }
+
+   /**
+    * @return true if batching is enabled and at least one client receives batches
+    */
+   public boolean hasBatchedClients()
+   {
+      if (!batching)
+      {
+         return false;
+      }
+
+      // Localize tiers
+      WebsocketDataServerRateTier[] localTiers = rateTiers.get();
+      for (int i = 0; i < localTiers.length; i++)
+      {
+         if (localTiers[i].isBatched())
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Write a batch of registry packets to all clients in batched tiers. Every client writes a retained
+    * duplicate of frame, the caller keeps ownership of its reference.
+    *
+    * @param bufferID
+    * @param requiredKeyframeUid  Keyframe the first packet in the batch depends on, or
+    *                             RegistryBuffer.NO_KEYFRAME if the batch contains a keyframe
+    * @param deliveredKeyframeUid Last keyframe in the batch, or RegistryBuffer.NO_KEYFRAME
+    * @param frame                Batch encoded by WebsocketSharedFrameEncoder
+    */
+   public void writeBatch(int bufferID, long requiredKeyframeUid, long deliveredKeyframeUid, ByteBuf frame)
+   {
+      // Localize tiers
+      WebsocketDataServerRateTier[] localTiers = rateTiers.get();
+
+      for (int i = 0; i < localTiers.length; i++)
       {
-         localChannels[i].write(bufferID, timestamp, frame);
+         localTiers[i].writeBatch(bufferID, requiredKeyframeUid, deliveredKeyframeUid, frame);
       }
    }
 
@@ -85,6 +326,7 @@ class WebsocketDataBroadcaster implements ChannelFutureListener
          {
             if (oldChannels[i].channel() == channel)
             {
+               removeFromRateTier(oldChannels[i]);
                oldChannels[i].release();
             }
             else
@@ -16,6 +16,7 @@ import us.ihmc.robotDataLogger.interfaces.DataProducer;
 import us.ihmc.robotDataLogger.interfaces.RegistryPublisher;
 import us.ihmc.robotDataLogger.listeners.VariableChangedListener;
 import us.ihmc.robotDataLogger.logger.DataServerSettings;
+import us.ihmc.robotDataLogger.logger.DataServerSettings.PublishMode;
 import us.ihmc.robotDataLogger.logger.LogAliveListener;
 import us.ihmc.robotDataLogger.util.NettyUtils;
 import us.ihmc.robotDataLogger.websocket.server.discovery.DataServerLocationBroadcastSender;
@@ -33,7 +34,7 @@ import us.ihmc.robotDataLogger.websocket.server.discovery.DataServerLocationBroa
  */
 public class WebsocketDataProducer implements DataProducer
 {
-   private final WebsocketDataBroadcaster broadcaster = new WebsocketDataBroadcaster();
+   private final WebsocketDataBroadcaster broadcaster;
    private final VariableChangedListener variableChangedListener;
    private final LogAliveListener logAliveListener;
 
@@ -45,19 +46,29 @@ public class WebsocketDataProducer implements DataProducer
    private final EventLoopGroup bossGroup = NettyUtils.createEventGroundLoop(1);
 
    /**
-    * Create a single worker. If "writeAndFlush" is called in the eventloop of the outbound channel, no
-    * extra objects will be created. The registryPublisher is scheduled on the main eventloop to avoid
-    * having extra threads and delay.
+    * Workers for the client channels and registry publishers. Each registry publisher is pinned to the
+    * next event loop of this group. With a single worker, "writeAndFlush" is called in the eventloop of
+    * the outbound channel and no extra objects will be created.
     */
-   private final EventLoopGroup workerGroup = NettyUtils.createEventGroundLoop(1);
+   private final EventLoopGroup workerGroup;
 
    private DataServerLocationBroadcastSender broadcastSender;
 
    private DataServerServerContent dataServerContent = null;
 
-   private int maximumBufferSize = 0;
-
    private final boolean autoDiscoverable;
+   private final int keyframeInterval;
+   private final PublishMode publishMode;
+   private final int maximumBatchSize;
+   private final long maximumBatchLatency;
+   private final boolean byteShuffle;
+
+   /**
+    * Shared thread for all registry publishers in PublishMode.BUSY_SPIN. Null in other modes. Started
+    * by announce() and stopped by remove(), so a producer that is never announced does not occupy a
+    * core.
+    */
+   private final WebsocketBusySpinPublisherThread busySpinThread;
 
    private int nextBufferID = 0;
 
@@ -68,6 +79,22 @@ public class WebsocketDataProducer implements DataProducer
       this.logAliveListener = logAliveListener;
       port = dataServerSettings.getPort();
       autoDiscoverable = dataServerSettings.isAutoDiscoverable();
+      keyframeInterval = dataServerSettings.getKeyframeInterval();
+      publishMode = dataServerSettings.getPublishMode();
+      maximumBatchSize = dataServerSettings.getMaximumBatchSize();
+      maximumBatchLatency = dataServerSettings.getMaximumBatchLatency();
+      byteShuffle = dataServerSettings.getByteShuffle();
+      broadcaster = new WebsocketDataBroadcaster(maximumBatchSize > 1);
+      workerGroup = NettyUtils.createEventGroundLoop(dataServerSettings.getNumberOfWorkerThreads());
+
+      if (publishMode == PublishMode.BUSY_SPIN)
+      {
+         busySpinThread = new WebsocketBusySpinPublisherThread();
+      }
+      else
+      {
+         busySpinThread = null;
+      }
    }
 
    @Override
@@ -81,6 +108,11 @@ public class WebsocketDataProducer implements DataProducer
                broadcastSender.stop();
             if (broadcaster != null)
                broadcaster.stop();
+            if (busySpinThread != null)
+            {
+               busySpinThread.shutdown();
+               busySpinThread.join();
+            }
 
             if (channel != null)
             {
@@ -131,11 +163,15 @@ public class WebsocketDataProducer implements DataProducer
                                                                             broadcaster,
                                                                             variableChangedListener,
                                                                             logAliveListener,
-                                                                            maximumBufferSize,
                                                                             numberOfRegistryBuffers));
 
             channel = serverBootstrap.bind(port).sync().channel();
 
+            if (busySpinThread != null && busySpinThread.getState() == Thread.State.NEW)
+            {
+               busySpinThread.start();
+            }
+
             if (autoDiscoverable)
             {
                broadcastSender = new DataServerLocationBroadcastSender(port);
@@ -163,11 +199,17 @@ public class WebsocketDataProducer implements DataProducer
    @Override
    public RegistryPublisher createRegistryPublisher(RegistrySendBufferBuilder builder, BufferListenerInterface bufferListener) throws IOException
    {
-      WebsocketRegistryPublisher websocketRegistryPublisher = new WebsocketRegistryPublisher(workerGroup, builder, broadcaster, nextBufferID, bufferListener);
-      if (websocketRegistryPublisher.getMaximumBufferSize() > maximumBufferSize)
-      {
-         maximumBufferSize = websocketRegistryPublisher.getMaximumBufferSize();
-      }
+      WebsocketRegistryPublisher websocketRegistryPublisher = new WebsocketRegistryPublisher(workerGroup,
+                                                                                             builder,
+                                                                                             broadcaster,
+                                                                                             nextBufferID,
+                                                                                             bufferListener,
+                                                                                             keyframeInterval,
+                                                                                             publishMode,
+                                                                                             busySpinThread,
+                                                                                             maximumBatchSize,
+                                                                                             maximumBatchLatency,
+                                                                                             byteShuffle);
       nextBufferID++;
       return websocketRegistryPublisher;
    }
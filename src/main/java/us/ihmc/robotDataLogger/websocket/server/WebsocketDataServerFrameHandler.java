@@ -2,8 +2,9 @@ package us.ihmc.robotDataLogger.websocket.server;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
@@ -20,9 +21,11 @@ import us.ihmc.commons.Conversions;
 import us.ihmc.pubsub.common.SerializedPayload;
 import us.ihmc.robotDataLogger.VariableChangeRequest;
 import us.ihmc.robotDataLogger.VariableChangeRequestPubSubType;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryBuffer;
 import us.ihmc.robotDataLogger.listeners.VariableChangedListener;
 import us.ihmc.robotDataLogger.logger.LogAliveListener;
 import us.ihmc.robotDataLogger.websocket.command.DataServerCommand;
+import us.ihmc.robotDataLogger.websocket.command.VariableSubscriptionCommand;
 
 /**
  * Handler for websocket connection - Handles writing data to channel - Passes incoming
@@ -32,16 +35,13 @@ import us.ihmc.robotDataLogger.websocket.command.DataServerCommand;
  */
 class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSocketFrame>
 {
-   private static final int BINARY_POOL_SIZE = 12;
    private static final int TEXT_POOL_SIZE = 128;
 
    private final WebsocketDataBroadcaster broadcaster;
    private final VariableChangedListener variableChangedListener;
    private final LogAliveListener logAliveListener;
-   private final int dataSize;
 
    private Object lock;
-   private WebsocketFramePool binaryPool;
    private WebsocketFramePool textPool = new WebsocketFramePool(DataServerCommand.MaxCommandSize(), TEXT_POOL_SIZE, TextWebSocketFrame.class);
    private Channel channel = null;
    private VoidChannelPromise channelPromise = null;
@@ -53,25 +53,24 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
 
    private final UDPTimestampServer udpTimestampServer;
 
-   private final WebsocketDataServerRegistrySendStatistics[] registryStatistics;
+   private final int numberOfRegistryBuffers;
+   private final long[] deliveredKeyframeUids;
 
-   private long requestedUpdateDT = 0;
+   // Rate tier this client belongs to. Guarded by the broadcaster
+   private WebsocketDataServerRateTier rateTier = null;
 
-   public WebsocketDataServerFrameHandler(WebsocketDataBroadcaster broadcaster, int dataSize, int numberOfRegistryBuffers,
-                                          VariableChangedListener variableChangedListener, LogAliveListener logAliveListener)
+   public WebsocketDataServerFrameHandler(WebsocketDataBroadcaster broadcaster, int numberOfRegistryBuffers, VariableChangedListener variableChangedListener,
+                                          LogAliveListener logAliveListener)
          throws IOException
    {
       this.broadcaster = broadcaster;
-      this.dataSize = dataSize;
       this.variableChangedListener = variableChangedListener;
       this.logAliveListener = logAliveListener;
       udpTimestampServer = new UDPTimestampServer();
 
-      registryStatistics = new WebsocketDataServerRegistrySendStatistics[numberOfRegistryBuffers];
-      for (int i = 0; i < numberOfRegistryBuffers; i++)
-      {
-         registryStatistics[i] = new WebsocketDataServerRegistrySendStatistics();
-      }
+      this.numberOfRegistryBuffers = numberOfRegistryBuffers;
+      deliveredKeyframeUids = new long[numberOfRegistryBuffers];
+      Arrays.fill(deliveredKeyframeUids, RegistryBuffer.NO_KEYFRAME);
    }
 
    @Override
@@ -80,15 +79,7 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
 
       if (evt instanceof HandshakeComplete)
       {
-         lock = new Object();
-         binaryPool = new WebsocketFramePool(dataSize, BINARY_POOL_SIZE, BinaryWebSocketFrame.class);
-
-         alloc = new RecyclingByteBufAllocator(ctx.alloc());
-         ctx.channel().config().setAllocator(alloc);
-
-         channel = ctx.channel();
-         channelPromise = new VoidChannelPromise(channel, false);
-         broadcaster.addClient(this);
+         handshakeComplete(ctx);
       }
       else
       {
@@ -96,6 +87,22 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
       }
    }
 
+   /**
+    * Set up the channel and add this client to the broadcaster. Called when the websocket handshake
+    * is complete.
+    */
+   void handshakeComplete(ChannelHandlerContext ctx)
+   {
+      lock = new Object();
+
+      alloc = new RecyclingByteBufAllocator(ctx.alloc());
+      ctx.channel().config().setAllocator(alloc);
+
+      channel = ctx.channel();
+      channelPromise = new VoidChannelPromise(channel, false);
+      broadcaster.addClient(this);
+   }
+
    private void runCommand(DataServerCommand command, int argument)
    {
       switch (command)
@@ -104,10 +111,7 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
             udpTimestampServer.startSending(remoteAddress().getAddress(), argument);
             break;
          case LIMIT_RATE:
-            synchronized (lock)
-            {
-               requestedUpdateDT = Conversions.millisecondsToNanoseconds(argument);
-            }
+            broadcaster.setUpdateRate(this, Conversions.millisecondsToNanoseconds(argument));
             break;
          case LOG_ACTIVE:
             if (logAliveListener != null)
@@ -148,6 +152,10 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
                   runCommand(command, argument);
                }
             }
+            else if (VariableSubscriptionCommand.isSubscriptionCommand(frame.content()))
+            {
+               broadcaster.setSubscription(this, VariableSubscriptionCommand.getVariableIndices(frame.content(), broadcaster.getNumberOfVariables()));
+            }
          }
          else if (frame instanceof BinaryWebSocketFrame)
          {
@@ -198,110 +206,54 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
       return channel;
    }
 
-   /**
-    * Updates the registry count and estimated dt for bufferD
-    *
-    * @param bufferID
-    */
-   private void updateRegistryStatistics(int bufferID, long timestamp)
+   int getNumberOfRegistryBuffers()
    {
-      if (bufferID >= registryStatistics.length)
-      {
-         throw new RuntimeException("Invalid registry ID");
-      }
-
-      registryStatistics[bufferID].update(timestamp);
-
+      return numberOfRegistryBuffers;
    }
 
-   /**
-    * Check if an update should be send An update should be send if enough time passed for the current
-    * registry buffer OR another registry buffer should send at this time. Note: If timestamps are not
-    * increasing for any thread and no DT can be determined, no data will be send to the client.
-    *
-    * @param bufferID
-    * @param timestamp
-    * @return true if we should send this registry
-    */
-   private boolean shouldSend(int bufferID, long timestamp)
+   WebsocketDataServerRateTier getRateTier()
    {
-      // Always send if requestedUpdateDT is set to 0
-      if (requestedUpdateDT == 0)
-      {
-         return true;
-      }
-
-      // Figure out what rate the fastest buffer updates at
-      long fastestRegistryBufferDT = Long.MAX_VALUE;
-      for (int i = 0; i < registryStatistics.length; i++)
-      {
-         if (!registryStatistics[i].isNonMonotonic())
-         {
-            long dt = registryStatistics[i].getRegistryBufferDT();
-            if (dt < fastestRegistryBufferDT)
-            {
-               fastestRegistryBufferDT = dt;
-            }
-         }
-      }
-
-      if (registryStatistics[bufferID].shouldSend(timestamp, requestedUpdateDT, fastestRegistryBufferDT, false))
-      {
-         return true;
-      }
-      else if (fastestRegistryBufferDT != Long.MAX_VALUE) // Check if we need to send to match any buffer slower than the current buffer, but only if we have at least one monotonic updating buffer
-      {
-         for (int i = 0; i < registryStatistics.length; i++)
-         {
-            if (registryStatistics[i].getRegistryBufferDT() > registryStatistics[bufferID].getRegistryBufferDT())
-            {
-               if (registryStatistics[i].shouldSend(timestamp, requestedUpdateDT, fastestRegistryBufferDT, true))
-               {
-                  return true;
-               }
-            }
-         }
-      }
-
-      return false;
-
+      return rateTier;
    }
 
-   private void updateRegistrySendTimestamp(int bufferID, long timestamp)
+   void setRateTier(WebsocketDataServerRateTier rateTier)
    {
-      registryStatistics[bufferID].updateSendTimestamp(timestamp);
+      this.rateTier = rateTier;
    }
 
    /**
-    * Write binary data in "frame" If called from the channel outbound event loop, no objects will be
-    * allocated.
+    * Write the encoded binary websocket frame "frame". A retained duplicate is written to the channel,
+    * the data itself is not copied. If called from the channel outbound event loop and frame comes
+    * from a pooled allocator, no objects will be allocated. If called from another thread, for example
+    * the busy spin publisher thread, netty queues a write task on the event loop. The rate tier of
+    * this client decides if a packet should be send. Packets that reference a keyframe are only send if that keyframe has been
+    * written to this channel.
     * 
     * @param bufferID
-    * @param frame
+    * @param requiredKeyframeUid  Keyframe the data is encoded against, or RegistryBuffer.NO_KEYFRAME if
+    *                             the frame can be decoded on its own
+    * @param deliveredKeyframeUid Keyframe contained in the frame, or RegistryBuffer.NO_KEYFRAME
+    * @param frame                Frame encoded by WebsocketSharedFrameEncoder
     */
-   public void write(int bufferID, long timestamp, ByteBuffer frame)
+   public void write(int bufferID, long requiredKeyframeUid, long deliveredKeyframeUid, ByteBuf frame)
    {
-      if (!channel.eventLoop().inEventLoop())
-      {
-         throw new RuntimeException("Call this function from the channels event loop");
-      }
       synchronized (lock)
       {
-         updateRegistryStatistics(bufferID, timestamp);
+         if (requiredKeyframeUid != RegistryBuffer.NO_KEYFRAME && deliveredKeyframeUids[bufferID] != requiredKeyframeUid)
+         {
+            // The client cannot decode this packet
+            return;
+         }
 
-         if (shouldSend(bufferID, timestamp))
+         if (channel.isActive() && channel.isWritable())
          {
-            WebSocketFrame websocketFrame = binaryPool.createFrame(frame);
-            if (websocketFrame != null)
+            ChannelPromise voidPromise = channel.voidPromise();
+            channel.writeAndFlush(frame.retainedDuplicate(), voidPromise);
+
+            if (deliveredKeyframeUid != RegistryBuffer.NO_KEYFRAME)
             {
-               if (channel.isActive() && channel.isWritable())
-               {
-                  ChannelPromise voidPromise = channel.voidPromise();
-                  channel.writeAndFlush(websocketFrame, voidPromise);
-               }
+               deliveredKeyframeUids[bufferID] = deliveredKeyframeUid;
             }
-
-            updateRegistrySendTimestamp(bufferID, timestamp);
          }
       }
    }
@@ -322,11 +274,6 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
             alloc.release();
          }
 
-         if (binaryPool != null)
-         {
-            binaryPool.release();
-         }
-
          if (textPool != null)
          {
             textPool.release();
@@ -334,13 +281,23 @@ class WebsocketDataServerFrameHandler extends SimpleChannelInboundHandler<WebSoc
       }
    }
 
+   /**
+    * Write a command to the client. The text frames are only touched from the event loop of this
+    * channel. Commands are broadcast from the event loop of the client that sent them, which can be
+    * a different event loop when there is more than one worker thread. In that case the write is
+    * queued on the event loop of this channel.
+    *
+    * @param command
+    * @param argument
+    */
    public void writeCommand(DataServerCommand command, int argument)
    {
-
       if (!channel.eventLoop().inEventLoop())
       {
-         throw new RuntimeException("Call this function from the channels event loop");
+         channel.eventLoop().execute(() -> writeCommand(command, argument));
+         return;
       }
+
       synchronized (lock)
       {
          WebSocketFrame websocketFrame = textPool.createFrame();
@@ -22,16 +22,13 @@ class WebsocketDataServerInitializer extends ChannelInitializer<SocketChannel>
    private final WebsocketDataBroadcaster broadcaster;
    private final VariableChangedListener variableChangedListener;
    private final LogAliveListener logAliveListener;
-   private final int dataSize;
    private final int numberOfRegistryBuffers;
 
    public WebsocketDataServerInitializer(DataServerServerContent logServerContent, WebsocketDataBroadcaster broadcaster,
-                                         VariableChangedListener variableChangedListener, LogAliveListener logAliveListener, int dataSize,
-                                         int numberOfRegistryBuffers)
+                                         VariableChangedListener variableChangedListener, LogAliveListener logAliveListener, int numberOfRegistryBuffers)
    {
       this.logServerContent = logServerContent;
       this.broadcaster = broadcaster;
-      this.dataSize = dataSize;
       this.variableChangedListener = variableChangedListener;
       this.logAliveListener = logAliveListener;
       this.numberOfRegistryBuffers = numberOfRegistryBuffers;
@@ -47,7 +44,7 @@ class WebsocketDataServerInitializer extends ChannelInitializer<SocketChannel>
       pipeline.addLast(new HttpObjectAggregator(65536));
       pipeline.addLast(new WebSocketServerProtocolHandler(WEBSOCKET_PATH, null, true));
       pipeline.addLast(new HTTPDataServerDescriptionServer(logServerContent));
-      pipeline.addLast(new WebsocketDataServerFrameHandler(broadcaster, dataSize, numberOfRegistryBuffers, variableChangedListener, logAliveListener));
+      pipeline.addLast(new WebsocketDataServerFrameHandler(broadcaster, numberOfRegistryBuffers, variableChangedListener, logAliveListener));
    }
 
 }
@@ -0,0 +1,300 @@
+package us.ihmc.robotDataLogger.websocket.server;
+
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryBuffer;
+import us.ihmc.robotDataLogger.dataBuffers.RegistrySendBuffer;
+
+/**
+ * Group of clients that requested the same update rate and variable subscription. The decision to
+ * send a registry packet is made once for the whole tier, and the encoded frame is written to all
+ * clients in the tier. This keeps the work per packet proportional to the number of distinct rates
+ * and subscriptions instead of the number of clients. Clients are added and removed by the
+ * WebsocketDataBroadcaster. Batched tiers only receive batches of packets from writeBatch().
+ */
+class WebsocketDataServerRateTier
+{
+   private final long requestedUpdateDT;
+   private final WebsocketDataServerSubscription subscription;
+   private final boolean batched;
+   private final WebsocketDataServerRegistrySendStatistics[] registryStatistics;
+
+   // Implement clients as copy on write array to avoid blocking in the publisher
+   private volatile WebsocketDataServerFrameHandler[] clients = new WebsocketDataServerFrameHandler[0];
+
+   /**
+    * @param requestedUpdateDT       Requested time between updates in nanoseconds. 0 sends every
+    *                                packet.
+    * @param subscription            Variables to send, or null to send all variables
+    * @param batched                 Send batches of packets instead of individual packets
+    * @param numberOfRegistryBuffers
+    */
+   public WebsocketDataServerRateTier(long requestedUpdateDT, WebsocketDataServerSubscription subscription, boolean batched, int numberOfRegistryBuffers)
+   {
+      this.requestedUpdateDT = requestedUpdateDT;
+      this.subscription = subscription;
+      this.batched = batched;
+
+      registryStatistics = new WebsocketDataServerRegistrySendStatistics[numberOfRegistryBuffers];
+      for (int i = 0; i < numberOfRegistryBuffers; i++)
+      {
+         registryStatistics[i] = new WebsocketDataServerRegistrySendStatistics();
+      }
+   }
+
+   public long getRequestedUpdateDT()
+   {
+      return requestedUpdateDT;
+   }
+
+   public WebsocketDataServerSubscription getSubscription()
+   {
+      return subscription;
+   }
+
+   public boolean isBatched()
+   {
+      return batched;
+   }
+
+   /**
+    * @param requestedUpdateDT
+    * @param subscription
+    * @return true if clients with this update rate and subscription belong in this tier
+    */
+   public boolean matches(long requestedUpdateDT, WebsocketDataServerSubscription subscription)
+   {
+      if (this.requestedUpdateDT != requestedUpdateDT)
+      {
+         return false;
+      }
+      else if (this.subscription == null || subscription == null)
+      {
+         return this.subscription == subscription;
+      }
+      else
+      {
+         return this.subscription.hasSameVariables(subscription);
+      }
+   }
+
+   /**
+    * Add a client to this tier. Call while holding the broadcaster channel lock.
+    */
+   void addClient(WebsocketDataServerFrameHandler client)
+   {
+      WebsocketDataServerFrameHandler[] newClients = Arrays.copyOf(clients, clients.length + 1);
+      newClients[newClients.length - 1] = client;
+      clients = newClients;
+   }
+
+   /**
+    * Remove a client from this tier. Call while holding the broadcaster channel lock.
+    *
+    * @return true if this tier has no clients left
+    */
+   boolean removeClient(WebsocketDataServerFrameHandler client)
+   {
+      WebsocketDataServerFrameHandler[] oldClients = clients;
+      WebsocketDataServerFrameHandler[] newClients = new WebsocketDataServerFrameHandler[oldClients.length];
+
+      int newI = 0;
+      for (int i = 0; i < oldClients.length; i++)
+      {
+         if (oldClients[i] != client)
+         {
+            newClients[newI] = oldClients[i];
+            ++newI;
+         }
+      }
+
+      clients = Arrays.copyOf(newClients, newI);
+      return newI == 0;
+   }
+
+   /**
+    * Write the frame to all clients in this tier if the registry should be send at this rate.
+    * Keyframes are always send. If the clients subscribed to a subset of the variables, a projected
+    * frame is encoded once for this tier and send instead of the full frame. Batched tiers only update
+    * their statistics. Registry publishers on different threads can call this concurrently, only the
+    * decision to send is made while holding the lock of this tier. Each registry is written by a
+    * single publisher, so the packets of a registry stay in order.
+    *
+    * @param bufferID
+    * @param buffer  Registry packet to send
+    * @param encoder Encoder for buffer
+    */
+   public void write(int bufferID, RegistrySendBuffer buffer, WebsocketRegistryFrameEncoder encoder)
+   {
+      if (!shouldWrite(bufferID, buffer))
+      {
+         return;
+      }
+
+      int[] projectedIndices = subscription == null || !buffer.hasVariableData() ? null : subscription.getProjectedIndices(bufferID);
+      if (projectedIndices != null)
+      {
+         // Projected packets do not reference a keyframe
+         ByteBuf projectedFrame = encoder.project(projectedIndices);
+         try
+         {
+            writeToClients(bufferID, RegistryBuffer.NO_KEYFRAME, RegistryBuffer.NO_KEYFRAME, projectedFrame);
+         }
+         finally
+         {
+            projectedFrame.release();
+         }
+      }
+      else
+      {
+         boolean keyframe = buffer.isKeyframe();
+         long requiredKeyframeUid = keyframe ? RegistryBuffer.NO_KEYFRAME : buffer.getKeyframeUid();
+         long deliveredKeyframeUid = keyframe ? buffer.getUid() : RegistryBuffer.NO_KEYFRAME;
+         writeToClients(bufferID, requiredKeyframeUid, deliveredKeyframeUid, encoder.getFrame());
+      }
+   }
+
+   /**
+    * Update the statistics and decide if this tier sends the buffer. If so, the send timestamp is
+    * updated as well.
+    *
+    * @return true if the buffer should be written to the clients
+    */
+   private synchronized boolean shouldWrite(int bufferID, RegistrySendBuffer buffer)
+   {
+      long timestamp = buffer.getTimestamp();
+      updateRegistryStatistics(bufferID, timestamp);
+
+      if (batched)
+      {
+         return false;
+      }
+
+      if (subscription != null && buffer.hasVariableData())
+      {
+         if (!subscription.isSubscribed(bufferID))
+         {
+            return false;
+         }
+
+         // Projected packets do not reference a keyframe, so keyframes are not forced
+         if (subscription.getProjectedIndices(bufferID) != null)
+         {
+            if (shouldSend(bufferID, timestamp))
+            {
+               updateRegistrySendTimestamp(bufferID, timestamp);
+               return true;
+            }
+            return false;
+         }
+      }
+
+      if (buffer.isKeyframe() || shouldSend(bufferID, timestamp))
+      {
+         updateRegistrySendTimestamp(bufferID, timestamp);
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Write a batch of packets to all clients if this is a batched tier.
+    *
+    * @param bufferID
+    * @param requiredKeyframeUid  Keyframe the batch depends on, or RegistryBuffer.NO_KEYFRAME
+    * @param deliveredKeyframeUid Last keyframe in the batch, or RegistryBuffer.NO_KEYFRAME
+    * @param frame                Batch encoded by WebsocketSharedFrameEncoder
+    */
+   public void writeBatch(int bufferID, long requiredKeyframeUid, long deliveredKeyframeUid, ByteBuf frame)
+   {
+      if (batched)
+      {
+         writeToClients(bufferID, requiredKeyframeUid, deliveredKeyframeUid, frame);
+      }
+   }
+
+   private void writeToClients(int bufferID, long requiredKeyframeUid, long deliveredKeyframeUid, ByteBuf frame)
+   {
+      // Localize clients
+      WebsocketDataServerFrameHandler[] localClients = clients;
+      for (int i = 0; i < localClients.length; i++)
+      {
+         localClients[i].write(bufferID, requiredKeyframeUid, deliveredKeyframeUid, frame);
+      }
+   }
+
+   /**
+    * Updates the registry count and estimated dt for bufferD
+    *
+    * @param bufferID
+    */
+   private void updateRegistryStatistics(int bufferID, long timestamp)
+   {
+      if (bufferID >= registryStatistics.length)
+      {
+         throw new RuntimeException("Invalid registry ID");
+      }
+
+      registryStatistics[bufferID].update(timestamp);
+
+   }
+
+   /**
+    * Check if an update should be send An update should be send if enough time passed for the current
+    * registry buffer OR another registry buffer should send at this time. Note: If timestamps are not
+    * increasing for any thread and no DT can be determined, no data will be send to the client.
+    *
+    * @param bufferID
+    * @param timestamp
+    * @return true if we should send this registry
+    */
+   private boolean shouldSend(int bufferID, long timestamp)
+   {
+      // Always send if requestedUpdateDT is set to 0
+      if (requestedUpdateDT == 0)
+      {
+         return true;
+      }
+
+      // Figure out what rate the fastest buffer updates at
+      long fastestRegistryBufferDT = Long.MAX_VALUE;
+      for (int i = 0; i < registryStatistics.length; i++)
+      {
+         if (!registryStatistics[i].isNonMonotonic())
+         {
+            long dt = registryStatistics[i].getRegistryBufferDT();
+            if (dt < fastestRegistryBufferDT)
+            {
+               fastestRegistryBufferDT = dt;
+            }
+         }
+      }
+
+      if (registryStatistics[bufferID].shouldSend(timestamp, requestedUpdateDT, fastestRegistryBufferDT, false))
+      {
+         return true;
+      }
+      else if (fastestRegistryBufferDT != Long.MAX_VALUE) // Check if we need to send to match any buffer slower than the current buffer, but only if we have at least one monotonic updating buffer
+      {
+         for (int i = 0; i < registryStatistics.length; i++)
+         {
+            if (registryStatistics[i].getRegistryBufferDT() > registryStatistics[bufferID].getRegistryBufferDT())
+            {
+               if (registryStatistics[i].shouldSend(timestamp, requestedUpdateDT, fastestRegistryBufferDT, true))
+               {
+                  return true;
+               }
+            }
+         }
+      }
+
+      return false;
+
+   }
+
+   private void updateRegistrySendTimestamp(int bufferID, long timestamp)
+   {
+      registryStatistics[bufferID].updateSendTimestamp(timestamp);
+   }
+}
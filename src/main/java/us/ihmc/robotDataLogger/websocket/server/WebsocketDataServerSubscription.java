@@ -0,0 +1,92 @@
+package us.ihmc.robotDataLogger.websocket.server;
+
+import java.util.Arrays;
+
+import us.ihmc.robotDataLogger.dataBuffers.CustomLogDataPublisherType;
+
+/**
+ * Subset of the variables a client subscribed to with the VariableSubscriptionCommand. The variable
+ * indices from the handshake are split per registry buffer. The variables of all registry buffers
+ * are listed in the handshake in order of the buffer ID, so the handshake index of a variable is the
+ * offset of its registry buffer plus its index in the buffer.
+ */
+class WebsocketDataServerSubscription
+{
+   private final int[] variableIndices;
+   private final boolean[] subscribed;
+   private final int[][] projectedIndices;
+
+   /**
+    * @param variableIndices Sorted, unique indices of the variables in the handshake
+    * @param bufferOffsets   Handshake index of the first variable of each registry buffer
+    * @param bufferSizes     Number of variables in each registry buffer
+    */
+   public WebsocketDataServerSubscription(int[] variableIndices, int[] bufferOffsets, int[] bufferSizes)
+   {
+      this.variableIndices = variableIndices;
+
+      subscribed = new boolean[bufferOffsets.length];
+      projectedIndices = new int[bufferOffsets.length][];
+
+      int totalVariables = 0;
+      for (int i = 0; i < bufferSizes.length; i++)
+      {
+         totalVariables += bufferSizes[i];
+      }
+      if (variableIndices.length > 0 && variableIndices[variableIndices.length - 1] >= totalVariables)
+      {
+         throw new IllegalArgumentException("Variable index " + variableIndices[variableIndices.length - 1] + " is out of range. The server has "
+               + totalVariables + " variables.");
+      }
+
+      for (int bufferID = 0; bufferID < bufferOffsets.length; bufferID++)
+      {
+         int offset = bufferOffsets[bufferID];
+         int start = lowerBound(variableIndices, offset);
+         int end = lowerBound(variableIndices, offset + bufferSizes[bufferID]);
+         int numberOfProjectedVariables = end - start;
+
+         subscribed[bufferID] = numberOfProjectedVariables > 0;
+
+         if (subscribed[bufferID] && CustomLogDataPublisherType.isProjectionSmaller(numberOfProjectedVariables, bufferSizes[bufferID]))
+         {
+            int[] indices = new int[numberOfProjectedVariables];
+            for (int i = 0; i < numberOfProjectedVariables; i++)
+            {
+               indices[i] = variableIndices[start + i] - offset;
+            }
+            projectedIndices[bufferID] = indices;
+         }
+      }
+   }
+
+   private static int lowerBound(int[] sorted, int key)
+   {
+      int index = Arrays.binarySearch(sorted, key);
+      return index >= 0 ? index : -index - 1;
+   }
+
+   /**
+    * @param bufferID
+    * @return true if any variable of this registry buffer is subscribed to
+    */
+   public boolean isSubscribed(int bufferID)
+   {
+      return subscribed[bufferID];
+   }
+
+   /**
+    * @param bufferID
+    * @return the subscribed variable indices relative to the registry buffer, or null if the full
+    *         packet is smaller than the projected packet
+    */
+   public int[] getProjectedIndices(int bufferID)
+   {
+      return projectedIndices[bufferID];
+   }
+
+   public boolean hasSameVariables(WebsocketDataServerSubscription other)
+   {
+      return Arrays.equals(variableIndices, other.variableIndices);
+   }
+}
@@ -1,7 +1,5 @@
 package us.ihmc.robotDataLogger.websocket.server;
 
-import java.nio.ByteBuffer;
-
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
@@ -85,22 +83,6 @@ class WebsocketFramePool
       }
    }
 
-   public WebSocketFrame createFrame(ByteBuffer data)
-   {
-      WebsocketFrameAndBuffer next = getNext();
-      if (next != null)
-      {
-         next.buffer.clear();
-         next.buffer.writeBytes(data);
-         data.flip();
-         return next.frame;
-      }
-      else
-      {
-         return null;
-      }
-   }
-
    public void release()
    {
       for (int i = 0; i < pool.length; i++)
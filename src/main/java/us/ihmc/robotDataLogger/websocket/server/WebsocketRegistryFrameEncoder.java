@@ -0,0 +1,23 @@
+package us.ihmc.robotDataLogger.websocket.server;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Encodes the registry packet that is currently being written by a WebsocketRegistryPublisher.
+ * Frames are only encoded when a rate tier needs them, so packets that are only send in batches are
+ * not encoded twice. Only valid during the call to WebsocketDataBroadcaster.write().
+ */
+interface WebsocketRegistryFrameEncoder
+{
+   /**
+    * @return Frame with all variables encoded by WebsocketSharedFrameEncoder. The frame is encoded on
+    *         the first call and owned by the encoder, the caller should not release it.
+    */
+   ByteBuf getFrame();
+
+   /**
+    * @param indices Sorted variable indices relative to the registry buffer
+    * @return Frame encoded by WebsocketSharedFrameEncoder with refCnt 1. The caller has to release it.
+    */
+   ByteBuf project(int[] indices);
+}
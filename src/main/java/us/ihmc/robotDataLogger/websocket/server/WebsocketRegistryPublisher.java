@@ -1,28 +1,39 @@
 package us.ihmc.robotDataLogger.websocket.server;
 
-import java.util.List;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.util.concurrent.ScheduledFuture;
 import us.ihmc.concurrent.ConcurrentRingBuffer;
 import us.ihmc.pubsub.common.SerializedPayload;
+import us.ihmc.robotDataLogger.LogDataType;
 import us.ihmc.robotDataLogger.dataBuffers.CustomLogDataPublisherType;
 import us.ihmc.robotDataLogger.dataBuffers.LoggerDebugRegistry;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryBuffer;
 import us.ihmc.robotDataLogger.dataBuffers.RegistrySendBuffer;
 import us.ihmc.robotDataLogger.dataBuffers.RegistrySendBufferBuilder;
 import us.ihmc.robotDataLogger.interfaces.BufferListenerInterface;
 import us.ihmc.robotDataLogger.interfaces.RegistryPublisher;
+import us.ihmc.robotDataLogger.logger.DataServerSettings.PublishMode;
+import us.ihmc.robotDataLogger.util.PaddedVolatileBoolean;
 
 /**
  * Publishing thread for registry data This thread reads all variables on a realtime thread, puts
- * them in a ConcurrentRingBuffer and periodically sends them out on the websocket connection.
+ * them in a ConcurrentRingBuffer and sends them out on the websocket connection. Depending on the
+ * publish mode, the ring buffer is polled periodically on the event loop, the event loop is woken up
+ * when new data is committed, or a busy spinning thread polls the ring buffer.
  *
  * @author Jesper Smith
  */
 class WebsocketRegistryPublisher implements RegistryPublisher
 {
    private static final int BUFFER_CAPACITY = 128;
+   private static final long MINIMUM_BATCH_CHECK_PERIOD = 100000;
 
    private long uid = 0;
    private final ConcurrentRingBuffer<RegistrySendBuffer> ringBuffer;
@@ -30,14 +41,21 @@ class WebsocketRegistryPublisher implements RegistryPublisher
    private final WebsocketDataBroadcaster broadcaster;
    private final LoggerDebugRegistry loggerDebugRegistry;
 
-   private final EventLoopGroup eventLoopGroup;
+   private final EventLoop eventLoop;
 
    private final VariableUpdateThread variableUpdateThread = new VariableUpdateThread();
 
    private final CustomLogDataPublisherType publisherType;
    private final SerializedPayload serializedPayload;
 
+   /**
+    * Serialized data is encoded once per packet into a pooled buffer. Duplicates of pooled buffers are
+    * recycled, so writing the frame to all clients does not create garbage.
+    */
+   private final ByteBufAllocator frameAllocator = PooledByteBufAllocator.DEFAULT;
+
    private ScheduledFuture<?> scheduledFuture;
+   private ScheduledFuture<?> batchCheckFuture;
 
    private final int numberOfVariables;
 
@@ -45,19 +63,64 @@ class WebsocketRegistryPublisher implements RegistryPublisher
    
    private final BufferListenerInterface bufferListener;
 
-   public WebsocketRegistryPublisher(EventLoopGroup workerGroup, RegistrySendBufferBuilder builder, WebsocketDataBroadcaster broadcaster, int bufferID, BufferListenerInterface bufferListener)
+   private final int keyframeInterval;
+
+   private final PublishMode publishMode;
+   private final WebsocketBusySpinPublisherThread busySpinThread;
+
+   private final PaddedVolatileBoolean eventDrivenActive = new PaddedVolatileBoolean(false);
+   private final PaddedVolatileBoolean wakeupPending = new PaddedVolatileBoolean(false);
+
+   private final boolean batching;
+   private final long maximumBatchLatency;
+
+   /**
+    * @param workerGroup         The publisher is pinned to the next event loop of this group
+    * @param keyframeInterval    Number of ticks between keyframes. If larger than 0, data is send as
+    *                            XOR_DATA_PACKET encoded against the last keyframe.
+    * @param publishMode         How new data is picked up from the ring buffer
+    * @param busySpinThread      Thread that polls the publisher in PublishMode.BUSY_SPIN, null
+    *                            otherwise
+    * @param maximumBatchSize    Maximum number of packets in a batch, 1 to disable batching
+    * @param maximumBatchLatency Maximum time in nanoseconds a packet waits in a batch
+    * @param byteShuffle         Apply the byte shuffle filter before compression
+    */
+   public WebsocketRegistryPublisher(EventLoopGroup workerGroup, RegistrySendBufferBuilder builder, WebsocketDataBroadcaster broadcaster, int bufferID,
+                                     BufferListenerInterface bufferListener, int keyframeInterval, PublishMode publishMode,
+                                     WebsocketBusySpinPublisherThread busySpinThread, int maximumBatchSize, long maximumBatchLatency,
+                                     boolean byteShuffle)
    {
+      if (publishMode == PublishMode.BUSY_SPIN && busySpinThread == null)
+      {
+         throw new IllegalArgumentException("A busy spin thread is required for " + publishMode);
+      }
+
       this.broadcaster = broadcaster;
 
       ringBuffer = new ConcurrentRingBuffer<>(builder, BUFFER_CAPACITY);
-      eventLoopGroup = workerGroup;
+      eventLoop = workerGroup.next();
+      this.publishMode = publishMode;
+      this.busySpinThread = busySpinThread;
 
       loggerDebugRegistry = builder.getLoggerDebugRegistry();
       numberOfVariables = builder.getNumberOfVariables();
 
       this.bufferID = bufferID;
+      broadcaster.addRegistryBuffer(bufferID, numberOfVariables);
+
+      this.keyframeInterval = keyframeInterval;
+      publisherType = new CustomLogDataPublisherType(builder.getNumberOfVariables(), builder.getNumberOfJointStates(), keyframeInterval > 0, byteShuffle);
+      if (builder.getCompressionDictionary() != null)
+      {
+         publisherType.setCompressionDictionary(builder.getCompressionDictionary());
+      }
 
-      publisherType = new CustomLogDataPublisherType(builder.getNumberOfVariables(), builder.getNumberOfJointStates());
+      batching = maximumBatchSize > 1;
+      this.maximumBatchLatency = maximumBatchLatency;
+      if (batching)
+      {
+         publisherType.enableBatching(maximumBatchSize);
+      }
 
       serializedPayload = new SerializedPayload(publisherType.getMaximumTypeSize());
       
@@ -69,28 +132,61 @@ class WebsocketRegistryPublisher implements RegistryPublisher
       }
    }
 
-   public int getMaximumBufferSize()
-   {
-      return publisherType.getMaximumTypeSize();
-   }
-
    /**
-    * Starts the registry publisher and schedules it on the main eventLoopGroup
+    * Starts the registry publisher. Depending on the publish mode, it is scheduled on the main event
+    * loop, woken up by update() or added to the busy spin thread.
     */
    @Override
    public void start()
    {
-      scheduledFuture = eventLoopGroup.scheduleAtFixedRate(variableUpdateThread, 0, 1, TimeUnit.MILLISECONDS);
+      switch (publishMode)
+      {
+         case FIXED_RATE:
+            scheduledFuture = eventLoop.scheduleAtFixedRate(variableUpdateThread, 0, 1, TimeUnit.MILLISECONDS);
+            break;
+         case EVENT_DRIVEN:
+            eventDrivenActive.set(true);
+            // Publish data that was committed before starting
+            eventLoop.execute(variableUpdateThread);
+            if (batching)
+            {
+               // Send batches that are not full when no new data arrives
+               long batchCheckPeriod = Math.max(maximumBatchLatency / 2, MINIMUM_BATCH_CHECK_PERIOD);
+               batchCheckFuture = eventLoop.scheduleAtFixedRate(variableUpdateThread, batchCheckPeriod, batchCheckPeriod, TimeUnit.NANOSECONDS);
+            }
+            break;
+         case BUSY_SPIN:
+            busySpinThread.addPublisher(this);
+            break;
+      }
    }
 
    @Override
    public void stop()
    {
-      scheduledFuture.cancel(false);
-
       try
       {
-         scheduledFuture.await(5, TimeUnit.SECONDS);
+         switch (publishMode)
+         {
+            case FIXED_RATE:
+               scheduledFuture.cancel(false);
+               scheduledFuture.await(5, TimeUnit.SECONDS);
+               break;
+            case EVENT_DRIVEN:
+               eventDrivenActive.set(false);
+               if (batchCheckFuture != null)
+               {
+                  batchCheckFuture.cancel(false);
+               }
+               // Tasks execute in order, so waiting for an empty task guarantees pending updates are done
+               eventLoop.submit(() ->
+               {
+               }).await(5, TimeUnit.SECONDS);
+               break;
+            case BUSY_SPIN:
+               busySpinThread.removePublisher(this);
+               break;
+         }
       }
       catch (InterruptedException e)
       {
@@ -98,6 +194,28 @@ class WebsocketRegistryPublisher implements RegistryPublisher
       }
    }
 
+   /**
+    * Send all data that is available in the ring buffer. Called by the busy spin thread.
+    */
+   void publish()
+   {
+      variableUpdateThread.run();
+   }
+
+   /**
+    * Wake up the event loop to publish new data. Wakeups are coalesced: if the event loop did not
+    * start publishing since the last wakeup, it will pick up the new data as well and no extra task is
+    * submitted. Netty only wakes up the selector if the event loop is waiting.
+    */
+   private void wakeup()
+   {
+      if (eventDrivenActive.getBoolean() && !wakeupPending.getBoolean())
+      {
+         wakeupPending.set(true);
+         eventLoop.execute(variableUpdateThread);
+      }
+   }
+
    @Override
    public void update(long timestamp)
    {
@@ -106,6 +224,11 @@ class WebsocketRegistryPublisher implements RegistryPublisher
       {
          buffer.updateBufferFromVariables(timestamp, uid, numberOfVariables);
          ringBuffer.commit();
+
+         if (publishMode == PublishMode.EVENT_DRIVEN)
+         {
+            wakeup();
+         }
       }
       else
       {
@@ -115,18 +238,151 @@ class WebsocketRegistryPublisher implements RegistryPublisher
       uid++;
    }
 
-   private class VariableUpdateThread implements Runnable
+   private class VariableUpdateThread implements Runnable, WebsocketRegistryFrameEncoder
    {
       private long previousUid = -1;
+      private RegistrySendBuffer currentBuffer = null;
+      private ByteBuf currentFrame = null;
+      private long keyframeUid = RegistryBuffer.NO_KEYFRAME;
+      private long keyframeRequests = 0;
+
+      private long batchStartTime;
+      private long batchRequiredKeyframeUid;
+      private long batchDeliveredKeyframeUid;
 
       private VariableUpdateThread()
       {
 
       }
 
+      /**
+       * Mark the buffer as XOR_DATA_PACKET against the current keyframe, or as a new keyframe if the
+       * keyframe interval has passed or a new client connected. The publisher type decides if the
+       * packet is send as XOR_DATA_PACKET or SPARSE_DATA_PACKET.
+       */
+      private void updateKeyframe(RegistrySendBuffer buffer)
+      {
+         long newKeyframeRequests = broadcaster.getKeyframeRequests();
+         if (keyframeUid == RegistryBuffer.NO_KEYFRAME || buffer.getUid() - keyframeUid >= keyframeInterval || newKeyframeRequests != keyframeRequests)
+         {
+            keyframeUid = buffer.getUid();
+            keyframeRequests = newKeyframeRequests;
+         }
+
+         buffer.setType(LogDataType.XOR_DATA_PACKET);
+         buffer.setKeyframeUid(keyframeUid);
+
+         if (buffer.isKeyframe())
+         {
+            // Store the keyframe, also if no client needs the full frame of this packet
+            publisherType.setKeyframe(buffer);
+         }
+      }
+
+      /**
+       * Encode the full packet of the buffer that is being written. The frame is encoded once and
+       * released after all tiers have written it.
+       */
+      @Override
+      public ByteBuf getFrame()
+      {
+         if (currentFrame == null)
+         {
+            try
+            {
+               serializedPayload.getData().clear();
+               publisherType.serialize(currentBuffer, serializedPayload);
+            }
+            catch (IOException e)
+            {
+               throw new RuntimeException(e);
+            }
+
+            currentFrame = WebsocketSharedFrameEncoder.encode(frameAllocator, serializedPayload.getData());
+         }
+         return currentFrame;
+      }
+
+      /**
+       * Encode the subscribed variables of the buffer that is being written. If the full packet is
+       * encoded, it has already been copied into its frame, so the serialized payload can be reused.
+       */
+      @Override
+      public ByteBuf project(int[] indices)
+      {
+         try
+         {
+            serializedPayload.getData().clear();
+            publisherType.serializeProjection(currentBuffer, indices, indices.length, serializedPayload);
+         }
+         catch (IOException e)
+         {
+            throw new RuntimeException(e);
+         }
+
+         return WebsocketSharedFrameEncoder.encode(frameAllocator, serializedPayload.getData());
+      }
+
+      /**
+       * Add the buffer to the current batch and keep track of the keyframes the batch depends on.
+       */
+      private void addToBatch(RegistrySendBuffer buffer) throws IOException
+      {
+         if (publisherType.getBatchSize() == 0)
+         {
+            batchStartTime = System.nanoTime();
+            batchRequiredKeyframeUid = buffer.getKeyframeUid();
+            batchDeliveredKeyframeUid = RegistryBuffer.NO_KEYFRAME;
+         }
+
+         if (buffer.isKeyframe())
+         {
+            // Clients can decode the rest of the batch from this keyframe
+            batchRequiredKeyframeUid = RegistryBuffer.NO_KEYFRAME;
+            batchDeliveredKeyframeUid = buffer.getUid();
+         }
+
+         publisherType.addToBatch(buffer);
+
+         if (publisherType.isBatchFull())
+         {
+            flushBatch();
+         }
+      }
+
+      /**
+       * Send the current batch if the oldest packet exceeds the maximum batch latency.
+       */
+      private void checkBatchLatency() throws IOException
+      {
+         if (publisherType.getBatchSize() > 0 && System.nanoTime() - batchStartTime >= maximumBatchLatency)
+         {
+            flushBatch();
+         }
+      }
+
+      private void flushBatch() throws IOException
+      {
+         serializedPayload.getData().clear();
+         publisherType.serializeBatch(serializedPayload);
+
+         ByteBuf frame = WebsocketSharedFrameEncoder.encode(frameAllocator, serializedPayload.getData());
+         try
+         {
+            broadcaster.writeBatch(bufferID, batchRequiredKeyframeUid, batchDeliveredKeyframeUid, frame);
+         }
+         finally
+         {
+            frame.release();
+         }
+      }
+
       @Override
       public void run()
       {
+         // Clear before polling, so data committed after this point triggers a new wakeup
+         wakeupPending.set(false);
+
          try
          {
             while (ringBuffer.poll())
@@ -135,9 +391,30 @@ class WebsocketRegistryPublisher implements RegistryPublisher
 
                if ((buffer = ringBuffer.read()) != null)
                {
-                  serializedPayload.getData().clear();
-                  publisherType.serialize(buffer, serializedPayload);
-                  broadcaster.write(bufferID, buffer.getTimestamp(), serializedPayload.getData());
+                  if (keyframeInterval > 0)
+                  {
+                     updateKeyframe(buffer);
+                  }
+
+                  currentBuffer = buffer;
+                  try
+                  {
+                     broadcaster.write(bufferID, buffer, this);
+                  }
+                  finally
+                  {
+                     currentBuffer = null;
+                     if (currentFrame != null)
+                     {
+                        currentFrame.release();
+                        currentFrame = null;
+                     }
+                  }
+
+                  if (batching && broadcaster.hasBatchedClients())
+                  {
+                     addToBatch(buffer);
+                  }
 
                   if (previousUid != -1)
                   {
@@ -164,6 +441,11 @@ class WebsocketRegistryPublisher implements RegistryPublisher
                ringBuffer.flush();
             }
 
+            if (batching)
+            {
+               checkBatchLatency();
+            }
+
          }
          catch (Throwable e)
          {
@@ -0,0 +1,70 @@
+package us.ihmc.robotDataLogger.websocket.server;
+
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Encodes a payload as a complete, unmasked websocket binary frame (RFC 6455, section 5.2) in a
+ * single direct ByteBuf. The WebSocket08FrameEncoder only encodes WebSocketFrame objects and passes
+ * raw ByteBufs through, so the same encoded frame can be written to all clients using
+ * retainedDuplicate() without copying the data per client. Server to client frames are never masked.
+ */
+final class WebsocketSharedFrameEncoder
+{
+   private static final byte FIN_BINARY_FRAME = (byte) 0x82;
+   private static final int MAXIMUM_HEADER_SIZE = 10;
+
+   private WebsocketSharedFrameEncoder()
+   {
+   }
+
+   /**
+    * Get the maximum size of an encoded frame
+    *
+    * @param maximumPayloadSize
+    * @return maximum size of the frame including the header
+    */
+   public static int getMaximumFrameSize(int maximumPayloadSize)
+   {
+      return maximumPayloadSize + MAXIMUM_HEADER_SIZE;
+   }
+
+   /**
+    * Encode the remaining data in payload as a binary websocket frame. The position of payload is not
+    * modified.
+    *
+    * @param allocator Allocator for the frame. Use a pooled allocator to avoid garbage when calling
+    *                  retainedDuplicate() on the result.
+    * @param payload   Data to send
+    * @return ByteBuf with refCnt 1 containing the complete frame
+    */
+   public static ByteBuf encode(ByteBufAllocator allocator, ByteBuffer payload)
+   {
+      int length = payload.remaining();
+      ByteBuf frame = allocator.directBuffer(getMaximumFrameSize(length));
+
+      frame.writeByte(FIN_BINARY_FRAME);
+      if (length < 126)
+      {
+         frame.writeByte(length);
+      }
+      else if (length <= 0xFFFF)
+      {
+         frame.writeByte(126);
+         frame.writeShort(length);
+      }
+      else
+      {
+         frame.writeByte(127);
+         frame.writeLong(length);
+      }
+
+      int position = payload.position();
+      frame.writeBytes(payload);
+      payload.position(position);
+
+      return frame;
+   }
+}
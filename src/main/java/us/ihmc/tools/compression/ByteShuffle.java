@@ -0,0 +1,148 @@
+package us.ihmc.tools.compression;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Byte shuffle filter for buffers of 8 byte words. The shuffle groups byte i of every word together,
+ * so the sign and exponent bytes of doubles that barely change end up next to each other instead of
+ * interleaved with noisy mantissa bytes. This makes the data significantly easier to compress for
+ * byte oriented compressors like LZ4 and Snappy. Trailing bytes that do not form a full word are
+ * copied as is.
+ */
+public final class ByteShuffle
+{
+   public static final int WORD_SIZE = 8;
+
+   /**
+    * Number of words copied at a time when a buffer is not backed by an array
+    */
+   private static final int BLOCK_WORDS = 1024;
+
+   /**
+    * Input and output block for buffers that are not backed by an array
+    */
+   private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[2 * BLOCK_WORDS * WORD_SIZE]);
+
+   private ByteShuffle()
+   {
+   }
+
+   /**
+    * Shuffle the remaining bytes of src into dst. The position of src is advanced to its limit, the
+    * position of dst is advanced by the number of bytes shuffled.
+    *
+    * @param src Data to shuffle
+    * @param dst Target buffer
+    */
+   public static void shuffle(ByteBuffer src, ByteBuffer dst)
+   {
+      transpose(src, dst, true);
+   }
+
+   /**
+    * Reverse the shuffle of the remaining bytes of src into dst. The position of src is advanced to
+    * its limit, the position of dst is advanced by the number of bytes unshuffled.
+    *
+    * @param src Shuffled data
+    * @param dst Target buffer
+    */
+   public static void unshuffle(ByteBuffer src, ByteBuffer dst)
+   {
+      transpose(src, dst, false);
+   }
+
+   private static void transpose(ByteBuffer src, ByteBuffer dst, boolean shuffle)
+   {
+      int length = src.remaining();
+      if (dst.remaining() < length)
+      {
+         throw new BufferOverflowException();
+      }
+
+      int words = length / WORD_SIZE;
+      int wordBytes = words * WORD_SIZE;
+      int srcOffset = src.position();
+      int dstOffset = dst.position();
+
+      if (src.hasArray() && dst.hasArray())
+      {
+         byte[] in = src.array();
+         byte[] out = dst.array();
+         int in0 = src.arrayOffset() + srcOffset;
+         int out0 = dst.arrayOffset() + dstOffset;
+
+         transpose(in, in0, out, out0, words, words, shuffle);
+         System.arraycopy(in, in0 + wordBytes, out, out0 + wordBytes, length - wordBytes);
+      }
+      else
+      {
+         transposeBlocks(src, srcOffset, dst, dstOffset, words, shuffle);
+         for (int i = wordBytes; i < length; i++)
+         {
+            dst.put(dstOffset + i, src.get(srcOffset + i));
+         }
+      }
+
+      src.position(srcOffset + length);
+      dst.position(dstOffset + length);
+   }
+
+   /**
+    * Transpose buffers that are not backed by an array, like direct buffers. Single byte access to a
+    * direct buffer is a bounds checked call per byte, so the words are bulk copied through a scratch
+    * array a block at a time. Every lane of a block is a contiguous run in the shuffled data.
+    */
+   private static void transposeBlocks(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int words, boolean shuffle)
+   {
+      byte[] scratch = SCRATCH.get();
+      int blockOffset = BLOCK_WORDS * WORD_SIZE;
+
+      for (int word = 0; word < words; word += BLOCK_WORDS)
+      {
+         int blockWords = Math.min(BLOCK_WORDS, words - word);
+         int blockBytes = blockWords * WORD_SIZE;
+
+         if (shuffle)
+         {
+            src.get(srcOffset + word * WORD_SIZE, scratch, 0, blockBytes);
+            transpose(scratch, 0, scratch, blockOffset, blockWords, blockWords, true);
+            for (int lane = 0; lane < WORD_SIZE; lane++)
+            {
+               dst.put(dstOffset + lane * words + word, scratch, blockOffset + lane * blockWords, blockWords);
+            }
+         }
+         else
+         {
+            for (int lane = 0; lane < WORD_SIZE; lane++)
+            {
+               src.get(srcOffset + lane * words + word, scratch, lane * blockWords, blockWords);
+            }
+            transpose(scratch, 0, scratch, blockOffset, blockWords, blockWords, false);
+            dst.put(dstOffset + word * WORD_SIZE, scratch, blockOffset, blockBytes);
+         }
+      }
+   }
+
+   /**
+    * Transpose words between arrays. Lane i of the shuffled data starts at i * laneLength.
+    */
+   private static void transpose(byte[] in, int in0, byte[] out, int out0, int words, int laneLength, boolean shuffle)
+   {
+      for (int lane = 0; lane < WORD_SIZE; lane++)
+      {
+         int laneOffset = lane * laneLength;
+         for (int word = 0; word < words; word++)
+         {
+            if (shuffle)
+            {
+               out[out0 + laneOffset + word] = in[in0 + word * WORD_SIZE + lane];
+            }
+            else
+            {
+               out[out0 + word * WORD_SIZE + lane] = in[in0 + laneOffset + word];
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,72 @@
+package us.ihmc.tools.compression;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compression implementation that applies the {@link ByteShuffle} filter before compressing and
+ * reverses it after decompressing. The shuffle uses an internal buffer, so create an instance per
+ * thread.
+ */
+public class ByteShuffleCompressionImplementation implements CompressionImplementation
+{
+   private final CompressionImplementation compressor;
+   private ByteBuffer shuffleBuffer = ByteBuffer.allocate(0);
+
+   /**
+    * @param compressor Compression implementation for the shuffled data
+    */
+   public ByteShuffleCompressionImplementation(CompressionImplementation compressor)
+   {
+      this.compressor = compressor;
+   }
+
+   /**
+    * The shuffle buffer is direct if the data is direct, so the compressor is not handed a mix of
+    * direct and heap buffers.
+    */
+   private ByteBuffer getShuffleBuffer(int length, boolean direct)
+   {
+      if (shuffleBuffer.capacity() < length || shuffleBuffer.isDirect() != direct)
+      {
+         shuffleBuffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+      }
+      shuffleBuffer.clear();
+      return shuffleBuffer;
+   }
+
+   @Override
+   public boolean supportsDirectOutput()
+   {
+      return compressor.supportsDirectOutput();
+   }
+
+   @Override
+   public int compress(ByteBuffer src, ByteBuffer target)
+   {
+      ByteBuffer shuffled = getShuffleBuffer(src.remaining(), src.isDirect());
+      ByteShuffle.shuffle(src, shuffled);
+      shuffled.flip();
+      return compressor.compress(shuffled, target);
+   }
+
+   @Override
+   public void decompress(ByteBuffer src, ByteBuffer target, int decompressedLength)
+   {
+      ByteBuffer shuffled = getShuffleBuffer(decompressedLength, target.isDirect());
+      compressor.decompress(src, shuffled, decompressedLength);
+      shuffled.flip();
+      ByteShuffle.unshuffle(shuffled, target);
+   }
+
+   @Override
+   public int maxCompressedLength(int uncompressedLength)
+   {
+      return compressor.maxCompressedLength(uncompressedLength);
+   }
+
+   @Override
+   public int minimumDecompressedLength(int compressedLength)
+   {
+      return compressor.minimumDecompressedLength(compressedLength);
+   }
+}
@@ -0,0 +1,72 @@
+package us.ihmc.tools.compression;
+
+/**
+ * Codecs for the data file of a log. The codec is recorded by name in the log properties, logs
+ * without a codec are compressed with Snappy.
+ */
+public enum CompressionCodec
+{
+   /**
+    * Fast, the codec of logs that do not record a codec
+    */
+   SNAPPY,
+   /**
+    * Fastest decompression, comparable ratio to Snappy
+    */
+   LZ4,
+   /**
+    * LZ4 with a slower compressor that gives smaller data. Level 1 to 17.
+    */
+   LZ4_HC,
+   /**
+    * Smallest data, but slow. Use with blocks of ticks. Level is the XZ preset, 0 to 9.
+    */
+   XZ,
+   /**
+    * No compression
+    */
+   NONE;
+
+   /**
+    * Level that selects the default level of the codec
+    */
+   public static final int DEFAULT_LEVEL = -1;
+
+   /**
+    * Create a new compression implementation for this codec. Implementations are not thread safe.
+    *
+    * @param level Compression level, DEFAULT_LEVEL for the default level of the codec
+    * @return a new compression implementation
+    */
+   public CompressionImplementation create(int level)
+   {
+      switch (this)
+      {
+         case SNAPPY:
+            return new SnappyCompressionImplementation();
+         case LZ4:
+            return new LZ4CompressionImplementation();
+         case LZ4_HC:
+            return new LZ4CompressionImplementation(true, level);
+         case XZ:
+            return new XZCompressionImplementation(level);
+         case NONE:
+            return new CopyCompressionImplementation();
+         default:
+            throw new RuntimeException("Unknown codec " + this);
+      }
+   }
+
+   /**
+    * @param name Name of the codec as recorded in the log properties
+    * @return the codec, SNAPPY if name is empty
+    */
+   public static CompressionCodec fromName(String name)
+   {
+      if (name == null || name.isEmpty())
+      {
+         return SNAPPY;
+      }
+      return valueOf(name);
+   }
+}
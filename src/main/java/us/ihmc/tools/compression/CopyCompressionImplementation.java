@@ -0,0 +1,51 @@
+package us.ihmc.tools.compression;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compression implementation that copies the data as is, for when CPU time matters more than disk
+ * space.
+ */
+public class CopyCompressionImplementation implements CompressionImplementation
+{
+   @Override
+   public boolean supportsDirectOutput()
+   {
+      return true;
+   }
+
+   @Override
+   public int compress(ByteBuffer src, ByteBuffer target)
+   {
+      int length = src.remaining();
+      target.put(src);
+      return length;
+   }
+
+   @Override
+   public void decompress(ByteBuffer src, ByteBuffer target, int decompressedLength)
+   {
+      if (src.remaining() < decompressedLength || target.remaining() < decompressedLength)
+      {
+         throw new BufferOverflowException();
+      }
+
+      int limit = src.limit();
+      src.limit(src.position() + decompressedLength);
+      target.put(src);
+      src.limit(limit);
+   }
+
+   @Override
+   public int maxCompressedLength(int uncompressedLength)
+   {
+      return uncompressedLength;
+   }
+
+   @Override
+   public int minimumDecompressedLength(int compressedLength)
+   {
+      return compressedLength;
+   }
+}
@@ -20,6 +20,16 @@ public class LZ4CompressionImplementation implements CompressionImplementation
    private final LZ4FastDecompressor decompressor;
 
    public LZ4CompressionImplementation()
+   {
+      this(false, 0);
+   }
+
+   /**
+    * @param highCompression  Use the LZ4 HC compressor. Compresses better and slower, decompression
+    *                         is as fast as regular LZ4.
+    * @param compressionLevel Compression level of LZ4 HC, zero or CompressionCodec.DEFAULT_LEVEL for the default level
+    */
+   public LZ4CompressionImplementation(boolean highCompression, int compressionLevel)
    {
       LZ4Factory instance;
       boolean nativeInstance;
@@ -48,7 +58,14 @@ public class LZ4CompressionImplementation implements CompressionImplementation
 
       this.nativeInstance = nativeInstance;
 
-      compressor = instance.fastCompressor();
+      if (highCompression)
+      {
+         compressor = compressionLevel > 0 ? instance.highCompressor(compressionLevel) : instance.highCompressor();
+      }
+      else
+      {
+         compressor = instance.fastCompressor();
+      }
       decompressor = instance.fastDecompressor();
    }
 
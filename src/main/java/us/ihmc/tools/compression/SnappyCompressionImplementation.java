@@ -0,0 +1,70 @@
+package us.ihmc.tools.compression;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compression implementation backed by {@link SnappyUtils}. This is the codec of logs that do not
+ * record a codec.
+ */
+public class SnappyCompressionImplementation implements CompressionImplementation
+{
+   @Override
+   public boolean supportsDirectOutput()
+   {
+      return false;
+   }
+
+   @Override
+   public int compress(ByteBuffer src, ByteBuffer target)
+   {
+      int targetPosition = target.position();
+      try
+      {
+         SnappyUtils.compress(src, target);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+      return target.position() - targetPosition;
+   }
+
+   @Override
+   public void decompress(ByteBuffer src, ByteBuffer target, int decompressedLength)
+   {
+      if (target.position() + decompressedLength > target.limit())
+      {
+         throw new BufferOverflowException();
+      }
+
+      int targetPosition = target.position();
+      try
+      {
+         SnappyUtils.uncompress(src, target);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+
+      if (target.position() - targetPosition != decompressedLength)
+      {
+         throw new RuntimeException("Expected " + decompressedLength + " bytes, decompressed " + (target.position() - targetPosition) + " bytes");
+      }
+   }
+
+   @Override
+   public int maxCompressedLength(int uncompressedLength)
+   {
+      return SnappyUtils.maxCompressedLength(uncompressedLength);
+   }
+
+   @Override
+   public int minimumDecompressedLength(int compressedLength)
+   {
+      // Worst case of maxCompressedLength() is 32 + length + length / 6
+      return Math.max(0, (int) ((long) (compressedLength - 32) * 6 / 7));
+   }
+}
@@ -1,6 +1,7 @@
 package us.ihmc.tools.compression;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.xerial.snappy.Snappy;
 
@@ -25,4 +26,26 @@ public class SnappyLibrary
    {
       return Snappy.uncompress(input, inputOffset, inputLength, output, outputOffset);
    }
+
+   /**
+    * Compress the remaining bytes of input to output, starting at the position of output. Both
+    * buffers have to be direct. The limit of output may be changed.
+    *
+    * @return the compressed size
+    */
+   public int compress(ByteBuffer input, ByteBuffer output) throws IOException
+   {
+      return Snappy.compress(input, output);
+   }
+
+   /**
+    * Uncompress the remaining bytes of input to output, starting at the position of output. Both
+    * buffers have to be direct. The limit of output may be changed.
+    *
+    * @return the uncompressed size
+    */
+   public int uncompress(ByteBuffer input, ByteBuffer output) throws IOException
+   {
+      return Snappy.uncompress(input, output);
+   }
 }
@@ -13,10 +13,12 @@ public class SnappyUtils
    }
 
    /**
-    * Compress input ByteBuffer to output ByteBuffer using Snappy
+    * Compress input ByteBuffer to output ByteBuffer using Snappy. If both buffers are direct, or
+    * both are heap buffers, the data is compressed in place. Mixing direct and heap buffers copies
+    * the direct buffer through a temporary array.
     *
-    * @param input  More efficient if HeapByteBuffer
-    * @param output More efficient if HeapByteBuffer
+    * @param input  Uncompressed data
+    * @param output Compressed data
     * @throws IOException
     */
    public static void compress(ByteBuffer input, ByteBuffer output) throws IOException
@@ -27,6 +29,16 @@ public class SnappyUtils
          throw new IllegalArgumentException("Cannot compress to output buffer, buffer size is: " + output.remaining() + ", need " + length);
       }
 
+      if (input.isDirect() && output.isDirect())
+      {
+         int outputLimit = output.limit();
+         int compressedSize = snappyLibrary.compress(input, output);
+         input.position(input.limit());
+         output.limit(outputLimit);
+         output.position(output.position() + compressedSize);
+         return;
+      }
+
       byte[] in;
       int inOffset, inLength;
       if (!input.hasArray())
@@ -70,15 +82,27 @@ public class SnappyUtils
    }
 
    /**
-    * Uncompress Snappy compressed data packet.
+    * Uncompress Snappy compressed data packet. If both buffers are direct, or both are heap buffers,
+    * the data is uncompressed in place. Mixing direct and heap buffers copies the direct buffer
+    * through a temporary array.
     *
-    * @param input  Snappy compressed data, faster if HeapByteBuffer
-    * @param output Decompressed data, faster if HeapByteBuffer
+    * @param input  Snappy compressed data
+    * @param output Decompressed data
     * @throws IllegalArgumentException
     * @throws IOException
     */
    public static void uncompress(ByteBuffer input, ByteBuffer output) throws IllegalArgumentException, IOException
    {
+      if (input.isDirect() && output.isDirect())
+      {
+         int outputLimit = output.limit();
+         int uncompressedSize = snappyLibrary.uncompress(input, output);
+         input.position(input.limit());
+         output.limit(outputLimit);
+         output.position(output.position() + uncompressedSize);
+         return;
+      }
+
       byte[] in;
       int inOffset, inLength;
       if (!input.hasArray())
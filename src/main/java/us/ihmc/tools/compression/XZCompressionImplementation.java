@@ -0,0 +1,201 @@
+package us.ihmc.tools.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * Compression implementation using XZ (LZMA2). Gives the smallest data, but is far slower than
+ * Snappy and LZ4. Best used with logs written in blocks, every call sets up a new XZ stream. Direct
+ * buffers are copied through a fixed scratch array, XZ only works on byte arrays.
+ */
+public class XZCompressionImplementation implements CompressionImplementation
+{
+   /**
+    * Worst case overhead of the XZ container and the LZMA2 chunk headers
+    */
+   private static final int OVERHEAD = 512;
+
+   /**
+    * Size of the array direct buffers are copied through
+    */
+   private static final int SCRATCH_SIZE = 64 * 1024;
+
+   private final LZMA2Options options;
+   private final int maximumDictionarySize;
+
+   private final ByteBufferOutputStream outputStream = new ByteBufferOutputStream();
+   private final ByteBufferInputStream inputStream = new ByteBufferInputStream();
+   private final byte[] scratch = new byte[SCRATCH_SIZE];
+
+   /**
+    * @param preset XZ preset, 0 (fastest) to 9 (smallest). CompressionCodec.DEFAULT_LEVEL, or any
+    *               other negative value, selects the default preset.
+    */
+   public XZCompressionImplementation(int preset)
+   {
+      try
+      {
+         options = new LZMA2Options(preset < 0 ? LZMA2Options.PRESET_DEFAULT : preset);
+      }
+      catch (UnsupportedOptionsException e)
+      {
+         throw new IllegalArgumentException(e);
+      }
+      maximumDictionarySize = options.getDictSize();
+   }
+
+   @Override
+   public boolean supportsDirectOutput()
+   {
+      return false;
+   }
+
+   @Override
+   public int compress(ByteBuffer src, ByteBuffer target)
+   {
+      int targetPosition = target.position();
+      try
+      {
+         // A dictionary larger than the data only costs memory
+         options.setDictSize(Math.max(LZMA2Options.DICT_SIZE_MIN, Math.min(maximumDictionarySize, src.remaining())));
+
+         outputStream.buffer = target;
+         XZOutputStream xz = new XZOutputStream(outputStream, options, XZ.CHECK_NONE);
+         if (src.hasArray())
+         {
+            xz.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            src.position(src.limit());
+         }
+         else
+         {
+            while (src.hasRemaining())
+            {
+               int bytes = Math.min(scratch.length, src.remaining());
+               src.get(scratch, 0, bytes);
+               xz.write(scratch, 0, bytes);
+            }
+         }
+         xz.finish();
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+      finally
+      {
+         outputStream.buffer = null;
+      }
+      return target.position() - targetPosition;
+   }
+
+   @Override
+   public void decompress(ByteBuffer src, ByteBuffer target, int decompressedLength)
+   {
+      if (target.position() + decompressedLength > target.limit())
+      {
+         throw new BufferOverflowException();
+      }
+
+      try
+      {
+         inputStream.buffer = src;
+         XZInputStream xz = new XZInputStream(inputStream);
+         int read = 0;
+         while (read < decompressedLength)
+         {
+            int bytes;
+            if (target.hasArray())
+            {
+               bytes = xz.read(target.array(), target.arrayOffset() + target.position() + read, decompressedLength - read);
+            }
+            else
+            {
+               bytes = xz.read(scratch, 0, Math.min(scratch.length, decompressedLength - read));
+               if (bytes > 0)
+               {
+                  ByteBuffer destination = target.duplicate();
+                  destination.position(target.position() + read);
+                  destination.put(scratch, 0, bytes);
+               }
+            }
+            if (bytes < 0)
+            {
+               throw new EOFException("Expected " + decompressedLength + " bytes, decompressed " + read + " bytes");
+            }
+            read += bytes;
+         }
+         target.position(target.position() + decompressedLength);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+      finally
+      {
+         inputStream.buffer = null;
+      }
+   }
+
+   @Override
+   public int maxCompressedLength(int uncompressedLength)
+   {
+      // Incompressible data is stored in uncompressed LZMA2 chunks of 64KiB with a 3 byte header
+      return uncompressedLength + 3 * (uncompressedLength / 65536 + 1) + OVERHEAD;
+   }
+
+   @Override
+   public int minimumDecompressedLength(int compressedLength)
+   {
+      return 0;
+   }
+
+   private static class ByteBufferOutputStream extends OutputStream
+   {
+      private ByteBuffer buffer;
+
+      @Override
+      public void write(int b)
+      {
+         buffer.put((byte) b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len)
+      {
+         buffer.put(b, off, len);
+      }
+   }
+
+   private static class ByteBufferInputStream extends InputStream
+   {
+      private ByteBuffer buffer;
+
+      @Override
+      public int read()
+      {
+         return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len)
+      {
+         if (!buffer.hasRemaining())
+         {
+            return -1;
+         }
+         int bytes = Math.min(len, buffer.remaining());
+         buffer.get(b, off, bytes);
+         return bytes;
+      }
+   }
+}
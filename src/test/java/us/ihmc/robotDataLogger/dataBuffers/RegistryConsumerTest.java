@@ -0,0 +1,97 @@
+package us.ihmc.robotDataLogger.dataBuffers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.commons.Conversions;
+import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+
+public class RegistryConsumerTest
+{
+   private static final long PERIOD = Conversions.millisecondsToNanoseconds(1);
+
+   @Test
+   public void testBufferDelay()
+   {
+      // Without jitter packets are still held for a period
+      assertEquals(PERIOD, RegistryConsumer.calculateBufferDelay(0.0, PERIOD));
+      assertTrue(RegistryConsumer.calculateBufferDelay(10000.0, PERIOD) > PERIOD);
+
+      assertEquals(Conversions.millisecondsToNanoseconds(500), RegistryConsumer.calculateBufferDelay(1e12, PERIOD));
+   }
+
+   @Test
+   public void testAverageAdaptsToRateChange()
+   {
+      double average = 0.0;
+      for (int i = 0; i < 1000; i++)
+      {
+         average = RegistryConsumer.updateAverageTimeBetweenPackets(average, PERIOD);
+      }
+      assertEquals(PERIOD, average, 1e-3);
+
+      // The client lowers the update rate
+      for (int i = 0; i < 200; i++)
+      {
+         average = RegistryConsumer.updateAverageTimeBetweenPackets(average, 10 * PERIOD);
+      }
+      assertEquals(10 * PERIOD, average, 0.01 * PERIOD);
+
+      // A pause only counts till the rate settles
+      average = RegistryConsumer.updateAverageTimeBetweenPackets(average, Conversions.secondsToNanoseconds(5));
+      for (int i = 0; i < 300; i++)
+      {
+         average = RegistryConsumer.updateAverageTimeBetweenPackets(average, 10 * PERIOD);
+      }
+      assertEquals(10 * PERIOD, average, 0.01 * PERIOD);
+   }
+
+   /**
+    * Every other packet arrives a few microseconds after the next packet. The delay holds the next
+    * packet long enough that the late packet is still applied in order.
+    */
+   @Test
+   public void testPacketsReorderedByMicroseconds()
+   {
+      long delay = RegistryConsumer.calculateBufferDelay(0.0, PERIOD);
+      RegistryReorderBuffer reorderBuffer = new RegistryReorderBuffer(64, new DebugRegistry());
+
+      int numberOfPackets = 100;
+      RegistryReceiveBuffer[] arrivals = new RegistryReceiveBuffer[numberOfPackets];
+      for (int uid = 0; uid < numberOfPackets; uid += 2)
+      {
+         long sendTime = uid * PERIOD;
+         arrivals[uid] = packet(uid + 1, sendTime + PERIOD);
+         arrivals[uid + 1] = packet(uid, sendTime + PERIOD + Conversions.microsecondsToNanoseconds(5));
+      }
+
+      long expectedUid = 0;
+      for (RegistryReceiveBuffer arrival : arrivals)
+      {
+         RegistryReceiveBuffer next;
+         while ((next = reorderBuffer.peek()) != null && next.getReceivedTimestamp() + delay <= arrival.getReceivedTimestamp())
+         {
+            assertEquals(expectedUid++, reorderBuffer.poll().getUid());
+         }
+         assertTrue(reorderBuffer.offer(arrival), "Packet " + arrival.getUid() + " dropped");
+      }
+      while (reorderBuffer.peek() != null)
+      {
+         assertEquals(expectedUid++, reorderBuffer.poll().getUid());
+      }
+      assertEquals(numberOfPackets, expectedUid);
+   }
+
+   private static RegistryReceiveBuffer packet(long uid, long receivedTimestamp)
+   {
+      RegistryReceiveBuffer buffer = new RegistryReceiveBuffer(receivedTimestamp);
+      buffer.setRegistryID(1);
+      buffer.setUid(uid);
+      buffer.setTimestamp(uid * PERIOD);
+      buffer.setType(LogDataType.XOR_DATA_PACKET);
+      return buffer;
+   }
+}
@@ -0,0 +1,237 @@
+package us.ihmc.robotDataLogger.dataBuffers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+
+public class RegistryReorderBufferTest
+{
+   private static RegistryReceiveBuffer packet(int registryID, long uid, long timestamp)
+   {
+      RegistryReceiveBuffer buffer = new RegistryReceiveBuffer(0);
+      buffer.setRegistryID(registryID);
+      buffer.setUid(uid);
+      buffer.setTimestamp(timestamp);
+      buffer.setType(LogDataType.XOR_DATA_PACKET);
+      return buffer;
+   }
+
+   @Test
+   public void testMergeOrder()
+   {
+      Random random = new Random(1829L);
+      RegistryReorderBuffer reorderBuffer = new RegistryReorderBuffer(64, new DebugRegistry());
+
+      // Registry 3 publishes every tick, registry 1 every other tick
+      List<RegistryReceiveBuffer> packets = new ArrayList<>();
+      for (int tick = 0; tick < 20; tick++)
+      {
+         packets.add(packet(3, tick, tick * 10));
+         if (tick % 2 == 0)
+         {
+            packets.add(packet(1, tick / 2, tick * 10));
+         }
+      }
+
+      List<RegistryReceiveBuffer> shuffled = new ArrayList<>(packets);
+      Collections.shuffle(shuffled, random);
+      for (RegistryReceiveBuffer packet : shuffled)
+      {
+         assertTrue(reorderBuffer.offer(packet));
+      }
+      assertEquals(packets.size(), reorderBuffer.size());
+
+      // Same timestamps are merged in order of registryID
+      packets.sort((a, b) -> a.getTimestamp() != b.getTimestamp() ? Long.compare(a.getTimestamp(), b.getTimestamp())
+            : Integer.compare(a.getRegistryID(), b.getRegistryID()));
+      for (RegistryReceiveBuffer expected : packets)
+      {
+         assertSame(expected, reorderBuffer.peek());
+         assertSame(expected, reorderBuffer.poll());
+      }
+      assertNull(reorderBuffer.poll());
+      assertEquals(0, reorderBuffer.size());
+   }
+
+   @Test
+   public void testGapSkipping()
+   {
+      DebugRegistry debugRegistry = new DebugRegistry();
+      RegistryReorderBuffer reorderBuffer = new RegistryReorderBuffer(8, debugRegistry);
+
+      assertTrue(reorderBuffer.offer(packet(1, 10, 100)));
+      assertTrue(reorderBuffer.offer(packet(1, 11, 110)));
+      assertTrue(reorderBuffer.offer(packet(1, 13, 130)));
+
+      assertEquals(10, reorderBuffer.poll().getUid());
+      assertEquals(11, reorderBuffer.poll().getUid());
+      assertEquals(13, reorderBuffer.poll().getUid());
+
+      // Packet 12 has been skipped
+      assertFalse(reorderBuffer.offer(packet(1, 12, 120)));
+      assertEquals(1, debugRegistry.getPacketsOutOfOrder().getValue());
+
+      // Keep alives are not buffered
+      RegistryReceiveBuffer keepAlive = packet(1, 14, 140);
+      keepAlive.setType(LogDataType.KEEP_ALIVE_PACKET);
+      assertFalse(reorderBuffer.offer(keepAlive));
+      assertEquals(0, reorderBuffer.size());
+   }
+
+   @Test
+   public void testGapFilledAfterScan()
+   {
+      DebugRegistry debugRegistry = new DebugRegistry();
+      RegistryReorderBuffer reorderBuffer = new RegistryReorderBuffer(4096, debugRegistry);
+
+      assertTrue(reorderBuffer.offer(packet(1, 0, 0)));
+      assertTrue(reorderBuffer.offer(packet(1, 3000, 30000)));
+      assertTrue(reorderBuffer.offer(packet(2, 0, 5)));
+
+      assertEquals(0, reorderBuffer.poll().getUid());
+      // Scans the gap once, the head of registry 1 is kept for the next calls
+      for (int i = 0; i < 3; i++)
+      {
+         RegistryReceiveBuffer next = reorderBuffer.peek();
+         assertEquals(2, next.getRegistryID());
+         assertEquals(0, next.getUid());
+      }
+      assertSame(reorderBuffer.peek(), reorderBuffer.poll());
+      assertEquals(3000, reorderBuffer.peek().getUid());
+
+      // A packet in the scanned gap is found
+      assertTrue(reorderBuffer.offer(packet(1, 1500, 15000)));
+      assertEquals(1500, reorderBuffer.peek().getUid());
+      assertEquals(1500, reorderBuffer.poll().getUid());
+      assertEquals(3000, reorderBuffer.poll().getUid());
+      assertNull(reorderBuffer.poll());
+      assertEquals(0, debugRegistry.getPacketsOutOfOrder().getValue());
+   }
+
+   @Test
+   public void testPollTakesPeekedPacket()
+   {
+      RegistryReorderBuffer reorderBuffer = new RegistryReorderBuffer(64, new DebugRegistry());
+
+      RegistryReceiveBuffer first = packet(2, 0, 20);
+      assertTrue(reorderBuffer.offer(first));
+      assertSame(first, reorderBuffer.peek());
+
+      // An older packet that arrives between peek() and poll() waits for the next peek()
+      RegistryReceiveBuffer older = packet(1, 0, 10);
+      assertTrue(reorderBuffer.offer(older));
+      assertSame(first, reorderBuffer.poll());
+      assertSame(older, reorderBuffer.peek());
+      assertSame(older, reorderBuffer.poll());
+   }
+
+   @Test
+   public void testCapacity()
+   {
+      DebugRegistry debugRegistry = new DebugRegistry();
+      RegistryReorderBuffer reorderBuffer = new RegistryReorderBuffer(4, debugRegistry);
+
+      assertTrue(reorderBuffer.offer(packet(1, 0, 0)));
+      // Too far ahead of the next packet to apply
+      assertFalse(reorderBuffer.offer(packet(1, 4, 40)));
+      assertTrue(reorderBuffer.offer(packet(1, 3, 30)));
+      assertTrue(reorderBuffer.offer(packet(2, 0, 0)));
+      assertTrue(reorderBuffer.offer(packet(2, 1, 10)));
+      // Buffer full
+      assertFalse(reorderBuffer.offer(packet(2, 2, 20)));
+      assertEquals(2, debugRegistry.getSkippedPacketDueToFullBuffer().getValue());
+
+      // Same timestamp, lowest registryID first
+      assertEquals(1, reorderBuffer.poll().getRegistryID());
+      assertTrue(reorderBuffer.offer(packet(1, 4, 40)));
+   }
+
+   @Test
+   public void testConcurrentProducer() throws InterruptedException
+   {
+      int packetsPerRegistry = 200000;
+      int[] registries = {1, 5, 7};
+      DebugRegistry debugRegistry = new DebugRegistry();
+      RegistryReorderBuffer reorderBuffer = new RegistryReorderBuffer(256, debugRegistry);
+
+      int[] dropped = new int[1];
+      Thread producer = new Thread(() ->
+      {
+         Random random = new Random(91723L);
+         RegistryReceiveBuffer delayed = null;
+         for (int uid = 0; uid < packetsPerRegistry; uid++)
+         {
+            for (int registry : registries)
+            {
+               RegistryReceiveBuffer packet = packet(registry, uid, uid);
+               // Occasionally swap two packets
+               if (delayed == null && random.nextInt(50) == 0)
+               {
+                  delayed = packet;
+                  continue;
+               }
+               while (reorderBuffer.size() > 200)
+               {
+                  Thread.yield();
+               }
+               if (!reorderBuffer.offer(packet))
+               {
+                  ++dropped[0];
+               }
+               if (delayed != null)
+               {
+                  if (!reorderBuffer.offer(delayed))
+                  {
+                     ++dropped[0];
+                  }
+                  delayed = null;
+               }
+            }
+         }
+         if (delayed != null && !reorderBuffer.offer(delayed))
+         {
+            ++dropped[0];
+         }
+      });
+      producer.start();
+
+      long[] lastUid = new long[8];
+      Arrays.fill(lastUid, -1);
+      int received = 0;
+      while (producer.isAlive() || reorderBuffer.size() > 0)
+      {
+         // Keep some packets in the buffer while the producer is running, like the jitter buffer
+         if (producer.isAlive() && reorderBuffer.size() < 16)
+         {
+            Thread.yield();
+            continue;
+         }
+
+         RegistryReceiveBuffer packet = reorderBuffer.poll();
+         if (packet != null)
+         {
+            // Packets of a registry are never applied out of order
+            assertTrue(packet.getUid() > lastUid[packet.getRegistryID()]);
+            lastUid[packet.getRegistryID()] = packet.getUid();
+            ++received;
+         }
+      }
+      producer.join();
+
+      assertEquals(packetsPerRegistry * registries.length, received + dropped[0]);
+      assertEquals(dropped[0], debugRegistry.getPacketsOutOfOrder().getValue() + debugRegistry.getSkippedPacketDueToFullBuffer().getValue());
+   }
+}
@@ -1,15 +1,27 @@
 package us.ihmc.robotDataLogger.dataBuffers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import us.ihmc.commons.Conversions;
 import us.ihmc.euclid.referenceFrame.ReferenceFrame;
 import us.ihmc.euclid.tuple3D.Vector3D;
@@ -19,6 +31,8 @@ import us.ihmc.mecano.multiBodySystem.RigidBody;
 import us.ihmc.mecano.multiBodySystem.interfaces.OneDoFJointBasics;
 import us.ihmc.mecano.multiBodySystem.interfaces.RigidBodyBasics;
 import us.ihmc.pubsub.common.SerializedPayload;
+import us.ihmc.robotDataLogger.JointType;
+import us.ihmc.robotDataLogger.LogDataType;
 import us.ihmc.robotDataLogger.jointState.JointHolder;
 import us.ihmc.robotDataLogger.jointState.JointState;
 import us.ihmc.robotDataLogger.jointState.OneDoFJointHolder;
@@ -175,7 +189,7 @@ public class RegistrySendBufferTest
          publisherType.serialize(sendBuffer, payload);
          subscriberType.deserialize(payload, receiveBuffer);
 
-         registryDecompressor.decompressSegment(receiveBuffer, 0);
+         registryDecompressor.decompressSegment(receiveBuffer, 0, numberOfVariables);
 
          // Double check that all the variables that were transmitted are the same, otherwise through error
          List<YoVariable> sendVariables = sendRegistry.collectSubtreeVariables();
@@ -188,4 +202,666 @@ public class RegistrySendBufferTest
          }
       }
    }
+
+   @Test
+   public void testKeyframeEncodedPackets() throws IOException
+   {
+      Random random = new Random(9813512L);
+
+      int numberOfVariables = 5000;
+      int keyframeInterval = 10;
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables);
+      fixture.changeAllVariables();
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0, true);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+
+      int keyframeSize = 0;
+      long keyframeUid = RegistryBuffer.NO_KEYFRAME;
+      long keyframeValue = 0;
+      for (long uid = 0; uid < 5 * keyframeInterval; uid++)
+      {
+         // Change a small subset of the variables each tick, and all variables once per keyframe interval
+         if (uid % keyframeInterval == keyframeInterval / 2)
+         {
+            fixture.changeAllVariables();
+         }
+         else
+         {
+            fixture.changeVariables(50);
+         }
+
+         // Change a variable and set it back to its keyframe value in the next packet
+         if (uid % keyframeInterval == 1)
+         {
+            fixture.setVariable(0, ~keyframeValue);
+         }
+         else if (uid % keyframeInterval == 2)
+         {
+            fixture.setVariable(0, keyframeValue);
+         }
+
+         if (uid % keyframeInterval == 0)
+         {
+            keyframeUid = uid;
+            keyframeValue = fixture.sendVariables.get(0).getValueAsLongBits();
+         }
+
+         fixture.updateXOR(uid, keyframeUid);
+         RegistryReceiveBuffer receiveBuffer = fixture.transmit(publisherType, subscriberType, payload);
+
+         assertEquals(keyframeUid, receiveBuffer.getKeyframeUid());
+
+         if (receiveBuffer.isKeyframe())
+         {
+            assertEquals(LogDataType.XOR_DATA_PACKET, receiveBuffer.getType());
+            keyframeSize = receiveBuffer.getData().remaining();
+         }
+         else if (uid % keyframeInterval < keyframeInterval / 2)
+         {
+            // Only a few variables differ from the keyframe
+            assertEquals(LogDataType.SPARSE_DATA_PACKET, receiveBuffer.getType());
+            assertTrue(receiveBuffer.getData().remaining() < keyframeSize);
+         }
+         else
+         {
+            assertEquals(LogDataType.XOR_DATA_PACKET, receiveBuffer.getType());
+         }
+
+         fixture.decompress(receiveBuffer);
+         fixture.assertReceived();
+      }
+   }
+
+   @Test
+   public void testXORFollowedBySparsePackets() throws IOException
+   {
+      Random random = new Random(7743120L);
+
+      int numberOfVariables = 1000;
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables);
+      fixture.changeAllVariables();
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0, true);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+
+      long keyframeUid = 0;
+      long[] keyframeValues = fixture.getSendValues();
+      fixture.updateXOR(0, keyframeUid);
+      fixture.decompress(fixture.transmit(publisherType, subscriberType, payload));
+      fixture.assertReceived();
+
+      for (long uid = 1; uid < 10; uid += 2)
+      {
+         // Most variables move away from the keyframe
+         fixture.changeAllVariables();
+         fixture.updateXOR(uid, keyframeUid);
+         RegistryReceiveBuffer xorPacket = fixture.transmit(publisherType, subscriberType, payload);
+         assertEquals(LogDataType.XOR_DATA_PACKET, xorPacket.getType());
+         fixture.decompress(xorPacket);
+         fixture.assertReceived();
+
+         // Back to the keyframe, except a few variables. The sparse packet does not contain the others.
+         for (int v = 0; v < numberOfVariables; v++)
+         {
+            fixture.setVariable(v, keyframeValues[v]);
+         }
+         fixture.changeVariables(10);
+         fixture.updateXOR(uid + 1, keyframeUid);
+         RegistryReceiveBuffer sparsePacket = fixture.transmit(publisherType, subscriberType, payload);
+         assertEquals(LogDataType.SPARSE_DATA_PACKET, sparsePacket.getType());
+         fixture.decompress(sparsePacket);
+         fixture.assertReceived();
+      }
+   }
+
+   @Test
+   public void testProjectedPackets() throws IOException
+   {
+      Random random = new Random(4518521L);
+
+      int numberOfVariables = 1000;
+      int[] projectedIndices = {0, 3, 4, 5, 100, 511, 999};
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables);
+      for (int v = 0; v < numberOfVariables; v++)
+      {
+         ((YoLong) fixture.receiveVariables.get(v)).set(v);
+      }
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+
+      assertTrue(CustomLogDataPublisherType.isProjectionSmaller(projectedIndices.length, numberOfVariables));
+      assertFalse(CustomLogDataPublisherType.isProjectionSmaller(numberOfVariables, numberOfVariables));
+
+      for (long uid = 0; uid < 10; uid++)
+      {
+         fixture.changeAllVariables();
+         fixture.update(uid);
+
+         payload.getData().clear();
+         publisherType.serializeProjection(fixture.sendBuffer, projectedIndices, projectedIndices.length, payload);
+         RegistryReceiveBuffer receiveBuffer = fixture.receive(subscriberType, payload);
+
+         assertEquals(LogDataType.SPARSE_DATA_PACKET, receiveBuffer.getType());
+         assertEquals(RegistryBuffer.NO_KEYFRAME, receiveBuffer.getKeyframeUid());
+         assertEquals(projectedIndices.length, receiveBuffer.getNumberOfVariables());
+
+         fixture.decompress(receiveBuffer);
+
+         // Only the projected variables are updated
+         long[] expected = fixture.getSendValues();
+         for (int v = 0; v < numberOfVariables; v++)
+         {
+            if (Arrays.binarySearch(projectedIndices, v) < 0)
+            {
+               expected[v] = v;
+            }
+         }
+         fixture.assertReceived(expected);
+      }
+   }
+
+   @Test
+   public void testProjectedPacketBoundedByRegistry() throws IOException
+   {
+      Random random = new Random(9821374L);
+
+      // The receiving side has a registry of registrySize variables followed by the variables of the next registry
+      int registrySize = 500;
+      int numberOfVariables = 2 * registrySize;
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables);
+      for (int v = 0; v < numberOfVariables; v++)
+      {
+         ((YoLong) fixture.receiveVariables.get(v)).set(v);
+      }
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+
+      long[] initialValues = new long[numberOfVariables];
+      for (int v = 0; v < numberOfVariables; v++)
+      {
+         initialValues[v] = v;
+      }
+
+      // Indices past the end of the registry would overwrite the next registry, the packet has to be skipped
+      int[][] projections = {{0, 1, registrySize}, {registrySize + 1}, {registrySize - 1, numberOfVariables - 1}};
+      for (int[] projectedIndices : projections)
+      {
+         fixture.changeAllVariables();
+         fixture.update(0);
+
+         payload.getData().clear();
+         publisherType.serializeProjection(fixture.sendBuffer, projectedIndices, projectedIndices.length, payload);
+         RegistryReceiveBuffer receiveBuffer = fixture.receive(subscriberType, payload);
+         assertEquals(RegistryBuffer.NO_KEYFRAME, receiveBuffer.getKeyframeUid());
+
+         fixture.decompress(receiveBuffer, registrySize);
+         fixture.assertReceived(initialValues);
+      }
+
+      // Indices inside the registry are applied
+      int[] projectedIndices = {0, registrySize - 1};
+      fixture.changeAllVariables();
+      fixture.update(1);
+
+      payload.getData().clear();
+      publisherType.serializeProjection(fixture.sendBuffer, projectedIndices, projectedIndices.length, payload);
+      fixture.decompress(fixture.receive(subscriberType, payload), registrySize);
+
+      long[] expected = initialValues.clone();
+      for (int index : projectedIndices)
+      {
+         expected[index] = fixture.sendVariables.get(index).getValueAsLongBits();
+      }
+      fixture.assertReceived(expected);
+   }
+
+   @Test
+   public void testListenerPlan() throws IOException
+   {
+      Random random = new Random(66123L);
+
+      int numberOfVariables = 600;
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables);
+      List<YoVariable> receiveVariables = fixture.receiveVariables;
+
+      int[] notifications = new int[numberOfVariables];
+      receiveVariables.get(5).addListener(v -> ++notifications[5]);
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+
+      int numberOfTicks = 10;
+      for (long uid = 0; uid < numberOfTicks; uid++)
+      {
+         if (uid == 2)
+         {
+            // Picked up by the incremental scan
+            receiveVariables.get(550).addListener(v -> ++notifications[550]);
+         }
+         else if (uid == 6)
+         {
+            // Picked up immediately
+            receiveVariables.get(300).addListener(v -> ++notifications[300]);
+            fixture.registryDecompressor.updateListenerPlan();
+         }
+
+         fixture.changeAllVariables();
+         fixture.update(uid);
+         fixture.decompress(fixture.transmit(publisherType, subscriberType, payload));
+         fixture.assertReceived();
+      }
+
+      assertEquals(numberOfTicks, notifications[5]);
+      assertEquals(numberOfTicks - 6, notifications[300]);
+      // The scan covers all variables within three packets
+      assertTrue(notifications[550] >= numberOfTicks - 2 - 3, "Notified " + notifications[550] + " times");
+      assertEquals(0, notifications[0]);
+   }
+
+   @Test
+   public void testConcurrentRegistries() throws Exception
+   {
+      Random random = new Random(412095L);
+
+      int numberOfRegistries = 4;
+      int variablesPerRegistry = 400;
+      int keyframeInterval = 5;
+
+      YoRegistry receiveRegistry = new YoRegistry("receiveRegistry");
+      List<List<YoVariable>> sendVariables = new ArrayList<>();
+      List<RegistrySendBuffer> sendBuffers = new ArrayList<>();
+      // The publisher keeps the keyframe, so every registry has its own
+      List<CustomLogDataPublisherType> publisherTypes = new ArrayList<>();
+      for (int r = 0; r < numberOfRegistries; r++)
+      {
+         YoRegistry sendRegistry = new YoRegistry("sendRegistry" + r);
+         for (int v = 0; v < variablesPerRegistry; v++)
+         {
+            new YoLong("var" + v, sendRegistry);
+            new YoLong("registry" + r + "var" + v, receiveRegistry);
+         }
+         sendVariables.add(sendRegistry.collectSubtreeVariables());
+         sendBuffers.add(new RegistrySendBuffer(r + 1, sendVariables.get(r), new ArrayList<>()));
+         publisherTypes.add(new CustomLogDataPublisherType(variablesPerRegistry, 0, true));
+      }
+      List<YoVariable> receiveVariables = receiveRegistry.collectSubtreeVariables();
+
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(variablesPerRegistry, 0);
+      SerializedPayload payload = new SerializedPayload(publisherTypes.get(0).getMaximumTypeSize());
+
+      RegistryDecompressor registryDecompressor = new RegistryDecompressor(receiveVariables, new ArrayList<>());
+      ForkJoinPool pool = new ForkJoinPool(numberOfRegistries);
+
+      try
+      {
+         for (long uid = 0; uid < 50; uid++)
+         {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int r = 0; r < numberOfRegistries; r++)
+            {
+               for (YoVariable variable : sendVariables.get(r))
+               {
+                  if (random.nextInt(4) == 0)
+                  {
+                     ((YoLong) variable).set(random.nextLong());
+                  }
+               }
+
+               RegistrySendBuffer sendBuffer = sendBuffers.get(r);
+               sendBuffer.updateBufferFromVariables(uid * 1000, uid, variablesPerRegistry);
+               sendBuffer.setType(LogDataType.XOR_DATA_PACKET);
+               sendBuffer.setKeyframeUid(uid - uid % keyframeInterval);
+
+               payload.getData().clear();
+               publisherTypes.get(r).serialize(sendBuffer, payload);
+               RegistryReceiveBuffer receiveBuffer = new RegistryReceiveBuffer(System.nanoTime());
+               subscriberType.deserialize(payload, receiveBuffer);
+
+               int registryOffset = r * variablesPerRegistry;
+               tasks.add(() ->
+               {
+                  registryDecompressor.decompressSegment(receiveBuffer, registryOffset, variablesPerRegistry);
+                  return null;
+               });
+            }
+
+            for (Future<Void> result : pool.invokeAll(tasks))
+            {
+               result.get();
+            }
+
+            for (int r = 0; r < numberOfRegistries; r++)
+            {
+               for (int v = 0; v < variablesPerRegistry; v++)
+               {
+                  assertEquals(sendVariables.get(r).get(v).getValueAsLongBits(),
+                               receiveVariables.get(r * variablesPerRegistry + v).getValueAsLongBits());
+               }
+            }
+         }
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+   }
+
+   @Test
+   public void testBatchedPackets() throws IOException
+   {
+      Random random = new Random(9124715L);
+
+      int numberOfVariables = 500;
+      int keyframeInterval = 7;
+      int maximumBatchSize = 4;
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables);
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0, true);
+      assertEquals(maximumBatchSize, publisherType.enableBatching(maximumBatchSize));
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+
+      int numberOfTicks = 30;
+      long[][] sendValues = new long[numberOfTicks][];
+      long keyframeUid = RegistryBuffer.NO_KEYFRAME;
+      int receivedPackets = 0;
+
+      for (int uid = 0; uid < numberOfTicks; uid++)
+      {
+         // Change a few variables per tick, so both XOR and sparse packets are batched
+         fixture.changeVariables(uid % 2 == 0 ? 10 : numberOfVariables);
+         sendValues[uid] = fixture.getSendValues();
+
+         if (uid % keyframeInterval == 0)
+         {
+            keyframeUid = uid;
+         }
+         fixture.updateXOR(uid, keyframeUid);
+
+         if (uid % 3 == 0)
+         {
+            // Serializing the single packet first should not change the batch
+            payload.getData().clear();
+            publisherType.serialize(fixture.sendBuffer, payload);
+         }
+
+         publisherType.addToBatch(fixture.sendBuffer);
+
+         if (publisherType.isBatchFull() || uid == numberOfTicks - 1)
+         {
+            payload.getData().clear();
+            publisherType.serializeBatch(payload);
+            assertEquals(0, publisherType.getBatchSize());
+
+            RegistryReceiveBuffer batch = fixture.receive(subscriberType, payload);
+            assertEquals(LogDataType.BATCH_DATA_PACKET, batch.getType());
+            assertEquals(receivedPackets, batch.getUid());
+
+            RegistryReceiveBuffer[] packets = subscriberType.unpackBatch(batch);
+            assertEquals(uid + 1 - receivedPackets, packets.length);
+
+            for (RegistryReceiveBuffer packet : packets)
+            {
+               assertEquals(receivedPackets, packet.getUid());
+               assertEquals(receivedPackets * 1000, packet.getTimestamp());
+               assertFalse(packet.isCompressed());
+
+               fixture.decompress(packet);
+               fixture.assertReceived(sendValues[receivedPackets]);
+               ++receivedPackets;
+            }
+         }
+      }
+
+      assertEquals(numberOfTicks, receivedPackets);
+   }
+
+   @Test
+   public void testCompressionDictionaryPackets() throws IOException
+   {
+      Random random = new Random(6231587L);
+
+      int numberOfVariables = 2000;
+      int registryOffset = 25;
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables, registryOffset, new ArrayList<>());
+      fixture.changeAllVariables();
+
+      // Snapshot of the initial values. The client gets the dictionary for all registries, in handshake order.
+      long[] registryDictionary = fixture.getSendValues();
+      long[] compressionDictionary = new long[registryOffset + numberOfVariables];
+      System.arraycopy(registryDictionary, 0, compressionDictionary, registryOffset, numberOfVariables);
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0, true);
+      publisherType.setCompressionDictionary(registryDictionary);
+      CustomLogDataPublisherType plainPublisherType = new CustomLogDataPublisherType(numberOfVariables, 0, true);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(registryOffset + numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+      SerializedPayload plainPayload = new SerializedPayload(plainPublisherType.getMaximumTypeSize());
+
+      fixture.registryDecompressor.setCompressionDictionary(compressionDictionary);
+
+      for (long uid = 0; uid < 10; uid++)
+      {
+         // Most variables keep their initial value
+         fixture.changeVariables(100);
+
+         // Alternate between full packets and keyframes, both are encoded against the dictionary
+         if (uid % 2 == 0)
+         {
+            fixture.update(uid);
+            fixture.sendBuffer.setType(LogDataType.DATA_PACKET);
+            fixture.sendBuffer.setKeyframeUid(RegistryBuffer.NO_KEYFRAME);
+         }
+         else
+         {
+            fixture.updateXOR(uid, uid);
+         }
+
+         RegistryReceiveBuffer receiveBuffer = fixture.transmit(publisherType, subscriberType, payload);
+         RegistryReceiveBuffer plainReceiveBuffer = fixture.transmit(plainPublisherType, subscriberType, plainPayload);
+
+         assertEquals(plainReceiveBuffer.getType(), receiveBuffer.getType());
+         assertTrue(receiveBuffer.getData().remaining() < plainReceiveBuffer.getData().remaining(),
+                    "Dictionary encoded data " + receiveBuffer.getData().remaining() + " bytes, plain data " + plainReceiveBuffer.getData().remaining()
+                          + " bytes");
+
+         fixture.decompress(receiveBuffer);
+         fixture.assertReceived();
+      }
+   }
+
+   @Test
+   public void testPooledReceiveBuffers() throws IOException
+   {
+      Random random = new Random(4419823L);
+
+      int numberOfVariables = 300;
+      int keyframeInterval = 5;
+      int maximumBatchSize = 3;
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables);
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 0, true);
+      CustomLogDataPublisherType batchPublisherType = new CustomLogDataPublisherType(numberOfVariables, 0, true);
+      batchPublisherType.enableBatching(maximumBatchSize);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 0);
+      SerializedPayload payload = new SerializedPayload(batchPublisherType.getMaximumTypeSize());
+
+      int poolSize = maximumBatchSize + 1;
+      RegistryReceiveBufferPool pool = new RegistryReceiveBufferPool(poolSize, poolSize, subscriberType.getMaximumDataSize(), 0);
+
+      Set<RegistryReceiveBuffer> usedBuffers = Collections.newSetFromMap(new IdentityHashMap<>());
+      List<RegistryReceiveBuffer> packets = new ArrayList<>();
+      long keyframeUid = RegistryBuffer.NO_KEYFRAME;
+
+      for (int uid = 0; uid < 40; uid++)
+      {
+         fixture.changeVariables(20);
+         if (uid % keyframeInterval == 0)
+         {
+            keyframeUid = uid;
+         }
+         fixture.updateXOR(uid, keyframeUid);
+
+         // Single packets first, batches in the second half
+         packets.clear();
+         if (uid < 20)
+         {
+            payload.getData().clear();
+            publisherType.serialize(fixture.sendBuffer, payload);
+            RegistryReceiveBuffer buffer = pool.acquire(System.nanoTime());
+            subscriberType.deserialize(payload, buffer);
+            packets.add(buffer);
+         }
+         else
+         {
+            batchPublisherType.addToBatch(fixture.sendBuffer);
+            if (!batchPublisherType.isBatchFull())
+            {
+               continue;
+            }
+            payload.getData().clear();
+            batchPublisherType.serializeBatch(payload);
+            RegistryReceiveBuffer batch = pool.acquire(System.nanoTime());
+            usedBuffers.add(batch);
+            subscriberType.deserialize(payload, batch);
+            subscriberType.unpackBatch(batch, pool, packets);
+            batch.release();
+            assertEquals(maximumBatchSize, packets.size());
+         }
+
+         for (RegistryReceiveBuffer packet : packets)
+         {
+            usedBuffers.add(packet);
+            fixture.decompress(packet);
+            packet.release();
+         }
+
+         fixture.assertReceived();
+         assertEquals(poolSize, pool.available());
+      }
+
+      // No new buffers are allocated at steady state
+      assertTrue(usedBuffers.size() <= poolSize, "Allocated " + usedBuffers.size() + " receive buffers");
+
+      RegistryReceiveBuffer buffer = pool.acquire(0);
+      ByteBuffer data = buffer.getData();
+      assertSame(data, buffer.allocateBuffer(16));
+      assertEquals(16, data.limit());
+      assertSame(buffer.allocateStates(5), buffer.allocateStates(3));
+      assertEquals(3, buffer.getNumberOfJointStates());
+      assertEquals(3, buffer.getJointStateBuffer().remaining());
+      buffer.release();
+   }
+
+   @Test
+   public void testInPlaceDeserialize() throws IOException
+   {
+      Random random = new Random(5512309L);
+
+      int numberOfVariables = 1000;
+      int keyframeInterval = 5;
+      int framePrefix = 7;
+
+      JointHolder jointHolder = new JointHolder()
+      {
+         @Override
+         public String getName()
+         {
+            return "joint";
+         }
+
+         @Override
+         public JointType getJointType()
+         {
+            return JointType.OneDoFJoint;
+         }
+
+         @Override
+         public int getNumberOfStateVariables()
+         {
+            return 3;
+         }
+
+         @Override
+         public void get(double[] buffer, int offset)
+         {
+            for (int i = 0; i < 3; i++)
+            {
+               buffer[offset + i] = random.nextDouble();
+            }
+         }
+      };
+      List<JointHolder> jointHolders = new ArrayList<>();
+      jointHolders.add(jointHolder);
+
+      RegistryTestFixture fixture = new RegistryTestFixture(random, numberOfVariables, 0, jointHolders);
+
+      CustomLogDataPublisherType publisherType = new CustomLogDataPublisherType(numberOfVariables, 3, true);
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(numberOfVariables, 3);
+      SerializedPayload payload = new SerializedPayload(publisherType.getMaximumTypeSize());
+      RegistryReceiveBufferPool pool = new RegistryReceiveBufferPool(1, 1, subscriberType.getMaximumDataSize(), 3);
+
+      long keyframeUid = RegistryBuffer.NO_KEYFRAME;
+
+      for (int uid = 0; uid < 20; uid++)
+      {
+         fixture.changeVariables(uid % 3 == 0 ? numberOfVariables : 10);
+         if (uid % keyframeInterval == 0)
+         {
+            keyframeUid = uid;
+         }
+         fixture.updateXOR(uid, keyframeUid);
+
+         payload.getData().clear();
+         publisherType.serialize(fixture.sendBuffer, payload);
+
+         // Frame with some unrelated bytes in front, like a slice of a larger buffer
+         ByteBuf content = Unpooled.directBuffer();
+         content.writeZero(framePrefix);
+         content.writeBytes(payload.getData().duplicate());
+         content.readerIndex(framePrefix);
+
+         RegistryReceiveBuffer copied = fixture.receive(subscriberType, payload);
+
+         RegistryReceiveBuffer inPlace = pool.acquire(0);
+         subscriberType.deserialize(content.nioBuffer(content.readerIndex(), content.readableBytes()), content, inPlace);
+         assertEquals(2, content.refCnt());
+
+         assertEquals(copied.getUid(), inPlace.getUid());
+         assertEquals(copied.getTimestamp(), inPlace.getTimestamp());
+         assertEquals(copied.getType(), inPlace.getType());
+         assertEquals(copied.getNumberOfVariables(), inPlace.getNumberOfVariables());
+         assertEquals(copied.getKeyframeUid(), inPlace.getKeyframeUid());
+         assertEquals(copied.getData(), inPlace.getData());
+         assertTrue(inPlace.getData().isDirect());
+         assertEquals(3, inPlace.getNumberOfJointStates());
+         for (int i = 0; i < 3; i++)
+         {
+            assertEquals(fixture.sendBuffer.getJointStates()[i], inPlace.getJointStates()[i]);
+         }
+
+         fixture.decompress(inPlace);
+         fixture.assertReceived();
+
+         inPlace.release();
+         assertEquals(1, content.refCnt());
+         content.release();
+      }
+   }
 }
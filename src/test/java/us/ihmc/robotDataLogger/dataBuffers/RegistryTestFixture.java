@@ -0,0 +1,166 @@
+package us.ihmc.robotDataLogger.dataBuffers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import us.ihmc.pubsub.common.SerializedPayload;
+import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.robotDataLogger.jointState.JointHolder;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Sending and receiving side of a single registry of YoLongs, for the tests that encode packets,
+ * decode them and compare the variables on both sides.
+ */
+class RegistryTestFixture
+{
+   final List<YoVariable> sendVariables;
+   final List<YoVariable> receiveVariables;
+   final RegistrySendBuffer sendBuffer;
+   final RegistryDecompressor registryDecompressor;
+
+   private final Random random;
+   private final int numberOfVariables;
+   private final int registryOffset;
+
+   RegistryTestFixture(Random random, int numberOfVariables)
+   {
+      this(random, numberOfVariables, 0, new ArrayList<>());
+   }
+
+   /**
+    * @param random            Source of the variable values
+    * @param numberOfVariables Number of variables in the registry
+    * @param registryOffset    Number of variables of other registries in front of this registry on
+    *                          the receiving side
+    * @param jointHolders      Joints send with the registry
+    */
+   RegistryTestFixture(Random random, int numberOfVariables, int registryOffset, List<JointHolder> jointHolders)
+   {
+      this.random = random;
+      this.numberOfVariables = numberOfVariables;
+      this.registryOffset = registryOffset;
+
+      YoRegistry sendRegistry = new YoRegistry("sendRegistry");
+      YoRegistry receiveRegistry = new YoRegistry("receiveRegistry");
+      for (int v = 0; v < registryOffset; v++)
+      {
+         new YoLong("otherVar" + v, receiveRegistry);
+      }
+      for (int v = 0; v < numberOfVariables; v++)
+      {
+         new YoLong("var" + v, sendRegistry);
+         new YoLong("var" + v, receiveRegistry);
+      }
+      sendVariables = sendRegistry.collectSubtreeVariables();
+      receiveVariables = receiveRegistry.collectSubtreeVariables();
+
+      sendBuffer = new RegistrySendBuffer(1, sendVariables, jointHolders);
+      registryDecompressor = new RegistryDecompressor(receiveVariables, new ArrayList<>());
+   }
+
+   /**
+    * Set a number of randomly chosen variables to a random value
+    */
+   void changeVariables(int changes)
+   {
+      for (int c = 0; c < changes; c++)
+      {
+         setVariable(random.nextInt(numberOfVariables), random.nextLong());
+      }
+   }
+
+   void changeAllVariables()
+   {
+      for (int v = 0; v < numberOfVariables; v++)
+      {
+         setVariable(v, random.nextLong());
+      }
+   }
+
+   void setVariable(int index, long value)
+   {
+      ((YoLong) sendVariables.get(index)).set(value);
+   }
+
+   long[] getSendValues()
+   {
+      long[] values = new long[numberOfVariables];
+      for (int v = 0; v < numberOfVariables; v++)
+      {
+         values[v] = sendVariables.get(v).getValueAsLongBits();
+      }
+      return values;
+   }
+
+   /**
+    * Fill the send buffer with the current variables, as a DATA_PACKET with timestamp uid * 1000
+    */
+   void update(long uid)
+   {
+      sendBuffer.updateBufferFromVariables(uid * 1000, uid, numberOfVariables);
+   }
+
+   /**
+    * Fill the send buffer with the current variables, as an XOR_DATA_PACKET against keyframeUid
+    */
+   void updateXOR(long uid, long keyframeUid)
+   {
+      update(uid);
+      sendBuffer.setType(LogDataType.XOR_DATA_PACKET);
+      sendBuffer.setKeyframeUid(keyframeUid);
+   }
+
+   /**
+    * Serialize the send buffer and deserialize it in a new receive buffer
+    */
+   RegistryReceiveBuffer transmit(CustomLogDataPublisherType publisherType, CustomLogDataSubscriberType subscriberType, SerializedPayload payload)
+         throws IOException
+   {
+      payload.getData().clear();
+      publisherType.serialize(sendBuffer, payload);
+      return receive(subscriberType, payload);
+   }
+
+   RegistryReceiveBuffer receive(CustomLogDataSubscriberType subscriberType, SerializedPayload payload) throws IOException
+   {
+      RegistryReceiveBuffer receiveBuffer = new RegistryReceiveBuffer(System.nanoTime());
+      subscriberType.deserialize(payload, receiveBuffer);
+      return receiveBuffer;
+   }
+
+   void decompress(RegistryReceiveBuffer receiveBuffer)
+   {
+      decompress(receiveBuffer, numberOfVariables);
+   }
+
+   /**
+    * Decompress a packet as if the registry on the receiving side has registrySize variables
+    */
+   void decompress(RegistryReceiveBuffer receiveBuffer, int registrySize)
+   {
+      registryDecompressor.decompressSegment(receiveBuffer, registryOffset, registrySize);
+   }
+
+   /**
+    * Assert that the received variables equal the send variables
+    */
+   void assertReceived()
+   {
+      assertReceived(getSendValues());
+   }
+
+   void assertReceived(long[] values)
+   {
+      for (int v = 0; v < numberOfVariables; v++)
+      {
+         assertEquals(values[v], receiveVariables.get(registryOffset + v).getValueAsLongBits(), "Variable " + v);
+      }
+   }
+}
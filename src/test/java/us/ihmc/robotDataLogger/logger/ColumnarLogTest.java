@@ -0,0 +1,135 @@
+package us.ihmc.robotDataLogger.logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+public class ColumnarLogTest
+{
+   @Test
+   public void testWriteAndRead() throws IOException
+   {
+      Random random = new Random(8734612L);
+
+      YoRegistry registry = new YoRegistry("columnarLogTest");
+      int numberOfVariables = 50;
+      for (int i = 0; i < numberOfVariables; i++)
+      {
+         if (i % 2 == 0)
+         {
+            new YoDouble("double" + i, registry);
+         }
+         else
+         {
+            new YoLong("long" + i, registry);
+         }
+      }
+      List<YoVariable> variables = registry.collectSubtreeVariables();
+
+      // Timestamp, variables and a few joint state values
+      int lineLength = 1 + numberOfVariables + 3;
+      int ticks = 100;
+      int ticksPerChunk = 7;
+
+      long[][] expected = new long[lineLength][ticks];
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         expected[0][tick] = 1000000L + tick * 1000L;
+         for (int column = 1; column < lineLength; column++)
+         {
+            if (column % 2 == 1)
+            {
+               // Slowly changing doubles, like most robot data
+               expected[column][tick] = Double.doubleToLongBits(column + 0.001 * tick);
+            }
+            else
+            {
+               expected[column][tick] = random.nextLong();
+            }
+         }
+      }
+
+      File dataFile = File.createTempFile("columns", ".bsz");
+      File indexFile = File.createTempFile("columns", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+      ColumnarLogWriter writer = new ColumnarLogWriter(dataChannel, indexChannel, lineLength, ticksPerChunk);
+
+      ByteBuffer tickBuffer = ByteBuffer.allocate(lineLength * 8);
+      LongBuffer tickBufferAsLong = tickBuffer.asLongBuffer();
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         for (int column = 0; column < lineLength; column++)
+         {
+            tickBufferAsLong.put(column, expected[column][tick]);
+         }
+         tickBuffer.clear();
+         writer.write(tickBuffer);
+      }
+      writer.close();
+      dataChannel.close();
+      indexChannel.close();
+
+      ColumnarLogReader reader = new ColumnarLogReader(new FileInputStream(dataFile).getChannel(), indexFile, variables);
+      assertEquals(ticks, reader.getNumberOfTicks());
+      assertEquals(lineLength, reader.getNumberOfColumns());
+
+      assertArrayEquals(expected[0], reader.readTimestamps());
+
+      long[][] columns = reader.readColumns(lineLength - 1, 3, 0);
+      assertArrayEquals(expected[lineLength - 1], columns[0]);
+      assertArrayEquals(expected[3], columns[1]);
+      assertArrayEquals(expected[0], columns[2]);
+
+      YoVariable doubleVariable = reader.getVariable("double10");
+      YoVariable longVariable = reader.getVariable("columnarLogTest.long11");
+      assertEquals(11, reader.getColumn(doubleVariable));
+      assertEquals(12, reader.getColumn(longVariable));
+
+      double[][] data = reader.readData(Arrays.asList(doubleVariable, longVariable));
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         assertEquals(Double.longBitsToDouble(expected[11][tick]), data[0][tick]);
+         assertEquals((double) expected[12][tick], data[1][tick]);
+      }
+
+      reader.close();
+   }
+
+   @Test
+   public void testCalculateTicksPerChunk()
+   {
+      assertEquals(ColumnarLogWriter.MAXIMUM_TICKS_PER_CHUNK, ColumnarLogWriter.calculateTicksPerChunk(100, ColumnarLogWriter.DEFAULT_CHUNK_BUFFER_SIZE));
+
+      // A 30000 variable log gets chunks of about a second at 1kHz, a 2 hour log then has a directory of about 7000 chunks
+      int lineLength = 30001;
+      int ticksPerChunk = ColumnarLogWriter.calculateTicksPerChunk(lineLength, ColumnarLogWriter.DEFAULT_CHUNK_BUFFER_SIZE);
+      assertEquals(ColumnarLogWriter.DEFAULT_CHUNK_BUFFER_SIZE / (lineLength * 8), ticksPerChunk);
+      assertTrue(ticksPerChunk >= 1000);
+
+      // Very wide logs do not get short chunks
+      assertEquals(ColumnarLogWriter.MINIMUM_TICKS_PER_CHUNK, ColumnarLogWriter.calculateTicksPerChunk(1000000, ColumnarLogWriter.DEFAULT_CHUNK_BUFFER_SIZE));
+      assertTrue((long) ColumnarLogWriter.calculateTicksPerChunk(100000000, ColumnarLogWriter.DEFAULT_CHUNK_BUFFER_SIZE) * 100000000 * 8 <= Integer.MAX_VALUE);
+   }
+}
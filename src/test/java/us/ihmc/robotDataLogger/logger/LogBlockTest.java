@@ -0,0 +1,166 @@
+package us.ihmc.robotDataLogger.logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.robotDataLogger.LogIndex;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+import us.ihmc.tools.compression.SnappyUtils;
+
+public class LogBlockTest
+{
+   private static final int LINE_LENGTH = 37;
+
+   private static long[][] createTicks(Random random, int numberOfTicks)
+   {
+      long[][] ticks = new long[numberOfTicks][LINE_LENGTH];
+      for (int t = 0; t < numberOfTicks; t++)
+      {
+         ticks[t][0] = 1000 + 10 * t;
+         for (int v = 1; v < LINE_LENGTH; v++)
+         {
+            ticks[t][v] = random.nextLong();
+         }
+      }
+      return ticks;
+   }
+
+   private static ByteBuffer toBuffer(long[] tick)
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(tick.length * 8);
+      buffer.asLongBuffer().put(tick);
+      return buffer;
+   }
+
+   @Test
+   public void testBlock()
+   {
+      Random random = new Random(1298371L);
+      for (boolean transposed : new boolean[] {false, true})
+      {
+         LogBlock block = new LogBlock(LINE_LENGTH, 16, transposed);
+         for (int numberOfTicks : new int[] {16, 5, 1})
+         {
+            long[][] ticks = createTicks(random, numberOfTicks);
+            for (int t = 0; t < numberOfTicks; t++)
+            {
+               block.add(toBuffer(ticks[t]), ticks[t][0]);
+            }
+            assertEquals(numberOfTicks == 16, block.isFull());
+            assertEquals(ticks[0][0], block.getFirstTimestamp());
+            assertEquals(ticks[numberOfTicks - 1][0], block.getLastTimestamp());
+
+            ByteBuffer data = block.getData();
+            assertEquals(numberOfTicks * LINE_LENGTH * 8, data.remaining());
+
+            LongBuffer dataAsLong = data.asLongBuffer();
+            LongBuffer tick = LongBuffer.allocate(LINE_LENGTH);
+            for (int t = 0; t < numberOfTicks; t++)
+            {
+               assertEquals(ticks[t][0], LogBlock.getTimestamp(dataAsLong, t, numberOfTicks, LINE_LENGTH, transposed));
+               LogBlock.getTick(dataAsLong, t, numberOfTicks, LINE_LENGTH, transposed, tick);
+               for (int v = 0; v < LINE_LENGTH; v++)
+               {
+                  assertEquals(ticks[t][v], tick.get(v));
+               }
+            }
+
+            block.clear();
+            assertTrue(block.isEmpty());
+         }
+      }
+   }
+
+   @Test
+   public void testCalculateTicksPerBlock()
+   {
+      assertEquals(256, LogBlock.calculateTicksPerBlock(256, 100));
+      assertEquals(LogBlock.MAXIMUM_BLOCK_SIZE / (10000 * 8), LogBlock.calculateTicksPerBlock(256, 10000));
+      assertEquals(1, LogBlock.calculateTicksPerBlock(256, LogBlock.MAXIMUM_BLOCK_SIZE));
+   }
+
+   @Test
+   public void testWriteBlocks() throws IOException
+   {
+      File dataFile = File.createTempFile("logBlock", ".bsz");
+      File indexFile = File.createTempFile("logBlock", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+
+      int ticksPerBlock = 8;
+      int numberOfTicks = 100;
+      LogBlock block = new LogBlock(LINE_LENGTH, ticksPerBlock, true);
+      LogDiskWriter writer = new LogDiskWriter(dataChannel,
+                                               indexChannel,
+                                               SnappyUtils.maxCompressedLength(LINE_LENGTH * 8 * ticksPerBlock),
+                                               4,
+                                               null,
+                                               true,
+                                               new DebugRegistry());
+      writer.start();
+
+      long[][] ticks = createTicks(new Random(9812734L), numberOfTicks);
+      for (int t = 0; t < numberOfTicks; t++)
+      {
+         block.add(toBuffer(ticks[t]), ticks[t][0]);
+         if (block.isFull() || t == numberOfTicks - 1)
+         {
+            ByteBuffer compressed;
+            while ((compressed = writer.next()) == null)
+            {
+               Thread.yield();
+            }
+            SnappyUtils.compress(block.getData(), compressed);
+            compressed.flip();
+            writer.commitBlock(block.getFirstTimestamp(), block.getLastTimestamp(), block.getNumberOfTicks());
+            block.clear();
+         }
+      }
+      writer.close();
+      dataChannel.close();
+      indexChannel.close();
+
+      byte[] data = Files.readAllBytes(dataFile.toPath());
+      LogIndex index = new LogIndex(indexFile, data.length, true);
+      assertEquals(13, index.getNumberOfEntries());
+      assertEquals(numberOfTicks, index.getNumberOfTicks());
+      assertEquals(4, index.getNumberOfTicksInBlock(12));
+
+      // Timestamp between ticks 41 and 42 is in the block with ticks 40 to 47
+      assertEquals(5, index.seekBlock(ticks[41][0] + 5));
+      assertEquals(12, index.seekBlock(Long.MAX_VALUE));
+
+      ByteBuffer uncompressed = ByteBuffer.allocate(LINE_LENGTH * 8 * ticksPerBlock);
+      LongBuffer tick = LongBuffer.allocate(LINE_LENGTH);
+      for (int t = 0; t < numberOfTicks; t++)
+      {
+         int b = index.getBlock(t);
+         assertEquals(t / ticksPerBlock, b);
+         assertEquals(ticks[b * ticksPerBlock][0], index.timestamps[b]);
+
+         uncompressed.clear();
+         SnappyUtils.uncompress(ByteBuffer.wrap(data, (int) index.dataOffsets[b], index.compressedSizes[b]), uncompressed);
+         uncompressed.flip();
+
+         LogBlock.getTick(uncompressed.asLongBuffer(), t - index.firstTicks[b], index.getNumberOfTicksInBlock(b), LINE_LENGTH, true, tick);
+         for (int v = 0; v < LINE_LENGTH; v++)
+         {
+            assertEquals(ticks[t][v], tick.get(v));
+         }
+      }
+   }
+}
@@ -0,0 +1,374 @@
+package us.ihmc.robotDataLogger.logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.robotDataLogger.LogIndex;
+import us.ihmc.robotDataLogger.LogRecordHeader;
+import us.ihmc.robotDataLogger.logger.converters.LogRecovery;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+
+public class LogDiskWriterTest
+{
+   private static final int MAXIMUM_RECORD_SIZE = 256;
+
+   private static void fill(ByteBuffer buffer, long timestamp)
+   {
+      Random random = new Random(timestamp);
+      int size = 8 + random.nextInt(MAXIMUM_RECORD_SIZE - 8);
+      buffer.putLong(timestamp);
+      while (buffer.position() < size)
+      {
+         buffer.put((byte) random.nextInt());
+      }
+      buffer.flip();
+   }
+
+   private static void write(LogDiskWriter writer, long timestamp)
+   {
+      ByteBuffer buffer;
+      while ((buffer = writer.next()) == null)
+      {
+         // Queue full, wait for the writer thread
+         Thread.yield();
+      }
+      fill(buffer, timestamp);
+      writer.commit(timestamp);
+   }
+
+   private static void assertLog(File dataFile, File indexFile, long firstTimestamp, int records) throws IOException
+   {
+      assertLog(dataFile, indexFile, firstTimestamp, records, false);
+   }
+
+   private static void assertLog(File dataFile, File indexFile, long firstTimestamp, int records, boolean checksums) throws IOException
+   {
+      byte[] data = Files.readAllBytes(dataFile.toPath());
+      LogIndex index = new LogIndex(indexFile, data.length, false, checksums);
+      assertEquals(records, index.getNumberOfEntries());
+
+      ByteBuffer expected = ByteBuffer.allocate(MAXIMUM_RECORD_SIZE);
+      for (int i = 0; i < records; i++)
+      {
+         long timestamp = firstTimestamp + i;
+         assertEquals(timestamp, index.timestamps[i]);
+
+         expected.clear();
+         fill(expected, timestamp);
+         assertEquals(expected.remaining(), index.compressedSizes[i]);
+         assertEquals(expected, ByteBuffer.wrap(data, (int) index.dataOffsets[i], index.compressedSizes[i]));
+      }
+   }
+
+   @Test
+   public void testWrite() throws IOException
+   {
+      File dataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File indexFile = File.createTempFile("logDiskWriter", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+      DebugRegistry debugRegistry = new DebugRegistry();
+
+      // Small capacity, so the producer regularly finds the queue full
+      LogDiskSyncer syncer = new LogDiskSyncer(dataChannel, indexChannel, 1, debugRegistry);
+      LogDiskWriter writer = new LogDiskWriter(dataChannel, indexChannel, MAXIMUM_RECORD_SIZE, 16, syncer, debugRegistry);
+      syncer.start();
+      writer.start();
+
+      int records = 5000;
+      for (int i = 0; i < records; i++)
+      {
+         write(writer, i);
+      }
+      writer.close();
+      syncer.close();
+      assertTrue(syncer.getLatencyHistogram().getCount() > 0);
+      dataChannel.close();
+      indexChannel.close();
+
+      assertLog(dataFile, indexFile, 0, records);
+   }
+
+   @Test
+   public void testIndexWaitsForSync() throws IOException
+   {
+      File dataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File indexFile = File.createTempFile("logDiskWriter", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+      DebugRegistry debugRegistry = new DebugRegistry();
+
+      // Long interval, so the only sync is the one on close
+      LogDiskSyncer syncer = new LogDiskSyncer(dataChannel, indexChannel, 60000, debugRegistry);
+      LogDiskWriter writer = new LogDiskWriter(dataChannel, indexChannel, MAXIMUM_RECORD_SIZE, 64, syncer, debugRegistry);
+      syncer.start();
+      writer.start();
+
+      for (int i = 0; i < 1000; i++)
+      {
+         write(writer, i);
+      }
+      writer.clear();
+      for (int i = 0; i < 1000; i++)
+      {
+         write(writer, 5000 + i);
+      }
+      writer.close();
+
+      // The data is written, but the index entries wait until the data is forced
+      assertTrue(dataChannel.size() > 0);
+      assertEquals(0, indexChannel.size());
+
+      syncer.close();
+      dataChannel.close();
+      indexChannel.close();
+
+      assertLog(dataFile, indexFile, 5000, 1000);
+   }
+
+   @Test
+   public void testClear() throws IOException
+   {
+      File dataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File indexFile = File.createTempFile("logDiskWriter", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+
+      LogDiskWriter writer = new LogDiskWriter(dataChannel, indexChannel, MAXIMUM_RECORD_SIZE, 64, null, new DebugRegistry());
+      writer.start();
+
+      for (int i = 0; i < 1000; i++)
+      {
+         write(writer, i);
+      }
+
+      // Records that are not written yet are discarded
+      writer.clear();
+      for (int i = 0; i < 1000; i++)
+      {
+         write(writer, 5000 + i);
+      }
+      writer.close();
+      dataChannel.close();
+      indexChannel.close();
+
+      assertLog(dataFile, indexFile, 5000, 1000);
+   }
+
+   @Test
+   public void testBackpressure() throws IOException
+   {
+      File dataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File indexFile = File.createTempFile("logDiskWriter", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+      DebugRegistry debugRegistry = new DebugRegistry();
+
+      // Not started yet, so nothing is written while the queue fills up
+      LogDiskWriter writer = new LogDiskWriter(dataChannel, indexChannel, MAXIMUM_RECORD_SIZE, 16, null, debugRegistry);
+      for (int i = 0; i < 16; i++)
+      {
+         ByteBuffer buffer = writer.next();
+         assertNotNull(buffer);
+         fill(buffer, i);
+         writer.commit(i);
+      }
+      for (int i = 0; i < 4; i++)
+      {
+         assertNull(writer.next());
+      }
+      assertEquals(4, debugRegistry.getDiskWriterDroppedRecords().getValue());
+      assertEquals(16, debugRegistry.getDiskWriterQueueSize().getValue());
+
+      writer.start();
+      writer.close();
+      dataChannel.close();
+      indexChannel.close();
+
+      assertLog(dataFile, indexFile, 0, 16);
+   }
+
+   private static void writeChecksummedLog(File dataFile, File indexFile, int records) throws IOException
+   {
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+
+      LogDiskWriter writer = new LogDiskWriter(dataChannel, indexChannel, MAXIMUM_RECORD_SIZE, 64, null, false, true, new DebugRegistry());
+      writer.start();
+      for (int i = 0; i < records; i++)
+      {
+         write(writer, i);
+      }
+      writer.close();
+      dataChannel.close();
+      indexChannel.close();
+   }
+
+   private static void corrupt(File file, long position) throws IOException
+   {
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+      {
+         randomAccessFile.seek(position);
+         int value = randomAccessFile.read();
+         randomAccessFile.seek(position);
+         randomAccessFile.write(value ^ 0x10);
+      }
+   }
+
+   @Test
+   public void testChecksums() throws IOException
+   {
+      File dataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File indexFile = File.createTempFile("logDiskWriter", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      int records = 2000;
+      writeChecksummedLog(dataFile, indexFile, records);
+      assertLog(dataFile, indexFile, 0, records, true);
+
+      LogIndex index = new LogIndex(indexFile, dataFile.length(), false, true);
+      try (RandomAccessFile data = new RandomAccessFile(dataFile, "r"))
+      {
+         assertEquals(records, index.validate(data.getChannel()));
+      }
+
+      corrupt(dataFile, index.dataOffsets[1234] + index.compressedSizes[1234] / 2);
+      try (RandomAccessFile data = new RandomAccessFile(dataFile, "r"))
+      {
+         assertEquals(1234, index.validate(data.getChannel()));
+         assertEquals(1000, index.validate(data.getChannel(), 0, 1000));
+         assertEquals(records, index.validate(data.getChannel(), 1235, records));
+      }
+   }
+
+   @Test
+   public void testRecovery() throws IOException
+   {
+      File dataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File indexFile = File.createTempFile("logDiskWriter", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      int records = 2000;
+      writeChecksummedLog(dataFile, indexFile, records);
+      long completeSize = dataFile.length();
+
+      // Crash: the index lags behind the data, ends in a torn entry and the data ends in a torn record
+      try (RandomAccessFile index = new RandomAccessFile(indexFile, "rw"))
+      {
+         index.setLength(1500 * LogIndex.ENTRY_SIZE + 5);
+      }
+      try (RandomAccessFile data = new RandomAccessFile(dataFile, "rw"))
+      {
+         ByteBuffer record = ByteBuffer.allocate(MAXIMUM_RECORD_SIZE);
+         fill(record, records);
+         ByteBuffer header = ByteBuffer.allocate(LogRecordHeader.SIZE);
+         new LogRecordHeader().write(header, record, records, records, 1);
+         data.seek(completeSize);
+         data.write(header.array());
+         data.write(record.array(), 0, record.remaining() / 2);
+      }
+
+      assertEquals(records, LogRecovery.recover(dataFile, indexFile, false, true, 4));
+      assertEquals(completeSize, dataFile.length());
+      assertLog(dataFile, indexFile, 0, records, true);
+
+      // A corrupted record cuts the log before that record
+      LogIndex index = new LogIndex(indexFile, dataFile.length(), false, true);
+      corrupt(dataFile, index.dataOffsets[1700] + 3);
+      assertEquals(1700, LogRecovery.recover(dataFile, indexFile, false, true, 4));
+      assertEquals(index.dataOffsets[1700] - LogRecordHeader.SIZE, dataFile.length());
+      assertLog(dataFile, indexFile, 0, 1700, true);
+   }
+
+   @Test
+   public void testPreallocate() throws IOException
+   {
+      File dataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File indexFile = File.createTempFile("logDiskWriter", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+
+      // Without checksums a crashed log cannot be told from the zeros behind it
+      LogDiskWriter unchecked = new LogDiskWriter(dataChannel, indexChannel, MAXIMUM_RECORD_SIZE, 64, null, new DebugRegistry());
+      assertThrows(IllegalStateException.class, () -> unchecked.preallocate(64 * 1024));
+
+      int chunkSize = 64 * 1024;
+      LogDiskWriter writer = new LogDiskWriter(dataChannel, indexChannel, MAXIMUM_RECORD_SIZE, 64, null, false, true, new DebugRegistry());
+      writer.preallocate(chunkSize);
+      writer.start();
+
+      for (int i = 0; i < 1000; i++)
+      {
+         write(writer, i);
+      }
+
+      // Preallocated chunks are discarded
+      writer.clear();
+      for (int i = 0; i < 3000; i++)
+      {
+         write(writer, 5000 + i);
+      }
+      while (dataChannel.position() == 0)
+      {
+         Thread.yield();
+      }
+      assertEquals(0, dataChannel.size() % chunkSize);
+      assertTrue(dataChannel.size() >= dataChannel.position());
+
+      // Crash before the file is truncated: recovery cuts the zeros behind the last record
+      while (indexChannel.size() < 3000 * LogIndex.ENTRY_SIZE)
+      {
+         Thread.yield();
+      }
+      File crashedDataFile = File.createTempFile("logDiskWriter", ".bsz");
+      File crashedIndexFile = File.createTempFile("logDiskWriter", ".dat");
+      crashedDataFile.deleteOnExit();
+      crashedIndexFile.deleteOnExit();
+      Files.copy(dataFile.toPath(), crashedDataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.copy(indexFile.toPath(), crashedIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      assertTrue(crashedDataFile.length() > dataChannel.position());
+
+      writer.close();
+      assertEquals(dataChannel.position(), dataChannel.size());
+      dataChannel.close();
+      indexChannel.close();
+
+      assertLog(dataFile, indexFile, 5000, 3000, true);
+
+      assertEquals(3000, LogRecovery.recover(crashedDataFile, crashedIndexFile, false, true, 4));
+      assertEquals(dataFile.length(), crashedDataFile.length());
+      assertLog(crashedDataFile, crashedIndexFile, 5000, 3000, true);
+   }
+}
@@ -0,0 +1,183 @@
+package us.ihmc.robotDataLogger.logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Read-back benchmark for preallocated log files. Simulates several loggers writing a few KB per
+ * tick to the same disk at once, once growing the files with every write and once with the files
+ * preallocated by LogFilePreallocator. The files are then read back sequentially, as the log
+ * reader and the converters do.
+ * <p>
+ * Run with the directory on the disk to test as first argument, by default the temporary
+ * directory. Pass true as second argument to pause between the write and the read phase to drop the
+ * page cache (sync; echo 3 > /proc/sys/vm/drop_caches), otherwise the read measures the page cache.
+ * The number of extents per file is printed with filefrag if it is available.
+ * </p>
+ */
+public class LogPreallocationBenchmark
+{
+   private static final int NUMBER_OF_LOGGERS = 4;
+   private static final int RECORD_SIZE = 4096;
+   private static final int NUMBER_OF_RECORDS = 64 * 1024;
+   private static final long CHUNK_SIZE = 64L * 1024L * 1024L;
+
+   private static final int READ_SIZE = 1024 * 1024;
+
+   private final File directory;
+
+   public LogPreallocationBenchmark(File directory, boolean waitForCacheDrop) throws IOException
+   {
+      this.directory = directory;
+
+      File[] fragmented = write("fragmented", false);
+      File[] preallocated = write("preallocated", true);
+
+      if (waitForCacheDrop)
+      {
+         System.out.println("Drop the page cache and press enter");
+         new BufferedReader(new InputStreamReader(System.in)).readLine();
+      }
+
+      read("Fragmented", fragmented);
+      read("Preallocated", preallocated);
+
+      for (File file : fragmented)
+      {
+         file.delete();
+      }
+      for (File file : preallocated)
+      {
+         file.delete();
+      }
+   }
+
+   /**
+    * Write a record to every file in turn, so the file system interleaves the allocations of the
+    * files like concurrent loggers do.
+    */
+   private File[] write(String name, boolean preallocate) throws IOException
+   {
+      File[] files = new File[NUMBER_OF_LOGGERS];
+      FileOutputStream[] streams = new FileOutputStream[NUMBER_OF_LOGGERS];
+      FileChannel[] channels = new FileChannel[NUMBER_OF_LOGGERS];
+      LogFilePreallocator[] preallocators = new LogFilePreallocator[NUMBER_OF_LOGGERS];
+      for (int i = 0; i < NUMBER_OF_LOGGERS; i++)
+      {
+         files[i] = new File(directory, "logPreallocationBenchmark_" + name + "_" + i + ".bsz");
+         streams[i] = new FileOutputStream(files[i], false);
+         channels[i] = streams[i].getChannel();
+         if (preallocate)
+         {
+            preallocators[i] = new LogFilePreallocator(channels[i], CHUNK_SIZE);
+         }
+      }
+
+      ByteBuffer record = ByteBuffer.allocateDirect(RECORD_SIZE);
+      Random random = new Random(1234L);
+      while (record.hasRemaining())
+      {
+         record.put((byte) random.nextInt());
+      }
+
+      long start = System.nanoTime();
+      for (int r = 0; r < NUMBER_OF_RECORDS; r++)
+      {
+         for (int i = 0; i < NUMBER_OF_LOGGERS; i++)
+         {
+            if (preallocators[i] != null)
+            {
+               preallocators[i].ensureAllocated(channels[i].position() + RECORD_SIZE);
+            }
+            record.clear();
+            while (record.hasRemaining())
+            {
+               channels[i].write(record);
+            }
+         }
+      }
+      for (int i = 0; i < NUMBER_OF_LOGGERS; i++)
+      {
+         if (preallocators[i] != null)
+         {
+            preallocators[i].truncate(channels[i].position());
+         }
+         channels[i].force(false);
+         streams[i].close();
+      }
+      long time = System.nanoTime() - start;
+
+      System.out.println(String.format("Wrote %-12s %8.1f MB/s", name, throughput(time)));
+      return files;
+   }
+
+   private void read(String name, File[] files) throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+
+      long start = System.nanoTime();
+      for (File file : files)
+      {
+         try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+         {
+            FileChannel channel = randomAccessFile.getChannel();
+            buffer.clear();
+            while (channel.read(buffer) >= 0)
+            {
+               buffer.clear();
+            }
+         }
+      }
+      long time = System.nanoTime() - start;
+
+      System.out.println(String.format("Read  %-12s %8.1f MB/s, extents per file: %s", name, throughput(time), extents(files[0])));
+   }
+
+   private static double throughput(long time)
+   {
+      double megabytes = (double) NUMBER_OF_LOGGERS * NUMBER_OF_RECORDS * RECORD_SIZE / (1024.0 * 1024.0);
+      return megabytes / (time / 1e9);
+   }
+
+   /**
+    * @return the output of filefrag, or "unknown" if filefrag is not available
+    */
+   private static String extents(File file)
+   {
+      try
+      {
+         Process process = new ProcessBuilder("filefrag", file.getAbsolutePath()).redirectErrorStream(true).start();
+         BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+         String line = reader.readLine();
+         process.waitFor();
+         if (line == null || !line.contains(":"))
+         {
+            return "unknown";
+         }
+         return line.substring(line.lastIndexOf(':') + 1).trim();
+      }
+      catch (IOException e)
+      {
+         return "unknown";
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         return "unknown";
+      }
+   }
+
+   public static void main(String[] args) throws IOException
+   {
+      File directory = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+      boolean waitForCacheDrop = args.length > 1 && Boolean.parseBoolean(args[1]);
+      new LogPreallocationBenchmark(directory, waitForCacheDrop);
+   }
+}
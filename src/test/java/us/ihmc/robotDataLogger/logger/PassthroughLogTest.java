@@ -0,0 +1,208 @@
+package us.ihmc.robotDataLogger.logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.pubsub.common.SerializedPayload;
+import us.ihmc.robotDataLogger.LogDataType;
+import us.ihmc.robotDataLogger.dataBuffers.CustomLogDataPublisherType;
+import us.ihmc.robotDataLogger.dataBuffers.CustomLogDataSubscriberType;
+import us.ihmc.robotDataLogger.dataBuffers.RegistryReceiveBuffer;
+import us.ihmc.robotDataLogger.dataBuffers.RegistrySendBuffer;
+import us.ihmc.robotDataLogger.logger.converters.LogRecovery;
+import us.ihmc.robotDataLogger.util.DebugRegistry;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+public class PassthroughLogTest
+{
+   @Test
+   public void testReplay() throws IOException
+   {
+      Random random = new Random(4719283L);
+
+      int variablesPerRegistry = 2000;
+      int numberOfRegistries = 2;
+      int keyframeInterval = 8;
+      int ticks = 40;
+
+      YoRegistry receiveRegistry = new YoRegistry("receiveRegistry");
+      List<List<YoVariable>> sendVariables = new ArrayList<>();
+      for (int r = 0; r < numberOfRegistries; r++)
+      {
+         YoRegistry sendRegistry = new YoRegistry("sendRegistry" + r);
+         for (int v = 0; v < variablesPerRegistry; v++)
+         {
+            new YoLong("var" + v, sendRegistry).set(random.nextLong());
+            new YoLong("registry" + r + "var" + v, receiveRegistry);
+         }
+         sendVariables.add(sendRegistry.collectSubtreeVariables());
+      }
+      List<YoVariable> receiveVariables = receiveRegistry.collectSubtreeVariables();
+
+      File dataFile = File.createTempFile("passthrough", ".raw");
+      File indexFile = File.createTempFile("passthrough", ".dat");
+      dataFile.deleteOnExit();
+      indexFile.deleteOnExit();
+
+      FileChannel dataChannel = new FileOutputStream(dataFile).getChannel();
+      FileChannel indexChannel = new FileOutputStream(indexFile).getChannel();
+      // Records start smaller than a tick, so they are grown by the writer
+      LogDiskWriter diskWriter = new LogDiskWriter(dataChannel, indexChannel, 1024, 64, null, false, true, new DebugRegistry());
+      diskWriter.start();
+      PassthroughLogWriter writer = new PassthroughLogWriter(diskWriter);
+
+      CustomLogDataPublisherType[] publisherTypes = new CustomLogDataPublisherType[numberOfRegistries];
+      RegistrySendBuffer[] sendBuffers = new RegistrySendBuffer[numberOfRegistries];
+      for (int r = 0; r < numberOfRegistries; r++)
+      {
+         publisherTypes[r] = new CustomLogDataPublisherType(variablesPerRegistry, 0, true);
+         // The constructor is protected, normally the buffers are created by the server
+         sendBuffers[r] = new RegistrySendBuffer(r + 1, sendVariables.get(r), new ArrayList<>())
+         {
+         };
+      }
+      CustomLogDataSubscriberType subscriberType = new CustomLogDataSubscriberType(variablesPerRegistry, 0);
+      SerializedPayload payload = new SerializedPayload(publisherTypes[0].getMaximumTypeSize());
+      RegistryReceiveBuffer receiveBuffer = new RegistryReceiveBuffer(0);
+
+      long[][] expected = new long[ticks][];
+      long keyframeUid = -1;
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         if (tick % keyframeInterval == 0)
+         {
+            keyframeUid = tick;
+         }
+
+         for (int r = 0; r < numberOfRegistries; r++)
+         {
+            List<YoVariable> variables = sendVariables.get(r);
+            for (int c = 0; c < 20; c++)
+            {
+               ((YoLong) variables.get(random.nextInt(variablesPerRegistry))).set(random.nextLong());
+            }
+
+            sendBuffers[r].updateBufferFromVariables(tick * 1000, tick, variablesPerRegistry);
+            sendBuffers[r].setType(LogDataType.XOR_DATA_PACKET);
+            sendBuffers[r].setKeyframeUid(keyframeUid);
+
+            payload.getData().clear();
+            publisherTypes[r].serialize(sendBuffers[r], payload);
+            subscriberType.deserialize(payload, receiveBuffer);
+
+            int dataPosition = receiveBuffer.getData().position();
+            writer.write(receiveBuffer);
+            assertEquals(dataPosition, receiveBuffer.getData().position());
+         }
+         writer.finishTick();
+
+         expected[tick] = new long[numberOfRegistries * variablesPerRegistry];
+         for (int r = 0; r < numberOfRegistries; r++)
+         {
+            for (int v = 0; v < variablesPerRegistry; v++)
+            {
+               expected[tick][r * variablesPerRegistry + v] = sendVariables.get(r).get(v).getValueAsLongBits();
+            }
+         }
+      }
+      diskWriter.close();
+      dataChannel.close();
+      indexChannel.close();
+
+      PassthroughLogReader reader = openReader(dataFile, indexFile, receiveVariables, variablesPerRegistry);
+      assertEquals(ticks, reader.getNumberOfEntries());
+
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         assertEquals(tick * 1000, reader.readNext());
+         assertVariables(expected[tick], receiveVariables);
+      }
+      assertFalse(reader.hasNext());
+
+      // Seeking replays the log from the last keyframe before the tick
+      assertEquals(0, reader.getResumePosition(8));
+      assertEquals(8, reader.getResumePosition(9));
+      assertEquals(8, reader.getResumePosition(13));
+      reader.seek(13);
+      assertEquals(13000, reader.readNext());
+      assertVariables(expected[13], receiveVariables);
+
+      reader.seek(31);
+      assertEquals(31000, reader.readNext());
+      assertVariables(expected[31], receiveVariables);
+
+      reader.seek(3);
+      assertEquals(3000, reader.readNext());
+      assertVariables(expected[3], receiveVariables);
+      reader.close();
+
+      // Seeking forward in a new reader only scans the packet headers up to the last keyframe
+      reader = openReader(dataFile, indexFile, receiveVariables, variablesPerRegistry);
+      assertEquals(32, reader.getResumePosition(35));
+      reader.seek(35);
+      assertEquals(35000, reader.readNext());
+      assertVariables(expected[35], receiveVariables);
+      reader.close();
+
+      // Crash in the middle of the last tick
+      File crashedDataFile = File.createTempFile("passthrough", ".raw");
+      File crashedIndexFile = File.createTempFile("passthrough", ".dat");
+      crashedDataFile.deleteOnExit();
+      crashedIndexFile.deleteOnExit();
+      Files.copy(dataFile.toPath(), crashedDataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.copy(indexFile.toPath(), crashedIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      try (RandomAccessFile crashedData = new RandomAccessFile(crashedDataFile, "rw"))
+      {
+         crashedData.setLength(crashedData.length() - 100);
+      }
+
+      assertEquals(ticks - 1, LogRecovery.recover(crashedDataFile, crashedIndexFile, false, true, 2));
+      reader = openReader(crashedDataFile, crashedIndexFile, receiveVariables, variablesPerRegistry);
+      assertEquals(ticks - 1, reader.getNumberOfEntries());
+      for (int tick = 0; tick < ticks - 1; tick++)
+      {
+         assertEquals(tick * 1000, reader.readNext());
+         assertVariables(expected[tick], receiveVariables);
+      }
+      reader.close();
+   }
+
+   @SuppressWarnings("resource")
+   private static PassthroughLogReader openReader(File dataFile, File indexFile, List<YoVariable> receiveVariables, int variablesPerRegistry)
+         throws IOException
+   {
+      return new PassthroughLogReader(new FileInputStream(dataFile).getChannel(),
+                                      indexFile,
+                                      true,
+                                      receiveVariables,
+                                      new ArrayList<>(),
+                                      registryID -> (registryID - 1) * variablesPerRegistry,
+                                      registryID -> variablesPerRegistry,
+                                      false,
+                                      null);
+   }
+
+   private static void assertVariables(long[] expected, List<YoVariable> variables)
+   {
+      for (int i = 0; i < expected.length; i++)
+      {
+         assertEquals(expected[i], variables.get(i).getValueAsLongBits());
+      }
+   }
+}
@@ -0,0 +1,45 @@
+package us.ihmc.robotDataLogger.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest
+{
+   @Test
+   public void testBuckets()
+   {
+      assertEquals(0, LatencyHistogram.getBucket(0));
+      assertEquals(0, LatencyHistogram.getBucket(LatencyHistogram.MINIMUM_BUCKET_SIZE - 1));
+      assertEquals(1, LatencyHistogram.getBucket(LatencyHistogram.MINIMUM_BUCKET_SIZE));
+      assertEquals(1, LatencyHistogram.getBucket(2 * LatencyHistogram.MINIMUM_BUCKET_SIZE - 1));
+      assertEquals(2, LatencyHistogram.getBucket(2 * LatencyHistogram.MINIMUM_BUCKET_SIZE));
+      assertEquals(LatencyHistogram.NUMBER_OF_BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+
+      for (int bucket = 0; bucket < LatencyHistogram.NUMBER_OF_BUCKETS - 1; bucket++)
+      {
+         assertEquals(bucket, LatencyHistogram.getBucket(LatencyHistogram.getUpperBound(bucket) - 1));
+         assertEquals(bucket + 1, LatencyHistogram.getBucket(LatencyHistogram.getUpperBound(bucket)));
+      }
+   }
+
+   @Test
+   public void testRecord()
+   {
+      LatencyHistogram histogram = new LatencyHistogram("test");
+      histogram.record(100000);
+      histogram.record(300000);
+      histogram.record(5000000000L);
+
+      assertEquals(3, histogram.getCount());
+      assertEquals(1, histogram.getCount(0));
+      assertEquals(1, histogram.getCount(2));
+      assertEquals(1, histogram.getCount(LatencyHistogram.NUMBER_OF_BUCKETS - 1));
+      assertEquals(5000000000L, histogram.getMaximum());
+      assertEquals((100000 + 300000 + 5000000000L) / 3, histogram.getAverage());
+
+      histogram.reset();
+      assertEquals(0, histogram.getCount());
+      assertEquals(0, histogram.getMaximum());
+   }
+}
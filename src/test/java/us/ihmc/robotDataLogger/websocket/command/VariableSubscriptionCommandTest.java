@@ -0,0 +1,50 @@
+package us.ihmc.robotDataLogger.websocket.command;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+@Tag("robot-data-logger-2")
+public class VariableSubscriptionCommandTest
+{
+   @Test
+   public void testGetBytes()
+   {
+      ByteBuf target = Unpooled.buffer();
+      VariableSubscriptionCommand.getBytes(new int[] {40, 0, 1, 2, 3, 20, 33, 34, 35, 36, 37, 38, 39, 2}, target);
+      assertTrue(VariableSubscriptionCommand.isSubscriptionCommand(target));
+      assertNull(DataServerCommand.getCommand(target));
+      assertArrayEquals(new int[] {0, 1, 2, 3, 20, 33, 34, 35, 36, 37, 38, 39, 40}, VariableSubscriptionCommand.getVariableIndices(target, 41));
+      assertEquals("SUBSCRIBE_VARIABLES0-3,20,33-40", target.readCharSequence(target.readableBytes(), CharsetUtil.US_ASCII).toString());
+
+      target = Unpooled.buffer();
+      VariableSubscriptionCommand.getBytes(new int[0], target);
+      assertEquals(0, VariableSubscriptionCommand.getVariableIndices(target, 10).length);
+      assertEquals("SUBSCRIBE_VARIABLES", target.readCharSequence(target.readableBytes(), CharsetUtil.US_ASCII).toString());
+   }
+
+   @Test
+   public void testInvalidCommands()
+   {
+      assertFalse(VariableSubscriptionCommand.isSubscriptionCommand(Unpooled.copiedBuffer("LIMIT_RATE00010", CharsetUtil.US_ASCII)));
+      assertFalse(VariableSubscriptionCommand.isSubscriptionCommand(Unpooled.copiedBuffer("SUBSCRIBE", CharsetUtil.US_ASCII)));
+
+      assertThrows(IllegalArgumentException.class,
+                   () -> VariableSubscriptionCommand.getVariableIndices(Unpooled.copiedBuffer("SUBSCRIBE_VARIABLES0-10", CharsetUtil.US_ASCII), 10));
+      assertThrows(IllegalArgumentException.class,
+                   () -> VariableSubscriptionCommand.getVariableIndices(Unpooled.copiedBuffer("SUBSCRIBE_VARIABLES5-2", CharsetUtil.US_ASCII), 10));
+      assertThrows(IllegalArgumentException.class,
+                   () -> VariableSubscriptionCommand.getVariableIndices(Unpooled.copiedBuffer("SUBSCRIBE_VARIABLES1,a", CharsetUtil.US_ASCII), 10));
+      assertThrows(IllegalArgumentException.class, () -> VariableSubscriptionCommand.getBytes(new int[] {-1}, Unpooled.buffer()));
+   }
+}
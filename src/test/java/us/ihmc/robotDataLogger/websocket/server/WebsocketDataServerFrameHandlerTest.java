@@ -0,0 +1,125 @@
+package us.ihmc.robotDataLogger.websocket.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import us.ihmc.robotDataLogger.websocket.command.DataServerCommand;
+
+@Tag("robot-data-logger-2")
+public class WebsocketDataServerFrameHandlerTest
+{
+   private static final int NUMBER_OF_CLIENTS = 2;
+
+   /**
+    * Broadcast commands sent by a client have to reach the clients on the other event loops of the
+    * worker pool
+    */
+   @Test
+   public void testBroadcastCommandToClientsOnOtherEventLoops() throws Exception
+   {
+      DefaultEventLoopGroup serverGroup = new DefaultEventLoopGroup(NUMBER_OF_CLIENTS);
+      DefaultEventLoopGroup clientGroup = new DefaultEventLoopGroup(1);
+      WebsocketDataBroadcaster broadcaster = new WebsocketDataBroadcaster(false);
+
+      List<WebsocketDataServerFrameHandler> handlers = new CopyOnWriteArrayList<>();
+      CountDownLatch connected = new CountDownLatch(NUMBER_OF_CLIENTS);
+
+      try
+      {
+         LocalAddress address = new LocalAddress(WebsocketDataServerFrameHandlerTest.class.getSimpleName());
+         ServerBootstrap serverBootstrap = new ServerBootstrap().group(serverGroup).channel(LocalServerChannel.class);
+         serverBootstrap.childHandler(new ChannelInitializer<LocalChannel>()
+         {
+            @Override
+            protected void initChannel(LocalChannel channel) throws Exception
+            {
+               WebsocketDataServerFrameHandler handler = new WebsocketDataServerFrameHandler(broadcaster, 0, null, null);
+
+               // Skip the websocket handshake, local channels pass the frames as is
+               channel.pipeline().addLast(new ChannelInboundHandlerAdapter()
+               {
+                  @Override
+                  public void channelActive(ChannelHandlerContext ctx)
+                  {
+                     handler.handshakeComplete(ctx.pipeline().context(handler));
+                     handlers.add(handler);
+                     connected.countDown();
+                     ctx.fireChannelActive();
+                  }
+               }, handler);
+            }
+         });
+         serverBootstrap.bind(address).sync();
+
+         List<Channel> clients = new ArrayList<>();
+         List<BlockingQueue<DataServerCommand>> receivedCommands = new ArrayList<>();
+         for (int i = 0; i < NUMBER_OF_CLIENTS; i++)
+         {
+            BlockingQueue<DataServerCommand> received = new LinkedBlockingQueue<>();
+            receivedCommands.add(received);
+
+            Bootstrap clientBootstrap = new Bootstrap().group(clientGroup).channel(LocalChannel.class);
+            clientBootstrap.handler(new SimpleChannelInboundHandler<TextWebSocketFrame>()
+            {
+               @Override
+               protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame)
+               {
+                  received.add(DataServerCommand.getCommand(frame.content()));
+               }
+            });
+            clients.add(clientBootstrap.connect(address).sync().channel());
+         }
+
+         assertTrue(connected.await(5, TimeUnit.SECONDS));
+         assertNotSame(handlers.get(0).channel().eventLoop(), handlers.get(1).channel().eventLoop());
+
+         DataServerCommand[] commands = {DataServerCommand.CLEAR_LOG, DataServerCommand.START_LOG};
+         for (int sender = 0; sender < NUMBER_OF_CLIENTS; sender++)
+         {
+            TextWebSocketFrame frame = new TextWebSocketFrame();
+            commands[sender].getBytes(frame.content(), 0);
+            clients.get(sender).writeAndFlush(frame).sync();
+
+            for (int receiver = 0; receiver < NUMBER_OF_CLIENTS; receiver++)
+            {
+               assertEquals(commands[sender], receivedCommands.get(receiver).poll(5, TimeUnit.SECONDS), "Client " + receiver);
+            }
+         }
+
+         for (Channel client : clients)
+         {
+            client.close().sync();
+         }
+      }
+      finally
+      {
+         broadcaster.stop();
+         clientGroup.shutdownGracefully().sync();
+         serverGroup.shutdownGracefully().sync();
+      }
+   }
+}
@@ -0,0 +1,133 @@
+package us.ihmc.tools.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteShuffleCompressionImplementationTest
+{
+   Random random = new Random(1234);
+
+   private ByteBuffer randomDoubles(int elements, int trailingBytes)
+   {
+      ByteBuffer data = ByteBuffer.allocate(elements * 8 + trailingBytes);
+      double value = random.nextDouble();
+      for (int i = 0; i < elements; i++)
+      {
+         value += random.nextDouble() * 1e-3;
+         data.putDouble(value);
+      }
+      for (int i = 0; i < trailingBytes; i++)
+      {
+         data.put((byte) random.nextInt());
+      }
+      data.flip();
+      return data;
+   }
+
+   @Test
+   public void testShuffle()
+   {
+      ByteBuffer data = ByteBuffer.allocate(16);
+      data.putLong(0x0001020304050607L);
+      data.putLong(0x08090A0B0C0D0E0FL);
+      data.flip();
+
+      ByteBuffer shuffled = ByteBuffer.allocate(16);
+      ByteShuffle.shuffle(data, shuffled);
+      assertEquals(16, data.position());
+      assertEquals(16, shuffled.position());
+
+      byte[] expected = {0, 8, 1, 9, 2, 10, 3, 11, 4, 12, 5, 13, 6, 14, 7, 15};
+      for (int i = 0; i < expected.length; i++)
+      {
+         assertEquals(expected[i], shuffled.get(i));
+      }
+   }
+
+   @Test
+   public void testShuffleRoundTrip()
+   {
+      for (int trailingBytes = 0; trailingBytes < 8; trailingBytes++)
+      {
+         for (boolean direct : new boolean[] {false, true})
+         {
+            ByteBuffer data = randomDoubles(1000, trailingBytes);
+            ByteBuffer shuffled = direct ? ByteBuffer.allocateDirect(data.remaining()) : ByteBuffer.allocate(data.remaining());
+            ByteBuffer unshuffled = ByteBuffer.allocate(data.remaining());
+
+            ByteShuffle.shuffle(data, shuffled);
+            shuffled.flip();
+            ByteShuffle.unshuffle(shuffled, unshuffled);
+            unshuffled.flip();
+
+            data.rewind();
+            assertEquals(data, unshuffled);
+         }
+      }
+   }
+
+   @Test
+   public void testDirectShuffleMatchesHeapShuffle()
+   {
+      // Direct buffers are shuffled in blocks, cover a partial block and several blocks
+      for (int elements : new int[] {3, 1024, 2500})
+      {
+         for (int trailingBytes = 0; trailingBytes < 8; trailingBytes += 3)
+         {
+            ByteBuffer data = randomDoubles(elements, trailingBytes);
+            int length = data.remaining();
+            ByteBuffer directData = ByteBuffer.allocateDirect(length);
+            directData.put(data);
+            directData.flip();
+            data.rewind();
+
+            ByteBuffer shuffled = ByteBuffer.allocate(length);
+            ByteBuffer directShuffled = ByteBuffer.allocateDirect(length);
+            ByteShuffle.shuffle(data, shuffled);
+            ByteShuffle.shuffle(directData, directShuffled);
+            shuffled.flip();
+            directShuffled.flip();
+            assertEquals(shuffled, directShuffled);
+
+            ByteBuffer unshuffled = ByteBuffer.allocateDirect(length);
+            ByteShuffle.unshuffle(directShuffled, unshuffled);
+            unshuffled.flip();
+            data.rewind();
+            assertEquals(data, unshuffled);
+         }
+      }
+   }
+
+   @Test
+   public void testCompressRoundTrip()
+   {
+      CompressionImplementation impl = new ByteShuffleCompressionImplementation(new LZ4CompressionImplementation());
+      CompressionImplementation plain = new LZ4CompressionImplementation();
+
+      ByteBuffer data = randomDoubles(4096, 4);
+      int length = data.remaining();
+
+      ByteBuffer target = ByteBuffer.allocate(impl.maxCompressedLength(length));
+      int compressedLength = impl.compress(data, target);
+      target.flip();
+      assertEquals(length, data.position());
+      assertEquals(compressedLength, target.remaining());
+
+      ByteBuffer plainTarget = ByteBuffer.allocate(plain.maxCompressedLength(length));
+      data.rewind();
+      int plainCompressedLength = plain.compress(data, plainTarget);
+      assertTrue(compressedLength < plainCompressedLength, "Shuffled " + compressedLength + " bytes, plain " + plainCompressedLength + " bytes");
+
+      ByteBuffer decompressed = ByteBuffer.allocate(length);
+      impl.decompress(target, decompressed, length);
+      decompressed.flip();
+
+      data.rewind();
+      assertEquals(data, decompressed);
+   }
+}
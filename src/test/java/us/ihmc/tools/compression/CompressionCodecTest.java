@@ -0,0 +1,92 @@
+package us.ihmc.tools.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class CompressionCodecTest
+{
+   private static final int ELEMENTS = 4096;
+
+   @Test
+   public void testRoundTrip()
+   {
+      ByteBuffer data = createData(ByteBuffer.allocate(ELEMENTS * 8));
+
+      for (CompressionCodec codec : CompressionCodec.values())
+      {
+         testRoundTrip(codec.create(CompressionCodec.DEFAULT_LEVEL), data, codec.name());
+         testRoundTrip(new ByteShuffleCompressionImplementation(codec.create(CompressionCodec.DEFAULT_LEVEL)), data, codec.name() + " (byte shuffle)");
+      }
+      testRoundTrip(CompressionCodec.LZ4_HC.create(12), data, "LZ4_HC level 12");
+      testRoundTrip(CompressionCodec.XZ.create(0), data, "XZ level 0");
+      testRoundTrip(CompressionCodec.XZ.create(1), data, "XZ level 1");
+   }
+
+   @Test
+   public void testDirectBuffers()
+   {
+      // Larger than the scratch array of XZ
+      ByteBuffer data = createData(ByteBuffer.allocateDirect(ELEMENTS * 8 * 32));
+
+      for (CompressionCodec codec : CompressionCodec.values())
+      {
+         testRoundTrip(codec.create(CompressionCodec.DEFAULT_LEVEL), data, codec.name() + " (direct)");
+      }
+   }
+
+   private static ByteBuffer createData(ByteBuffer data)
+   {
+      Random random = new Random(9812L);
+      for (int i = 0; i < data.capacity() / 8; i++)
+      {
+         // Half random, half slowly changing data
+         data.putDouble(i % 2 == 0 ? random.nextDouble() : 0.001 * i);
+      }
+      return data;
+   }
+
+   private void testRoundTrip(CompressionImplementation implementation, ByteBuffer data, String name)
+   {
+      ByteBuffer compressed = allocate(implementation.maxCompressedLength(data.capacity()), data.isDirect());
+      ByteBuffer decompressed = allocate(data.capacity(), data.isDirect());
+
+      // Compress more than once to make sure implementations can be reused
+      for (int i = 0; i < 3; i++)
+      {
+         data.clear();
+         compressed.clear();
+         decompressed.clear();
+
+         int size = implementation.compress(data, compressed);
+         assertEquals(compressed.position(), size, name);
+         compressed.flip();
+
+         implementation.decompress(compressed, decompressed, data.capacity());
+         assertEquals(data.capacity(), decompressed.position(), name);
+
+         data.clear();
+         decompressed.flip();
+         assertEquals(data, decompressed, name);
+      }
+   }
+
+   private static ByteBuffer allocate(int capacity, boolean direct)
+   {
+      return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+   }
+
+   @Test
+   public void testFromName()
+   {
+      assertEquals(CompressionCodec.SNAPPY, CompressionCodec.fromName(""));
+      assertEquals(CompressionCodec.SNAPPY, CompressionCodec.fromName(null));
+      for (CompressionCodec codec : CompressionCodec.values())
+      {
+         assertEquals(codec, CompressionCodec.fromName(codec.name()));
+      }
+   }
+}
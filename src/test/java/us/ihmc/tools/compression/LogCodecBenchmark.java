@@ -0,0 +1,168 @@
+package us.ihmc.tools.compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import us.ihmc.robotDataLogger.logger.LogBlock;
+import us.ihmc.robotDataLogger.logger.LogPropertiesReader;
+import us.ihmc.robotDataLogger.logger.YoVariableLogReader;
+import us.ihmc.robotDataLogger.logger.YoVariableLoggerListener;
+
+/**
+ * Replays a log through every codec and reports the compression ratio and the compression and
+ * decompression speed, per tick and in blocks of ticks.
+ */
+public class LogCodecBenchmark extends YoVariableLogReader
+{
+   private static final int MAXIMUM_NUMBER_OF_TICKS = 50000;
+
+   private final ByteBuffer[] ticks;
+   private final ByteBuffer[] blocks;
+   private final ByteBuffer[] directBlocks;
+
+   public LogCodecBenchmark(File directory) throws IOException
+   {
+      super(directory, new LogPropertiesReader(new File(directory, YoVariableLoggerListener.propertyFile)));
+
+      if (!initialize())
+      {
+         throw new IOException("Cannot read " + directory);
+      }
+
+      int numberOfTicks = Math.min(getNumberOfEntries(), MAXIMUM_NUMBER_OF_TICKS);
+      System.out.println("Loading " + numberOfTicks + " data lines with " + getNumberOfVariables() + " variables.");
+
+      ticks = new ByteBuffer[numberOfTicks];
+      for (int i = 0; i < numberOfTicks; i++)
+      {
+         ByteBuffer dataLine = readData(i);
+         ticks[i] = ByteBuffer.allocate(dataLine.remaining());
+         ticks[i].put(dataLine);
+         ticks[i].clear();
+      }
+
+      int ticksPerBlock = LogBlock.calculateTicksPerBlock(LogBlock.DEFAULT_TICKS_PER_BLOCK, getNumberOfVariables());
+      blocks = new ByteBuffer[(numberOfTicks + ticksPerBlock - 1) / ticksPerBlock];
+      for (int i = 0; i < blocks.length; i++)
+      {
+         int ticksInBlock = Math.min(ticksPerBlock, numberOfTicks - i * ticksPerBlock);
+         blocks[i] = ByteBuffer.allocate(ticksInBlock * ticks[0].capacity());
+         for (int t = 0; t < ticksInBlock; t++)
+         {
+            ticks[i * ticksPerBlock + t].clear();
+            blocks[i].put(ticks[i * ticksPerBlock + t]);
+         }
+         blocks[i].clear();
+      }
+
+      // The logger collects blocks in direct buffers
+      directBlocks = new ByteBuffer[blocks.length];
+      for (int i = 0; i < blocks.length; i++)
+      {
+         directBlocks[i] = ByteBuffer.allocateDirect(blocks[i].capacity());
+         directBlocks[i].put(blocks[i]);
+         directBlocks[i].clear();
+         blocks[i].clear();
+      }
+   }
+
+   public void benchmark()
+   {
+      System.out.println(String.format("%-24s %-8s %8s %14s %16s", "Codec", "Data", "Ratio", "Compress MB/s", "Decompress MB/s"));
+      for (CompressionCodec codec : CompressionCodec.values())
+      {
+         for (boolean byteShuffle : new boolean[] {false, true})
+         {
+            CompressionImplementation implementation = codec.create(0);
+            String name = codec.name();
+            if (byteShuffle)
+            {
+               implementation = new ByteShuffleCompressionImplementation(implementation);
+               name += " (byte shuffle)";
+            }
+
+            // XZ is too slow to compress every tick separately
+            if (codec != CompressionCodec.XZ)
+            {
+               benchmark(name, "ticks", implementation, ticks);
+            }
+            benchmark(name, "blocks", implementation, blocks);
+            benchmark(name, "direct", implementation, directBlocks);
+         }
+      }
+   }
+
+   private void benchmark(String name, String dataName, CompressionImplementation implementation, ByteBuffer[] set)
+   {
+      int maximumLength = 0;
+      long totalSize = 0;
+      for (ByteBuffer data : set)
+      {
+         maximumLength = Math.max(maximumLength, data.capacity());
+         totalSize += data.capacity();
+      }
+
+      boolean direct = set[0].isDirect();
+      ByteBuffer[] compressed = new ByteBuffer[set.length];
+      ByteBuffer decompressed = allocate(maximumLength, direct);
+
+      // Warm up the JIT on the first part of the data
+      for (int i = 0; i < Math.min(set.length, 100); i++)
+      {
+         ByteBuffer target = allocate(implementation.maxCompressedLength(set[i].capacity()), direct);
+         set[i].clear();
+         implementation.compress(set[i], target);
+         target.flip();
+         decompressed.clear();
+         implementation.decompress(target, decompressed, set[i].capacity());
+      }
+
+      long compressedSize = 0;
+      long start = System.nanoTime();
+      for (int i = 0; i < set.length; i++)
+      {
+         compressed[i] = allocate(implementation.maxCompressedLength(set[i].capacity()), direct);
+         set[i].clear();
+         compressedSize += implementation.compress(set[i], compressed[i]);
+         compressed[i].flip();
+      }
+      long compressionTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < set.length; i++)
+      {
+         decompressed.clear();
+         implementation.decompress(compressed[i], decompressed, set[i].capacity());
+      }
+      long decompressionTime = System.nanoTime() - start;
+
+      System.out.println(String.format("%-24s %-8s %8.3f %14.1f %16.1f",
+                                       name,
+                                       dataName,
+                                       (double) compressedSize / (double) totalSize,
+                                       megabytesPerSecond(totalSize, compressionTime),
+                                       megabytesPerSecond(totalSize, decompressionTime)));
+   }
+
+   private static ByteBuffer allocate(int capacity, boolean direct)
+   {
+      return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+   }
+
+   private static double megabytesPerSecond(long bytes, long nanoseconds)
+   {
+      return (bytes / (1024.0 * 1024.0)) / (nanoseconds * 1e-9);
+   }
+
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length < 1)
+      {
+         System.err.println("Usage: LogCodecBenchmark [log directory]");
+         return;
+      }
+
+      new LogCodecBenchmark(new File(args[0])).benchmark();
+   }
+}
@@ -0,0 +1,97 @@
+package us.ihmc.tools.compression;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Micro-benchmark for the Snappy paths in SnappyUtils. Compresses and decompresses a tick of 30000
+ * variables with heap, direct and mixed buffers and reports the time and the bytes allocated per
+ * tick. Direct buffers on both sides should allocate nothing, mixed buffers copy every tick through
+ * a temporary array.
+ */
+public class SnappyDirectBufferBenchmark
+{
+   private static final int NUMBER_OF_VARIABLES = 30000;
+   private static final int ITERATIONS = 2000;
+
+   private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+   public SnappyDirectBufferBenchmark() throws IOException
+   {
+      ByteBuffer heapTick = ByteBuffer.allocate(NUMBER_OF_VARIABLES * 8);
+      ByteBuffer directTick = ByteBuffer.allocateDirect(NUMBER_OF_VARIABLES * 8);
+
+      // Mix of constant, slowly changing and random data, like a robot log
+      Random random = new Random(5423L);
+      for (int i = 0; i < NUMBER_OF_VARIABLES; i++)
+      {
+         double value;
+         switch (i % 3)
+         {
+            case 0:
+               value = 1.0;
+               break;
+            case 1:
+               value = 0.001 * i;
+               break;
+            default:
+               value = random.nextDouble();
+               break;
+         }
+         heapTick.putDouble(value);
+         directTick.putDouble(value);
+      }
+
+      for (int i = 0; i < 2; i++)
+      {
+         System.out.println(i == 0 ? "--- WARMUP ---" : "--- TEST ---");
+         benchmark("Heap -> heap", heapTick, false);
+         benchmark("Direct -> direct", directTick, true);
+         benchmark("Heap -> direct (mixed)", heapTick, true);
+         benchmark("Direct -> heap (mixed)", directTick, false);
+         System.out.println();
+      }
+   }
+
+   private void benchmark(String name, ByteBuffer tick, boolean directTarget) throws IOException
+   {
+      int maxCompressedLength = SnappyUtils.maxCompressedLength(tick.capacity());
+      ByteBuffer compressed = directTarget ? ByteBuffer.allocateDirect(maxCompressedLength) : ByteBuffer.allocate(maxCompressedLength);
+      ByteBuffer decompressed = tick.isDirect() ? ByteBuffer.allocateDirect(tick.capacity()) : ByteBuffer.allocate(tick.capacity());
+
+      long threadId = Thread.currentThread().getId();
+      long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+
+      long compressionTime = 0;
+      long decompressionTime = 0;
+      for (int i = 0; i < ITERATIONS; i++)
+      {
+         tick.clear();
+         compressed.clear();
+         long start = System.nanoTime();
+         SnappyUtils.compress(tick, compressed);
+         compressionTime += System.nanoTime() - start;
+
+         compressed.flip();
+         decompressed.clear();
+         start = System.nanoTime();
+         SnappyUtils.uncompress(compressed, decompressed);
+         decompressionTime += System.nanoTime() - start;
+      }
+
+      long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+      System.out.println(String.format("%-24s compress %8.2f us/tick, uncompress %8.2f us/tick, allocated %10d bytes/tick",
+                                       name,
+                                       compressionTime / 1000.0 / ITERATIONS,
+                                       decompressionTime / 1000.0 / ITERATIONS,
+                                       allocated / ITERATIONS));
+   }
+
+   public static void main(String[] args) throws IOException
+   {
+      new SnappyDirectBufferBenchmark();
+   }
+}
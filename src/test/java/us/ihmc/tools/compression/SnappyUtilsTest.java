@@ -141,6 +141,33 @@ public class SnappyUtilsTest
       testCompression(elements, data, dataOffset, compressed, compressedOffset, decompress, decompressOffset);
    }
 
+   @Test
+   // Direct slices do not start at the beginning of their memory, checks that the native direct buffer path handles the offsets
+   public void testDirectSliceBuffers() throws IOException
+   {
+      int elements = 128 + rand.nextInt(128);
+      int dataOffset = rand.nextInt(128);
+      int compressedOffset = rand.nextInt(128);
+      int decompressOffset = rand.nextInt(128);
+
+      int inSlice = 1 + rand.nextInt(128);
+      int compressedSlice = 1 + rand.nextInt(128);
+      int decompressSlice = 1 + rand.nextInt(128);
+
+      ByteBuffer data = ByteBuffer.allocateDirect(elements * 4 + dataOffset + inSlice);
+      ByteBuffer compressed = ByteBuffer.allocateDirect(SnappyUtils.maxCompressedLength(data.remaining()) + compressedOffset + compressedSlice);
+      ByteBuffer decompress = ByteBuffer.allocateDirect(elements * 4 + decompressOffset + decompressSlice);
+
+      data.position(inSlice);
+      data = data.slice();
+      compressed.position(compressedSlice);
+      compressed = compressed.slice();
+      decompress.position(decompressSlice);
+      decompress = decompress.slice();
+
+      testCompression(elements, data, dataOffset, compressed, compressedOffset, decompress, decompressOffset);
+   }
+
    @Test
    // Checks the compression ratio between random values and repetitive values, and asserts that the repetitive data results data a smaller buffer
    public void testCompressionRatio() throws IOException